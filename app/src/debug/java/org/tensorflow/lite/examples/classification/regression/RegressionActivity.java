@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tensorflow.lite.examples.classification.regression;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.widget.TextView;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.tensorflow.lite.examples.classification.BuildConfig;
+import org.tensorflow.lite.examples.classification.env.Logger;
+import org.tensorflow.lite.examples.classification.tflite.Device;
+
+/**
+ * Runs the {@link RegressionSuite} over {@code <external files dir>/regression} and compares the
+ * result against {@code baseline-<flavor>.txt} in the same folder.
+ *
+ * <p>The report is written to {@code report-<flavor>.txt}; the log ends with either
+ * "Regression suite PASSED" or "Regression suite FAILED". Without a baseline the report can be
+ * renamed to become one. Optional extras: {@code device} (CPU, NNAPI or GPU), {@code
+ * scoreTolerance} and {@code slowdownThreshold}.
+ */
+public class RegressionActivity extends Activity {
+  private static final Logger LOGGER = new Logger();
+
+  private static final float DEFAULT_SCORE_TOLERANCE = 0.05f;
+  private static final float DEFAULT_SLOWDOWN_THRESHOLD = 0.2f;
+
+  private TextView statusView;
+
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    statusView = new TextView(this);
+    setContentView(statusView);
+    statusView.setText("Running regression suite...");
+
+    final String deviceName = getIntent().getStringExtra("device");
+    final Device device = deviceName != null ? Device.valueOf(deviceName) : Device.CPU;
+    final float scoreTolerance =
+        getIntent().getFloatExtra("scoreTolerance", DEFAULT_SCORE_TOLERANCE);
+    final float slowdownThreshold =
+        getIntent().getFloatExtra("slowdownThreshold", DEFAULT_SLOWDOWN_THRESHOLD);
+    final File dir = new File(getExternalFilesDir(null), "regression");
+
+    new Thread(
+            () -> {
+              String status;
+              try {
+                status = runSuite(dir, device, scoreTolerance, slowdownThreshold);
+              } catch (IOException | RuntimeException e) {
+                LOGGER.e(e, "Regression suite failed to run.");
+                status = "Regression suite FAILED: " + e.getMessage();
+              }
+              LOGGER.i("%s", status);
+              final String message = status;
+              runOnUiThread(() -> statusView.setText(message));
+            },
+            "regression")
+        .start();
+  }
+
+  private String runSuite(File dir, Device device, float scoreTolerance, float slowdownThreshold)
+      throws IOException {
+    RegressionReport report = new RegressionSuite(this, dir, device).run();
+    report.write(new File(dir, "report-" + BuildConfig.FLAVOR + ".txt"));
+
+    File baselineFile = new File(dir, "baseline-" + BuildConfig.FLAVOR + ".txt");
+    if (!baselineFile.exists()) {
+      return "Regression suite PASSED (no baseline, report written)";
+    }
+    List<String> failures =
+        report.compareTo(RegressionReport.read(baselineFile), scoreTolerance, slowdownThreshold);
+    for (String failure : failures) {
+      LOGGER.e("Regression: %s", failure);
+    }
+    return failures.isEmpty()
+        ? "Regression suite PASSED"
+        : "Regression suite FAILED with " + failures.size() + " regressions";
+  }
+}
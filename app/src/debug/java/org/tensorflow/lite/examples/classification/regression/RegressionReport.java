@@ -0,0 +1,301 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.classification.regression;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-image predictions and latencies of every model, as produced by {@link RegressionSuite}.
+ *
+ * <p>Reports are stored as tab separated text, one line per model and image, so a report of a
+ * known good build can be kept next to the images as the baseline of later runs.
+ */
+public class RegressionReport {
+
+  /** The result of classifying one image with one model. */
+  public static class Entry {
+    public final String model;
+    public final String image;
+    public final String expectedLabel;
+    public final String topLabel;
+    public final float topScore;
+    /** Whether the expected label is among the returned results. */
+    public final boolean inTopK;
+    public final double latencyMs;
+
+    public Entry(
+        String model,
+        String image,
+        String expectedLabel,
+        String topLabel,
+        float topScore,
+        boolean inTopK,
+        double latencyMs) {
+      this.model = model;
+      this.image = image;
+      this.expectedLabel = expectedLabel;
+      this.topLabel = topLabel;
+      this.topScore = topScore;
+      this.inTopK = inTopK;
+      this.latencyMs = latencyMs;
+    }
+
+    String getKey() {
+      return model + "/" + image;
+    }
+  }
+
+  private final List<Entry> entries = new ArrayList<>();
+  private final Map<String, Long> memoryKbByModel = new LinkedHashMap<>();
+  /** Crops per second of tiled classification, batched and one by one, per model. */
+  private final Map<String, double[]> cropsPerSecondByModel = new LinkedHashMap<>();
+
+  public void add(Entry entry) {
+    entries.add(entry);
+  }
+
+  /** Records the native memory the classifier of a model allocated. */
+  public void setMemoryKb(String model, long memoryKb) {
+    memoryKbByModel.put(model, memoryKb);
+  }
+
+  /** Records the throughput of tiled classification with and without batching. */
+  public void setTileThroughput(
+      String model, double batchedCropsPerSecond, double oneByOneCropsPerSecond) {
+    cropsPerSecondByModel.put(
+        model, new double[] {batchedCropsPerSecond, oneByOneCropsPerSecond});
+  }
+
+  /** Returns the crops per second of batched tiled classification, or 0 if not measured. */
+  public double getBatchedCropsPerSecond(String model) {
+    double[] cropsPerSecond = cropsPerSecondByModel.get(model);
+    return cropsPerSecond != null ? cropsPerSecond[0] : 0;
+  }
+
+  /** Returns the crops per second of tiles classified one by one, or 0 if not measured. */
+  public double getOneByOneCropsPerSecond(String model) {
+    double[] cropsPerSecond = cropsPerSecondByModel.get(model);
+    return cropsPerSecond != null ? cropsPerSecond[1] : 0;
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /** Returns the fraction of images of the model whose top-1 label is the expected one. */
+  public float getTop1Accuracy(String model) {
+    int total = 0;
+    int correct = 0;
+    for (Entry entry : entries) {
+      if (entry.model.equals(model)) {
+        total++;
+        if (entry.topLabel.equals(entry.expectedLabel)) {
+          correct++;
+        }
+      }
+    }
+    return total == 0 ? 0 : (float) correct / total;
+  }
+
+  /** Returns the fraction of images of the model whose expected label is among the results. */
+  public float getTopKAccuracy(String model) {
+    int total = 0;
+    int correct = 0;
+    for (Entry entry : entries) {
+      if (entry.model.equals(model)) {
+        total++;
+        if (entry.inTopK) {
+          correct++;
+        }
+      }
+    }
+    return total == 0 ? 0 : (float) correct / total;
+  }
+
+  /** Returns the median latency of the model over all images. */
+  public double getMedianLatencyMs(String model) {
+    List<Double> latencies = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (entry.model.equals(model)) {
+        latencies.add(entry.latencyMs);
+      }
+    }
+    if (latencies.isEmpty()) {
+      return 0;
+    }
+    double[] sorted = new double[latencies.size()];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = latencies.get(i);
+    }
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  /** Returns the models of the report, in the order they were run. */
+  public List<String> getModels() {
+    List<String> models = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (!models.contains(entry.model)) {
+        models.add(entry.model);
+      }
+    }
+    return models;
+  }
+
+  /**
+   * Compares this report against a baseline. Every model and image of the baseline must also be in
+   * this report; models and images that only this report has are not compared.
+   *
+   * @param scoreTolerance the largest accepted change of a top-1 score
+   * @param slowdownThreshold the largest accepted relative increase of the median latency of a
+   *     model, e.g. 0.2 for 20%
+   * @return a description of every regression, empty if there is none
+   */
+  public List<String> compareTo(
+      RegressionReport baseline, float scoreTolerance, float slowdownThreshold) {
+    List<String> failures = new ArrayList<>();
+    Map<String, Entry> currentEntries = new LinkedHashMap<>();
+    for (Entry entry : entries) {
+      currentEntries.put(entry.getKey(), entry);
+    }
+    List<String> models = getModels();
+    for (String model : baseline.getModels()) {
+      if (!models.contains(model)) {
+        failures.add(String.format(Locale.US, "%s: missing from this run", model));
+      }
+    }
+    for (Entry expected : baseline.entries) {
+      Entry entry = currentEntries.get(expected.getKey());
+      if (entry == null) {
+        if (models.contains(expected.model)) {
+          failures.add(String.format(Locale.US, "%s: missing from this run", expected.getKey()));
+        }
+        continue;
+      }
+      if (!entry.topLabel.equals(expected.topLabel)) {
+        failures.add(
+            String.format(
+                Locale.US,
+                "%s: top-1 changed from %s to %s",
+                entry.getKey(),
+                expected.topLabel,
+                entry.topLabel));
+      } else if (Math.abs(entry.topScore - expected.topScore) > scoreTolerance) {
+        failures.add(
+            String.format(
+                Locale.US,
+                "%s: top-1 score changed from %.4f to %.4f",
+                entry.getKey(),
+                expected.topScore,
+                entry.topScore));
+      }
+    }
+    for (String model : models) {
+      double baselineLatencyMs = baseline.getMedianLatencyMs(model);
+      double latencyMs = getMedianLatencyMs(model);
+      if (baselineLatencyMs > 0 && latencyMs > baselineLatencyMs * (1 + slowdownThreshold)) {
+        failures.add(
+            String.format(
+                Locale.US,
+                "%s: median latency rose from %.1f ms to %.1f ms",
+                model,
+                baselineLatencyMs,
+                latencyMs));
+      }
+    }
+    return failures;
+  }
+
+  /** Writes the report, followed by a per-model summary as comment lines. */
+  public void write(File file) throws IOException {
+    PrintWriter writer = new PrintWriter(new FileWriter(file));
+    try {
+      writer.println("# model\timage\texpected\ttop1\tscore\tinTopK\tlatencyMs");
+      for (Entry entry : entries) {
+        writer.println(
+            String.format(
+                Locale.US,
+                "%s\t%s\t%s\t%s\t%.6f\t%b\t%.3f",
+                entry.model,
+                entry.image,
+                entry.expectedLabel,
+                entry.topLabel,
+                entry.topScore,
+                entry.inTopK,
+                entry.latencyMs));
+      }
+      for (String model : getModels()) {
+        Long memoryKb = memoryKbByModel.get(model);
+        writer.println(
+            String.format(
+                Locale.US,
+                "# %s top1=%.3f topK=%.3f medianLatencyMs=%.2f memoryKb=%d"
+                    + " batchedCropsPerSecond=%.1f oneByOneCropsPerSecond=%.1f",
+                model,
+                getTop1Accuracy(model),
+                getTopKAccuracy(model),
+                getMedianLatencyMs(model),
+                memoryKb != null ? memoryKb : -1,
+                getBatchedCropsPerSecond(model),
+                getOneByOneCropsPerSecond(model)));
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** Reads a report written by {@link #write}. */
+  public static RegressionReport read(File file) throws IOException {
+    RegressionReport report = new RegressionReport();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\t");
+        if (fields.length != 7) {
+          throw new IOException("Malformed report line: " + line);
+        }
+        report.add(
+            new Entry(
+                fields[0],
+                fields[1],
+                fields[2],
+                fields[3],
+                Float.parseFloat(fields[4]),
+                Boolean.parseBoolean(fields[5]),
+                Double.parseDouble(fields[6])));
+      }
+    } finally {
+      reader.close();
+    }
+    return report;
+  }
+}
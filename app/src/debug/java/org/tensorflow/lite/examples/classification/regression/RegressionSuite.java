@@ -0,0 +1,271 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tensorflow.lite.examples.classification.regression;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Debug;
+import android.os.SystemClock;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.tensorflow.lite.examples.classification.env.Logger;
+import org.tensorflow.lite.examples.classification.models.ModelDescriptor;
+import org.tensorflow.lite.examples.classification.models.ModelRegistry;
+import org.tensorflow.lite.examples.classification.tflite.Classifier;
+import org.tensorflow.lite.examples.classification.tflite.Device;
+import org.tensorflow.lite.examples.classification.tflite.Recognition;
+import org.tensorflow.lite.examples.classification.tflite.TestTimeAugmentation;
+import org.tensorflow.lite.examples.classification.tflite.TileGrid;
+import org.tensorflow.lite.examples.classification.tflite.utils.Frame;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageKernels;
+
+/**
+ * Runs a folder of labeled images through every model of the {@link ModelRegistry} with the
+ * classifier of the current build flavor and
+ * records the predictions, latency and memory of each model, and the throughput of tiled
+ * classification with and without batching. Every model is also run with test-time augmentation,
+ * reported as a model of its own named with a {@code +TTA} suffix.
+ *
+ * <p>The images are also converted to YUV_420_888 frames, planar (I420) and semi-planar (NV21), and
+ * classified through the camera frame path once with the Java and once with the native {@link
+ * ImageKernels}, reported as models named like {@code +NV21/java}.
+ *
+ * <p>Images are grouped by label, one sub folder per label, e.g. {@code red_fox/fox.jpg}.
+ */
+public class RegressionSuite {
+  private static final Logger LOGGER = new Logger();
+
+  /** Single threaded inference keeps latencies comparable between runs. */
+  private static final int NUM_THREADS = 1;
+
+  /** The tiles of the throughput measurement, a 3x3 grid and the center crop. */
+  private static final TileGrid TILE_GRID = new TileGrid(3, 3, 0.25f);
+
+  /** The views of the augmented runs: shifted and zoomed in crops, all also mirrored. */
+  private static final TestTimeAugmentation AUGMENTATION =
+      new TestTimeAugmentation(true, 0.1f, new float[] {0.8f});
+
+  private static final String AUGMENTED_SUFFIX = "+TTA";
+
+  /** The kernels forced for the frame runs, values of {@link ImageKernels#KERNELS_PROPERTY}. */
+  private static final String[] KERNELS = {"java", "native"};
+
+  private final Activity activity;
+  private final File imageDir;
+  private final Device device;
+
+  public RegressionSuite(Activity activity, File imageDir, Device device) {
+    this.activity = activity;
+    this.imageDir = imageDir;
+    this.device = device;
+  }
+
+  /** Classifies every image with every model. */
+  public RegressionReport run() throws IOException {
+    List<File> images = listImages();
+    if (images.isEmpty()) {
+      throw new IOException("No labeled images found in " + imageDir);
+    }
+
+    RegressionReport report = new RegressionReport();
+    for (ModelDescriptor model : ModelRegistry.get(activity).getModels()) {
+      String name = getReportName(model);
+      long nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+      Classifier classifier = Classifier.create(activity, model, device, NUM_THREADS);
+      report.setMemoryKb(
+          name, (Debug.getNativeHeapAllocatedSize() - nativeHeapBefore) / 1024);
+      try {
+        // Warms up the interpreter so the first image isn't measured with one-time costs.
+        classifier.recognizeImage(decode(images.get(0)), 0);
+        for (File image : images) {
+          Bitmap bitmap = decode(image);
+          long startTime = SystemClock.elapsedRealtimeNanos();
+          List<Recognition> results = classifier.recognizeImage(bitmap, 0);
+          double latencyMs = (SystemClock.elapsedRealtimeNanos() - startTime) / 1e6;
+          report.add(createEntry(name, image, results, latencyMs));
+        }
+        report.setTileThroughput(
+            name,
+            measureTileThroughput(classifier, images, true),
+            measureTileThroughput(classifier, images, false));
+
+        String augmentedName = name + AUGMENTED_SUFFIX;
+        classifier.recognizeImageAugmented(decode(images.get(0)), 0, AUGMENTATION);
+        for (File image : images) {
+          Bitmap bitmap = decode(image);
+          long startTime = SystemClock.elapsedRealtimeNanos();
+          List<Recognition> results = classifier.recognizeImageAugmented(bitmap, 0, AUGMENTATION);
+          double latencyMs = (SystemClock.elapsedRealtimeNanos() - startTime) / 1e6;
+          report.add(createEntry(augmentedName, image, results, latencyMs));
+        }
+      } finally {
+        classifier.close();
+      }
+      LOGGER.i(
+          "%s: top1=%.3f topK=%.3f medianLatencyMs=%.2f",
+          model,
+          report.getTop1Accuracy(name),
+          report.getTopKAccuracy(name),
+          report.getMedianLatencyMs(name));
+      LOGGER.i(
+          "%s: tiles batched=%.1f crops/s oneByOne=%.1f crops/s",
+          model,
+          report.getBatchedCropsPerSecond(name),
+          report.getOneByOneCropsPerSecond(name));
+      String augmentedName = name + AUGMENTED_SUFFIX;
+      LOGGER.i(
+          "%s with %d augmented views: top1=%.3f topK=%.3f medianLatencyMs=%.2f",
+          model,
+          AUGMENTATION.getCount(),
+          report.getTop1Accuracy(augmentedName),
+          report.getTopKAccuracy(augmentedName),
+          report.getMedianLatencyMs(augmentedName));
+
+      for (String kernels : KERNELS) {
+        runFrames(report, model, images, kernels);
+      }
+    }
+    return report;
+  }
+
+  /**
+   * Classifies every image converted to a YUV frame of each layout, with the given kernels forced
+   * for the whole run, since classifiers pick their kernels when they first need them.
+   */
+  private void runFrames(
+      RegressionReport report, ModelDescriptor model, List<File> images, String kernels)
+      throws IOException {
+    if ("native".equals(kernels) && ImageKernels.nativeOrNull() == null) {
+      LOGGER.w("%s: no native kernels on this device, skipping the native frame runs", model);
+      return;
+    }
+    String previousKernels = System.getProperty(ImageKernels.KERNELS_PROPERTY);
+    System.setProperty(ImageKernels.KERNELS_PROPERTY, kernels);
+    Classifier classifier = Classifier.create(activity, model, device, NUM_THREADS);
+    try {
+      for (YuvFrames.Layout layout : YuvFrames.Layout.values()) {
+        String name = getReportName(model) + "+" + layout + "/" + kernels;
+        classifier.recognizeImage(YuvFrames.fromBitmap(decode(images.get(0)), layout), 0);
+        for (File image : images) {
+          Frame frame = YuvFrames.fromBitmap(decode(image), layout);
+          long startTime = SystemClock.elapsedRealtimeNanos();
+          List<Recognition> results = classifier.recognizeImage(frame, 0);
+          double latencyMs = (SystemClock.elapsedRealtimeNanos() - startTime) / 1e6;
+          report.add(createEntry(name, image, results, latencyMs));
+        }
+        LOGGER.i(
+            "%s from %s frames with %s kernels: top1=%.3f topK=%.3f medianLatencyMs=%.2f",
+            model,
+            layout,
+            kernels,
+            report.getTop1Accuracy(name),
+            report.getTopKAccuracy(name),
+            report.getMedianLatencyMs(name));
+      }
+    } finally {
+      classifier.close();
+      if (previousKernels != null) {
+        System.setProperty(ImageKernels.KERNELS_PROPERTY, previousKernels);
+      } else {
+        System.clearProperty(ImageKernels.KERNELS_PROPERTY);
+      }
+    }
+  }
+
+  /**
+   * Classifies the tiles of every image, all at once or one by one, and returns the number of
+   * crops classified per second.
+   */
+  private static double measureTileThroughput(
+      Classifier classifier, List<File> images, boolean batched) throws IOException {
+    classifier.setTileBatching(batched);
+    // Warms up the interpreter at the batch size of the tiles.
+    classifier.recognizeImageTiles(decode(images.get(0)), 0, TILE_GRID);
+    long totalNanos = 0;
+    for (File image : images) {
+      Bitmap bitmap = decode(image);
+      long startTime = SystemClock.elapsedRealtimeNanos();
+      classifier.recognizeImageTiles(bitmap, 0, TILE_GRID);
+      totalNanos += SystemClock.elapsedRealtimeNanos() - startTime;
+    }
+    return images.size() * TILE_GRID.getTileCount() * 1e9 / totalNanos;
+  }
+
+  /** Upper case, like the model names of earlier reports, so existing baselines still match. */
+  private static String getReportName(ModelDescriptor model) {
+    return model.getName().toUpperCase(Locale.US);
+  }
+
+  private List<File> listImages() {
+    List<File> images = new ArrayList<>();
+    File[] labelDirs = imageDir.listFiles();
+    if (labelDirs == null) {
+      return images;
+    }
+    Arrays.sort(labelDirs);
+    for (File labelDir : labelDirs) {
+      File[] files = labelDir.isDirectory() ? labelDir.listFiles() : null;
+      if (files == null) {
+        continue;
+      }
+      Arrays.sort(files);
+      images.addAll(Arrays.asList(files));
+    }
+    return images;
+  }
+
+  private static Bitmap decode(File image) throws IOException {
+    Bitmap bitmap = BitmapFactory.decodeFile(image.getPath());
+    if (bitmap == null) {
+      throw new IOException("Failed to decode " + image);
+    }
+    return bitmap;
+  }
+
+  private static RegressionReport.Entry createEntry(
+      String model, File image, List<Recognition> results, double latencyMs) {
+    String expectedLabel = normalizeLabel(image.getParentFile().getName());
+    String topLabel = "";
+    float topScore = 0;
+    boolean inTopK = false;
+    for (int i = 0; i < results.size(); i++) {
+      String label = normalizeLabel(results.get(i).getTitle());
+      if (i == 0) {
+        topLabel = label;
+        topScore = results.get(i).getConfidence();
+      }
+      inTopK |= label.equals(expectedLabel);
+    }
+    return new RegressionReport.Entry(
+        model,
+        image.getParentFile().getName() + "/" + image.getName(),
+        expectedLabel,
+        topLabel,
+        topScore,
+        inTopK,
+        latencyMs);
+  }
+
+  /** Makes labels of the different label files comparable, e.g. "Red fox" and "red_fox". */
+  private static String normalizeLabel(String label) {
+    return label.trim().toLowerCase(Locale.US).replace(' ', '_');
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tensorflow.lite.examples.classification.regression;
+
+import android.graphics.Bitmap;
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.classification.tflite.utils.Frame;
+
+/**
+ * Converts decoded images into YUV_420_888 {@link Frame}s, so the regression suite runs the
+ * conversion of camera frames, in both chroma layouts cameras produce.
+ */
+final class YuvFrames {
+
+  /** The memory layout of the chroma planes. */
+  enum Layout {
+    /** Separate U and V planes with a pixel stride of 1. */
+    I420,
+    /** Interleaved chroma starting with V, pixel stride 2, as most camera HALs produce. */
+    NV21
+  }
+
+  private YuvFrames() {}
+
+  /** Converts the pixels of a bitmap into YUV planes with the given layout, BT.601 video range. */
+  static Frame fromBitmap(Bitmap bitmap, Layout layout) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    int[] argb = new int[width * height];
+    bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+
+    int chromaWidth = (width + 1) / 2;
+    int chromaHeight = (height + 1) / 2;
+    byte[] yData = new byte[width * height];
+    byte[] uData = new byte[chromaWidth * chromaHeight];
+    byte[] vData = new byte[chromaWidth * chromaHeight];
+    for (int j = 0; j < height; j++) {
+      for (int i = 0; i < width; i++) {
+        int pixel = argb[j * width + i];
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+        yData[j * width + i] = (byte) clamp(((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+        if ((i & 1) == 0 && (j & 1) == 0) {
+          int c = (j >> 1) * chromaWidth + (i >> 1);
+          uData[c] = (byte) clamp(((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+          vData[c] = (byte) clamp(((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+        }
+      }
+    }
+
+    ByteBuffer yPlane = ByteBuffer.wrap(yData);
+    if (layout == Layout.I420) {
+      return new PlaneFrame(
+          width,
+          height,
+          new ByteBuffer[] {yPlane, ByteBuffer.wrap(uData), ByteBuffer.wrap(vData)},
+          new int[] {width, chromaWidth, chromaWidth},
+          1);
+    }
+    // Both chroma planes are views of one interleaved buffer, offset by one byte, so each of them
+    // is one byte shorter than the buffer, like on Android.
+    byte[] interleaved = new byte[2 * chromaWidth * chromaHeight];
+    for (int c = 0; c < uData.length; c++) {
+      interleaved[2 * c] = vData[c];
+      interleaved[2 * c + 1] = uData[c];
+    }
+    ByteBuffer vPlane = ByteBuffer.wrap(interleaved, 0, interleaved.length - 1).slice();
+    ByteBuffer uPlane = ByteBuffer.wrap(interleaved, 1, interleaved.length - 1).slice();
+    return new PlaneFrame(
+        width,
+        height,
+        new ByteBuffer[] {yPlane, uPlane, vPlane},
+        new int[] {width, 2 * chromaWidth, 2 * chromaWidth},
+        2);
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+  }
+
+  /** A frame of three planes in Y, U, V order, the chroma planes sharing a pixel stride. */
+  private static final class PlaneFrame implements Frame {
+    private final int width;
+    private final int height;
+    private final ByteBuffer[] planes;
+    private final int[] rowStrides;
+    private final int chromaPixelStride;
+
+    PlaneFrame(
+        int width, int height, ByteBuffer[] planes, int[] rowStrides, int chromaPixelStride) {
+      this.width = width;
+      this.height = height;
+      this.planes = planes;
+      this.rowStrides = rowStrides;
+      this.chromaPixelStride = chromaPixelStride;
+    }
+
+    @Override
+    public int getWidth() {
+      return width;
+    }
+
+    @Override
+    public int getHeight() {
+      return height;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return 0;
+    }
+
+    @Override
+    public int getPlaneCount() {
+      return planes.length;
+    }
+
+    @Override
+    public ByteBuffer getPlaneBuffer(int plane) {
+      return planes[plane].duplicate();
+    }
+
+    @Override
+    public int getRowStride(int plane) {
+      return rowStrides[plane];
+    }
+
+    @Override
+    public int getPixelStride(int plane) {
+      return plane == 0 ? 1 : chromaPixelStride;
+    }
+  }
+}
@@ -24,11 +24,11 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.PowerManager;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.SystemClock;
-import android.util.Log;
 import android.util.Size;
 import android.util.TypedValue;
 import android.view.Surface;
@@ -36,11 +36,13 @@ import android.view.View;
 import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.LinearLayout;
+import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.UiThread;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
@@ -52,6 +54,7 @@ import androidx.databinding.DataBindingUtil;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -60,15 +63,26 @@ import org.tensorflow.lite.examples.classification.databinding.TfeIcActivityCame
 
 import org.tensorflow.lite.examples.classification.env.BorderedText;
 import org.tensorflow.lite.examples.classification.env.Logger;
+import org.tensorflow.lite.examples.classification.env.RecognitionOverlay;
+import org.tensorflow.lite.examples.classification.env.ResultsRenderer;
+import org.tensorflow.lite.examples.classification.models.ModelDescriptor;
+import org.tensorflow.lite.examples.classification.models.ModelRegistry;
 import org.tensorflow.lite.examples.classification.tflite.Classifier;
-import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
-import org.tensorflow.lite.examples.classification.tflite.Classifier.Model;
-import org.tensorflow.lite.examples.classification.tflite.Classifier.Recognition;
+import org.tensorflow.lite.examples.classification.tflite.Device;
+import org.tensorflow.lite.examples.classification.tflite.HistoryLog;
+import org.tensorflow.lite.examples.classification.tflite.InferenceRateController;
+import org.tensorflow.lite.examples.classification.tflite.Recognition;
+import org.tensorflow.lite.examples.classification.tflite.TestTimeAugmentation;
+import org.tensorflow.lite.examples.classification.tflite.TileGrid;
+import org.tensorflow.lite.examples.classification.tflite.TraceRecorder;
+import org.tensorflow.lite.examples.classification.tflite.TraceRecorder.Event;
 
 public class CameraActivity extends AppCompatActivity
         implements View.OnClickListener,
         AdapterView.OnItemSelectedListener {
   private static final Logger LOGGER = new Logger();
+  /** Logs per-frame messages in debug builds, at most once per second. */
+  private static final Logger FRAME_LOGGER = Logger.forHotPath(1000);
 
   private static final int PERMISSIONS_REQUEST = 1;
 
@@ -81,15 +95,57 @@ public class CameraActivity extends AppCompatActivity
 
   private BottomSheetBehavior<LinearLayout> sheetBehavior;
 
-  private Model model = Model.QUANTIZED_EFFICIENTNET;
+  private ModelRegistry modelRegistry;
+  private ModelDescriptor model;
   private Device device = Device.CPU;
   private int numThreads = -1;
 
   public static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
+  private static final float TARGET_INFERENCES_PER_SECOND = 15.0f;
+  private static final long LATENCY_BUDGET_MS = 100;
+  private static final int LATENCY_WINDOW_SIZE = 16;
+  /**
+   * Degradation levels applied when latency leaves the budget: 0 is the user's configuration, 1
+   * halves the number of threads and 2 additionally switches to the lightest model.
+   */
+  private static final int MAX_DEGRADATION_LEVEL = 2;
   private static final float TEXT_SIZE_DIP = 10;
+  private static final int MAX_OVERLAY_LABELS = 3;
+  /** Memory for rendered overlay labels, enough for a few hundred distinct labels. */
+  private static final int LABEL_CACHE_BYTES = 2 * 1024 * 1024;
+  /** Number of pipeline events kept for trace dumps, about a minute of frames. */
+  private static final int TRACE_CAPACITY = 16384;
+  /** Results kept per classification in the history, and the size of its segments and queue. */
+  private static final int HISTORY_TOP_K = 3;
+  private static final int HISTORY_RECORDS_PER_SEGMENT = 4096;
+  private static final int HISTORY_MAX_SEGMENTS = 16;
+  private static final int HISTORY_QUEUE_CAPACITY = 64;
+  /** Least overlap of neighboring tiles in tiled mode, as a fraction of their size. */
+  private static final float TILE_OVERLAP = 0.25f;
+  /** The augmentations of the spinner entries in {@code tfe_ic_augmentations}, null for none. */
+  private static final TestTimeAugmentation[] AUGMENTATIONS = {
+    null,
+    new TestTimeAugmentation(true, 0.0f, new float[0]),
+    new TestTimeAugmentation(true, 0.1f, new float[] {0.8f})
+  };
   private long lastProcessingTimeMs;
   private Integer sensorOrientation;
   private Classifier classifier;
+  private final InferenceRateController rateController =
+          new InferenceRateController(
+                  TARGET_INFERENCES_PER_SECOND, LATENCY_BUDGET_MS, LATENCY_WINDOW_SIZE, MAX_DEGRADATION_LEVEL);
+  private PowerManager.OnThermalStatusChangedListener thermalStatusListener;
+  private final TraceRecorder traceRecorder = new TraceRecorder(TRACE_CAPACITY);
+  /** Records every classification, opened and closed on the inference thread. */
+  private HistoryLog historyLog;
+  /** The model id of the history of the classifier's model, see {@link HistoryLog#getModelId}. */
+  private int historyModelId;
+  /** The tiles to classify every frame in, or null to classify the center crop only. */
+  private volatile TileGrid tileGrid;
+  /** The augmented views to average every frame over, or null, unless tiled mode is on. */
+  private volatile TestTimeAugmentation augmentation;
+  private ResultsRenderer resultsRenderer;
+  private volatile RecognitionOverlay recognitionOverlay;
   /**
    * Input image size of the model along x axis.
    */
@@ -108,6 +164,24 @@ public class CameraActivity extends AppCompatActivity
     getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
     binding = DataBindingUtil.setContentView(this, R.layout.tfe_ic_activity_camera);
+    resultsRenderer =
+            new ResultsRenderer(
+                    new TextView[] {
+                            binding.bottomSheetLayout.detectedItem,
+                            binding.bottomSheetLayout.detectedItem1,
+                            binding.bottomSheetLayout.detectedItem2
+                    },
+                    new TextView[] {
+                            binding.bottomSheetLayout.detectedItemValue,
+                            binding.bottomSheetLayout.detectedItem1Value,
+                            binding.bottomSheetLayout.detectedItem2Value
+                    },
+                    binding.bottomSheetLayout.frameInfo,
+                    binding.bottomSheetLayout.cropInfo,
+                    binding.bottomSheetLayout.viewInfo,
+                    binding.bottomSheetLayout.rotationInfo,
+                    binding.bottomSheetLayout.inferenceInfo,
+                    traceRecorder);
 
     if (hasPermission()) {
       // Start CameraX
@@ -159,15 +233,35 @@ public class CameraActivity extends AppCompatActivity
               }
             });
 
+    // Offers the models of the registry, the first one being the default.
+    modelRegistry = ModelRegistry.get(this);
+    ArrayAdapter<ModelDescriptor> modelAdapter =
+            new ArrayAdapter<>(
+                    this, android.R.layout.simple_spinner_item, modelRegistry.getModels());
+    modelAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+    binding.bottomSheetLayout.modelSpinner.setAdapter(modelAdapter);
     binding.bottomSheetLayout.modelSpinner.setOnItemSelectedListener(this);
     binding.bottomSheetLayout.deviceSpinner.setOnItemSelectedListener(this);
+    binding.bottomSheetLayout.tilesSpinner.setOnItemSelectedListener(this);
+    binding.bottomSheetLayout.augmentationSpinner.setOnItemSelectedListener(this);
 
     binding.bottomSheetLayout.plus.setOnClickListener(this);
     binding.bottomSheetLayout.minus.setOnClickListener(this);
+    binding.bottomSheetLayout.inferenceInfo.setOnLongClickListener(
+            v -> {
+              runInBackground(this::dumpTrace);
+              return true;
+            });
 
-    model = Model.valueOf(binding.bottomSheetLayout.modelSpinner.getSelectedItem().toString().toUpperCase());
+    model = (ModelDescriptor) binding.bottomSheetLayout.modelSpinner.getSelectedItem();
     device = Device.valueOf(binding.bottomSheetLayout.deviceSpinner.getSelectedItem().toString());
     numThreads = Integer.parseInt(binding.bottomSheetLayout.threads.getText().toString().trim());
+
+    rateController.setListener(
+            level -> {
+              LOGGER.i("Inference degradation level changed to %d", level);
+              onInferenceConfigurationChanged();
+            });
   }
 
   @SuppressLint("UnsafeOptInUsageError")
@@ -197,7 +291,9 @@ public class CameraActivity extends AppCompatActivity
         imageAnalysis.setAnalyzer(ContextCompat.getMainExecutor(this), image -> {
           // Define rotation Degrees of the imageProxy
           int rotationDegrees = image.getImageInfo().getRotationDegrees();
-          Log.v("ImageAnalysis_degrees", String.valueOf(rotationDegrees));
+          final long frameId = image.getImageInfo().getTimestamp();
+          traceRecorder.instant(Event.FRAME_ARRIVAL, frameId);
+          FRAME_LOGGER.v("Image rotation degrees: %d", rotationDegrees);
 
           // Execute this method to start the model ONCE
           if (firstTimeStartModel) {
@@ -205,32 +301,58 @@ public class CameraActivity extends AppCompatActivity
             firstTimeStartModel = false;
           }
 
-          if (!isProcessingFrame) {
+          if (!isProcessingFrame && rateController.tryStartInference(SystemClock.uptimeMillis())) {
             final int cropSize = Math.min(DESIRED_PREVIEW_SIZE.getWidth(), DESIRED_PREVIEW_SIZE.getHeight());
 
             runInBackground(
                     () -> {
                       if (classifier != null) {
                         final long startTime = SystemClock.uptimeMillis();
-                        final List<Classifier.Recognition> results = classifier.recognizeImage(image.getImage(), sensorOrientation);
+                        final TileGrid grid = tileGrid;
+                        final TestTimeAugmentation views = augmentation;
+                        final List<Recognition> results;
+                        if (grid != null) {
+                          results = classifier.recognizeImageTiles(image.getImage(), sensorOrientation, grid);
+                        } else if (views != null) {
+                          results = classifier.recognizeImageAugmented(image.getImage(), sensorOrientation, views);
+                        } else {
+                          results = classifier.recognizeImage(image.getImage(), sensorOrientation);
+                        }
                         lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-                        LOGGER.e("Degrees: %s", results);
-
-                        runOnUiThread(
-                                () -> {
-                                  showResultsInBottomSheet(results);
-                                  showFrameInfo(DESIRED_PREVIEW_SIZE.getWidth() + "x" + DESIRED_PREVIEW_SIZE.getHeight());
-                                  showCropInfo(imageSizeX + "x" + imageSizeY);
-                                  showCameraResolution(cropSize + "x" + cropSize);
-                                  showRotationInfo(String.valueOf(sensorOrientation));
-                                  showInference(lastProcessingTimeMs + "ms");
-                                });
+                        rateController.onInferenceFinished(lastProcessingTimeMs);
+                        if (historyLog != null) {
+                          historyLog.append(
+                                  System.currentTimeMillis(),
+                                  historyModelId,
+                                  (int) lastProcessingTimeMs,
+                                  results);
+                        }
+                        if (Logger.HOT_PATH_LOGGING) {
+                          FRAME_LOGGER.v("Results: %s", results);
+                        }
+
+                        resultsRenderer.postFrameInfo(
+                                DESIRED_PREVIEW_SIZE.getWidth(),
+                                DESIRED_PREVIEW_SIZE.getHeight(),
+                                cropSize,
+                                imageSizeX,
+                                imageSizeY,
+                                sensorOrientation);
+                        resultsRenderer.postResults(frameId, results, lastProcessingTimeMs);
+                        final RecognitionOverlay overlay = recognitionOverlay;
+                        if (overlay != null && overlay.setResults(results)) {
+                          binding.overlay.postInvalidate();
+                        }
                       }
                       image.close();
                       isProcessingFrame = false;
                     });
 
             isProcessingFrame = true;
+          } else {
+            // Frame dropped by the rate controller or while the previous one is being processed.
+            traceRecorder.instant(Event.FRAME_DROP, frameId);
+            image.close();
           }
 
         });
@@ -262,12 +384,9 @@ public class CameraActivity extends AppCompatActivity
                     TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, getResources().getDisplayMetrics());
     BorderedText borderedText = new BorderedText(textSizePx);
     borderedText.setTypeface(Typeface.MONOSPACE);
-
-    recreateClassifier(getModel(), getDevice(), getNumThreads());
-    if (classifier == null) {
-      LOGGER.e("No classifier on preview!");
-      return;
-    }
+    borderedText.setBitmapCacheSize(LABEL_CACHE_BYTES);
+    recognitionOverlay = new RecognitionOverlay(borderedText, MAX_OVERLAY_LABELS, textSizePx);
+    binding.overlay.addCallback(recognitionOverlay);
 
     // Use rotation which is the rotation of the Image that is provided by the CameraX
     sensorOrientation = rotation;
@@ -275,22 +394,26 @@ public class CameraActivity extends AppCompatActivity
     LOGGER.i("Camera orientation screen relative to screen canvas: %d", getScreenOrientation());
 
     LOGGER.i("Initializing at size %dx%d", DESIRED_PREVIEW_SIZE.getWidth(), DESIRED_PREVIEW_SIZE.getHeight());
+
+    // Provisioning the model can download, copy and hash it, so the first classifier is created on
+    // the background thread like every later one. Frames are skipped until it is ready.
+    onInferenceConfigurationChanged();
   }
 
   protected void onInferenceConfigurationChanged() {
     final Device device = getDevice();
-    final Model model = getModel();
-    final int numThreads = getNumThreads();
+    final ModelDescriptor model = getEffectiveModel();
+    final int numThreads = getEffectiveNumThreads();
     runInBackground(() -> recreateClassifier(model, device, numThreads));
   }
 
-  private void recreateClassifier(Model model, Device device, int numThreads) {
+  private void recreateClassifier(ModelDescriptor model, Device device, int numThreads) {
     if (classifier != null) {
       LOGGER.d("Closing classifier.");
       classifier.close();
       classifier = null;
     }
-    if (device == Device.GPU && (model == Model.QUANTIZED_MOBILENET || model == Model.QUANTIZED_EFFICIENTNET)) {
+    if (device == Device.GPU && model.isQuantized()) {
       LOGGER.d("Not creating classifier: GPU doesn't support quantized models.");
       runOnUiThread(
               () -> Toast.makeText(this, R.string.tfe_ic_gpu_quant_error, Toast.LENGTH_LONG).show());
@@ -299,10 +422,12 @@ public class CameraActivity extends AppCompatActivity
     try {
       LOGGER.d("Creating classifier (model=%s, device=%s, numThreads=%d)", model, device, numThreads);
       classifier = Classifier.create(this, model, device, numThreads);
-    } catch (IOException | IllegalArgumentException e) {
+      classifier.setTraceRecorder(traceRecorder);
+      historyModelId = HistoryLog.getModelId(model.getName(), classifier.getModelChecksum());
+    } catch (IOException | RuntimeException e) {
       LOGGER.e(e, "Failed to create classifier.");
-      runOnUiThread(
-              () -> Toast.makeText(this, e.getMessage(), Toast.LENGTH_LONG).show());
+      final String message = e.getMessage() != null ? e.getMessage() : e.toString();
+      runOnUiThread(() -> Toast.makeText(this, message, Toast.LENGTH_LONG).show());
       return;
     }
 
@@ -311,6 +436,66 @@ public class CameraActivity extends AppCompatActivity
     imageSizeY = classifier.getImageSizeY();
   }
 
+  /**
+   * Writes the recorded pipeline events as Chrome trace JSON and in the compact binary format, to
+   * the app's external files. Triggered by a long press on the inference time.
+   */
+  private void dumpTrace() {
+    File directory = getExternalFilesDir("traces");
+    if (directory == null) {
+      LOGGER.w("No external storage to dump the trace to.");
+      return;
+    }
+    String name = "trace-" + System.currentTimeMillis();
+    File jsonFile = new File(directory, name + ".json");
+    try {
+      traceRecorder.dumpChromeTrace(jsonFile);
+      traceRecorder.dumpBinary(new File(directory, name + ".bin"));
+    } catch (IOException e) {
+      LOGGER.e(e, "Failed to dump the trace.");
+      runOnUiThread(() -> Toast.makeText(this, e.getMessage(), Toast.LENGTH_LONG).show());
+      return;
+    }
+    LOGGER.i("Dumped trace to %s", jsonFile);
+    runOnUiThread(
+            () -> Toast.makeText(
+                    this, getString(R.string.tfe_ic_trace_saved, jsonFile.getPath()), Toast.LENGTH_LONG)
+                    .show());
+  }
+
+  /**
+   * Opens the classification history in app-private storage, see {@link HistoryLog}. Classifying
+   * continues without a history if it can't be opened.
+   */
+  private void openHistory() {
+    try {
+      historyLog =
+              new HistoryLog(
+                      new File(getFilesDir(), "history"),
+                      HISTORY_TOP_K,
+                      HISTORY_RECORDS_PER_SEGMENT,
+                      HISTORY_MAX_SEGMENTS,
+                      HISTORY_QUEUE_CAPACITY);
+    } catch (IOException e) {
+      LOGGER.e(e, "Failed to open the classification history.");
+    }
+  }
+
+  private void closeHistory() {
+    if (historyLog == null) {
+      return;
+    }
+    if (historyLog.getDroppedCount() > 0) {
+      LOGGER.w("Dropped %d history records.", historyLog.getDroppedCount());
+    }
+    try {
+      historyLog.close();
+    } catch (IOException e) {
+      LOGGER.e(e, "Failed to write the classification history.");
+    }
+    historyLog = null;
+  }
+
   @Override
   public synchronized void onStart() {
     LOGGER.d("onStart " + this);
@@ -325,12 +510,26 @@ public class CameraActivity extends AppCompatActivity
     handlerThread = new HandlerThread("inference");
     handlerThread.start();
     handler = new Handler(handlerThread.getLooper());
+    runInBackground(this::openHistory);
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      PowerManager powerManager = getSystemService(PowerManager.class);
+      thermalStatusListener = rateController::setThermalStatus;
+      powerManager.addThermalStatusListener(ContextCompat.getMainExecutor(this), thermalStatusListener);
+    }
   }
 
   @Override
   public synchronized void onPause() {
     LOGGER.d("onPause " + this);
 
+    if (thermalStatusListener != null) {
+      getSystemService(PowerManager.class).removeThermalStatusListener(thermalStatusListener);
+      thermalStatusListener = null;
+    }
+
+    resultsRenderer.cancel();
+    runInBackground(this::closeHistory);
     handlerThread.quitSafely();
     try {
       handlerThread.join();
@@ -418,68 +617,72 @@ public class CameraActivity extends AppCompatActivity
     }
   }
 
-  @UiThread
-  protected void showResultsInBottomSheet(List<Recognition> results) {
-    if (results != null && results.size() >= 3) {
-      Recognition recognition = results.get(0);
-      if (recognition != null) {
-        if (recognition.getTitle() != null)
-          binding.bottomSheetLayout.detectedItem.setText(recognition.getTitle());
-        if (recognition.getConfidence() != null)
-          binding.bottomSheetLayout.detectedItemValue.setText(
-                  String.format("%.2f", (100 * recognition.getConfidence())) + "%");
-      }
-
-      Recognition recognition1 = results.get(1);
-      if (recognition1 != null) {
-        if (recognition1.getTitle() != null)
-          binding.bottomSheetLayout.detectedItem1.setText(recognition1.getTitle());
-        if (recognition1.getConfidence() != null)
-          binding.bottomSheetLayout.detectedItem1Value.setText(
-                  String.format("%.2f", (100 * recognition1.getConfidence())) + "%");
-      }
+  protected ModelDescriptor getModel() {
+    return model;
+  }
 
-      Recognition recognition2 = results.get(2);
-      if (recognition2 != null) {
-        if (recognition2.getTitle() != null)
-          binding.bottomSheetLayout.detectedItem2.setText(recognition2.getTitle());
-        if (recognition2.getConfidence() != null)
-          binding.bottomSheetLayout.detectedItem2Value.setText(
-                  String.format("%.2f", (100 * recognition2.getConfidence())) + "%");
+  private void setModel(ModelDescriptor model) {
+    if (this.model != model) {
+      LOGGER.d("Updating  model: " + model);
+      this.model = model;
+      rateController.reset();
+      if (!selectPreferredDevice(model)) {
+        onInferenceConfigurationChanged();
       }
     }
   }
 
-  protected void showFrameInfo(String frameInfo) {
-    binding.bottomSheetLayout.frameInfo.setText(frameInfo);
-  }
-
-  protected void showCropInfo(String cropInfo) {
-    binding.bottomSheetLayout.cropInfo.setText(cropInfo);
-  }
-
-  protected void showCameraResolution(String cameraInfo) {
-    binding.bottomSheetLayout.viewInfo.setText(cameraInfo);
-  }
-
-  protected void showRotationInfo(String rotation) {
-    binding.bottomSheetLayout.rotationInfo.setText(rotation);
-  }
-
-  protected void showInference(String inferenceTime) {
-    binding.bottomSheetLayout.inferenceInfo.setText(inferenceTime);
+  /**
+   * Switches to the device the model prefers, if it names one.
+   *
+   * @return whether the device changed, which already recreated the classifier
+   */
+  private boolean selectPreferredDevice(ModelDescriptor model) {
+    if (model.getPreferredDevice() == null) {
+      return false;
+    }
+    Device preferredDevice;
+    try {
+      preferredDevice = Device.valueOf(model.getPreferredDevice());
+    } catch (IllegalArgumentException e) {
+      LOGGER.w("Ignoring unknown device %s of %s", model.getPreferredDevice(), model);
+      return false;
+    }
+    if (preferredDevice == device) {
+      return false;
+    }
+    Spinner deviceSpinner = binding.bottomSheetLayout.deviceSpinner;
+    for (int i = 0; i < deviceSpinner.getCount(); i++) {
+      if (deviceSpinner.getItemAtPosition(i).toString().equals(preferredDevice.name())) {
+        // The spinner calls back onItemSelected later, which then finds the device unchanged.
+        deviceSpinner.setSelection(i);
+        break;
+      }
+    }
+    setDevice(preferredDevice);
+    return true;
   }
 
-  protected Model getModel() {
+  /** Returns the model to run at the current degradation level of the rate controller. */
+  private ModelDescriptor getEffectiveModel() {
+    if (rateController.getLevel() < 2) {
+      return model;
+    }
+    // GPU doesn't support quantized models, so fall back to a lightweight float model there.
+    for (ModelDescriptor candidate : modelRegistry.getModels()) {
+      if (candidate.isLightweight() && !(device == Device.GPU && candidate.isQuantized())) {
+        return candidate;
+      }
+    }
     return model;
   }
 
-  private void setModel(Model model) {
-    if (this.model != model) {
-      LOGGER.d("Updating  model: " + model);
-      this.model = model;
-      onInferenceConfigurationChanged();
+  /** Returns the number of threads to use at the current degradation level of the rate controller. */
+  private int getEffectiveNumThreads() {
+    if (rateController.getLevel() < 1) {
+      return numThreads;
     }
+    return Math.max(1, numThreads / 2);
   }
 
   protected Device getDevice() {
@@ -494,10 +697,35 @@ public class CameraActivity extends AppCompatActivity
       binding.bottomSheetLayout.plus.setEnabled(threadsEnabled);
       binding.bottomSheetLayout.minus.setEnabled(threadsEnabled);
       binding.bottomSheetLayout.threads.setText(threadsEnabled ? String.valueOf(numThreads) : "N/A");
+      rateController.reset();
       onInferenceConfigurationChanged();
     }
   }
 
+  /** Switches tiled mode on with the grid of a "2x2" like spinner entry, or off with "Off". */
+  private void setTileGrid(String entry) {
+    int separator = entry.indexOf('x');
+    TileGrid grid =
+            separator < 0
+                    ? null
+                    : new TileGrid(
+                            Integer.parseInt(entry.substring(0, separator)),
+                            Integer.parseInt(entry.substring(separator + 1)),
+                            TILE_OVERLAP);
+    LOGGER.d("Updating tiles: " + entry);
+    tileGrid = grid;
+    // Tiled frames take several times as long, which the rate controller must not mistake for a
+    // slowdown of the previous configuration.
+    rateController.reset();
+  }
+
+  private void setAugmentation(int position) {
+    LOGGER.d("Updating augmentation: " + position);
+    augmentation = AUGMENTATIONS[position];
+    // Like tiles, the augmented views take longer than a single crop.
+    rateController.reset();
+  }
+
   protected int getNumThreads() {
     return numThreads;
   }
@@ -506,6 +734,7 @@ public class CameraActivity extends AppCompatActivity
     if (this.numThreads != numThreads) {
       LOGGER.d("Updating  numThreads: " + numThreads);
       this.numThreads = numThreads;
+      rateController.reset();
       onInferenceConfigurationChanged();
     }
   }
@@ -532,9 +761,13 @@ public class CameraActivity extends AppCompatActivity
   @Override
   public void onItemSelected(AdapterView<?> parent, View view, int pos, long id) {
     if (parent == binding.bottomSheetLayout.modelSpinner) {
-      setModel(Model.valueOf(parent.getItemAtPosition(pos).toString().toUpperCase()));
+      setModel((ModelDescriptor) parent.getItemAtPosition(pos));
     } else if (parent == binding.bottomSheetLayout.deviceSpinner) {
       setDevice(Device.valueOf(parent.getItemAtPosition(pos).toString()));
+    } else if (parent == binding.bottomSheetLayout.tilesSpinner) {
+      setTileGrid(parent.getItemAtPosition(pos).toString());
+    } else if (parent == binding.bottomSheetLayout.augmentationSpinner) {
+      setAugmentation(pos);
     }
   }
 
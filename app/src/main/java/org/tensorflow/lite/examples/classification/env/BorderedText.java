@@ -15,22 +15,41 @@ limitations under the License.
 
 package org.tensorflow.lite.examples.classification.env;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
+import android.graphics.Paint.FontMetrics;
 import android.graphics.Paint.Style;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import java.util.Vector;
+import android.util.LruCache;
+import java.util.List;
 
-/** A class that encapsulates the tedious bits of rendering legible, bordered text onto a canvas. */
+/**
+ * A class that encapsulates the tedious bits of rendering legible, bordered text onto a canvas.
+ *
+ * <p>Drawing bordered text draws every string twice, stroke and fill. With {@link
+ * #setBitmapCacheSize} set, every string is rendered once into a bitmap that is kept in an LRU cache
+ * keyed by text, size and colors, and later draws of the same string blit that bitmap.
+ */
 public class BorderedText {
   private final Paint interiorPaint;
   private final Paint exteriorPaint;
+  private final Paint bitmapPaint = new Paint();
 
   private final float textSize;
 
+  /** Rendered strings, or null when caching is off. Only used on the drawing thread. */
+  private LruCache<TextKey, Bitmap> bitmapCache;
+
+  /** Reused to look up cached bitmaps without allocating. */
+  private final TextKey lookupKey = new TextKey();
+
+  /** Distance from the top of a rendered bitmap to the baseline, computed on first use. */
+  private float baselineOffset = Float.NaN;
+
   /**
    * Creates a left-aligned bordered text object with a white interior, and a black exterior with
    * the specified text size.
@@ -71,19 +90,110 @@ public class BorderedText {
   public void setTypeface(Typeface typeface) {
     interiorPaint.setTypeface(typeface);
     exteriorPaint.setTypeface(typeface);
+    baselineOffset = Float.NaN;
+    if (bitmapCache != null) {
+      bitmapCache.evictAll();
+    }
+  }
+
+  /**
+   * Keeps up to the given number of bytes of rendered strings, or turns caching off with 0.
+   *
+   * @param maxBytes the size of the cache in bytes
+   */
+  public void setBitmapCacheSize(final int maxBytes) {
+    if (bitmapCache != null) {
+      bitmapCache.evictAll();
+    }
+    bitmapCache =
+        maxBytes <= 0
+            ? null
+            : new LruCache<TextKey, Bitmap>(maxBytes) {
+              @Override
+              protected int sizeOf(TextKey key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+              }
+            };
   }
 
   public void drawText(final Canvas canvas, final float posX, final float posY, final String text) {
+    if (bitmapCache != null) {
+      drawCachedText(canvas, posX, posY, text);
+      return;
+    }
     canvas.drawText(text, posX, posY, exteriorPaint);
     canvas.drawText(text, posX, posY, interiorPaint);
   }
 
-  public void drawLines(Canvas canvas, final float posX, final float posY, Vector<String> lines) {
-    int lineNum = 0;
-    for (final String line : lines) {
-      drawText(canvas, posX, posY - getTextSize() * (lines.size() - lineNum - 1), line);
-      ++lineNum;
+  /** Draws the lines upwards from the baseline of the last one. */
+  public void drawLines(Canvas canvas, final float posX, final float posY, List<String> lines) {
+    // Indexed, so that drawing doesn't allocate an iterator per frame.
+    final int size = lines.size();
+    for (int lineNum = 0; lineNum < size; ++lineNum) {
+      drawText(canvas, posX, posY - getTextSize() * (size - lineNum - 1), lines.get(lineNum));
+    }
+  }
+
+  private void drawCachedText(
+      final Canvas canvas, final float posX, final float posY, final String text) {
+    lookupKey.set(
+        text, textSize, interiorPaint.getColor(), exteriorPaint.getColor(), interiorPaint.getAlpha());
+    Bitmap bitmap = bitmapCache.get(lookupKey);
+    if (bitmap == null) {
+      bitmap = renderText(text);
+      bitmapCache.put(lookupKey.copy(), bitmap);
+    }
+    float left;
+    switch (interiorPaint.getTextAlign()) {
+      case CENTER:
+        left = posX - bitmap.getWidth() / 2f;
+        break;
+      case RIGHT:
+        left = posX - bitmap.getWidth();
+        break;
+      default:
+        left = posX - getPadding();
     }
+    canvas.drawBitmap(bitmap, left, posY - getBaselineOffset(), bitmapPaint);
+  }
+
+  /** Renders the bordered text into a bitmap just large enough to hold it. */
+  private Bitmap renderText(final String text) {
+    final float padding = getPadding();
+    final FontMetrics metrics = exteriorPaint.getFontMetrics();
+    final int width = (int) Math.ceil(exteriorPaint.measureText(text) + 2 * padding);
+    final int height = (int) Math.ceil(metrics.bottom - metrics.top + 2 * padding);
+    final Bitmap bitmap =
+        Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888);
+    final Canvas bitmapCanvas = new Canvas(bitmap);
+    final float baseline = padding - metrics.top;
+    float posX;
+    switch (interiorPaint.getTextAlign()) {
+      case CENTER:
+        posX = width / 2f;
+        break;
+      case RIGHT:
+        posX = width - padding;
+        break;
+      default:
+        posX = padding;
+    }
+    bitmapCanvas.drawText(text, posX, baseline, exteriorPaint);
+    bitmapCanvas.drawText(text, posX, baseline, interiorPaint);
+    return bitmap;
+  }
+
+  /** Room around the glyphs for the stroke of the exterior. */
+  private float getPadding() {
+    return exteriorPaint.getStrokeWidth();
+  }
+
+  /** Distance from the top of a rendered bitmap to the baseline of its text. */
+  private float getBaselineOffset() {
+    if (Float.isNaN(baselineOffset)) {
+      baselineOffset = getPadding() - exteriorPaint.getFontMetrics().top;
+    }
+    return baselineOffset;
   }
 
   public void setInteriorColor(final int color) {
@@ -112,4 +222,49 @@ public class BorderedText {
     interiorPaint.setTextAlign(align);
     exteriorPaint.setTextAlign(align);
   }
+
+  /** Identifies a rendered string. Mutable only for the reused lookup key. */
+  private static final class TextKey {
+    private String text;
+    private float textSize;
+    private int interiorColor;
+    private int exteriorColor;
+    private int alpha;
+
+    void set(String text, float textSize, int interiorColor, int exteriorColor, int alpha) {
+      this.text = text;
+      this.textSize = textSize;
+      this.interiorColor = interiorColor;
+      this.exteriorColor = exteriorColor;
+      this.alpha = alpha;
+    }
+
+    TextKey copy() {
+      TextKey key = new TextKey();
+      key.set(text, textSize, interiorColor, exteriorColor, alpha);
+      return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof TextKey)) {
+        return false;
+      }
+      TextKey other = (TextKey) o;
+      return text.equals(other.text)
+          && textSize == other.textSize
+          && interiorColor == other.interiorColor
+          && exteriorColor == other.exteriorColor
+          && alpha == other.alpha;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = text.hashCode();
+      hash = 31 * hash + Float.floatToIntBits(textSize);
+      hash = 31 * hash + interiorColor;
+      hash = 31 * hash + exteriorColor;
+      return 31 * hash + alpha;
+    }
+  }
 }
@@ -15,12 +15,26 @@ limitations under the License.
 
 package org.tensorflow.lite.examples.classification.env;
 
+import android.os.SystemClock;
 import android.util.Log;
+import org.tensorflow.lite.examples.classification.BuildConfig;
 import java.util.HashSet;
 import java.util.Set;
 
-/** Wrapper for the platform log function, allows convenient message prefixing and log disabling. */
+/**
+ * Wrapper for the platform log function, allows convenient message prefixing and log disabling.
+ *
+ * <p>Messages are only formatted once they are known to be logged. The fixed arity and {@link
+ * MessageSupplier} overloads don't allocate at all when the level is disabled, so they are the ones
+ * to use on the per-frame path, together with a logger created by {@link #forHotPath}.
+ */
 public final class Logger {
+  /**
+   * Whether hot path loggers log at all. A compile time constant in release builds, so call sites
+   * guarded by it are stripped there.
+   */
+  public static final boolean HOT_PATH_LOGGING = BuildConfig.DEBUG;
+
   private static final String DEFAULT_TAG = "tensorflow";
   private static final int DEFAULT_MIN_LOG_LEVEL = Log.DEBUG;
 
@@ -37,6 +51,14 @@ public final class Logger {
   private final String tag;
   private final String messagePrefix;
   private int minLogLevel = DEFAULT_MIN_LOG_LEVEL;
+  private boolean hotPath;
+  private long minIntervalMs;
+  private long lastLogTimeMs = Long.MIN_VALUE;
+
+  /** Lazily builds a message, only called when the message is logged. */
+  public interface MessageSupplier {
+    String get();
+  }
 
   /**
    * Creates a Logger using the class name as the message prefix.
@@ -84,6 +106,20 @@ public final class Logger {
     this.minLogLevel = minLogLevel;
   }
 
+  /**
+   * Creates a Logger for per-frame messages, using the caller's class name as the message prefix.
+   * It logs nothing when {@link #HOT_PATH_LOGGING} is off, and at most one message per interval
+   * otherwise.
+   *
+   * @param minIntervalMs the minimum time between two messages, 0 to log every message
+   */
+  public static Logger forHotPath(final long minIntervalMs) {
+    final Logger logger = new Logger(DEFAULT_TAG, null);
+    logger.hotPath = true;
+    logger.minIntervalMs = minIntervalMs;
+    return logger;
+  }
+
   /**
    * Return caller's simple name.
    *
@@ -117,69 +153,240 @@ public final class Logger {
   }
 
   public boolean isLoggable(final int logLevel) {
+    if (hotPath && !HOT_PATH_LOGGING) {
+      return false;
+    }
     return logLevel >= minLogLevel || Log.isLoggable(tag, logLevel);
   }
 
+  /** Checks the level and takes the rate limit, so it must be followed by a message. */
+  private boolean shouldLog(final int logLevel) {
+    if (!isLoggable(logLevel)) {
+      return false;
+    }
+    if (minIntervalMs <= 0) {
+      return true;
+    }
+    synchronized (this) {
+      final long now = SystemClock.uptimeMillis();
+      if (lastLogTimeMs != Long.MIN_VALUE && now - lastLogTimeMs < minIntervalMs) {
+        return false;
+      }
+      lastLogTimeMs = now;
+      return true;
+    }
+  }
+
+  private void print(final int logLevel, final String message) {
+    switch (logLevel) {
+      case Log.VERBOSE:
+        Log.v(tag, message);
+        break;
+      case Log.DEBUG:
+        Log.d(tag, message);
+        break;
+      case Log.INFO:
+        Log.i(tag, message);
+        break;
+      case Log.WARN:
+        Log.w(tag, message);
+        break;
+      default:
+        Log.e(tag, message);
+        break;
+    }
+  }
+
+  private void log(final int logLevel, final String message) {
+    if (shouldLog(logLevel)) {
+      print(logLevel, messagePrefix + message);
+    }
+  }
+
+  private void log(final int logLevel, final String format, final Object arg) {
+    if (shouldLog(logLevel)) {
+      print(logLevel, messagePrefix + String.format(format, arg));
+    }
+  }
+
+  private void log(final int logLevel, final String format, final Object arg1, final Object arg2) {
+    if (shouldLog(logLevel)) {
+      print(logLevel, messagePrefix + String.format(format, arg1, arg2));
+    }
+  }
+
+  private void log(final int logLevel, final String format, final long arg) {
+    if (shouldLog(logLevel)) {
+      print(logLevel, messagePrefix + String.format(format, arg));
+    }
+  }
+
+  private void log(final int logLevel, final MessageSupplier supplier) {
+    if (shouldLog(logLevel)) {
+      print(logLevel, messagePrefix + supplier.get());
+    }
+  }
+
   private String toMessage(final String format, final Object... args) {
     return messagePrefix + (args.length > 0 ? String.format(format, args) : format);
   }
 
+  public void v(final String message) {
+    log(Log.VERBOSE, message);
+  }
+
+  public void v(final String format, final Object arg) {
+    log(Log.VERBOSE, format, arg);
+  }
+
+  public void v(final String format, final Object arg1, final Object arg2) {
+    log(Log.VERBOSE, format, arg1, arg2);
+  }
+
+  public void v(final String format, final long arg) {
+    log(Log.VERBOSE, format, arg);
+  }
+
+  public void v(final MessageSupplier supplier) {
+    log(Log.VERBOSE, supplier);
+  }
+
   public void v(final String format, final Object... args) {
-    if (isLoggable(Log.VERBOSE)) {
+    if (shouldLog(Log.VERBOSE)) {
       Log.v(tag, toMessage(format, args));
     }
   }
 
   public void v(final Throwable t, final String format, final Object... args) {
-    if (isLoggable(Log.VERBOSE)) {
+    if (shouldLog(Log.VERBOSE)) {
       Log.v(tag, toMessage(format, args), t);
     }
   }
 
+  public void d(final String message) {
+    log(Log.DEBUG, message);
+  }
+
+  public void d(final String format, final Object arg) {
+    log(Log.DEBUG, format, arg);
+  }
+
+  public void d(final String format, final Object arg1, final Object arg2) {
+    log(Log.DEBUG, format, arg1, arg2);
+  }
+
+  public void d(final String format, final long arg) {
+    log(Log.DEBUG, format, arg);
+  }
+
+  public void d(final MessageSupplier supplier) {
+    log(Log.DEBUG, supplier);
+  }
+
   public void d(final String format, final Object... args) {
-    if (isLoggable(Log.DEBUG)) {
+    if (shouldLog(Log.DEBUG)) {
       Log.d(tag, toMessage(format, args));
     }
   }
 
   public void d(final Throwable t, final String format, final Object... args) {
-    if (isLoggable(Log.DEBUG)) {
+    if (shouldLog(Log.DEBUG)) {
       Log.d(tag, toMessage(format, args), t);
     }
   }
 
+  public void i(final String message) {
+    log(Log.INFO, message);
+  }
+
+  public void i(final String format, final Object arg) {
+    log(Log.INFO, format, arg);
+  }
+
+  public void i(final String format, final Object arg1, final Object arg2) {
+    log(Log.INFO, format, arg1, arg2);
+  }
+
+  public void i(final String format, final long arg) {
+    log(Log.INFO, format, arg);
+  }
+
+  public void i(final MessageSupplier supplier) {
+    log(Log.INFO, supplier);
+  }
+
   public void i(final String format, final Object... args) {
-    if (isLoggable(Log.INFO)) {
+    if (shouldLog(Log.INFO)) {
       Log.i(tag, toMessage(format, args));
     }
   }
 
   public void i(final Throwable t, final String format, final Object... args) {
-    if (isLoggable(Log.INFO)) {
+    if (shouldLog(Log.INFO)) {
       Log.i(tag, toMessage(format, args), t);
     }
   }
 
+  public void w(final String message) {
+    log(Log.WARN, message);
+  }
+
+  public void w(final String format, final Object arg) {
+    log(Log.WARN, format, arg);
+  }
+
+  public void w(final String format, final Object arg1, final Object arg2) {
+    log(Log.WARN, format, arg1, arg2);
+  }
+
+  public void w(final String format, final long arg) {
+    log(Log.WARN, format, arg);
+  }
+
+  public void w(final MessageSupplier supplier) {
+    log(Log.WARN, supplier);
+  }
+
   public void w(final String format, final Object... args) {
-    if (isLoggable(Log.WARN)) {
+    if (shouldLog(Log.WARN)) {
       Log.w(tag, toMessage(format, args));
     }
   }
 
   public void w(final Throwable t, final String format, final Object... args) {
-    if (isLoggable(Log.WARN)) {
+    if (shouldLog(Log.WARN)) {
       Log.w(tag, toMessage(format, args), t);
     }
   }
 
+  public void e(final String message) {
+    log(Log.ERROR, message);
+  }
+
+  public void e(final String format, final Object arg) {
+    log(Log.ERROR, format, arg);
+  }
+
+  public void e(final String format, final Object arg1, final Object arg2) {
+    log(Log.ERROR, format, arg1, arg2);
+  }
+
+  public void e(final String format, final long arg) {
+    log(Log.ERROR, format, arg);
+  }
+
+  public void e(final MessageSupplier supplier) {
+    log(Log.ERROR, supplier);
+  }
+
   public void e(final String format, final Object... args) {
-    if (isLoggable(Log.ERROR)) {
+    if (shouldLog(Log.ERROR)) {
       Log.e(tag, toMessage(format, args));
     }
   }
 
   public void e(final Throwable t, final String format, final Object... args) {
-    if (isLoggable(Log.ERROR)) {
+    if (shouldLog(Log.ERROR)) {
       Log.e(tag, toMessage(format, args), t);
     }
   }
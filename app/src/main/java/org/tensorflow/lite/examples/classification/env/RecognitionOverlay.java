@@ -0,0 +1,98 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.env;
+
+import android.graphics.Canvas;
+import java.util.ArrayList;
+import java.util.List;
+import org.tensorflow.lite.examples.classification.customview.OverlayView;
+import org.tensorflow.lite.examples.classification.tflite.Recognition;
+
+/**
+ * Draws the latest classification results as bordered labels over the camera preview.
+ *
+ * <p>Confidences are shown in whole percents, so a label only changes when its rounded value does.
+ * Lines are only rebuilt when a label changes, and the {@link BorderedText} bitmap cache turns
+ * repeated labels into a single bitmap blit.
+ */
+public class RecognitionOverlay implements OverlayView.DrawCallback {
+  private final BorderedText borderedText;
+  private final float margin;
+
+  // Guarded by this.
+  private final String[] titles;
+  private final int[] percents;
+  private final List<String> lines = new ArrayList<>();
+  private int resultCount = -1;
+
+  /**
+   * Creates an overlay.
+   *
+   * @param borderedText the text style, ideally with its bitmap cache enabled
+   * @param maxLines the number of results to show
+   * @param margin the distance of the labels from the top left corner in pixels
+   */
+  public RecognitionOverlay(BorderedText borderedText, int maxLines, float margin) {
+    this.borderedText = borderedText;
+    this.margin = margin;
+    titles = new String[maxLines];
+    percents = new int[maxLines];
+  }
+
+  /**
+   * Updates the results to draw. Can be called from any thread.
+   *
+   * @return whether the labels changed, i.e. the overlay needs to be invalidated
+   */
+  public synchronized boolean setResults(List<Recognition> results) {
+    boolean changed = false;
+    int count = Math.min(results.size(), titles.length);
+    for (int i = 0; i < count; i++) {
+      Recognition recognition = results.get(i);
+      if (recognition == null || recognition.getTitle() == null) {
+        continue;
+      }
+      String title = recognition.getTitle();
+      int percent =
+          recognition.getConfidence() != null ? Math.round(recognition.getConfidence() * 100) : -1;
+      if (!title.equals(titles[i]) || percent != percents[i]) {
+        titles[i] = title;
+        percents[i] = percent;
+        changed = true;
+      }
+    }
+    if (changed || count != resultCount) {
+      resultCount = count;
+      lines.clear();
+      for (int i = 0; i < count; i++) {
+        if (titles[i] != null) {
+          lines.add(percents[i] >= 0 ? titles[i] + " " + percents[i] + "%" : titles[i]);
+        }
+      }
+      changed = true;
+    }
+    return changed;
+  }
+
+  @Override
+  public synchronized void drawCallback(final Canvas canvas) {
+    if (lines.isEmpty()) {
+      return;
+    }
+    borderedText.drawLines(
+        canvas, margin, margin + borderedText.getTextSize() * lines.size(), lines);
+  }
+}
@@ -0,0 +1,287 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.env;
+
+import android.view.Choreographer;
+import android.widget.TextView;
+import java.util.List;
+import org.tensorflow.lite.examples.classification.tflite.Recognition;
+import org.tensorflow.lite.examples.classification.tflite.TraceRecorder;
+import org.tensorflow.lite.examples.classification.tflite.TraceRecorder.Event;
+
+/**
+ * Shows classification results and frame information in text views, at most once per display
+ * frame.
+ *
+ * <p>Results can be posted from any thread; only the latest ones are kept until the next vsync,
+ * when they are compared against what is on screen and only the changed views are updated.
+ * Confidences and the inference time are formatted into reused character buffers, and the size
+ * strings are only rebuilt when a size changes, so stable results cost no allocation and almost no
+ * UI thread work.
+ */
+public class ResultsRenderer implements Choreographer.FrameCallback {
+
+  /** Room for "100.00%" and for the inference time with its unit. */
+  private static final int TEXT_BUFFER_SIZE = 24;
+
+  private static final int UNSET = Integer.MIN_VALUE;
+
+  private final Choreographer choreographer;
+  private final TextView[] titleViews;
+  private final TextView[] valueViews;
+  private final TextView frameInfoView;
+  private final TextView cropInfoView;
+  private final TextView viewInfoView;
+  private final TextView rotationInfoView;
+  private final TextView inferenceInfoView;
+  private final TraceRecorder traceRecorder;
+
+  // Latest posted state, guarded by this.
+  private final String[] pendingTitles;
+  /** Confidences in hundredths of a percent, or {@link #UNSET}. */
+  private final int[] pendingValues;
+
+  private long pendingFrameId;
+  private long pendingInferenceMs = UNSET;
+  private int pendingFrameWidth = UNSET;
+  private int pendingFrameHeight = UNSET;
+  private int pendingCropSize = UNSET;
+  private int pendingInputWidth = UNSET;
+  private int pendingInputHeight = UNSET;
+  private int pendingRotation = UNSET;
+  private boolean frameCallbackPosted;
+
+  // State on screen, only used on the UI thread.
+  private final String[] shownTitles;
+  private final int[] shownValues;
+  private final String[] frameTitles;
+  private final int[] frameValues;
+  private final char[][] valueTexts;
+  private final char[] inferenceText = new char[TEXT_BUFFER_SIZE];
+  private long shownInferenceMs = UNSET;
+  private int shownFrameWidth = UNSET;
+  private int shownFrameHeight = UNSET;
+  private int shownCropSize = UNSET;
+  private int shownInputWidth = UNSET;
+  private int shownInputHeight = UNSET;
+  private int shownRotation = UNSET;
+
+  /**
+   * Creates a renderer. Must be called on the UI thread.
+   *
+   * @param titleViews the views of the result titles, best result first
+   * @param valueViews the views of the result confidences, matching {@code titleViews}
+   * @param traceRecorder records the time spent updating views, may be null
+   */
+  public ResultsRenderer(
+      TextView[] titleViews,
+      TextView[] valueViews,
+      TextView frameInfoView,
+      TextView cropInfoView,
+      TextView viewInfoView,
+      TextView rotationInfoView,
+      TextView inferenceInfoView,
+      TraceRecorder traceRecorder) {
+    if (titleViews.length != valueViews.length) {
+      throw new IllegalArgumentException("Every result title needs a value view.");
+    }
+    this.choreographer = Choreographer.getInstance();
+    this.titleViews = titleViews;
+    this.valueViews = valueViews;
+    this.frameInfoView = frameInfoView;
+    this.cropInfoView = cropInfoView;
+    this.viewInfoView = viewInfoView;
+    this.rotationInfoView = rotationInfoView;
+    this.inferenceInfoView = inferenceInfoView;
+    this.traceRecorder = traceRecorder;
+
+    int size = titleViews.length;
+    pendingTitles = new String[size];
+    pendingValues = new int[size];
+    shownTitles = new String[size];
+    shownValues = new int[size];
+    frameTitles = new String[size];
+    frameValues = new int[size];
+    valueTexts = new char[size][TEXT_BUFFER_SIZE];
+    for (int i = 0; i < size; i++) {
+      pendingValues[i] = UNSET;
+      shownValues[i] = UNSET;
+    }
+  }
+
+  /**
+   * Posts the results of a frame, replacing results posted earlier in the same display frame.
+   * Results without a title or confidence leave the corresponding view unchanged.
+   */
+  public void postResults(long frameId, List<Recognition> results, long inferenceMs) {
+    synchronized (this) {
+      pendingFrameId = frameId;
+      pendingInferenceMs = inferenceMs;
+      int count = Math.min(results.size(), pendingTitles.length);
+      for (int i = 0; i < count; i++) {
+        Recognition recognition = results.get(i);
+        if (recognition == null) {
+          continue;
+        }
+        if (recognition.getTitle() != null) {
+          pendingTitles[i] = recognition.getTitle();
+        }
+        if (recognition.getConfidence() != null) {
+          pendingValues[i] = Math.round(recognition.getConfidence() * 10000);
+        }
+      }
+      scheduleLocked();
+    }
+  }
+
+  /** Posts the sizes and rotation of the pipeline, which usually stay the same for a session. */
+  public void postFrameInfo(
+      int frameWidth, int frameHeight, int cropSize, int inputWidth, int inputHeight, int rotation) {
+    synchronized (this) {
+      pendingFrameWidth = frameWidth;
+      pendingFrameHeight = frameHeight;
+      pendingCropSize = cropSize;
+      pendingInputWidth = inputWidth;
+      pendingInputHeight = inputHeight;
+      pendingRotation = rotation;
+      scheduleLocked();
+    }
+  }
+
+  /** Drops the pending update, e.g. when the activity is paused. */
+  public synchronized void cancel() {
+    if (frameCallbackPosted) {
+      choreographer.removeFrameCallback(this);
+      frameCallbackPosted = false;
+    }
+  }
+
+  private void scheduleLocked() {
+    if (!frameCallbackPosted) {
+      frameCallbackPosted = true;
+      choreographer.postFrameCallback(this);
+    }
+  }
+
+  @Override
+  public void doFrame(long frameTimeNanos) {
+    long frameId;
+    long inferenceMs;
+    int frameWidth;
+    int frameHeight;
+    int cropSize;
+    int inputWidth;
+    int inputHeight;
+    int rotation;
+    synchronized (this) {
+      frameCallbackPosted = false;
+      frameId = pendingFrameId;
+      inferenceMs = pendingInferenceMs;
+      frameWidth = pendingFrameWidth;
+      frameHeight = pendingFrameHeight;
+      cropSize = pendingCropSize;
+      inputWidth = pendingInputWidth;
+      inputHeight = pendingInputHeight;
+      rotation = pendingRotation;
+      System.arraycopy(pendingTitles, 0, frameTitles, 0, frameTitles.length);
+      System.arraycopy(pendingValues, 0, frameValues, 0, frameValues.length);
+    }
+
+    if (traceRecorder != null) {
+      traceRecorder.begin(Event.UI_POST, frameId);
+    }
+    for (int i = 0; i < titleViews.length; i++) {
+      String title = frameTitles[i];
+      if (title != null && !title.equals(shownTitles[i])) {
+        titleViews[i].setText(title);
+        shownTitles[i] = title;
+      }
+      int value = frameValues[i];
+      if (value != UNSET && value != shownValues[i]) {
+        int length = formatPercent(value, valueTexts[i]);
+        valueViews[i].setText(valueTexts[i], 0, length);
+        shownValues[i] = value;
+      }
+    }
+    if (inferenceMs != UNSET && inferenceMs != shownInferenceMs) {
+      int length = formatLong(inferenceMs, inferenceText, 0);
+      inferenceText[length++] = 'm';
+      inferenceText[length++] = 's';
+      inferenceInfoView.setText(inferenceText, 0, length);
+      shownInferenceMs = inferenceMs;
+    }
+    if (frameWidth != shownFrameWidth || frameHeight != shownFrameHeight) {
+      frameInfoView.setText(frameWidth + "x" + frameHeight);
+      shownFrameWidth = frameWidth;
+      shownFrameHeight = frameHeight;
+    }
+    if (inputWidth != shownInputWidth || inputHeight != shownInputHeight) {
+      cropInfoView.setText(inputWidth + "x" + inputHeight);
+      shownInputWidth = inputWidth;
+      shownInputHeight = inputHeight;
+    }
+    if (cropSize != shownCropSize) {
+      viewInfoView.setText(cropSize + "x" + cropSize);
+      shownCropSize = cropSize;
+    }
+    if (rotation != shownRotation) {
+      rotationInfoView.setText(String.valueOf(rotation));
+      shownRotation = rotation;
+    }
+    if (traceRecorder != null) {
+      traceRecorder.end(Event.UI_POST, frameId);
+    }
+  }
+
+  /**
+   * Writes hundredths of a percent as a percentage with two decimals, e.g. 9876 as "98.76%".
+   *
+   * @return the number of characters written
+   */
+  static int formatPercent(int hundredths, char[] out) {
+    int length = formatLong(hundredths / 100, out, 0);
+    int fraction = Math.abs(hundredths % 100);
+    out[length++] = '.';
+    out[length++] = (char) ('0' + fraction / 10);
+    out[length++] = (char) ('0' + fraction % 10);
+    out[length++] = '%';
+    return length;
+  }
+
+  /**
+   * Writes the decimal digits of a value at the given offset.
+   *
+   * @return the offset after the last character written
+   */
+  static int formatLong(long value, char[] out, int offset) {
+    if (value < 0) {
+      out[offset++] = '-';
+      value = -value;
+    }
+    int start = offset;
+    do {
+      out[offset++] = (char) ('0' + value % 10);
+      value /= 10;
+    } while (value > 0);
+    // Digits were written least significant first.
+    for (int i = start, j = offset - 1; i < j; i++, j--) {
+      char digit = out[i];
+      out[i] = out[j];
+      out[j] = digit;
+    }
+    return offset;
+  }
+}
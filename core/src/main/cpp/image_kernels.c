@@ -0,0 +1,247 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+// C versions of the kernels in ImageUtils, see NativeImageKernels for the Java side. Every kernel
+// uses the same integer arithmetic as its Java counterpart, so both produce exactly the same output.
+// The bounds of all arrays are checked in Java before these are called.
+
+#include <jni.h>
+#include <stdint.h>
+
+// 2 ^ 18 - 1, used to clamp the RGB values before their ranges are normalized to eight bits.
+#define MAX_CHANNEL_VALUE 262143
+
+// Must match BilinearResizer.
+#define WEIGHT_BITS 8
+#define WEIGHT_ONE (1 << WEIGHT_BITS)
+#define ROUNDING (1 << (2 * WEIGHT_BITS - 1))
+
+// Releases an array taken with GetPrimitiveArrayCritical, if it was taken.
+static inline void release(JNIEnv* env, jarray array, void* elements, jint mode) {
+  if (elements != NULL) {
+    (*env)->ReleasePrimitiveArrayCritical(env, array, elements, mode);
+  }
+}
+
+static inline int clamp_channel(int value) {
+  return value > MAX_CHANNEL_VALUE ? MAX_CHANNEL_VALUE : (value < 0 ? 0 : value);
+}
+
+static inline int32_t to_argb(int y, int rv, int guv, int bu) {
+  int y1192 = 1192 * (y > 16 ? y - 16 : 0);
+  int r = clamp_channel(y1192 + rv);
+  int g = clamp_channel(y1192 + guv);
+  int b = clamp_channel(y1192 + bu);
+  return (int32_t) (0xff000000u | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff));
+}
+
+// Converts one row, reading the chroma of every pixel pair once. Inlined with a constant pixel
+// stride for the planar and interleaved layouts.
+static inline void convert_row(const uint8_t* y_row, const uint8_t* u_row, const uint8_t* v_row,
+                               int width, int uv_pixel_stride, int32_t* out) {
+  int i = 0;
+  int uv = 0;
+  for (; i < width - 1; i += 2, uv += uv_pixel_stride) {
+    int u = u_row[uv] - 128;
+    int v = v_row[uv] - 128;
+    int rv = 1634 * v;
+    int guv = -833 * v - 400 * u;
+    int bu = 2066 * u;
+    out[i] = to_argb(y_row[i], rv, guv, bu);
+    out[i + 1] = to_argb(y_row[i + 1], rv, guv, bu);
+  }
+  if (i < width) {
+    int u = u_row[uv] - 128;
+    int v = v_row[uv] - 128;
+    out[i] = to_argb(y_row[i], 1634 * v, -833 * v - 400 * u, 2066 * u);
+  }
+}
+
+static inline void store_float(int32_t pixel, float mean, float std, float* out) {
+  out[0] = ((float) ((pixel >> 16) & 0xff) - mean) / std;
+  out[1] = ((float) ((pixel >> 8) & 0xff) - mean) / std;
+  out[2] = ((float) (pixel & 0xff) - mean) / std;
+}
+
+// Same as convert_row, writing normalized RGB floats.
+static inline void convert_row_float(const uint8_t* y_row, const uint8_t* u_row,
+                                     const uint8_t* v_row, int width, int uv_pixel_stride,
+                                     float mean, float std, float* out) {
+  int i = 0;
+  int uv = 0;
+  for (; i < width - 1; i += 2, uv += uv_pixel_stride) {
+    int u = u_row[uv] - 128;
+    int v = v_row[uv] - 128;
+    int rv = 1634 * v;
+    int guv = -833 * v - 400 * u;
+    int bu = 2066 * u;
+    store_float(to_argb(y_row[i], rv, guv, bu), mean, std, out + 3 * i);
+    store_float(to_argb(y_row[i + 1], rv, guv, bu), mean, std, out + 3 * i + 3);
+  }
+  if (i < width) {
+    int u = u_row[uv] - 128;
+    int v = v_row[uv] - 128;
+    store_float(to_argb(y_row[i], 1634 * v, -833 * v - 400 * u, 2066 * u), mean, std,
+                out + 3 * i);
+  }
+}
+
+static void convert_yuv_to_argb(const uint8_t* y_data, const uint8_t* u_data,
+                                const uint8_t* v_data, int width, int height, int y_row_stride,
+                                int uv_row_stride, int uv_pixel_stride, int32_t* out) {
+  for (int j = 0; j < height; j++) {
+    const uint8_t* y_row = y_data + y_row_stride * j;
+    int uv_start = uv_row_stride * (j >> 1);
+    int32_t* out_row = out + width * j;
+    if (uv_pixel_stride == 1) {
+      convert_row(y_row, u_data + uv_start, v_data + uv_start, width, 1, out_row);
+    } else if (uv_pixel_stride == 2) {
+      convert_row(y_row, u_data + uv_start, v_data + uv_start, width, 2, out_row);
+    } else {
+      convert_row(y_row, u_data + uv_start, v_data + uv_start, width, uv_pixel_stride, out_row);
+    }
+  }
+}
+
+JNIEXPORT void JNICALL
+Java_org_tensorflow_lite_examples_classification_tflite_utils_NativeImageKernels_nativeConvertYuvToArgb(
+    JNIEnv* env, jclass clazz, jbyteArray y_data, jbyteArray u_data, jbyteArray v_data,
+    jint width, jint height, jint y_row_stride, jint uv_row_stride, jint uv_pixel_stride,
+    jintArray out) {
+  jbyte* y = (*env)->GetPrimitiveArrayCritical(env, y_data, NULL);
+  jbyte* u = (*env)->GetPrimitiveArrayCritical(env, u_data, NULL);
+  jbyte* v = (*env)->GetPrimitiveArrayCritical(env, v_data, NULL);
+  jint* argb = (*env)->GetPrimitiveArrayCritical(env, out, NULL);
+  if (y != NULL && u != NULL && v != NULL && argb != NULL) {
+    convert_yuv_to_argb((const uint8_t*) y, (const uint8_t*) u, (const uint8_t*) v, width, height,
+                        y_row_stride, uv_row_stride, uv_pixel_stride, (int32_t*) argb);
+  }
+  release(env, out, argb, 0);
+  release(env, v_data, v, JNI_ABORT);
+  release(env, u_data, u, JNI_ABORT);
+  release(env, y_data, y, JNI_ABORT);
+}
+
+JNIEXPORT void JNICALL
+Java_org_tensorflow_lite_examples_classification_tflite_utils_NativeImageKernels_nativeConvertYuvToRgbFloat(
+    JNIEnv* env, jclass clazz, jbyteArray y_data, jbyteArray u_data, jbyteArray v_data,
+    jint width, jint height, jint y_row_stride, jint uv_row_stride, jint uv_pixel_stride,
+    jfloat mean, jfloat std, jfloatArray out) {
+  jbyte* y = (*env)->GetPrimitiveArrayCritical(env, y_data, NULL);
+  jbyte* u = (*env)->GetPrimitiveArrayCritical(env, u_data, NULL);
+  jbyte* v = (*env)->GetPrimitiveArrayCritical(env, v_data, NULL);
+  jfloat* rgb = (*env)->GetPrimitiveArrayCritical(env, out, NULL);
+  if (y != NULL && u != NULL && v != NULL && rgb != NULL) {
+    for (int j = 0; j < height; j++) {
+      int uv_start = uv_row_stride * (j >> 1);
+      const uint8_t* y_row = (const uint8_t*) y + y_row_stride * j;
+      const uint8_t* u_row = (const uint8_t*) u + uv_start;
+      const uint8_t* v_row = (const uint8_t*) v + uv_start;
+      float* out_row = rgb + 3 * width * j;
+      if (uv_pixel_stride == 1) {
+        convert_row_float(y_row, u_row, v_row, width, 1, mean, std, out_row);
+      } else if (uv_pixel_stride == 2) {
+        convert_row_float(y_row, u_row, v_row, width, 2, mean, std, out_row);
+      } else {
+        convert_row_float(y_row, u_row, v_row, width, uv_pixel_stride, mean, std, out_row);
+      }
+    }
+  }
+  release(env, out, rgb, 0);
+  release(env, v_data, v, JNI_ABORT);
+  release(env, u_data, u, JNI_ABORT);
+  release(env, y_data, y, JNI_ABORT);
+}
+
+static void interpolate_row(const int32_t* src_row, const jint* x0, const jint* x1,
+                            const jint* x_weights, int dst_width, int32_t* row) {
+  for (int dx = 0; dx < dst_width; dx++) {
+    int32_t p0 = src_row[x0[dx]];
+    int32_t p1 = src_row[x1[dx]];
+    int wx = x_weights[dx];
+    int wx0 = WEIGHT_ONE - wx;
+    row[3 * dx] = ((p0 >> 16) & 0xff) * wx0 + ((p1 >> 16) & 0xff) * wx;
+    row[3 * dx + 1] = ((p0 >> 8) & 0xff) * wx0 + ((p1 >> 8) & 0xff) * wx;
+    row[3 * dx + 2] = (p0 & 0xff) * wx0 + (p1 & 0xff) * wx;
+  }
+}
+
+JNIEXPORT void JNICALL
+Java_org_tensorflow_lite_examples_classification_tflite_utils_NativeImageKernels_nativeResizeBilinearArgb(
+    JNIEnv* env, jclass clazz, jintArray src_array, jint src_stride, jintArray x0_array,
+    jintArray x1_array, jintArray x_weights_array, jintArray y0_array, jintArray y1_array,
+    jintArray y_weights_array, jint out_origin, jint out_column_step, jint out_row_step,
+    jintArray row_buffer_array, jintArray dst_array) {
+  int dst_width = (*env)->GetArrayLength(env, x0_array);
+  int dst_height = (*env)->GetArrayLength(env, y0_array);
+  jint* src = (*env)->GetPrimitiveArrayCritical(env, src_array, NULL);
+  jint* x0 = (*env)->GetPrimitiveArrayCritical(env, x0_array, NULL);
+  jint* x1 = (*env)->GetPrimitiveArrayCritical(env, x1_array, NULL);
+  jint* x_weights = (*env)->GetPrimitiveArrayCritical(env, x_weights_array, NULL);
+  jint* y0 = (*env)->GetPrimitiveArrayCritical(env, y0_array, NULL);
+  jint* y1 = (*env)->GetPrimitiveArrayCritical(env, y1_array, NULL);
+  jint* y_weights = (*env)->GetPrimitiveArrayCritical(env, y_weights_array, NULL);
+  jint* row_buffer = (*env)->GetPrimitiveArrayCritical(env, row_buffer_array, NULL);
+  jint* dst = (*env)->GetPrimitiveArrayCritical(env, dst_array, NULL);
+  if (src != NULL && x0 != NULL && x1 != NULL && x_weights != NULL && y0 != NULL && y1 != NULL &&
+      y_weights != NULL && row_buffer != NULL && dst != NULL) {
+    int row_size = 3 * dst_width;
+    int32_t* rows[2] = {(int32_t*) row_buffer, (int32_t*) row_buffer + row_size};
+    // The source rows held by the two halves of the row buffer, same policy as the Java kernel.
+    int row_ids[2] = {-1, -1};
+    for (int dy = 0; dy < dst_height; dy++) {
+      int top;
+      if (y0[dy] == row_ids[0] || y0[dy] == row_ids[1]) {
+        top = y0[dy] == row_ids[0] ? 0 : 1;
+      } else {
+        top = y1[dy] == row_ids[0] ? 1 : 0;
+        row_ids[top] = y0[dy];
+        interpolate_row((const int32_t*) src + y0[dy] * src_stride, x0, x1, x_weights, dst_width,
+                        rows[top]);
+      }
+      int bottom;
+      if (y1[dy] == row_ids[0] || y1[dy] == row_ids[1]) {
+        bottom = y1[dy] == row_ids[0] ? 0 : 1;
+      } else {
+        bottom = 1 - top;
+        row_ids[bottom] = y1[dy];
+        interpolate_row((const int32_t*) src + y1[dy] * src_stride, x0, x1, x_weights, dst_width,
+                        rows[bottom]);
+      }
+
+      const int32_t* top_row = rows[top];
+      const int32_t* bottom_row = rows[bottom];
+      int wy = y_weights[dy];
+      int wy0 = WEIGHT_ONE - wy;
+      int32_t* out = (int32_t*) dst + out_origin + dy * out_row_step;
+      for (int dx = 0; dx < dst_width; dx++) {
+        int c = 3 * dx;
+        int r = (top_row[c] * wy0 + bottom_row[c] * wy + ROUNDING) >> (2 * WEIGHT_BITS);
+        int g = (top_row[c + 1] * wy0 + bottom_row[c + 1] * wy + ROUNDING) >> (2 * WEIGHT_BITS);
+        int b = (top_row[c + 2] * wy0 + bottom_row[c + 2] * wy + ROUNDING) >> (2 * WEIGHT_BITS);
+        out[dx * out_column_step] = (int32_t) (0xff000000u | (r << 16) | (g << 8) | b);
+      }
+    }
+  }
+  release(env, dst_array, dst, 0);
+  release(env, row_buffer_array, row_buffer, 0);
+  release(env, y_weights_array, y_weights, JNI_ABORT);
+  release(env, y1_array, y1, JNI_ABORT);
+  release(env, y0_array, y0, JNI_ABORT);
+  release(env, x_weights_array, x_weights, JNI_ABORT);
+  release(env, x1_array, x1, JNI_ABORT);
+  release(env, x0_array, x0, JNI_ABORT);
+  release(env, src_array, src, JNI_ABORT);
+}
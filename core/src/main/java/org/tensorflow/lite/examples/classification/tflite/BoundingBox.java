@@ -0,0 +1,86 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/**
+ * An immutable axis aligned rectangle in pixels of the source image, the plain Java counterpart of
+ * {@code android.graphics.RectF}.
+ */
+public final class BoundingBox {
+  private final float left;
+  private final float top;
+  private final float right;
+  private final float bottom;
+
+  public BoundingBox(float left, float top, float right, float bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  public float getLeft() {
+    return left;
+  }
+
+  public float getTop() {
+    return top;
+  }
+
+  public float getRight() {
+    return right;
+  }
+
+  public float getBottom() {
+    return bottom;
+  }
+
+  public float getWidth() {
+    return right - left;
+  }
+
+  public float getHeight() {
+    return bottom - top;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof BoundingBox)) {
+      return false;
+    }
+    BoundingBox other = (BoundingBox) o;
+    return left == other.left
+        && top == other.top
+        && right == other.right
+        && bottom == other.bottom;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Float.floatToIntBits(left);
+    result = 31 * result + Float.floatToIntBits(top);
+    result = 31 * result + Float.floatToIntBits(right);
+    return 31 * result + Float.floatToIntBits(bottom);
+  }
+
+  @Override
+  public String toString() {
+    return "BoundingBox(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+  }
+}
@@ -0,0 +1,43 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/** The runtime device type used for executing classification. */
+public enum Device {
+  CPU,
+  NNAPI,
+  GPU;
+
+  /**
+   * Selects the device to run on. A requested accelerator that is not available on this device
+   * falls back to the CPU. The CPU path uses XNNPACK, which the TFLite runtime applies by default.
+   *
+   * @param requested the device requested by the user
+   * @param gpuSupported whether the GPU delegate supports this device
+   * @param nnApiSupported whether NNAPI is available, i.e. Android 8.1 or newer
+   * @return the device to create the classifier for
+   */
+  public static Device select(Device requested, boolean gpuSupported, boolean nnApiSupported) {
+    switch (requested) {
+      case GPU:
+        return gpuSupported ? GPU : CPU;
+      case NNAPI:
+        return nnApiSupported ? NNAPI : CPU;
+      default:
+        return CPU;
+    }
+  }
+}
@@ -0,0 +1,586 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An in-memory nearest neighbor index of image embeddings, for visual similarity search over
+ * reference images.
+ *
+ * <p>Vectors are normalized to unit length when they are added, so the dot product with a
+ * normalized query is their cosine similarity. They are kept in one contiguous row-major matrix,
+ * either as floats or as 8-bit integers with a scale per vector, which takes a quarter of the
+ * memory and is scanned with integer arithmetic at a small cost in precision. Queries scan the
+ * whole matrix and keep the best matches in a small sorted array. Float vectors are scanned four
+ * at a time, so every query value loaded serves four products; 8-bit vectors one at a time with a
+ * byte by byte dot product, the loop shape compilers turn into vector dot product instructions.
+ *
+ * <p>Both scan every value of every vector, which takes tens of milliseconds per query over 50,000
+ * vectors of 1024 values. BINARY indices answer such queries in a few milliseconds instead: they
+ * keep the 8-bit vectors and, for every vector, one sign bit per value of a randomly rotated copy,
+ * a 32nd of the size of its floats. A query ranks all vectors by the Hamming distance of their
+ * bits, which estimates the angle between them, and rescores only the closest candidates with the
+ * 8-bit vectors. Matches missed by the bits are the price, mostly among near ties of the rest.
+ *
+ * <p>An index is saved to and loaded from a little-endian file through a memory mapping. Not
+ * thread-safe.
+ */
+public final class EmbeddingIndex {
+
+  /** How the vectors are stored. */
+  public enum Precision {
+    FLOAT,
+    INT8,
+    /** INT8 vectors found through a scan of sign bits, for large indices. */
+    BINARY
+  }
+
+  private static final int MAGIC = 0x58424d45; // "EMBX"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 5 * 4;
+  private static final int INITIAL_CAPACITY = 64;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * How many candidates of a BINARY index are rescored per requested match, and at least. Over
+   * 50,000 vectors in a thousand clusters they find the same best five matches as an INT8 scan,
+   * over 50,000 independent random vectors, whose best matches are near ties, about three quarters.
+   */
+  private static final int CANDIDATES_PER_MATCH = 128;
+
+  private static final int MIN_CANDIDATES = 1024;
+
+  /** Seeds the rotation of BINARY indices, which saved indices depend on. */
+  private static final long ROTATION_SEED = 0x454d4258L;
+
+  private final int dimension;
+  private final Precision precision;
+  private final List<String> labels = new ArrayList<>();
+
+  /** The vectors of a FLOAT index, {@code dimension} values each. */
+  private float[] floatVectors;
+
+  /** The vectors of an INT8 index, and the value of one step of every vector. */
+  private byte[] byteVectors;
+
+  private float[] scales;
+
+  /** The sign bits of the rotated vectors of a BINARY index, {@code codeWords} longs each. */
+  private long[] codes;
+
+  private final int codeWords;
+
+  /**
+   * The random signs of the two rounds of the rotation of a BINARY index, each a sign flip of every
+   * value followed by a Hadamard transform over the dimension rounded up to a power of two.
+   */
+  private final float[] rotationSigns;
+
+  private int count;
+
+  // Scratch space of queries.
+  private final float[] floatQuery;
+  private final byte[] byteQuery;
+  private final float[] rotated;
+  private final long[] queryCode;
+  private final int[] distanceCounts;
+  private int[] distances;
+
+  /** Creates an empty index of vectors with {@code dimension} values. */
+  public EmbeddingIndex(int dimension, Precision precision) {
+    this(dimension, precision, INITIAL_CAPACITY);
+  }
+
+  private EmbeddingIndex(int dimension, Precision precision, int capacity) {
+    if (dimension <= 0) {
+      throw new IllegalArgumentException("The dimension must be positive, got " + dimension);
+    }
+    this.dimension = dimension;
+    this.precision = precision;
+    if (precision == Precision.FLOAT) {
+      floatVectors = new float[capacity * dimension];
+    } else {
+      byteVectors = new byte[capacity * dimension];
+      scales = new float[capacity];
+    }
+    floatQuery = new float[dimension];
+    byteQuery = new byte[dimension];
+    if (precision == Precision.BINARY) {
+      codeWords = getCodeWords(dimension);
+      codes = new long[capacity * codeWords];
+      int rotatedLength = 64 * codeWords;
+      rotationSigns = new float[2 * rotatedLength];
+      Random random = new Random(ROTATION_SEED);
+      for (int i = 0; i < rotationSigns.length; i++) {
+        rotationSigns[i] = random.nextBoolean() ? 1 : -1;
+      }
+      rotated = new float[rotatedLength];
+      queryCode = new long[codeWords];
+      distanceCounts = new int[rotatedLength + 1];
+    } else {
+      codeWords = 0;
+      rotationSigns = null;
+      rotated = null;
+      queryCode = null;
+      distanceCounts = null;
+    }
+  }
+
+  public int getDimension() {
+    return dimension;
+  }
+
+  public Precision getPrecision() {
+    return precision;
+  }
+
+  /** Returns the number of vectors in the index. */
+  public int size() {
+    return count;
+  }
+
+  /** Returns the label of the vector at {@code index}, in insertion order. */
+  public String getLabel(int index) {
+    return labels.get(index);
+  }
+
+  /**
+   * Adds an embedding, normalized to unit length.
+   *
+   * @param label the label returned with matches of the embedding, e.g. the reference image name
+   * @return the index of the vector
+   */
+  public int add(String label, float[] embedding) {
+    normalize(embedding, floatQuery);
+    ensureCapacity(count + 1);
+    int offset = count * dimension;
+    if (precision == Precision.FLOAT) {
+      System.arraycopy(floatQuery, 0, floatVectors, offset, dimension);
+    } else {
+      scales[count] = quantize(floatQuery, byteVectors, offset);
+      if (precision == Precision.BINARY) {
+        encode(floatQuery, codes, count * codeWords);
+      }
+    }
+    labels.add(label);
+    return count++;
+  }
+
+  /**
+   * Finds the vectors most similar to an embedding.
+   *
+   * @param embedding the query, it doesn't need to be normalized
+   * @param outIndices receives the indices of the best matches, best first, one per element
+   * @param outScores receives the cosine similarity of every match
+   * @return the number of matches, less than {@code outIndices.length} if the index is smaller
+   */
+  public int query(float[] embedding, int[] outIndices, float[] outScores) {
+    if (outScores.length < outIndices.length) {
+      throw new IllegalArgumentException("Need a score for every index.");
+    }
+    if (outIndices.length == 0) {
+      return 0;
+    }
+    normalize(embedding, floatQuery);
+    if (precision == Precision.FLOAT) {
+      return scanFloat(outIndices, outScores);
+    }
+    float queryScale = quantize(floatQuery, byteQuery, 0);
+    if (precision == Precision.BINARY && count > getCandidateCount(outIndices.length)) {
+      encode(floatQuery, queryCode, 0);
+      return scanBinary(queryScale, outIndices, outScores);
+    }
+    return scanInt8(queryScale, outIndices, outScores);
+  }
+
+  /**
+   * Returns the {@code k} vectors most similar to an embedding as recognitions, best first, titled
+   * with their labels and with the cosine similarity as confidence.
+   */
+  public List<Recognition> query(float[] embedding, int k) {
+    int[] indices = new int[k];
+    float[] scores = new float[k];
+    int found = query(embedding, indices, scores);
+    List<Recognition> recognitions = new ArrayList<>(found);
+    for (int i = 0; i < found; i++) {
+      recognitions.add(
+          new Recognition(
+              Integer.toString(indices[i]), labels.get(indices[i]), scores[i], null));
+    }
+    return recognitions;
+  }
+
+  private int scanFloat(int[] outIndices, float[] outScores) {
+    float[] query = floatQuery;
+    float[] vectors = floatVectors;
+    int d = dimension;
+    int found = 0;
+    int i = 0;
+    for (; i + 4 <= count; i += 4) {
+      int o0 = i * d;
+      int o1 = o0 + d;
+      int o2 = o1 + d;
+      int o3 = o2 + d;
+      float s0 = 0;
+      float s1 = 0;
+      float s2 = 0;
+      float s3 = 0;
+      for (int j = 0; j < d; j++) {
+        float q = query[j];
+        s0 += q * vectors[o0 + j];
+        s1 += q * vectors[o1 + j];
+        s2 += q * vectors[o2 + j];
+        s3 += q * vectors[o3 + j];
+      }
+      found = offer(i, s0, found, outIndices, outScores);
+      found = offer(i + 1, s1, found, outIndices, outScores);
+      found = offer(i + 2, s2, found, outIndices, outScores);
+      found = offer(i + 3, s3, found, outIndices, outScores);
+    }
+    for (; i < count; i++) {
+      int offset = i * d;
+      float s = 0;
+      for (int j = 0; j < d; j++) {
+        s += query[j] * vectors[offset + j];
+      }
+      found = offer(i, s, found, outIndices, outScores);
+    }
+    return found;
+  }
+
+  private int scanInt8(float queryScale, int[] outIndices, float[] outScores) {
+    int found = 0;
+    for (int i = 0; i < count; i++) {
+      int dot = dot(byteQuery, byteVectors, i * dimension, dimension);
+      found = offer(i, dot * queryScale * scales[i], found, outIndices, outScores);
+    }
+    return found;
+  }
+
+  /**
+   * Ranks all vectors by the Hamming distance of their bits to those of the query, and rescores
+   * the closest ones with their 8-bit vectors. Of the vectors at the largest distance taken, the
+   * earliest are taken first.
+   */
+  private int scanBinary(float queryScale, int[] outIndices, float[] outScores) {
+    if (distances == null || distances.length < count) {
+      distances = new int[scales.length];
+    }
+    long[] query = queryCode;
+    long[] vectorCodes = codes;
+    int words = codeWords;
+    int[] histogram = distanceCounts;
+    Arrays.fill(histogram, 0);
+    for (int i = 0; i < count; i++) {
+      int offset = i * words;
+      int distance = 0;
+      for (int w = 0; w < words; w++) {
+        distance += Long.bitCount(query[w] ^ vectorCodes[offset + w]);
+      }
+      distances[i] = distance;
+      histogram[distance]++;
+    }
+
+    int candidates = getCandidateCount(outIndices.length);
+    int threshold = 0;
+    int closer = 0;
+    while (closer + histogram[threshold] < candidates) {
+      closer += histogram[threshold];
+      threshold++;
+    }
+    int atThreshold = candidates - closer;
+    int found = 0;
+    for (int i = 0; i < count; i++) {
+      int distance = distances[i];
+      if (distance > threshold) {
+        continue;
+      }
+      if (distance == threshold) {
+        if (atThreshold == 0) {
+          continue;
+        }
+        atThreshold--;
+      }
+      int dot = dot(byteQuery, byteVectors, i * dimension, dimension);
+      found = offer(i, dot * queryScale * scales[i], found, outIndices, outScores);
+    }
+    return found;
+  }
+
+  private static int getCandidateCount(int k) {
+    return Math.max(k * CANDIDATES_PER_MATCH, MIN_CANDIDATES);
+  }
+
+  /** Writes the signs of the randomly rotated normalized vector as bits. */
+  private void encode(float[] vector, long[] out, int offset) {
+    float[] values = rotated;
+    int length = values.length;
+    for (int i = 0; i < length; i++) {
+      values[i] = i < dimension ? vector[i] * rotationSigns[i] : 0;
+    }
+    hadamard(values);
+    for (int i = 0; i < length; i++) {
+      values[i] *= rotationSigns[length + i];
+    }
+    hadamard(values);
+    Arrays.fill(out, offset, offset + codeWords, 0L);
+    for (int i = 0; i < length; i++) {
+      if (values[i] > 0) {
+        out[offset + (i >>> 6)] |= 1L << (i & 63);
+      }
+    }
+  }
+
+  /** Applies the unnormalized Hadamard transform to values of a power of two length in place. */
+  private static void hadamard(float[] values) {
+    for (int half = 1; half < values.length; half *= 2) {
+      for (int start = 0; start < values.length; start += 2 * half) {
+        for (int i = start; i < start + half; i++) {
+          float a = values[i];
+          float b = values[i + half];
+          values[i] = a + b;
+          values[i + half] = a - b;
+        }
+      }
+    }
+  }
+
+  /** Returns the longs of the bits of a vector, one bit per value rounded up to a power of two. */
+  private static int getCodeWords(int dimension) {
+    int rotatedLength = 64;
+    while (rotatedLength < dimension) {
+      rotatedLength *= 2;
+    }
+    return rotatedLength / 64;
+  }
+
+  private static int dot(byte[] query, byte[] vectors, int offset, int length) {
+    int sum = 0;
+    for (int j = 0; j < length; j++) {
+      sum += query[j] * vectors[offset + j];
+    }
+    return sum;
+  }
+
+  /**
+   * Inserts a match into the sorted best matches if it beats the worst of them. Equal scores keep
+   * the earlier vector first, like {@link TopK}.
+   *
+   * @return the number of best matches afterwards
+   */
+  private static int offer(int index, float score, int found, int[] indices, float[] scores) {
+    int k = indices.length;
+    if (found == k && !(score > scores[k - 1])) {
+      return found;
+    }
+    int position = found < k ? found++ : k - 1;
+    while (position > 0 && score > scores[position - 1]) {
+      indices[position] = indices[position - 1];
+      scores[position] = scores[position - 1];
+      position--;
+    }
+    indices[position] = index;
+    scores[position] = score;
+    return found;
+  }
+
+  private void normalize(float[] embedding, float[] out) {
+    if (embedding.length != dimension) {
+      throw new IllegalArgumentException(
+          "Expected an embedding of " + dimension + " values, got " + embedding.length);
+    }
+    double squares = 0;
+    for (float value : embedding) {
+      squares += value * value;
+    }
+    if (!(squares > 0) || Double.isInfinite(squares)) {
+      throw new IllegalArgumentException("The embedding has no direction: " + squares);
+    }
+    float inverseNorm = (float) (1 / Math.sqrt(squares));
+    for (int i = 0; i < dimension; i++) {
+      out[i] = embedding[i] * inverseNorm;
+    }
+  }
+
+  /**
+   * Writes a normalized vector as 8-bit values spanning its largest magnitude.
+   *
+   * @return the value of one step
+   */
+  private float quantize(float[] vector, byte[] out, int offset) {
+    float scale = maxMagnitude(vector) / 127;
+    for (int i = 0; i < dimension; i++) {
+      out[offset + i] = (byte) Math.round(vector[i] / scale);
+    }
+    return scale;
+  }
+
+  private float maxMagnitude(float[] vector) {
+    float max = 0;
+    for (int i = 0; i < dimension; i++) {
+      max = Math.max(max, Math.abs(vector[i]));
+    }
+    return max;
+  }
+
+  private void ensureCapacity(int capacity) {
+    int currentCapacity =
+        precision == Precision.FLOAT ? floatVectors.length / dimension : scales.length;
+    if (capacity <= currentCapacity) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, currentCapacity * 2);
+    if (precision == Precision.FLOAT) {
+      floatVectors = Arrays.copyOf(floatVectors, newCapacity * dimension);
+    } else {
+      byteVectors = Arrays.copyOf(byteVectors, newCapacity * dimension);
+      scales = Arrays.copyOf(scales, newCapacity);
+    }
+    if (precision == Precision.BINARY) {
+      codes = Arrays.copyOf(codes, newCapacity * codeWords);
+    }
+  }
+
+  /**
+   * Writes the index to a file, replacing it atomically. The file holds a header, the vector
+   * matrix as stored, the scales of an INT8 or BINARY index, the bits of a BINARY index and the
+   * labels.
+   */
+  public void save(File file) throws IOException {
+    List<byte[]> encodedLabels = new ArrayList<>(count);
+    long labelBytes = 0;
+    for (String label : labels) {
+      byte[] encoded = label.getBytes(UTF_8);
+      encodedLabels.add(encoded);
+      labelBytes += 4 + encoded.length;
+    }
+    long size = HEADER_BYTES + getMatrixBytes(precision, dimension, count) + labelBytes;
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("The index is too large to map: " + size + " bytes");
+    }
+
+    File tempFile = new File(file.getPath() + ".tmp");
+    RandomAccessFile output = new RandomAccessFile(tempFile, "rw");
+    try {
+      output.setLength(size);
+      MappedByteBuffer buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(precision.ordinal()).putInt(dimension);
+      buffer.putInt(count);
+      int values = count * dimension;
+      if (precision == Precision.FLOAT) {
+        buffer.asFloatBuffer().put(floatVectors, 0, values);
+        buffer.position(buffer.position() + 4 * values);
+      } else {
+        buffer.put(byteVectors, 0, values);
+        buffer.asFloatBuffer().put(scales, 0, count);
+        buffer.position(buffer.position() + 4 * count);
+      }
+      if (precision == Precision.BINARY) {
+        buffer.asLongBuffer().put(codes, 0, count * codeWords);
+        buffer.position(buffer.position() + 8 * count * codeWords);
+      }
+      for (byte[] encoded : encodedLabels) {
+        buffer.putInt(encoded.length).put(encoded);
+      }
+      buffer.force();
+    } finally {
+      output.close();
+    }
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+      throw new IOException("Cannot write the index " + file);
+    }
+  }
+
+  /** Reads an index written by {@link #save}. More vectors can be added to it. */
+  public static EmbeddingIndex load(File file) throws IOException {
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = input.getChannel();
+      if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(file + " is not an embedding index.");
+      }
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException(file + " is not an embedding index.");
+      }
+      int precisionOrdinal = buffer.getInt();
+      int dimension = buffer.getInt();
+      int count = buffer.getInt();
+      if (precisionOrdinal < 0
+          || precisionOrdinal >= Precision.values().length
+          || dimension <= 0
+          || count < 0) {
+        throw new IOException(file + " has an invalid header.");
+      }
+      Precision precision = Precision.values()[precisionOrdinal];
+      if (getMatrixBytes(precision, dimension, count) > buffer.remaining()) {
+        throw new IOException(file + " is truncated.");
+      }
+      EmbeddingIndex index =
+          new EmbeddingIndex(dimension, precision, Math.max(count, INITIAL_CAPACITY));
+      int values = count * dimension;
+      if (index.precision == Precision.FLOAT) {
+        buffer.asFloatBuffer().get(index.floatVectors, 0, values);
+        buffer.position(buffer.position() + 4 * values);
+      } else {
+        buffer.get(index.byteVectors, 0, values);
+        buffer.asFloatBuffer().get(index.scales, 0, count);
+        buffer.position(buffer.position() + 4 * count);
+      }
+      if (index.precision == Precision.BINARY) {
+        buffer.asLongBuffer().get(index.codes, 0, count * index.codeWords);
+        buffer.position(buffer.position() + 8 * count * index.codeWords);
+      }
+      for (int i = 0; i < count; i++) {
+        int length = buffer.remaining() >= 4 ? buffer.getInt() : -1;
+        if (length < 0 || length > buffer.remaining()) {
+          throw new IOException(file + " is truncated.");
+        }
+        byte[] encoded = new byte[length];
+        buffer.get(encoded);
+        index.labels.add(new String(encoded, UTF_8));
+      }
+      index.count = count;
+      return index;
+    } finally {
+      input.close();
+    }
+  }
+
+  private static long getMatrixBytes(Precision precision, int dimension, int vectors) {
+    long values = (long) vectors * dimension;
+    if (precision == Precision.FLOAT) {
+      return 4 * values;
+    }
+    long codeBytes = precision == Precision.BINARY ? 8L * vectors * getCodeWords(dimension) : 0;
+    return values + 4L * vectors + codeBytes;
+  }
+}
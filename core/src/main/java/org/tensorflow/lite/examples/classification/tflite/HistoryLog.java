@@ -0,0 +1,696 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every classification, with its time, model, top results and latency, in an append-only
+ * log of fixed-size binary records for analytics.
+ *
+ * <p>Producers hand records to a bounded lock-free queue of preallocated primitive slots, so
+ * appending neither locks nor allocates and never blocks the frame loop. When the background
+ * writer falls behind and the queue is full, records are dropped and counted. The writer copies
+ * them into memory-mapped segment files of a fixed number of records, starts a new segment when
+ * one is full and deletes the oldest segments beyond a limit.
+ *
+ * <p>Every record carries its sequence number and a checksum that is written after its fields.
+ * Writes to a mapping reach the file even if the process dies right after them, and a record torn
+ * by the death of the process fails its checksum, so readers stop before it and the next log
+ * opened on the directory writes over it. Segments are preallocated and only the newest one is
+ * ever partially filled.
+ */
+public final class HistoryLog implements Closeable {
+
+  private static final int MAGIC = 0x484c4731; // "HLG1"
+  private static final int VERSION = 1;
+
+  /** Magic, version, results per record, records per segment, first sequence and padding. */
+  private static final int HEADER_BYTES = 32;
+
+  /** Sequence, timestamp, model, latency and result count before the results, checksum after. */
+  private static final int FIXED_RECORD_BYTES = 8 + 8 + 4 + 4 + 4 + 4;
+
+  private static final int CHECKSUM_SEED = 0x2f6b3d1d;
+  private static final String SEGMENT_PREFIX = "history-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  /** How long the idle writer sleeps when no producer wakes it, bounding any missed wakeup. */
+  private static final long IDLE_WAIT_NS = 100000000L;
+
+  private final File directory;
+  private final int topK;
+  private final int recordsPerSegment;
+  private final int maxSegments;
+  private final int recordBytes;
+
+  // The queue. The sequence of a slot is its position p while it is free for the producer of p,
+  // and p + 1 once that producer published a record into it.
+  private final int mask;
+  private final AtomicLongArray slotSequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final long[] timestampsMs;
+  private final int[] modelIds;
+  private final int[] latenciesMs;
+  private final int[] counts;
+  private final int[] classIds;
+  private final float[] scores;
+
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final Thread writerThread;
+  private volatile boolean writerIdle;
+  private volatile boolean closed;
+  private volatile IOException error;
+
+  // Only used by the writer thread once it started.
+  private long head;
+  private MappedByteBuffer segment;
+  private int segmentRecords;
+  private long nextSequence = 1;
+
+  /**
+   * Opens the log in a directory, resuming after the last complete record of an earlier log, and
+   * starts its writer thread.
+   *
+   * @param topK the number of results kept per record
+   * @param recordsPerSegment the number of records of a segment file
+   * @param maxSegments the number of segment files kept, the oldest are deleted
+   * @param queueCapacity the number of records waiting for the writer, rounded up to a power of two
+   */
+  public HistoryLog(
+      File directory, int topK, int recordsPerSegment, int maxSegments, int queueCapacity)
+      throws IOException {
+    if (topK < 1 || recordsPerSegment < 1 || maxSegments < 1) {
+      throw new IllegalArgumentException("The log needs room for at least one result and record.");
+    }
+    if (queueCapacity <= 0 || queueCapacity > (1 << 20)) {
+      throw new IllegalArgumentException(
+          "Queue capacity must be between 1 and 2^20, got " + queueCapacity);
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create the history directory " + directory);
+    }
+    if (HEADER_BYTES + (long) recordsPerSegment * (FIXED_RECORD_BYTES + 8L * topK)
+        > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("A segment must be smaller than 2 GB.");
+    }
+    this.directory = directory;
+    this.topK = topK;
+    this.recordsPerSegment = recordsPerSegment;
+    this.maxSegments = maxSegments;
+    recordBytes = FIXED_RECORD_BYTES + 8 * topK;
+
+    int size = Integer.highestOneBit(queueCapacity - 1) << 1;
+    if (size == 0) {
+      size = 1;
+    }
+    mask = size - 1;
+    slotSequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      slotSequences.set(i, i);
+    }
+    timestampsMs = new long[size];
+    modelIds = new int[size];
+    latenciesMs = new int[size];
+    counts = new int[size];
+    classIds = new int[size * topK];
+    scores = new float[size * topK];
+
+    resume();
+    writerThread = new Thread(this::runWriter, "HistoryLog");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Returns a model id for the records of a model that stays the same across app versions and
+   * registry changes: the first four bytes of the SHA-256 hash of its name and the checksum of its
+   * file. A retrained model of the same name gets another id.
+   *
+   * @param modelName the name of the model, e.g. {@code "Quantized_MobileNet"}
+   * @param modelChecksum the checksum of the model file, or null if it is unknown
+   */
+  public static int getModelId(String modelName, String modelChecksum) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform has to provide SHA-256.
+      throw new IllegalStateException(e);
+    }
+    Charset utf8 = Charset.forName("UTF-8");
+    digest.update(modelName.getBytes(utf8));
+    digest.update((byte) 0);
+    if (modelChecksum != null) {
+      digest.update(modelChecksum.toLowerCase(Locale.US).getBytes(utf8));
+    }
+    return ByteBuffer.wrap(digest.digest()).getInt();
+  }
+
+  /**
+   * Appends the results of a classification. Results are identified by their {@link
+   * Recognition#getId() id}, which must be the class index; others are recorded as class -1.
+   *
+   * @return whether the record was queued, false if the queue was full or the log is closed
+   */
+  public boolean append(long timestampMs, int modelId, int latencyMs, List<Recognition> results) {
+    long position = claim();
+    if (position < 0) {
+      return false;
+    }
+    int slot = (int) (position & mask);
+    int count = Math.min(results.size(), topK);
+    int offset = slot * topK;
+    for (int i = 0; i < count; i++) {
+      Recognition recognition = results.get(i);
+      Float confidence = recognition != null ? recognition.getConfidence() : null;
+      classIds[offset + i] = recognition != null ? parseClassId(recognition.getId()) : -1;
+      scores[offset + i] = confidence != null ? confidence : Float.NaN;
+    }
+    publish(position, timestampMs, modelId, latencyMs, count);
+    return true;
+  }
+
+  /**
+   * Appends the results of a classification given as class indices and scores, best first.
+   *
+   * @return whether the record was queued, false if the queue was full or the log is closed
+   */
+  public boolean append(
+      long timestampMs,
+      int modelId,
+      int latencyMs,
+      int[] resultClassIds,
+      float[] resultScores,
+      int resultCount) {
+    long position = claim();
+    if (position < 0) {
+      return false;
+    }
+    int slot = (int) (position & mask);
+    int count = Math.min(resultCount, topK);
+    System.arraycopy(resultClassIds, 0, classIds, slot * topK, count);
+    System.arraycopy(resultScores, 0, scores, slot * topK, count);
+    publish(position, timestampMs, modelId, latencyMs, count);
+    return true;
+  }
+
+  /** Returns the number of records dropped because the queue was full. */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /** Returns the error that stopped the writer, or null. Later appends are refused. */
+  public IOException getError() {
+    return error;
+  }
+
+  /**
+   * Writes the queued records, flushes the current segment and stops the writer. Appends racing
+   * with the close may be lost.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    LockSupport.unpark(writerThread);
+    boolean interrupted = false;
+    while (writerThread.isAlive()) {
+      try {
+        writerThread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /** Claims the next queue position, or returns -1 if the queue is full or the log closed. */
+  private long claim() {
+    if (closed || error != null) {
+      return -1;
+    }
+    while (true) {
+      long position = tail.get();
+      long difference = slotSequences.get((int) (position & mask)) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          return position;
+        }
+      } else if (difference < 0) {
+        // The slot still holds the record of the previous lap.
+        droppedCount.incrementAndGet();
+        return -1;
+      }
+      // Another producer claimed the position first.
+    }
+  }
+
+  private void publish(long position, long timestampMs, int modelId, int latencyMs, int count) {
+    int slot = (int) (position & mask);
+    timestampsMs[slot] = timestampMs;
+    modelIds[slot] = modelId;
+    latenciesMs[slot] = latencyMs;
+    counts[slot] = count;
+    slotSequences.set(slot, position + 1);
+    if (writerIdle) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  /** Parses a non-negative decimal class index without allocating, or returns -1. */
+  private static int parseClassId(String id) {
+    if (id == null || id.isEmpty() || id.length() > 9) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = 0; i < id.length(); i++) {
+      char c = id.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private void runWriter() {
+    try {
+      while (true) {
+        if (drain() > 0) {
+          continue;
+        }
+        if (closed) {
+          // Producers that claimed a position before the close may still publish it.
+          if (drain() == 0) {
+            break;
+          }
+          continue;
+        }
+        writerIdle = true;
+        if (slotSequences.get((int) (head & mask)) != head + 1) {
+          LockSupport.parkNanos(this, IDLE_WAIT_NS);
+        }
+        writerIdle = false;
+      }
+      if (segment != null) {
+        segment.force();
+      }
+    } catch (IOException e) {
+      error = e;
+    }
+  }
+
+  /** Writes the published records at the head of the queue and returns their number. */
+  private int drain() throws IOException {
+    int written = 0;
+    while (true) {
+      int slot = (int) (head & mask);
+      if (slotSequences.get(slot) != head + 1) {
+        return written;
+      }
+      writeRecord(slot);
+      slotSequences.lazySet(slot, head + mask + 1);
+      head++;
+      written++;
+    }
+  }
+
+  private void writeRecord(int slot) throws IOException {
+    if (segment == null || segmentRecords == recordsPerSegment) {
+      startSegment();
+    }
+    int offset = HEADER_BYTES + segmentRecords * recordBytes;
+    int count = counts[slot];
+    long sequence = nextSequence;
+    int checksum = CHECKSUM_SEED;
+    segment.putLong(offset, sequence);
+    checksum = mix(checksum, sequence);
+    segment.putLong(offset + 8, timestampsMs[slot]);
+    checksum = mix(checksum, timestampsMs[slot]);
+    segment.putInt(offset + 16, modelIds[slot]);
+    checksum = mix(checksum, modelIds[slot]);
+    segment.putInt(offset + 20, latenciesMs[slot]);
+    checksum = mix(checksum, latenciesMs[slot]);
+    segment.putInt(offset + 24, count);
+    checksum = mix(checksum, count);
+    int resultOffset = offset + 28;
+    for (int i = 0; i < topK; i++) {
+      int classId = i < count ? classIds[slot * topK + i] : 0;
+      int scoreBits = i < count ? Float.floatToRawIntBits(scores[slot * topK + i]) : 0;
+      segment.putInt(resultOffset + 8 * i, classId);
+      segment.putInt(resultOffset + 8 * i + 4, scoreBits);
+      checksum = mix(mix(checksum, classId), scoreBits);
+    }
+    // Written last, so a record torn by process death fails its checksum.
+    segment.putInt(offset + recordBytes - 4, checksum);
+    segmentRecords++;
+    nextSequence++;
+  }
+
+  private void startSegment() throws IOException {
+    if (segment != null) {
+      segment.force();
+    }
+    File file = new File(directory, getSegmentName(nextSequence));
+    segment = mapSegment(file, HEADER_BYTES + (long) recordsPerSegment * recordBytes);
+    segment.putInt(0, MAGIC);
+    segment.putInt(4, VERSION);
+    segment.putInt(8, topK);
+    segment.putInt(12, recordsPerSegment);
+    segment.putLong(16, nextSequence);
+    segment.force();
+    segmentRecords = 0;
+
+    File[] segments = listSegments(directory);
+    for (int i = 0; i < segments.length - maxSegments; i++) {
+      segments[i].delete();
+    }
+  }
+
+  /**
+   * Continues after the last complete record of the newest segment, or after it in a new segment
+   * if the segment is full or was written with a different layout.
+   */
+  private void resume() throws IOException {
+    File[] segments = listSegments(directory);
+    for (int i = segments.length - 1; i >= 0; i--) {
+      Segment last = Segment.open(segments[i]);
+      if (last == null) {
+        // A segment whose header was never completed holds no records.
+        segments[i].delete();
+        continue;
+      }
+      int records = last.countRecords();
+      nextSequence = last.firstSequence + records;
+      if (last.topK == topK && last.capacity == recordsPerSegment && records < last.capacity) {
+        segment = mapSegment(segments[i], last.buffer.capacity());
+        segmentRecords = records;
+      }
+      return;
+    }
+  }
+
+  private static MappedByteBuffer mapSegment(File file, long size) throws IOException {
+    RandomAccessFile output = new RandomAccessFile(file, "rw");
+    try {
+      if (output.length() != size) {
+        output.setLength(size);
+      }
+      MappedByteBuffer buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      return buffer;
+    } finally {
+      output.close();
+    }
+  }
+
+  private static int mix(int hash, int value) {
+    hash ^= value;
+    hash *= 0x9e3779b1;
+    return Integer.rotateLeft(hash, 15);
+  }
+
+  private static int mix(int hash, long value) {
+    return mix(mix(hash, (int) value), (int) (value >>> 32));
+  }
+
+  private static String getSegmentName(long firstSequence) {
+    return String.format(Locale.US, "%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+  }
+
+  /** Returns the segment files of a directory, oldest first. */
+  private static File[] listSegments(File directory) {
+    File[] files =
+        directory.listFiles(
+            new FileFilter() {
+              @Override
+              public boolean accept(File file) {
+                String name = file.getName();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+              }
+            });
+    if (files == null) {
+      return new File[0];
+    }
+    // The zero padded first sequence numbers sort by name.
+    Arrays.sort(files);
+    return files;
+  }
+
+  /**
+   * Deletes the segments whose records are all older than a time, except the newest segment, which
+   * an open log may still be writing. Can run while a log is open on the directory.
+   *
+   * @return the number of records deleted
+   */
+  public static int compact(File directory, long minTimestampMs) throws IOException {
+    File[] segments = listSegments(directory);
+    int deleted = 0;
+    for (int i = 0; i < segments.length - 1; i++) {
+      Segment segment = Segment.open(segments[i]);
+      if (segment == null) {
+        continue;
+      }
+      int records = segment.countRecords();
+      boolean expired = true;
+      for (int j = 0; j < records && expired; j++) {
+        expired = segment.buffer.getLong(segment.getOffset(j) + 8) < minTimestampMs;
+      }
+      if (expired && segments[i].delete()) {
+        deleted += records;
+      }
+    }
+    return deleted;
+  }
+
+  /** Opens a cursor over the complete records of the log in a directory, oldest first. */
+  public static Cursor read(File directory) {
+    return new Cursor(listSegments(directory));
+  }
+
+  /**
+   * Iterates over the records of a log. The accessors describe the current record, the one the
+   * last call to {@link #next} moved to; nothing is allocated per record.
+   */
+  public static final class Cursor implements Closeable {
+    private final File[] files;
+    private int fileIndex = -1;
+    private Segment segment;
+    private int recordIndex;
+
+    private long sequence;
+    private long timestampMs;
+    private int modelId;
+    private int latencyMs;
+    private int resultCount;
+    private int[] resultClassIds = new int[0];
+    private float[] resultScores = new float[0];
+
+    private Cursor(File[] files) {
+      this.files = files;
+    }
+
+    /**
+     * Moves to the next complete record.
+     *
+     * @return false once all records were read
+     */
+    public boolean next() throws IOException {
+      while (true) {
+        if (segment != null && recordIndex < segment.capacity && segment.isValid(recordIndex)) {
+          load(recordIndex++);
+          return true;
+        }
+        // The first incomplete record ends a segment.
+        if (++fileIndex >= files.length) {
+          segment = null;
+          return false;
+        }
+        try {
+          segment = Segment.open(files[fileIndex]);
+        } catch (FileNotFoundException e) {
+          // Deleted by the rotation or a compaction since the cursor was opened.
+          segment = null;
+        }
+        recordIndex = 0;
+      }
+    }
+
+    private void load(int index) {
+      ByteBuffer buffer = segment.buffer;
+      int offset = segment.getOffset(index);
+      sequence = buffer.getLong(offset);
+      timestampMs = buffer.getLong(offset + 8);
+      modelId = buffer.getInt(offset + 16);
+      latencyMs = buffer.getInt(offset + 20);
+      resultCount = buffer.getInt(offset + 24);
+      if (resultClassIds.length < segment.topK) {
+        resultClassIds = new int[segment.topK];
+        resultScores = new float[segment.topK];
+      }
+      for (int i = 0; i < resultCount; i++) {
+        resultClassIds[i] = buffer.getInt(offset + 28 + 8 * i);
+        resultScores[i] = buffer.getFloat(offset + 32 + 8 * i);
+      }
+    }
+
+    /** Returns the sequence number of the record, increasing by one from record to record. */
+    public long getSequence() {
+      return sequence;
+    }
+
+    public long getTimestampMs() {
+      return timestampMs;
+    }
+
+    public int getModelId() {
+      return modelId;
+    }
+
+    public int getLatencyMs() {
+      return latencyMs;
+    }
+
+    public int getResultCount() {
+      return resultCount;
+    }
+
+    /** Returns the class index of a result, best first, or -1 if it wasn't known. */
+    public int getClassId(int result) {
+      checkResult(result);
+      return resultClassIds[result];
+    }
+
+    public float getScore(int result) {
+      checkResult(result);
+      return resultScores[result];
+    }
+
+    private void checkResult(int result) {
+      if (result < 0 || result >= resultCount) {
+        throw new IndexOutOfBoundsException(
+            "Result " + result + " of a record with " + resultCount + " results");
+      }
+    }
+
+    @Override
+    public void close() {
+      segment = null;
+      fileIndex = files.length;
+    }
+  }
+
+  /** A read-only view of a segment file. */
+  private static final class Segment {
+    final ByteBuffer buffer;
+    final int topK;
+    final int capacity;
+    final long firstSequence;
+    final int recordBytes;
+
+    private Segment(ByteBuffer buffer, int topK, int capacity, long firstSequence) {
+      this.buffer = buffer;
+      this.topK = topK;
+      this.capacity = capacity;
+      this.firstSequence = firstSequence;
+      recordBytes = FIXED_RECORD_BYTES + 8 * topK;
+    }
+
+    /** Maps a segment, or returns null if its header is incomplete or from another format. */
+    static Segment open(File file) throws IOException {
+      RandomAccessFile input = new RandomAccessFile(file, "r");
+      try {
+        FileChannel channel = input.getChannel();
+        long size = channel.size();
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+          return null;
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int topK = buffer.getInt(8);
+        int capacity = buffer.getInt(12);
+        long firstSequence = buffer.getLong(16);
+        if (buffer.getInt(0) != MAGIC
+            || buffer.getInt(4) != VERSION
+            || topK < 1
+            || capacity < 1
+            || firstSequence < 1
+            || HEADER_BYTES + (long) capacity * (FIXED_RECORD_BYTES + 8L * topK) != size) {
+          return null;
+        }
+        return new Segment(buffer, topK, capacity, firstSequence);
+      } finally {
+        input.close();
+      }
+    }
+
+    int getOffset(int index) {
+      return HEADER_BYTES + index * recordBytes;
+    }
+
+    /** Returns the number of complete records at the start of the segment. */
+    int countRecords() {
+      int records = 0;
+      while (records < capacity && isValid(records)) {
+        records++;
+      }
+      return records;
+    }
+
+    boolean isValid(int index) {
+      int offset = getOffset(index);
+      long sequence = buffer.getLong(offset);
+      int count = buffer.getInt(offset + 24);
+      if (sequence != firstSequence + index || count < 0 || count > topK) {
+        return false;
+      }
+      int checksum = CHECKSUM_SEED;
+      checksum = mix(checksum, sequence);
+      checksum = mix(checksum, buffer.getLong(offset + 8));
+      checksum = mix(checksum, buffer.getInt(offset + 16));
+      checksum = mix(checksum, buffer.getInt(offset + 20));
+      checksum = mix(checksum, count);
+      for (int i = 0; i < topK; i++) {
+        int resultOffset = offset + 28 + 8 * i;
+        checksum = mix(mix(checksum, buffer.getInt(resultOffset)), buffer.getInt(resultOffset + 4));
+      }
+      return checksum == buffer.getInt(offset + recordBytes - 4);
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/**
+ * Paces inference to a target rate and steps through a fixed ladder of degradation levels when the
+ * measured latency leaves the latency budget, e.g. once the device starts thermal throttling.
+ *
+ * <p>Level 0 is the configuration chosen by the user; every higher level is a cheaper configuration
+ * defined by the host. Decisions are taken only on a full window of latencies measured at the
+ * current level, so the same latency sequence always produces the same level changes.
+ */
+public class InferenceRateController {
+
+  /** Thermal status values, mirroring {@code android.os.PowerManager.THERMAL_STATUS_*}. */
+  public static final int THERMAL_STATUS_NONE = 0;
+
+  public static final int THERMAL_STATUS_MODERATE = 2;
+  public static final int THERMAL_STATUS_SEVERE = 3;
+
+  /** Average latency below this fraction of the budget counts as headroom for recovery. */
+  private static final float RECOVERY_RATIO = 0.5f;
+
+  /** Number of consecutive windows with headroom needed before stepping back up. */
+  private static final int RECOVERY_WINDOWS = 4;
+
+  /** Receives degradation level changes. */
+  public interface Listener {
+    void onDegradationLevelChanged(int level);
+  }
+
+  private final long targetIntervalMs;
+  private final long latencyBudgetMs;
+  private final int maxLevel;
+
+  /** Ring buffer of the latencies measured at the current level. */
+  private final long[] latencyWindow;
+
+  private int windowCount;
+  private int windowIndex;
+  private long windowSum;
+  private int windowsWithHeadroom;
+
+  private int level;
+  private int thermalStatus = THERMAL_STATUS_NONE;
+  private long lastStartTimeMs = Long.MIN_VALUE;
+  private Listener listener;
+
+  /**
+   * Creates a rate controller.
+   *
+   * @param targetInferencesPerSecond the maximum inference rate to schedule
+   * @param latencyBudgetMs the average latency above which the controller degrades
+   * @param windowSize the number of latencies averaged per decision
+   * @param maxLevel the highest degradation level the host can apply
+   */
+  public InferenceRateController(
+      float targetInferencesPerSecond, long latencyBudgetMs, int windowSize, int maxLevel) {
+    if (targetInferencesPerSecond <= 0 || latencyBudgetMs <= 0 || windowSize <= 0 || maxLevel < 0) {
+      throw new IllegalArgumentException("Invalid rate controller configuration.");
+    }
+    this.targetIntervalMs = (long) (1000 / targetInferencesPerSecond);
+    this.latencyBudgetMs = latencyBudgetMs;
+    this.latencyWindow = new long[windowSize];
+    this.maxLevel = maxLevel;
+  }
+
+  public synchronized void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Returns whether a frame arriving at {@code nowMs} should be classified, and if so records it as
+   * the start of the next inference. Frames that return false should be dropped.
+   */
+  public synchronized boolean tryStartInference(long nowMs) {
+    if (lastStartTimeMs != Long.MIN_VALUE && nowMs - lastStartTimeMs < getFrameIntervalMs()) {
+      return false;
+    }
+    lastStartTimeMs = nowMs;
+    return true;
+  }
+
+  /** Records the latency of a finished inference and re-evaluates the degradation level. */
+  public void onInferenceFinished(long latencyMs) {
+    Listener levelListener = null;
+    int newLevel;
+    synchronized (this) {
+      windowSum += latencyMs - latencyWindow[windowIndex];
+      latencyWindow[windowIndex] = latencyMs;
+      windowIndex = (windowIndex + 1) % latencyWindow.length;
+      if (windowCount < latencyWindow.length) {
+        windowCount++;
+      }
+      if (windowCount < latencyWindow.length) {
+        return;
+      }
+
+      newLevel = level;
+      long averageLatencyMs = windowSum / windowCount;
+      if ((averageLatencyMs > latencyBudgetMs || thermalStatus >= THERMAL_STATUS_SEVERE)
+          && level < maxLevel) {
+        newLevel = level + 1;
+      } else if (averageLatencyMs < latencyBudgetMs * RECOVERY_RATIO
+          && thermalStatus < THERMAL_STATUS_MODERATE
+          && level > 0) {
+        if (++windowsWithHeadroom >= RECOVERY_WINDOWS) {
+          newLevel = level - 1;
+        }
+      } else {
+        windowsWithHeadroom = 0;
+      }
+      // Every decision consumes the window, so the next one is based on fresh measurements.
+      clearWindow();
+      if (newLevel != level) {
+        level = newLevel;
+        windowsWithHeadroom = 0;
+        levelListener = listener;
+      }
+    }
+    if (levelListener != null) {
+      levelListener.onDegradationLevelChanged(newLevel);
+    }
+  }
+
+  /** Updates the thermal status; hotter devices are paced at a lower inference rate. */
+  public synchronized void setThermalStatus(int thermalStatus) {
+    this.thermalStatus = thermalStatus;
+  }
+
+  /** Returns to level 0 and forgets all measurements, e.g. after the user changed the config. */
+  public synchronized void reset() {
+    level = 0;
+    windowsWithHeadroom = 0;
+    lastStartTimeMs = Long.MIN_VALUE;
+    clearWindow();
+  }
+
+  public synchronized int getLevel() {
+    return level;
+  }
+
+  /** Returns the average latency of the current window, or 0 if nothing was measured yet. */
+  public synchronized long getAverageLatencyMs() {
+    return windowCount == 0 ? 0 : windowSum / windowCount;
+  }
+
+  /** Returns the minimum time between two inference starts for the current thermal status. */
+  public synchronized long getFrameIntervalMs() {
+    if (thermalStatus >= THERMAL_STATUS_SEVERE) {
+      return targetIntervalMs * 4;
+    } else if (thermalStatus >= THERMAL_STATUS_MODERATE) {
+      return targetIntervalMs * 2;
+    }
+    return targetIntervalMs;
+  }
+
+  private void clearWindow() {
+    for (int i = 0; i < latencyWindow.length; i++) {
+      latencyWindow[i] = 0;
+    }
+    windowCount = 0;
+    windowIndex = 0;
+    windowSum = 0;
+  }
+}
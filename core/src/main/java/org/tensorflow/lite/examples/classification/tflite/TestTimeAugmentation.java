@@ -0,0 +1,131 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/**
+ * A set of augmented views of a frame whose classification scores are averaged, for the accuracy
+ * of an ensemble from a single model.
+ *
+ * <p>Every view is a square crop of the frame resized to the model input: the center crop the
+ * classifiers use otherwise, four crops shifted from it towards its corners, and centered crops
+ * zoomed in by the given scales. With flipping, every crop is also classified mirrored. Crops are
+ * in pixels of the frame as it arrives, before it is turned upright, and the mirroring applies to
+ * the upright image.
+ */
+public final class TestTimeAugmentation {
+  private final boolean flip;
+  private final float shift;
+  private final float[] scales;
+
+  /**
+   * Creates a set of augmentations.
+   *
+   * @param flip whether to classify every crop mirrored as well
+   * @param shift how far the shifted crops move from the center crop, as a fraction of its size,
+   *     from 0 inclusive, for no shifted crops, to 1 exclusive; the shifted crops are smaller by
+   *     that fraction, so they stay within the center crop
+   * @param scales the sizes of the zoomed in crops as fractions of the center crop, each in (0, 1]
+   */
+  public TestTimeAugmentation(boolean flip, float shift, float[] scales) {
+    if (!(shift >= 0.0f && shift < 1.0f)) {
+      throw new IllegalArgumentException("The shift must be in [0, 1), got " + shift + ".");
+    }
+    for (float scale : scales) {
+      if (!(scale > 0.0f && scale <= 1.0f)) {
+        throw new IllegalArgumentException("Scales must be in (0, 1], got " + scale + ".");
+      }
+    }
+    this.flip = flip;
+    this.shift = shift;
+    this.scales = scales.clone();
+  }
+
+  /** Returns the number of crops before flipping. */
+  private int getCropCount() {
+    return 1 + (shift > 0.0f ? 4 : 0) + scales.length;
+  }
+
+  /** Returns the number of augmented views, i.e. the batch size of a classification. */
+  public int getCount() {
+    return flip ? 2 * getCropCount() : getCropCount();
+  }
+
+  /**
+   * Returns the crop of every view in whole pixels. The plain center crop comes first, and with
+   * flipping the mirrored views follow the unmirrored ones in the same order.
+   */
+  public BoundingBox[] getCrops(int frameWidth, int frameHeight) {
+    if (frameWidth <= 0 || frameHeight <= 0) {
+      throw new IllegalArgumentException("The frame size must be positive.");
+    }
+    int cropCount = getCropCount();
+    BoundingBox[] crops = new BoundingBox[getCount()];
+    int cropSize = Math.min(frameWidth, frameHeight);
+    int cropLeft = (frameWidth - cropSize) / 2;
+    int cropTop = (frameHeight - cropSize) / 2;
+    int index = 0;
+    crops[index++] = square(cropLeft, cropTop, cropSize);
+    if (shift > 0.0f) {
+      int size = Math.max(1, Math.round(cropSize * (1 - shift)));
+      int far = cropSize - size;
+      crops[index++] = square(cropLeft, cropTop, size);
+      crops[index++] = square(cropLeft + far, cropTop, size);
+      crops[index++] = square(cropLeft, cropTop + far, size);
+      crops[index++] = square(cropLeft + far, cropTop + far, size);
+    }
+    for (float scale : scales) {
+      int size = Math.max(1, Math.round(cropSize * scale));
+      crops[index++] =
+          square(cropLeft + (cropSize - size) / 2, cropTop + (cropSize - size) / 2, size);
+    }
+    if (flip) {
+      System.arraycopy(crops, 0, crops, cropCount, cropCount);
+    }
+    return crops;
+  }
+
+  /** Returns whether a view, in the order of {@link #getCrops}, is mirrored. */
+  public boolean isMirrored(int index) {
+    return index >= getCropCount();
+  }
+
+  private static BoundingBox square(int left, int top, int size) {
+    return new BoundingBox(left, top, left + size, top + size);
+  }
+
+  /**
+   * Averages the scores of all views.
+   *
+   * @param scores the scores of every class in every view, one row of {@code meanScores.length}
+   *     scores per view, e.g. the batched output of a classifier
+   * @param count the number of views in {@code scores}
+   * @param meanScores receives the mean score of every class
+   */
+  public static void average(float[] scores, int count, float[] meanScores) {
+    int classCount = meanScores.length;
+    System.arraycopy(scores, 0, meanScores, 0, classCount);
+    for (int view = 1; view < count; view++) {
+      int offset = view * classCount;
+      for (int i = 0; i < classCount; i++) {
+        meanScores[i] += scores[offset + i];
+      }
+    }
+    float scale = 1.0f / count;
+    for (int i = 0; i < classCount; i++) {
+      meanScores[i] *= scale;
+    }
+  }
+}
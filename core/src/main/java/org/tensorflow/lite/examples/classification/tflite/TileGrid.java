@@ -0,0 +1,205 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A grid of overlapping square tiles over a frame, plus its center crop, to find objects that are
+ * small or off-center in a single center crop.
+ *
+ * <p>The tiles are the smallest squares of which {@code columns} x {@code rows}, overlapping each
+ * other by at least {@code overlap} of their size, cover the whole frame, and they are spread
+ * evenly from edge to edge. Tiles never exceed the shorter side of the frame, so a grid much
+ * longer than the frame overlaps less along it. The first tile is always the centered square the
+ * classifiers crop otherwise, so tiled results never miss what the plain center crop finds. Tiles
+ * are in pixels of the frame as it arrives, before it is turned upright.
+ */
+public final class TileGrid {
+  private final int columns;
+  private final int rows;
+  private final float overlap;
+
+  /**
+   * Creates a grid.
+   *
+   * @param columns the number of tiles across the frame
+   * @param rows the number of tiles down the frame
+   * @param overlap the least overlap of neighboring tiles as a fraction of their size, from 0
+   *     inclusive to 1 exclusive
+   */
+  public TileGrid(int columns, int rows, float overlap) {
+    if (columns <= 0 || rows <= 0) {
+      throw new IllegalArgumentException("A grid needs at least one column and one row.");
+    }
+    if (!(overlap >= 0.0f && overlap < 1.0f)) {
+      throw new IllegalArgumentException("The overlap must be in [0, 1), got " + overlap + ".");
+    }
+    this.columns = columns;
+    this.rows = rows;
+    this.overlap = overlap;
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public float getOverlap() {
+    return overlap;
+  }
+
+  /** Returns the number of tiles, the grid and the center crop. */
+  public int getTileCount() {
+    return columns * rows + 1;
+  }
+
+  /**
+   * Returns the tiles of a frame in whole pixels, the center crop first and then the grid row by
+   * row.
+   */
+  public BoundingBox[] getTiles(int frameWidth, int frameHeight) {
+    if (frameWidth <= 0 || frameHeight <= 0) {
+      throw new IllegalArgumentException("The frame size must be positive.");
+    }
+    BoundingBox[] tiles = new BoundingBox[getTileCount()];
+    int cropSize = Math.min(frameWidth, frameHeight);
+    tiles[0] = square((frameWidth - cropSize) / 2, (frameHeight - cropSize) / 2, cropSize);
+
+    // n tiles of size s overlapping by o * s span (n - (n - 1) * o) * s pixels.
+    int size =
+        (int)
+            Math.ceil(
+                Math.max(
+                    frameWidth / (columns - (columns - 1) * overlap),
+                    frameHeight / (rows - (rows - 1) * overlap)));
+    size = Math.max(1, Math.min(size, cropSize));
+    int index = 1;
+    for (int row = 0; row < rows; row++) {
+      int top = getOffset(row, rows, frameHeight - size);
+      for (int column = 0; column < columns; column++) {
+        tiles[index++] = square(getOffset(column, columns, frameWidth - size), top, size);
+      }
+    }
+    return tiles;
+  }
+
+  /** Spreads {@code count} tiles evenly over {@code space} spare pixels, a single one centered. */
+  private static int getOffset(int position, int count, int space) {
+    if (count == 1) {
+      return space / 2;
+    }
+    return (int) ((long) position * space / (count - 1));
+  }
+
+  private static BoundingBox square(int left, int top, int size) {
+    return new BoundingBox(left, top, left + size, top + size);
+  }
+
+  /**
+   * Merges the scores of all tiles into the {@code k} best classes, best first. The score of a
+   * class is its highest score in any tile, and its location is the tile with that score, the
+   * earliest one on ties.
+   *
+   * @param labels the label of every class
+   * @param tileScores the scores of every class in every tile, one row of {@code labels.size()}
+   *     scores per tile in tile order, e.g. the batched output of a classifier
+   * @param tileCount the number of tiles in {@code tileScores}
+   * @param tiles the tiles, from {@link #getTiles}
+   * @param bestScores receives the highest score of every class, {@code labels.size()} values
+   * @return the merged recognitions, whose id is the index of their class
+   */
+  public static List<Recognition> merge(
+      List<String> labels,
+      float[] tileScores,
+      int tileCount,
+      BoundingBox[] tiles,
+      float[] bestScores,
+      int k) {
+    int classCount = labels.size();
+    System.arraycopy(tileScores, 0, bestScores, 0, classCount);
+    for (int tile = 1; tile < tileCount; tile++) {
+      int offset = tile * classCount;
+      for (int i = 0; i < classCount; i++) {
+        bestScores[i] = Math.max(bestScores[i], tileScores[offset + i]);
+      }
+    }
+    int[] indices = new int[k];
+    int count = TopK.selectIndices(bestScores, classCount, indices);
+    List<Recognition> recognitions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int index = indices[i];
+      // Only the few selected classes look for their tile.
+      int bestTile = 0;
+      while (bestTile < tileCount - 1
+          && tileScores[bestTile * classCount + index] != bestScores[index]) {
+        bestTile++;
+      }
+      recognitions.add(
+          new Recognition(
+              Integer.toString(index), labels.get(index), bestScores[index], tiles[bestTile]));
+    }
+    return recognitions;
+  }
+
+  /**
+   * Merges the top results of every tile into the {@code k} best classes, best first, like {@link
+   * #merge(List, float[], int, BoundingBox[], float[], int)} for classifiers that return
+   * recognitions per tile. Classes are told apart by their id.
+   *
+   * @param tileResults the results of every tile, in tile order
+   * @param tiles the tiles, from {@link #getTiles}
+   */
+  public static List<Recognition> merge(
+      List<List<Recognition>> tileResults, BoundingBox[] tiles, int k) {
+    List<Recognition> best = new ArrayList<>();
+    Map<String, Integer> positions = new HashMap<>();
+    for (int tile = 0; tile < tileResults.size(); tile++) {
+      for (Recognition recognition : tileResults.get(tile)) {
+        Recognition located =
+            new Recognition(
+                recognition.getId(),
+                recognition.getTitle(),
+                recognition.getConfidence(),
+                tiles[tile]);
+        Integer position = positions.get(recognition.getId());
+        if (position == null) {
+          positions.put(recognition.getId(), best.size());
+          best.add(located);
+        } else if (recognition.getConfidence() > best.get(position).getConfidence()) {
+          best.set(position, located);
+        }
+      }
+    }
+    float[] scores = new float[best.size()];
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] = best.get(i).getConfidence();
+    }
+    int[] indices = new int[k];
+    int count = TopK.selectIndices(scores, scores.length, indices);
+    List<Recognition> recognitions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      recognitions.add(best.get(indices[i]));
+    }
+    return recognitions;
+  }
+}
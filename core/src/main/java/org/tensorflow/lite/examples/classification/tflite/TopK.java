@@ -0,0 +1,85 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Selects the most confident results of a classification head. */
+public final class TopK {
+
+  private TopK() {}
+
+  /**
+   * Writes the indices of the {@code out.length} highest of the first {@code length} scores into
+   * {@code out}, best first. Equal scores keep their order, so the result doesn't depend on hashing.
+   *
+   * @return the number of indices written, less than {@code out.length} if there are fewer scores
+   */
+  public static int selectIndices(float[] scores, int length, int[] out) {
+    int k = out.length;
+    int count = 0;
+    for (int i = 0; i < length; i++) {
+      float score = scores[i];
+      if (count == k && !(score > scores[out[k - 1]])) {
+        continue;
+      }
+      // Insertion into the sorted prefix, k is tiny compared to the number of classes.
+      int position = count < k ? count++ : k - 1;
+      while (position > 0 && score > scores[out[position - 1]]) {
+        out[position] = out[position - 1];
+        position--;
+      }
+      out[position] = i;
+    }
+    return count;
+  }
+
+  /**
+   * Returns the {@code k} highest scores as recognitions titled with their labels, best first. The
+   * id of a recognition is the index of its class.
+   *
+   * @param labels the label of every class, in score order
+   * @param scores the score of every class
+   */
+  public static List<Recognition> select(List<String> labels, float[] scores, int k) {
+    if (labels.size() != scores.length) {
+      throw new IllegalArgumentException(
+          "Got " + labels.size() + " labels for " + scores.length + " classes.");
+    }
+    int[] indices = new int[k];
+    int count = selectIndices(scores, scores.length, indices);
+    List<Recognition> recognitions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String label = labels.get(indices[i]);
+      recognitions.add(
+          new Recognition(Integer.toString(indices[i]), label, scores[indices[i]], null));
+    }
+    return recognitions;
+  }
+
+  /** Returns the {@code k} highest scores of a label to score map, best first. */
+  public static List<Recognition> select(Map<String, Float> labeledScores, int k) {
+    List<String> labels = new ArrayList<>(labeledScores.size());
+    float[] scores = new float[labeledScores.size()];
+    for (Map.Entry<String, Float> entry : labeledScores.entrySet()) {
+      scores[labels.size()] = entry.getValue();
+      labels.add(entry.getKey());
+    }
+    return select(labels, scores, k);
+  }
+}
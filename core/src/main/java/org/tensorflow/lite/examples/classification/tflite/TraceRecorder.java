@@ -0,0 +1,229 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records per-frame pipeline events into a fixed-size ring buffer, so latency spikes can be
+ * diagnosed after the fact without a tethered device.
+ *
+ * <p>All storage is allocated up front and recording neither locks nor allocates. Writers claim a
+ * slot with a single atomic increment, so any thread can record, and a single writer thread never
+ * contends. Once the buffer is full the oldest events are overwritten. The buffer can be dumped at
+ * any time as a compact binary file or as Chrome trace JSON, loadable in chrome://tracing or
+ * Perfetto.
+ */
+public final class TraceRecorder {
+
+  /** The pipeline events that can be recorded. */
+  public enum Event {
+    FRAME_ARRIVAL,
+    FRAME_DROP,
+    PLANE_COPY,
+    CONVERSION,
+    PREPROCESS,
+    INFERENCE,
+    POSTPROCESS,
+    UI_POST
+  }
+
+  /** Phases of an event, using the single letter codes of the Chrome trace format. */
+  private static final byte PHASE_BEGIN = 'B';
+
+  private static final byte PHASE_END = 'E';
+  private static final byte PHASE_INSTANT = 'i';
+
+  /** Magic number at the start of binary dumps, followed by the event count and the events. */
+  private static final int BINARY_MAGIC = 0x54524331; // "TRC1"
+
+  private static final Event[] EVENTS = Event.values();
+
+  private final int mask;
+  private final long[] timestampsNs;
+  private final long[] frameIds;
+  private final long[] threadIds;
+  private final byte[] events;
+  private final byte[] phases;
+
+  /** Sequence number of the event in each slot, published after the slot is written. */
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong nextSequence = new AtomicLong();
+  private volatile boolean enabled = true;
+
+  /**
+   * Creates a recorder.
+   *
+   * @param capacity the number of events kept, rounded up to a power of two
+   */
+  public TraceRecorder(int capacity) {
+    if (capacity <= 0 || capacity > (1 << 24)) {
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^24, got " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity - 1) << 1;
+    if (size == 0) {
+      size = 1;
+    }
+    mask = size - 1;
+    timestampsNs = new long[size];
+    frameIds = new long[size];
+    threadIds = new long[size];
+    events = new byte[size];
+    phases = new byte[size];
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, -1);
+    }
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Records the start of an event of the given frame, e.g. its camera timestamp. */
+  public void begin(Event event, long frameId) {
+    record(event, PHASE_BEGIN, frameId);
+  }
+
+  /** Records the end of an event started with {@link #begin}. */
+  public void end(Event event, long frameId) {
+    record(event, PHASE_END, frameId);
+  }
+
+  /** Records an event without duration, e.g. a frame arrival. */
+  public void instant(Event event, long frameId) {
+    record(event, PHASE_INSTANT, frameId);
+  }
+
+  private void record(Event event, byte phase, long frameId) {
+    if (!enabled) {
+      return;
+    }
+    long timestampNs = System.nanoTime();
+    long sequence = nextSequence.getAndIncrement();
+    int slot = (int) (sequence & mask);
+    // Invalidates the slot while it is written, so dumps skip it.
+    sequences.set(slot, -1);
+    timestampsNs[slot] = timestampNs;
+    frameIds[slot] = frameId;
+    threadIds[slot] = Thread.currentThread().getId();
+    events[slot] = (byte) event.ordinal();
+    phases[slot] = phase;
+    sequences.lazySet(slot, sequence);
+  }
+
+  /** Writes the recorded events in the compact binary format, oldest first. */
+  public void dumpBinary(File file) throws IOException {
+    Snapshot snapshot = snapshot();
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(BINARY_MAGIC);
+      out.writeInt(snapshot.count);
+      for (int i = 0; i < snapshot.count; i++) {
+        out.writeLong(snapshot.timestampsNs[i]);
+        out.writeLong(snapshot.frameIds[i]);
+        out.writeLong(snapshot.threadIds[i]);
+        out.writeByte(snapshot.events[i]);
+        out.writeByte(snapshot.phases[i]);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /** Writes the recorded events as Chrome trace JSON, oldest first. */
+  public void dumpChromeTrace(File file) throws IOException {
+    Snapshot snapshot = snapshot();
+    OutputStream stream = new BufferedOutputStream(new FileOutputStream(file));
+    Writer writer = new OutputStreamWriter(stream, Charset.forName("UTF-8"));
+    try {
+      writer.write("{\"traceEvents\":[");
+      for (int i = 0; i < snapshot.count; i++) {
+        if (i > 0) {
+          writer.write(",\n");
+        }
+        writer.write(
+            String.format(
+                Locale.US,
+                "{\"name\":\"%s\",\"ph\":\"%c\",\"ts\":%.3f,\"pid\":0,\"tid\":%d%s,"
+                    + "\"args\":{\"frame\":%d}}",
+                EVENTS[snapshot.events[i]].name(),
+                (char) snapshot.phases[i],
+                snapshot.timestampsNs[i] / 1000.0,
+                snapshot.threadIds[i],
+                snapshot.phases[i] == PHASE_INSTANT ? ",\"s\":\"t\"" : "",
+                snapshot.frameIds[i]));
+      }
+      writer.write("]}\n");
+    } finally {
+      writer.close();
+    }
+  }
+
+  /** Copies the events that are completely written, skipping any overwritten during the copy. */
+  private Snapshot snapshot() {
+    long end = nextSequence.get();
+    long start = Math.max(0, end - (mask + 1));
+    Snapshot snapshot = new Snapshot((int) (end - start));
+    for (long sequence = start; sequence < end; sequence++) {
+      int slot = (int) (sequence & mask);
+      if (sequences.get(slot) != sequence) {
+        continue;
+      }
+      int i = snapshot.count;
+      snapshot.timestampsNs[i] = timestampsNs[slot];
+      snapshot.frameIds[i] = frameIds[slot];
+      snapshot.threadIds[i] = threadIds[slot];
+      snapshot.events[i] = events[slot];
+      snapshot.phases[i] = phases[slot];
+      // Keeps the event only if no writer reused the slot while it was copied.
+      if (sequences.get(slot) == sequence) {
+        snapshot.count++;
+      }
+    }
+    return snapshot;
+  }
+
+  private static final class Snapshot {
+    final long[] timestampsNs;
+    final long[] frameIds;
+    final long[] threadIds;
+    final byte[] events;
+    final byte[] phases;
+    int count;
+
+    Snapshot(int capacity) {
+      timestampsNs = new long[capacity];
+      frameIds = new long[capacity];
+      threadIds = new long[capacity];
+      events = new byte[capacity];
+      phases = new byte[capacity];
+    }
+  }
+}
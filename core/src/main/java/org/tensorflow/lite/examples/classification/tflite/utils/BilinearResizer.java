@@ -0,0 +1,321 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite.utils;
+
+/**
+ * Crops and resizes images with bilinear interpolation, for one source size, crop and destination
+ * size.
+ *
+ * <p>The source position and weight of every destination column and row are computed once, when
+ * the resizer is created, so a frame only costs the interpolation itself. Each source row is
+ * interpolated horizontally once into a reused row buffer, then two such rows are blended for every
+ * destination row, all in 8 bit fixed point. Pixel centers are aligned like {@code
+ * Bitmap.createScaledBitmap} with filtering does, and edges are clamped.
+ *
+ * <p>The result can be rotated by quarter turns and mirrored on the way out: every pixel is
+ * written straight to its rotated position, so turning a frame upright costs no extra pass over
+ * the image.
+ *
+ * <p>ARGB images are resized by the {@link ImageKernels} of the resizer, natively where available.
+ *
+ * <p>Not thread safe, every pipeline owns one.
+ */
+public final class BilinearResizer {
+  /** Fractional bits of the interpolation weights. */
+  static final int WEIGHT_BITS = 8;
+
+  static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+  static final int ROUNDING = 1 << (2 * WEIGHT_BITS - 1);
+
+  private final int srcWidth;
+  private final int srcHeight;
+  private final int dstWidth;
+  private final int dstHeight;
+
+  // Source columns and rows, absolute in the source image, and the weight of the second one.
+  private final int[] x0;
+  private final int[] x1;
+  private final int[] xWeight;
+  private final int[] y0;
+  private final int[] y1;
+  private final int[] yWeight;
+
+  /** Two horizontally interpolated source rows, up to 3 channels per destination column. */
+  private final int[] rowBuffer;
+
+  private final int[] rowIds = new int[2];
+
+  private ImageKernels kernels = ImageKernels.getDefault();
+
+  // Where the pixels of the resized image go in the output, set up for every call.
+  private int outOrigin;
+  private int outColumnStep;
+  private int outRowStep;
+
+  /** Creates a resizer of whole {@code srcWidth} x {@code srcHeight} images. */
+  public BilinearResizer(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+    this(srcWidth, srcHeight, 0, 0, srcWidth, srcHeight, dstWidth, dstHeight);
+  }
+
+  /**
+   * Creates a resizer that scales a crop of {@code srcWidth} x {@code srcHeight} images to the
+   * destination size. Pixels outside of the crop are never read.
+   */
+  public BilinearResizer(
+      int srcWidth,
+      int srcHeight,
+      int cropLeft,
+      int cropTop,
+      int cropWidth,
+      int cropHeight,
+      int dstWidth,
+      int dstHeight) {
+    if (cropWidth <= 0 || cropHeight <= 0 || dstWidth <= 0 || dstHeight <= 0) {
+      throw new IllegalArgumentException("Crop and destination sizes must be positive.");
+    }
+    if (cropLeft < 0
+        || cropTop < 0
+        || cropLeft + cropWidth > srcWidth
+        || cropTop + cropHeight > srcHeight) {
+      throw new IllegalArgumentException("The crop must lie within the source image.");
+    }
+    this.srcWidth = srcWidth;
+    this.srcHeight = srcHeight;
+    this.dstWidth = dstWidth;
+    this.dstHeight = dstHeight;
+    x0 = new int[dstWidth];
+    x1 = new int[dstWidth];
+    xWeight = new int[dstWidth];
+    fillTable(cropLeft, cropWidth, dstWidth, x0, x1, xWeight);
+    y0 = new int[dstHeight];
+    y1 = new int[dstHeight];
+    yWeight = new int[dstHeight];
+    fillTable(cropTop, cropHeight, dstHeight, y0, y1, yWeight);
+    rowBuffer = new int[2 * 3 * dstWidth];
+  }
+
+  /**
+   * Creates a resizer that scales the centered square of {@code srcWidth} x {@code srcHeight}
+   * images, the same crop as {@code ResizeWithCropOrPadOp(cropSize, cropSize)} with the shorter
+   * side as crop size.
+   */
+  public static BilinearResizer centerCrop(
+      int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+    int cropSize = Math.min(srcWidth, srcHeight);
+    return new BilinearResizer(
+        srcWidth,
+        srcHeight,
+        (srcWidth - cropSize) / 2,
+        (srcHeight - cropSize) / 2,
+        cropSize,
+        cropSize,
+        dstWidth,
+        dstHeight);
+  }
+
+  /** Returns whether this resizer was created for sources of the given size. */
+  public boolean hasSourceSize(int width, int height) {
+    return width == srcWidth && height == srcHeight;
+  }
+
+  /** Sets the kernels that resize ARGB images, {@link ImageKernels#getDefault} by default. */
+  public void setKernels(ImageKernels kernels) {
+    this.kernels = kernels;
+  }
+
+  public int getDstWidth() {
+    return dstWidth;
+  }
+
+  public int getDstHeight() {
+    return dstHeight;
+  }
+
+  /** Returns the width of the output, after turning the resized image by {@code quarterTurns}. */
+  public int getOutputWidth(int quarterTurns) {
+    return (quarterTurns & 1) == 0 ? dstWidth : dstHeight;
+  }
+
+  /** Returns the height of the output, after turning the resized image by {@code quarterTurns}. */
+  public int getOutputHeight(int quarterTurns) {
+    return (quarterTurns & 1) == 0 ? dstHeight : dstWidth;
+  }
+
+  /**
+   * Resizes ARGB_8888 pixels. The color channels are interpolated, the result is opaque.
+   *
+   * @param src the source pixels, {@code srcStride} per row
+   * @param dst receives the {@code dstWidth} x {@code dstHeight} pixels, row by row without padding
+   */
+  public void resizeArgb(int[] src, int srcStride, int[] dst) {
+    resizeArgb(src, srcStride, 0, false, dst);
+  }
+
+  /**
+   * Resizes ARGB_8888 pixels, then rotates and mirrors them, in a single pass.
+   *
+   * @param src the source pixels, {@code srcStride} per row
+   * @param quarterTurns counter-clockwise quarter turns of the resized image, like {@code
+   *     Rot90Op}, see {@link OrientationUtils#getQuarterTurns}
+   * @param mirror whether to flip the turned image horizontally, e.g. for a front camera
+   * @param dst receives the {@link #getOutputWidth} x {@link #getOutputHeight} pixels, row by row
+   *     without padding
+   */
+  public void resizeArgb(int[] src, int srcStride, int quarterTurns, boolean mirror, int[] dst) {
+    setOrientation(quarterTurns, mirror);
+    kernels.resizeBilinearArgb(
+        src,
+        srcStride,
+        x0,
+        x1,
+        xWeight,
+        y0,
+        y1,
+        yWeight,
+        outOrigin,
+        outColumnStep,
+        outRowStep,
+        rowBuffer,
+        dst);
+  }
+
+  /**
+   * Resizes a single channel plane, e.g. the luminance of a frame or one channel of planar RGB.
+   *
+   * @param src the source samples, {@code srcStride} per row starting at {@code srcOffset}
+   * @param dst receives the {@code dstWidth} x {@code dstHeight} samples, row by row without
+   *     padding
+   */
+  public void resizePlane(byte[] src, int srcOffset, int srcStride, byte[] dst) {
+    resizePlane(src, srcOffset, srcStride, 0, false, dst);
+  }
+
+  /**
+   * Resizes a single channel plane, then rotates and mirrors it, in a single pass. See {@link
+   * #resizeArgb(int[], int, int, boolean, int[])}.
+   */
+  public void resizePlane(
+      byte[] src, int srcOffset, int srcStride, int quarterTurns, boolean mirror, byte[] dst) {
+    rowIds[0] = -1;
+    rowIds[1] = -1;
+    setOrientation(quarterTurns, mirror);
+    for (int dy = 0; dy < dstHeight; dy++) {
+      int top = planeRow(src, srcOffset, srcStride, y0[dy], y1[dy]) * dstWidth;
+      int bottom = planeRow(src, srcOffset, srcStride, y1[dy], y0[dy]) * dstWidth;
+      int wy = yWeight[dy];
+      int wy0 = WEIGHT_ONE - wy;
+      int out = outOrigin + dy * outRowStep;
+      for (int dx = 0; dx < dstWidth; dx++, out += outColumnStep) {
+        dst[out] =
+            (byte)
+                ((rowBuffer[top + dx] * wy0 + rowBuffer[bottom + dx] * wy + ROUNDING)
+                    >> (2 * WEIGHT_BITS));
+      }
+    }
+  }
+
+  /**
+   * Sets up the output position of the resized pixel (x, y) as {@code outOrigin + x *
+   * outColumnStep + y * outRowStep}.
+   */
+  private void setOrientation(int quarterTurns, boolean mirror) {
+    int outWidth = getOutputWidth(quarterTurns);
+    switch (quarterTurns & 3) {
+      case 1:
+        // Counter-clockwise: the top right corner ends up top left, rows become columns.
+        outOrigin = (dstWidth - 1) * outWidth;
+        outColumnStep = -outWidth;
+        outRowStep = 1;
+        break;
+      case 2:
+        outOrigin = (dstHeight - 1) * outWidth + dstWidth - 1;
+        outColumnStep = -1;
+        outRowStep = -outWidth;
+        break;
+      case 3:
+        outOrigin = dstHeight - 1;
+        outColumnStep = outWidth;
+        outRowStep = -1;
+        break;
+      default:
+        outOrigin = 0;
+        outColumnStep = 1;
+        outRowStep = outWidth;
+    }
+    if (mirror && outWidth > 1) {
+      // Flips the output column of every pixel and keeps its output row.
+      int originRow = outOrigin / outWidth;
+      int originColumn = outOrigin - originRow * outWidth;
+      outOrigin = originRow * outWidth + outWidth - 1 - originColumn;
+      outColumnStep = Math.abs(outColumnStep) == 1 ? -outColumnStep : outColumnStep;
+      outRowStep = Math.abs(outRowStep) == 1 ? -outRowStep : outRowStep;
+    }
+  }
+
+  /**
+   * Returns the half of the row buffer holding source row {@code y} interpolated horizontally,
+   * computing it into the half that doesn't hold {@code keepY} if needed.
+   */
+  private int planeRow(byte[] src, int srcOffset, int srcStride, int y, int keepY) {
+    int slot = findSlot(y, keepY);
+    if (rowIds[slot] != y) {
+      int row = slot * dstWidth;
+      int rowStart = srcOffset + y * srcStride;
+      for (int dx = 0; dx < dstWidth; dx++) {
+        int wx = xWeight[dx];
+        rowBuffer[row + dx] =
+            (src[rowStart + x0[dx]] & 0xff) * (WEIGHT_ONE - wx)
+                + (src[rowStart + x1[dx]] & 0xff) * wx;
+      }
+      rowIds[slot] = y;
+    }
+    return slot;
+  }
+
+  private int findSlot(int y, int keepY) {
+    if (rowIds[0] == y) {
+      return 0;
+    }
+    if (rowIds[1] == y) {
+      return 1;
+    }
+    return rowIds[0] == keepY ? 1 : 0;
+  }
+
+  /**
+   * Maps every destination index to the two nearest source indices within {@code [start, start +
+   * size)} and the fixed point weight of the second one.
+   */
+  private static void fillTable(
+      int start, int size, int dstSize, int[] first, int[] second, int[] weights) {
+    float scale = (float) size / dstSize;
+    for (int d = 0; d < dstSize; d++) {
+      float position = (d + 0.5f) * scale - 0.5f;
+      if (position < 0) {
+        position = 0;
+      }
+      int index = Math.min((int) position, size - 1);
+      int weight = Math.round((position - index) * WEIGHT_ONE);
+      if (weight == WEIGHT_ONE) {
+        index = Math.min(index + 1, size - 1);
+        weight = 0;
+      }
+      first[d] = start + index;
+      second[d] = start + Math.min(index + 1, size - 1);
+      weights[d] = weight;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A YUV_420_888 camera frame, shaped like {@code android.media.Image} without depending on it: a
+ * size, a timestamp and three planes in Y, U, V order, each with a buffer, a row stride and a pixel
+ * stride.
+ */
+public interface Frame {
+
+  int getWidth();
+
+  int getHeight();
+
+  /** Returns the time the frame was captured, in nanoseconds of an arbitrary clock. */
+  long getTimestamp();
+
+  int getPlaneCount();
+
+  /** Returns the data of a plane, positioned at its start. */
+  ByteBuffer getPlaneBuffer(int plane);
+
+  int getRowStride(int plane);
+
+  int getPixelStride(int plane);
+}
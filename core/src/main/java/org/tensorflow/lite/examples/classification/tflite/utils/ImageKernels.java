@@ -0,0 +1,96 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite.utils;
+
+/**
+ * The per-pixel kernels of the pipeline. Every implementation produces exactly the pixels of the
+ * Java kernels in {@link ImageUtils}, so they can be swapped freely.
+ */
+public interface ImageKernels {
+
+  /** System property forcing the kernels of {@link #getDefault}, {@code java} or {@code native}. */
+  String KERNELS_PROPERTY = "classification.kernels";
+
+  /** Returns a short name of the implementation for logs and reports. */
+  String getName();
+
+  /** See {@link ImageUtils#convertYUV420ToARGB8888}. */
+  void convertYUV420ToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out);
+
+  /** See {@link ImageUtils#convertYUV420ToRGBFloat}. */
+  void convertYUV420ToRGBFloat(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      float mean,
+      float std,
+      float[] out);
+
+  /** See {@link ImageUtils#resizeBilinearArgb}. */
+  void resizeBilinearArgb(
+      int[] src,
+      int srcStride,
+      int[] x0,
+      int[] x1,
+      int[] xWeights,
+      int[] y0,
+      int[] y1,
+      int[] yWeights,
+      int outOrigin,
+      int outColumnStep,
+      int outRowStep,
+      int[] rowBuffer,
+      int[] dst);
+
+  /** Returns the pure Java kernels, available everywhere. */
+  static ImageKernels java() {
+    return JavaImageKernels.INSTANCE;
+  }
+
+  /** Returns the native kernels, or null if their library can't be loaded on this platform. */
+  static ImageKernels nativeOrNull() {
+    return NativeImageKernels.getInstance();
+  }
+
+  /**
+   * Returns the native kernels where available, falling back to the Java ones. {@link
+   * #KERNELS_PROPERTY} can force either.
+   */
+  static ImageKernels getDefault() {
+    if ("java".equals(System.getProperty(KERNELS_PROPERTY))) {
+      return java();
+    }
+    ImageKernels nativeKernels = nativeOrNull();
+    if (nativeKernels == null && "native".equals(System.getProperty(KERNELS_PROPERTY))) {
+      throw new IllegalStateException("Native kernels requested but not available.");
+    }
+    return nativeKernels != null ? nativeKernels : java();
+  }
+}
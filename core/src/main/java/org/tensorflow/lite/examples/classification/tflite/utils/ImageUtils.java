@@ -0,0 +1,405 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/** Utility class for manipulating images. */
+public class ImageUtils {
+  // This value is 2 ^ 18 - 1, and is used to clamp the RGB values before their ranges
+  // are normalized to eight bits.
+  static final int kMaxChannelValue = 262143;
+
+  private static int YUV2RGB(int y, int u, int v) {
+    // Adjust and check YUV values
+    y = Math.max((y - 16), 0);
+    u -= 128;
+    v -= 128;
+
+    // This is the floating point equivalent. We do the conversion in integer
+    // because some Android devices do not have floating point in hardware.
+    // nR = (int)(1.164 * nY + 2.018 * nU);
+    // nG = (int)(1.164 * nY - 0.813 * nV - 0.391 * nU);
+    // nB = (int)(1.164 * nY + 1.596 * nV);
+    int y1192 = 1192 * y;
+    int r = (y1192 + 1634 * v);
+    int g = (y1192 - 833 * v - 400 * u);
+    int b = (y1192 + 2066 * u);
+
+    // Clipping RGB values to be inside boundaries [ 0 , kMaxChannelValue ]
+    r = r > kMaxChannelValue ? kMaxChannelValue : (Math.max(r, 0));
+    g = g > kMaxChannelValue ? kMaxChannelValue : (Math.max(g, 0));
+    b = b > kMaxChannelValue ? kMaxChannelValue : (Math.max(b, 0));
+
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+
+  /**
+   * Same as {@link #YUV2RGB} with the chroma terms precomputed, so pixels sharing chroma only
+   * weight it once.
+   */
+  private static int toARGB(int y, int rv, int guv, int bu) {
+    int y1192 = 1192 * Math.max((y - 16), 0);
+    int r = y1192 + rv;
+    int g = y1192 + guv;
+    int b = y1192 + bu;
+
+    r = r > kMaxChannelValue ? kMaxChannelValue : (Math.max(r, 0));
+    g = g > kMaxChannelValue ? kMaxChannelValue : (Math.max(g, 0));
+    b = b > kMaxChannelValue ? kMaxChannelValue : (Math.max(b, 0));
+
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+
+  /** How the chroma samples of a YUV_420_888 frame are laid out in their planes. */
+  public enum ChromaLayout {
+    /** Separate U and V planes with a pixel stride of 1, e.g. I420. */
+    PLANAR,
+    /** U and V interleaved in one buffer with a pixel stride of 2, e.g. NV21 and NV12. */
+    SEMI_PLANAR,
+    /** Any other pixel stride. */
+    GENERIC;
+
+    /** Returns the layout of chroma planes with the given pixel stride. */
+    public static ChromaLayout of(int uvPixelStride) {
+      if (uvPixelStride == 1) {
+        return PLANAR;
+      } else if (uvPixelStride == 2) {
+        return SEMI_PLANAR;
+      }
+      return GENERIC;
+    }
+  }
+
+  /**
+   * Converts a YUV_420_888 frame to ARGB_8888 pixels, detecting the chroma layout from {@code
+   * uvPixelStride}.
+   */
+  public static void convertYUV420ToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    convertYUV420ToARGB8888(
+        ChromaLayout.of(uvPixelStride),
+        yData,
+        uData,
+        vData,
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        out);
+  }
+
+  /**
+   * Converts a YUV_420_888 frame whose chroma layout was detected up front, e.g. once per camera
+   * session, with the kernel for that layout. All kernels produce exactly the same pixels.
+   */
+  public static void convertYUV420ToARGB8888(
+      ChromaLayout layout,
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    switch (layout) {
+      case PLANAR:
+        convertPlanarToARGB8888(yData, uData, vData, width, height, yRowStride, uvRowStride, out);
+        break;
+      case SEMI_PLANAR:
+        convertSemiPlanarToARGB8888(
+            yData, uData, vData, width, height, yRowStride, uvRowStride, out);
+        break;
+      default:
+        convertGenericToARGB8888(
+            yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    }
+  }
+
+  /**
+   * Converts a frame with separate U and V planes and a chroma pixel stride of 1. The chroma of a
+   * pixel pair is read and weighted once for both pixels.
+   */
+  public static void convertPlanarToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int[] out) {
+    int yp = 0;
+    for (int j = 0; j < height; j++) {
+      int pY = yRowStride * j;
+      int pUV = uvRowStride * (j >> 1);
+      int i = 0;
+      for (; i < width - 1; i += 2, pUV++) {
+        int u = (0xff & uData[pUV]) - 128;
+        int v = (0xff & vData[pUV]) - 128;
+        int rv = 1634 * v;
+        int guv = -833 * v - 400 * u;
+        int bu = 2066 * u;
+        out[yp++] = toARGB(0xff & yData[pY + i], rv, guv, bu);
+        out[yp++] = toARGB(0xff & yData[pY + i + 1], rv, guv, bu);
+      }
+      if (i < width) {
+        out[yp++] = YUV2RGB(0xff & yData[pY + i], 0xff & uData[pUV], 0xff & vData[pUV]);
+      }
+    }
+  }
+
+  /**
+   * Converts a frame with interleaved chroma, i.e. a chroma pixel stride of 2, as most camera HALs
+   * produce. The chroma of a pixel pair is read and weighted once for both pixels.
+   */
+  public static void convertSemiPlanarToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int[] out) {
+    int yp = 0;
+    for (int j = 0; j < height; j++) {
+      int pY = yRowStride * j;
+      int pUV = uvRowStride * (j >> 1);
+      int i = 0;
+      for (; i < width - 1; i += 2, pUV += 2) {
+        int u = (0xff & uData[pUV]) - 128;
+        int v = (0xff & vData[pUV]) - 128;
+        int rv = 1634 * v;
+        int guv = -833 * v - 400 * u;
+        int bu = 2066 * u;
+        out[yp++] = toARGB(0xff & yData[pY + i], rv, guv, bu);
+        out[yp++] = toARGB(0xff & yData[pY + i + 1], rv, guv, bu);
+      }
+      if (i < width) {
+        out[yp++] = YUV2RGB(0xff & yData[pY + i], 0xff & uData[pUV], 0xff & vData[pUV]);
+      }
+    }
+  }
+
+  /** Converts a frame with any chroma pixel stride, computing the chroma offset of every pixel. */
+  public static void convertGenericToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    int yp = 0;
+    for (int j = 0; j < height; j++) {
+      int pY = yRowStride * j;
+      int pUV = uvRowStride * (j >> 1);
+
+      for (int i = 0; i < width; i++) {
+        int uv_offset = pUV + (i >> 1) * uvPixelStride;
+
+        out[yp++] = YUV2RGB(0xff & yData[pY + i], 0xff & uData[uv_offset], 0xff & vData[uv_offset]);
+      }
+    }
+  }
+
+  /**
+   * Converts a YUV_420_888 frame to normalized RGB floats, three per pixel in row order, as {@code
+   * (channel - mean) / std}. The channels are exactly those of {@link #convertYUV420ToARGB8888}.
+   */
+  public static void convertYUV420ToRGBFloat(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      float mean,
+      float std,
+      float[] out) {
+    int op = 0;
+    for (int j = 0; j < height; j++) {
+      int pY = yRowStride * j;
+      int pUV = uvRowStride * (j >> 1);
+
+      for (int i = 0; i < width; i++) {
+        int uvOffset = pUV + (i >> 1) * uvPixelStride;
+        int argb = YUV2RGB(0xff & yData[pY + i], 0xff & uData[uvOffset], 0xff & vData[uvOffset]);
+        out[op++] = (((argb >> 16) & 0xff) - mean) / std;
+        out[op++] = (((argb >> 8) & 0xff) - mean) / std;
+        out[op++] = ((argb & 0xff) - mean) / std;
+      }
+    }
+  }
+
+  /**
+   * Writes ARGB pixels to a float input tensor, three values per pixel in row order, as {@code
+   * (channel - mean) / std}. Values are written from index 0 without moving the buffer position.
+   */
+  public static void writeRgbFloat(
+      int[] argb, int pixelCount, float mean, float std, FloatBuffer out) {
+    writeRgbFloat(argb, pixelCount, mean, std, out, 0);
+  }
+
+  /**
+   * Writes ARGB pixels to a float input tensor from index {@code outOffset} on, e.g. one image of a
+   * batch, see {@link #writeRgbFloat(int[], int, float, float, FloatBuffer)}.
+   */
+  public static void writeRgbFloat(
+      int[] argb, int pixelCount, float mean, float std, FloatBuffer out, int outOffset) {
+    int op = outOffset;
+    for (int i = 0; i < pixelCount; i++) {
+      int pixel = argb[i];
+      out.put(op++, (((pixel >> 16) & 0xff) - mean) / std);
+      out.put(op++, (((pixel >> 8) & 0xff) - mean) / std);
+      out.put(op++, ((pixel & 0xff) - mean) / std);
+    }
+  }
+
+  /**
+   * Writes ARGB pixels to a UINT8 input tensor, three bytes per pixel in row order. A normalization
+   * other than mean 0 and std 1 is applied in float and clamped to 0..255, truncating fractions.
+   * Values are written from index 0 without moving the buffer position.
+   */
+  public static void writeRgbUint8(
+      int[] argb, int pixelCount, float mean, float std, ByteBuffer out) {
+    writeRgbUint8(argb, pixelCount, mean, std, out, 0);
+  }
+
+  /**
+   * Writes ARGB pixels to a UINT8 input tensor from index {@code outOffset} on, e.g. one image of a
+   * batch, see {@link #writeRgbUint8(int[], int, float, float, ByteBuffer)}.
+   */
+  public static void writeRgbUint8(
+      int[] argb, int pixelCount, float mean, float std, ByteBuffer out, int outOffset) {
+    int op = outOffset;
+    if (mean == 0.0f && std == 1.0f) {
+      for (int i = 0; i < pixelCount; i++) {
+        int pixel = argb[i];
+        out.put(op++, (byte) (pixel >> 16));
+        out.put(op++, (byte) (pixel >> 8));
+        out.put(op++, (byte) pixel);
+      }
+      return;
+    }
+    for (int i = 0; i < pixelCount; i++) {
+      int pixel = argb[i];
+      out.put(op++, toUint8((((pixel >> 16) & 0xff) - mean) / std));
+      out.put(op++, toUint8((((pixel >> 8) & 0xff) - mean) / std));
+      out.put(op++, toUint8(((pixel & 0xff) - mean) / std));
+    }
+  }
+
+  private static byte toUint8(float value) {
+    return (byte) (int) Math.max(0.0f, Math.min(255.0f, value));
+  }
+
+  /**
+   * The ARGB kernel of {@link BilinearResizer}: interpolates the rows of {@code src} horizontally
+   * with the column tables, two at a time into {@code rowBuffer}, blends them with the row tables
+   * and writes every pixel to {@code outOrigin + x * outColumnStep + y * outRowStep}.
+   *
+   * @param rowBuffer scratch space for 6 ints per destination column
+   */
+  public static void resizeBilinearArgb(
+      int[] src,
+      int srcStride,
+      int[] x0,
+      int[] x1,
+      int[] xWeights,
+      int[] y0,
+      int[] y1,
+      int[] yWeights,
+      int outOrigin,
+      int outColumnStep,
+      int outRowStep,
+      int[] rowBuffer,
+      int[] dst) {
+    int dstWidth = x0.length;
+    int rowSize = 3 * dstWidth;
+    int shift = 2 * BilinearResizer.WEIGHT_BITS;
+    int rounding = BilinearResizer.ROUNDING;
+    // The source rows held by the two halves of the row buffer.
+    int row0 = -1;
+    int row1 = -1;
+    for (int dy = 0; dy < y0.length; dy++) {
+      int top;
+      int bottom;
+      if (y0[dy] == row0 || y0[dy] == row1) {
+        top = y0[dy] == row0 ? 0 : rowSize;
+      } else if (y1[dy] == row0) {
+        top = rowSize;
+        row1 = y0[dy];
+        interpolateRow(src, y0[dy] * srcStride, x0, x1, xWeights, rowBuffer, top);
+      } else {
+        top = 0;
+        row0 = y0[dy];
+        interpolateRow(src, y0[dy] * srcStride, x0, x1, xWeights, rowBuffer, top);
+      }
+      if (y1[dy] == row0 || y1[dy] == row1) {
+        bottom = y1[dy] == row0 ? 0 : rowSize;
+      } else if (top == 0) {
+        bottom = rowSize;
+        row1 = y1[dy];
+        interpolateRow(src, y1[dy] * srcStride, x0, x1, xWeights, rowBuffer, bottom);
+      } else {
+        bottom = 0;
+        row0 = y1[dy];
+        interpolateRow(src, y1[dy] * srcStride, x0, x1, xWeights, rowBuffer, bottom);
+      }
+
+      int wy = yWeights[dy];
+      int wy0 = BilinearResizer.WEIGHT_ONE - wy;
+      int out = outOrigin + dy * outRowStep;
+      for (int c = 0; c < rowSize; c += 3, out += outColumnStep) {
+        int r = (rowBuffer[top + c] * wy0 + rowBuffer[bottom + c] * wy + rounding) >> shift;
+        int g = (rowBuffer[top + c + 1] * wy0 + rowBuffer[bottom + c + 1] * wy + rounding) >> shift;
+        int b = (rowBuffer[top + c + 2] * wy0 + rowBuffer[bottom + c + 2] * wy + rounding) >> shift;
+        dst[out] = 0xff000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+  }
+
+  private static void interpolateRow(
+      int[] src, int rowStart, int[] x0, int[] x1, int[] xWeights, int[] rowBuffer, int offset) {
+    for (int dx = 0, c = offset; dx < x0.length; dx++, c += 3) {
+      int p0 = src[rowStart + x0[dx]];
+      int p1 = src[rowStart + x1[dx]];
+      int wx = xWeights[dx];
+      int wx0 = BilinearResizer.WEIGHT_ONE - wx;
+      rowBuffer[c] = ((p0 >> 16) & 0xff) * wx0 + ((p1 >> 16) & 0xff) * wx;
+      rowBuffer[c + 1] = ((p0 >> 8) & 0xff) * wx0 + ((p1 >> 8) & 0xff) * wx;
+      rowBuffer[c + 2] = (p0 & 0xff) * wx0 + (p1 & 0xff) * wx;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite.utils;
+
+/** {@link ImageKernels} in plain Java, see {@link ImageUtils}. */
+final class JavaImageKernels implements ImageKernels {
+  static final JavaImageKernels INSTANCE = new JavaImageKernels();
+
+  private JavaImageKernels() {}
+
+  @Override
+  public String getName() {
+    return "java";
+  }
+
+  @Override
+  public void convertYUV420ToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    ImageUtils.convertYUV420ToARGB8888(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+  }
+
+  @Override
+  public void convertYUV420ToRGBFloat(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      float mean,
+      float std,
+      float[] out) {
+    ImageUtils.convertYUV420ToRGBFloat(
+        yData,
+        uData,
+        vData,
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        mean,
+        std,
+        out);
+  }
+
+  @Override
+  public void resizeBilinearArgb(
+      int[] src,
+      int srcStride,
+      int[] x0,
+      int[] x1,
+      int[] xWeights,
+      int[] y0,
+      int[] y1,
+      int[] yWeights,
+      int outOrigin,
+      int outColumnStep,
+      int outRowStep,
+      int[] rowBuffer,
+      int[] dst) {
+    ImageUtils.resizeBilinearArgb(
+        src,
+        srcStride,
+        x0,
+        x1,
+        xWeights,
+        y0,
+        y1,
+        yWeights,
+        outOrigin,
+        outColumnStep,
+        outRowStep,
+        rowBuffer,
+        dst);
+  }
+}
@@ -0,0 +1,227 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite.utils;
+
+/**
+ * {@link ImageKernels} in C, see {@code src/main/cpp}. The library is loaded on first use; where it
+ * isn't packaged or built for the platform, {@link #getInstance} returns null.
+ *
+ * <p>The native code trusts its arguments, so every bound is checked here first, the same accesses
+ * the Java kernels would fail on.
+ */
+final class NativeImageKernels implements ImageKernels {
+  static final String LIBRARY_NAME = "imagekernels";
+
+  private static final NativeImageKernels INSTANCE = load();
+
+  private NativeImageKernels() {}
+
+  static NativeImageKernels getInstance() {
+    return INSTANCE;
+  }
+
+  private static NativeImageKernels load() {
+    try {
+      System.loadLibrary(LIBRARY_NAME);
+      return new NativeImageKernels();
+    } catch (UnsatisfiedLinkError | SecurityException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "native";
+  }
+
+  @Override
+  public void convertYUV420ToARGB8888(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    checkYuv(yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride);
+    checkLength("out", out.length, (long) width * height);
+    nativeConvertYuvToArgb(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+  }
+
+  @Override
+  public void convertYUV420ToRGBFloat(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      float mean,
+      float std,
+      float[] out) {
+    checkYuv(yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride);
+    checkLength("out", out.length, 3L * width * height);
+    nativeConvertYuvToRgbFloat(
+        yData,
+        uData,
+        vData,
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        mean,
+        std,
+        out);
+  }
+
+  @Override
+  public void resizeBilinearArgb(
+      int[] src,
+      int srcStride,
+      int[] x0,
+      int[] x1,
+      int[] xWeights,
+      int[] y0,
+      int[] y1,
+      int[] yWeights,
+      int outOrigin,
+      int outColumnStep,
+      int outRowStep,
+      int[] rowBuffer,
+      int[] dst) {
+    int dstWidth = x0.length;
+    int dstHeight = y0.length;
+    if (x1.length != dstWidth
+        || xWeights.length != dstWidth
+        || y1.length != dstHeight
+        || yWeights.length != dstHeight) {
+      throw new IllegalArgumentException("Tables of different lengths.");
+    }
+    checkLength("rowBuffer", rowBuffer.length, 6L * dstWidth);
+    int maxColumn = maxIndex(x0, x1);
+    int maxRow = maxIndex(y0, y1);
+    if (srcStride < maxColumn + 1) {
+      throw new IllegalArgumentException("Source columns beyond the stride.");
+    }
+    checkLength("src", src.length, (long) maxRow * srcStride + maxColumn + 1);
+    // The corners of the resized image are the extremes of the output positions.
+    long right = (long) (dstWidth - 1) * outColumnStep;
+    long down = (long) (dstHeight - 1) * outRowStep;
+    for (long corner :
+        new long[] {outOrigin, outOrigin + right, outOrigin + down, outOrigin + right + down}) {
+      if (corner < 0 || corner >= dst.length) {
+        throw new ArrayIndexOutOfBoundsException("Output position " + corner + " out of bounds.");
+      }
+    }
+    nativeResizeBilinearArgb(
+        src,
+        srcStride,
+        x0,
+        x1,
+        xWeights,
+        y0,
+        y1,
+        yWeights,
+        outOrigin,
+        outColumnStep,
+        outRowStep,
+        rowBuffer,
+        dst);
+  }
+
+  private static void checkYuv(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride) {
+    if (width <= 0 || height <= 0 || yRowStride < width || uvRowStride < 0 || uvPixelStride < 0) {
+      throw new IllegalArgumentException("Invalid frame size or strides.");
+    }
+    checkLength("yData", yData.length, (long) (height - 1) * yRowStride + width);
+    long uvLength =
+        (long) ((height - 1) >> 1) * uvRowStride + (long) ((width - 1) >> 1) * uvPixelStride + 1;
+    checkLength("uData", uData.length, uvLength);
+    checkLength("vData", vData.length, uvLength);
+  }
+
+  /** Returns the largest index of two tables, which must not hold negative ones. */
+  private static int maxIndex(int[] first, int[] second) {
+    int max = 0;
+    for (int i = 0; i < first.length; i++) {
+      if (first[i] < 0 || second[i] < 0) {
+        throw new IllegalArgumentException("Negative source index.");
+      }
+      max = Math.max(max, Math.max(first[i], second[i]));
+    }
+    return max;
+  }
+
+  private static void checkLength(String name, int length, long required) {
+    if (length < required) {
+      throw new ArrayIndexOutOfBoundsException(
+          name + " holds " + length + " elements, " + required + " needed.");
+    }
+  }
+
+  private static native void nativeConvertYuvToArgb(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out);
+
+  private static native void nativeConvertYuvToRgbFloat(
+      byte[] yData,
+      byte[] uData,
+      byte[] vData,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      float mean,
+      float std,
+      float[] out);
+
+  private static native void nativeResizeBilinearArgb(
+      int[] src,
+      int srcStride,
+      int[] x0,
+      int[] x1,
+      int[] xWeights,
+      int[] y0,
+      int[] y1,
+      int[] yWeights,
+      int outOrigin,
+      int outColumnStep,
+      int outRowStep,
+      int[] rowBuffer,
+      int[] dst);
+}
@@ -0,0 +1,35 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite.utils;
+
+/** Utility class for camera sensor orientations. */
+public final class OrientationUtils {
+
+  private OrientationUtils() {}
+
+  /**
+   * Returns the number of counter-clockwise quarter turns that bring a frame upright, 0 to 3.
+   * Orientations are rounded down to quarter turns, those outside of [0, 360) aren't rotated.
+   *
+   * @param sensorOrientation the rotation of the frame in degrees
+   */
+  public static int getQuarterTurns(int sensorOrientation) {
+    // See explanation for rotation op
+    // https://github.com/tensorflow/tflite-support/blob/master/tensorflow_lite_support/java/src/java/org/tensorflow/lite/support/image/ops/Rot90Op.java
+    int divisionResult = sensorOrientation / 90;
+    return divisionResult >= 1 && divisionResult <= 3 ? divisionResult : 0;
+  }
+}
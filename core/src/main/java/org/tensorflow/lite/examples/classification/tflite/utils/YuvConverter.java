@@ -0,0 +1,114 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite.utils;
+
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageUtils.ChromaLayout;
+
+/**
+ * Converts {@link Frame}s to ARGB_8888 pixels with {@link ImageKernels}, reusing its arrays across
+ * frames of the same size. The chroma layout is detected when the planes are copied, and the
+ * kernels run the conversion specialized for it. Not thread safe, every pipeline owns one.
+ */
+public final class YuvConverter {
+  private final ImageKernels kernels;
+  private final byte[][] yuvBytes = new byte[3][];
+  private int[] argb;
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  private ChromaLayout chromaLayout;
+
+  /** Creates a converter running on {@link ImageKernels#getDefault}. */
+  public YuvConverter() {
+    this(ImageKernels.getDefault());
+  }
+
+  public YuvConverter(ImageKernels kernels) {
+    this.kernels = kernels;
+  }
+
+  /**
+   * Copies the planes of a frame into reused arrays, after which the frame is no longer needed and
+   * can be released.
+   */
+  public void copyPlanes(Frame frame) {
+    if (frame.getPlaneCount() != 3) {
+      throw new IllegalArgumentException(
+          "Expected 3 YUV planes, got " + frame.getPlaneCount() + ".");
+    }
+    // Because of the variable row stride it's not possible to know in
+    // advance the actual necessary dimensions of the yuv planes.
+    for (int i = 0; i < 3; ++i) {
+      ByteBuffer buffer = frame.getPlaneBuffer(i);
+      if (yuvBytes[i] == null || yuvBytes[i].length < buffer.remaining()) {
+        yuvBytes[i] = new byte[buffer.remaining()];
+      }
+      buffer.get(yuvBytes[i], 0, buffer.remaining());
+    }
+    width = frame.getWidth();
+    height = frame.getHeight();
+    yRowStride = frame.getRowStride(0);
+    uvRowStride = frame.getRowStride(1);
+    uvPixelStride = frame.getPixelStride(1);
+    chromaLayout = ChromaLayout.of(uvPixelStride);
+  }
+
+  /**
+   * Converts the planes copied last to ARGB_8888 pixels, row by row without padding.
+   *
+   * @return the pixels, reused by the next call
+   */
+  public int[] convertToArgb() {
+    if (argb == null || argb.length != width * height) {
+      argb = new int[width * height];
+    }
+    kernels.convertYUV420ToARGB8888(
+        yuvBytes[0],
+        yuvBytes[1],
+        yuvBytes[2],
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        argb);
+    return argb;
+  }
+
+  /** Copies and converts a frame, see {@link #copyPlanes} and {@link #convertToArgb}. */
+  public int[] convert(Frame frame) {
+    copyPlanes(frame);
+    return convertToArgb();
+  }
+
+  /** Returns the width of the frame copied last. */
+  public int getWidth() {
+    return width;
+  }
+
+  /** Returns the height of the frame copied last. */
+  public int getHeight() {
+    return height;
+  }
+
+  /** Returns the chroma layout of the frame copied last. */
+  public ChromaLayout getChromaLayout() {
+    return chromaLayout;
+  }
+}
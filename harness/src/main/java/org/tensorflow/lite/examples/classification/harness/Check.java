@@ -0,0 +1,59 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+/**
+ * The base of the harness checks: counts the expectations of a run, prints the failed ones and
+ * exits with status 1 if there are any, so that the Gradle task of the check fails.
+ */
+abstract class Check {
+  private final boolean printPasses;
+  private int checks;
+  private int failures;
+
+  protected Check() {
+    this(/*printPasses=*/ false);
+  }
+
+  /** @param printPasses whether to print the expectations that hold too, not only failed ones */
+  protected Check(boolean printPasses) {
+    this.printPasses = printPasses;
+  }
+
+  /** Runs all expectations of the check. */
+  protected abstract void run() throws Exception;
+
+  /** Records an expectation, printing it if it doesn't hold. */
+  protected final void expect(String description, boolean passed) {
+    checks++;
+    if (!passed) {
+      System.out.println("FAIL " + description);
+      failures++;
+    } else if (printPasses) {
+      System.out.println("PASS " + description);
+    }
+  }
+
+  /** Runs a check from its main method and exits with status 1 if an expectation failed. */
+  static void execute(Check check) throws Exception {
+    check.run();
+    if (check.failures > 0) {
+      System.out.println(check.failures + " check(s) failed.");
+      System.exit(1);
+    }
+    System.out.println("All " + check.checks + " checks passed.");
+  }
+}
@@ -0,0 +1,113 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.util.Map;
+import org.tensorflow.lite.examples.classification.harness.YuvFrame.Layout;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageKernels;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageUtils;
+
+/**
+ * Times the layout specific YUV kernels of {@link ImageUtils} against the generic per-pixel kernel
+ * on the same frames, for every chroma layout, and the native kernels where available.
+ *
+ * <p>Options, all optional: {@code --width=640 --height=480 --row-padding=0 --frames=500
+ * --rounds=5}. Every round converts {@code frames} frames with each kernel; the fastest round is
+ * reported, which filters out JIT compilation and other noise.
+ */
+public final class ConversionBenchmark {
+
+  private ConversionBenchmark() {}
+
+  public static void main(String[] args) {
+    Map<String, String> options = HarnessMain.parseOptions(args);
+    int width = Integer.parseInt(HarnessMain.get(options, "width", "640"));
+    int height = Integer.parseInt(HarnessMain.get(options, "height", "480"));
+    int rowPadding = Integer.parseInt(HarnessMain.get(options, "row-padding", "0"));
+    int frames = Integer.parseInt(HarnessMain.get(options, "frames", "500"));
+    int rounds = Integer.parseInt(HarnessMain.get(options, "rounds", "5"));
+
+    System.out.println(
+        String.format("Converting %dx%d frames, best of %d rounds", width, height, rounds));
+    int[] out = new int[width * height];
+    ImageKernels nativeKernels = ImageKernels.nativeOrNull();
+    for (Layout layout : Layout.values()) {
+      YuvFrame frame =
+          SyntheticFrameSource.fromPattern(width, height, layout, rowPadding).nextFrame(0);
+      byte[][] planes = frame.copyPlaneBytes();
+      int yRowStride = frame.getRowStride(0);
+      int uvRowStride = frame.getRowStride(1);
+      int uvPixelStride = frame.getPixelStride(1);
+
+      long genericNs = Long.MAX_VALUE;
+      long dedicatedNs = Long.MAX_VALUE;
+      long nativeNs = Long.MAX_VALUE;
+      for (int round = 0; round < rounds; round++) {
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+          ImageUtils.convertGenericToARGB8888(
+              planes[0],
+              planes[1],
+              planes[2],
+              width,
+              height,
+              yRowStride,
+              uvRowStride,
+              uvPixelStride,
+              out);
+        }
+        genericNs = Math.min(genericNs, (System.nanoTime() - start) / frames);
+
+        start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+          if (uvPixelStride == 1) {
+            ImageUtils.convertPlanarToARGB8888(
+                planes[0], planes[1], planes[2], width, height, yRowStride, uvRowStride, out);
+          } else {
+            ImageUtils.convertSemiPlanarToARGB8888(
+                planes[0], planes[1], planes[2], width, height, yRowStride, uvRowStride, out);
+          }
+        }
+        dedicatedNs = Math.min(dedicatedNs, (System.nanoTime() - start) / frames);
+
+        if (nativeKernels != null) {
+          start = System.nanoTime();
+          for (int i = 0; i < frames; i++) {
+            nativeKernels.convertYUV420ToARGB8888(
+                planes[0],
+                planes[1],
+                planes[2],
+                width,
+                height,
+                yRowStride,
+                uvRowStride,
+                uvPixelStride,
+                out);
+          }
+          nativeNs = Math.min(nativeNs, (System.nanoTime() - start) / frames);
+        }
+      }
+      System.out.println(
+          String.format(
+              "%-5s generic=%.3fms dedicated=%.3fms speedup=%.2fx%s",
+              layout,
+              genericNs / 1e6,
+              dedicatedNs / 1e6,
+              (double) genericNs / dedicatedNs,
+              nativeKernels != null ? String.format(" native=%.3fms", nativeNs / 1e6) : ""));
+    }
+  }
+}
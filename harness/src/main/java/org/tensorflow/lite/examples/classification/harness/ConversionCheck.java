@@ -0,0 +1,218 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.tensorflow.lite.examples.classification.harness.YuvFrame.Layout;
+import org.tensorflow.lite.examples.classification.harness.YuvFrame.Plane;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageKernels;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageUtils;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageUtils.ChromaLayout;
+import org.tensorflow.lite.examples.classification.tflite.utils.YuvConverter;
+
+/**
+ * Checks that the layout specific YUV kernels of {@link ImageUtils} produce exactly the pixels of
+ * the generic per-pixel kernel, for every chroma layout, with odd sizes, row padding and random
+ * plane content that exercises the clamping. The same checks run against every available {@link
+ * ImageKernels} backend, including the RGB float conversion, as are the input tensor writers.
+ */
+public final class ConversionCheck extends Check {
+  private static final int[][] SIZES = {{640, 480}, {33, 17}, {2, 2}, {1, 1}, {1, 5}, {7, 1}};
+  private static final int[] ROW_PADDINGS = {0, 16};
+
+  private final Random random = new Random(42);
+
+  private ConversionCheck() {}
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new ConversionCheck());
+  }
+
+  /**
+   * Returns the Java kernels and, where their library loads, the native ones. Build the native
+   * kernels for this machine with {@code ./gradlew :harness:nativeKernels}.
+   */
+  static List<ImageKernels> getBackends() {
+    List<ImageKernels> backends = new ArrayList<>();
+    backends.add(ImageKernels.java());
+    ImageKernels nativeKernels = ImageKernels.nativeOrNull();
+    if (nativeKernels != null) {
+      backends.add(nativeKernels);
+    } else {
+      System.out.println("Native kernels not available, only checking the Java ones.");
+    }
+    return backends;
+  }
+
+  @Override
+  protected void run() {
+    expect("detects I420", ChromaLayout.of(1) == ChromaLayout.PLANAR);
+    expect("detects NV12 and NV21", ChromaLayout.of(2) == ChromaLayout.SEMI_PLANAR);
+    expect("falls back for other strides", ChromaLayout.of(3) == ChromaLayout.GENERIC);
+
+    for (ImageKernels kernels : getBackends()) {
+      YuvConverter converter = new YuvConverter(kernels);
+      for (Layout layout : Layout.values()) {
+        for (int[] size : SIZES) {
+          for (int rowPadding : ROW_PADDINGS) {
+            String name =
+                String.format(
+                    "%s %s %dx%d padding %d",
+                    kernels.getName(), layout, size[0], size[1], rowPadding);
+            YuvFrame pattern =
+                SyntheticFrameSource.fromPattern(size[0], size[1], layout, rowPadding)
+                    .nextFrame(0);
+            checkFrame(name + " pattern", pattern, kernels, converter);
+            checkFrame(name + " noise", fillWithNoise(pattern), kernels, converter);
+            if (layout == Layout.I420) {
+              checkFrame(name + " pixel stride 3", spreadChroma(pattern, 3), kernels, converter);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void checkFrame(
+      String name, YuvFrame frame, ImageKernels kernels, YuvConverter converter) {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    byte[][] planes = frame.copyPlaneBytes();
+    int yRowStride = frame.getRowStride(0);
+    int uvRowStride = frame.getRowStride(1);
+    int uvPixelStride = frame.getPixelStride(1);
+
+    int[] expected = new int[width * height];
+    ImageUtils.convertGenericToARGB8888(
+        planes[0],
+        planes[1],
+        planes[2],
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        expected);
+
+    int[] actual = new int[width * height];
+    if (uvPixelStride == 1) {
+      ImageUtils.convertPlanarToARGB8888(
+          planes[0], planes[1], planes[2], width, height, yRowStride, uvRowStride, actual);
+      expect(name + ": dedicated kernel", Arrays.equals(expected, actual));
+    } else if (uvPixelStride == 2) {
+      ImageUtils.convertSemiPlanarToARGB8888(
+          planes[0], planes[1], planes[2], width, height, yRowStride, uvRowStride, actual);
+      expect(name + ": dedicated kernel", Arrays.equals(expected, actual));
+    }
+    kernels.convertYUV420ToARGB8888(
+        planes[0],
+        planes[1],
+        planes[2],
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        actual);
+    expect(name + ": kernels", Arrays.equals(expected, actual));
+    expect(name + ": converter", Arrays.equals(expected, converter.convert(frame)));
+
+    float mean = 127.5f;
+    float std = 127.5f;
+    float[] expectedFloats = new float[3 * width * height];
+    for (int i = 0; i < expected.length; i++) {
+      expectedFloats[3 * i] = (((expected[i] >> 16) & 0xff) - mean) / std;
+      expectedFloats[3 * i + 1] = (((expected[i] >> 8) & 0xff) - mean) / std;
+      expectedFloats[3 * i + 2] = ((expected[i] & 0xff) - mean) / std;
+    }
+    float[] actualFloats = new float[expectedFloats.length];
+    kernels.convertYUV420ToRGBFloat(
+        planes[0],
+        planes[1],
+        planes[2],
+        width,
+        height,
+        yRowStride,
+        uvRowStride,
+        uvPixelStride,
+        mean,
+        std,
+        actualFloats);
+    expect(name + ": float kernel", Arrays.equals(expectedFloats, actualFloats));
+
+    // The input tensor writers of the classifier, from the converted pixels.
+    FloatBuffer floatTensor =
+        ByteBuffer.allocateDirect(4 * expectedFloats.length)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    ImageUtils.writeRgbFloat(expected, expected.length, mean, std, floatTensor);
+    floatTensor.get(actualFloats);
+    expect(name + ": float tensor", Arrays.equals(expectedFloats, actualFloats));
+
+    ByteBuffer byteTensor = ByteBuffer.allocateDirect(expectedFloats.length);
+    ImageUtils.writeRgbUint8(expected, expected.length, 0.0f, 1.0f, byteTensor);
+    boolean bytesMatch = true;
+    for (int i = 0; i < expected.length; i++) {
+      bytesMatch &=
+          byteTensor.get(3 * i) == (byte) (expected[i] >> 16)
+              && byteTensor.get(3 * i + 1) == (byte) (expected[i] >> 8)
+              && byteTensor.get(3 * i + 2) == (byte) expected[i];
+    }
+    expect(name + ": uint8 tensor", bytesMatch);
+  }
+
+  /**
+   * Returns a frame with the content of an I420 frame whose chroma samples are {@code pixelStride}
+   * bytes apart, a layout only the generic kernels handle.
+   */
+  private static YuvFrame spreadChroma(YuvFrame frame, int pixelStride) {
+    Plane[] planes = frame.getPlanes();
+    int chromaWidth = (frame.getWidth() + 1) / 2;
+    int chromaHeight = (frame.getHeight() + 1) / 2;
+    int rowStride = chromaWidth * pixelStride;
+    Plane[] spread = {planes[0], null, null};
+    for (int p = 1; p < 3; p++) {
+      ByteBuffer buffer = planes[p].getBuffer();
+      byte[] bytes = new byte[rowStride * chromaHeight];
+      for (int j = 0; j < chromaHeight; j++) {
+        for (int i = 0; i < chromaWidth; i++) {
+          bytes[j * rowStride + i * pixelStride] = buffer.get(j * planes[p].getRowStride() + i);
+        }
+      }
+      spread[p] = new Plane(ByteBuffer.wrap(bytes), rowStride, pixelStride);
+    }
+    return new YuvFrame(frame.getWidth(), frame.getHeight(), frame.getLayout(), spread, 0);
+  }
+
+  /** Returns a frame with the layout and strides of {@code frame} and random plane content. */
+  private YuvFrame fillWithNoise(YuvFrame frame) {
+    Plane[] planes = frame.getPlanes();
+    Plane[] noisy = new Plane[planes.length];
+    for (int i = 0; i < planes.length; i++) {
+      byte[] bytes = new byte[planes[i].getBuffer().remaining()];
+      random.nextBytes(bytes);
+      noisy[i] =
+          new Plane(ByteBuffer.wrap(bytes), planes[i].getRowStride(), planes[i].getPixelStride());
+    }
+    return new YuvFrame(frame.getWidth(), frame.getHeight(), frame.getLayout(), noisy, 0);
+  }
+}
@@ -0,0 +1,50 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.harness;
+
+import org.tensorflow.lite.examples.classification.tflite.utils.YuvConverter;
+
+/**
+ * Runs the same per-frame work as {@code Classifier.imageToRGB} in lib_support: copies the planes
+ * and converts them to ARGB with the {@link YuvConverter} of the core module. An optional busy wait
+ * stands in for model inference, which can't run on a plain JVM.
+ */
+public final class ConversionProcessor implements FrameProcessor {
+  private final long simulatedInferenceNs;
+  private final YuvConverter yuvConverter = new YuvConverter();
+  private int[] rgbBytes;
+
+  /** Creates a processor that busy waits {@code simulatedInferenceMs} after each conversion. */
+  public ConversionProcessor(long simulatedInferenceMs) {
+    this.simulatedInferenceNs = simulatedInferenceMs * 1000000L;
+  }
+
+  @Override
+  public void process(YuvFrame frame) {
+    rgbBytes = yuvConverter.convert(frame);
+
+    if (simulatedInferenceNs > 0) {
+      long end = System.nanoTime() + simulatedInferenceNs;
+      while (System.nanoTime() < end) {
+        // Busy wait, a model keeps its core busy as well.
+      }
+    }
+  }
+
+  /** Returns the ARGB pixels of the last processed frame. */
+  public int[] getLastArgb() {
+    return rgbBytes;
+  }
+}
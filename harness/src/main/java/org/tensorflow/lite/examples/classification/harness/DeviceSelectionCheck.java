@@ -0,0 +1,66 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import org.tensorflow.lite.examples.classification.tflite.Device;
+
+/**
+ * Checks that {@link Device#select} keeps every supported requested device and falls back to the
+ * CPU for every unsupported accelerator, over all combinations of GPU and NNAPI support.
+ */
+public final class DeviceSelectionCheck extends Check {
+
+  private DeviceSelectionCheck() {}
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new DeviceSelectionCheck());
+  }
+
+  @Override
+  protected void run() {
+    for (Device requested : Device.values()) {
+      for (boolean gpuSupported : new boolean[] {false, true}) {
+        for (boolean nnApiSupported : new boolean[] {false, true}) {
+          Device selected = Device.select(requested, gpuSupported, nnApiSupported);
+          Device expected = expectedDevice(requested, gpuSupported, nnApiSupported);
+          expect(
+              requested
+                  + " with GPU "
+                  + (gpuSupported ? "supported" : "unsupported")
+                  + " and NNAPI "
+                  + (nnApiSupported ? "supported" : "unsupported")
+                  + " selects "
+                  + expected
+                  + ", got "
+                  + selected,
+              selected == expected);
+        }
+      }
+    }
+  }
+
+  /** The reference table the selection has to follow. */
+  private static Device expectedDevice(
+      Device requested, boolean gpuSupported, boolean nnApiSupported) {
+    if (requested == Device.GPU && gpuSupported) {
+      return Device.GPU;
+    }
+    if (requested == Device.NNAPI && nnApiSupported) {
+      return Device.NNAPI;
+    }
+    return Device.CPU;
+  }
+}
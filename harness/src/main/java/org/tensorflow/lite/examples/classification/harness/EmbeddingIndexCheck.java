@@ -0,0 +1,224 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import org.tensorflow.lite.examples.classification.tflite.EmbeddingIndex;
+import org.tensorflow.lite.examples.classification.tflite.EmbeddingIndex.Precision;
+
+/**
+ * Checks {@link EmbeddingIndex} against an exhaustive double precision cosine similarity search, for
+ * every precision, with sizes that leave partial blocks of four and BINARY indices large enough to
+ * be searched through their bits, and checks that a saved index loads with the same vectors and
+ * labels and keeps accepting vectors.
+ */
+public final class EmbeddingIndexCheck extends Check {
+  private static final int[] DIMENSIONS = {1, 7, 128};
+  private static final int[] COUNTS = {0, 1, 3, 5, 37, 1000, 4000};
+  private static final int K = 10;
+
+  /** Largest score error of the float index, from float accumulation, and of the 8-bit one. */
+  private static final double FLOAT_TOLERANCE = 1e-5;
+
+  private static final double INT8_TOLERANCE = 0.03;
+
+  private final Random random = new Random(42);
+
+  private EmbeddingIndexCheck() {}
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new EmbeddingIndexCheck());
+  }
+
+  @Override
+  protected void run() throws IOException {
+    for (Precision precision : Precision.values()) {
+      double tolerance = precision == Precision.FLOAT ? FLOAT_TOLERANCE : INT8_TOLERANCE;
+      for (int dimension : DIMENSIONS) {
+        for (int count : COUNTS) {
+          String name = precision + " " + count + "x" + dimension;
+          float[][] vectors = randomVectors(count, dimension);
+          EmbeddingIndex index = new EmbeddingIndex(dimension, precision);
+          for (int i = 0; i < count; i++) {
+            expect(name + ": insertion index", index.add("v" + i, vectors[i]) == i);
+          }
+          checkQueries(name, index, vectors, tolerance);
+          checkNearDuplicates(name, index, vectors);
+          checkSaveAndLoad(name, index, vectors, tolerance);
+        }
+      }
+    }
+    checkErrors();
+  }
+
+  /** Checks that the matches are the best ones up to the tolerance and scored correctly. */
+  private void checkQueries(String name, EmbeddingIndex index, float[][] vectors, double tolerance) {
+    for (int q = 0; q < 5; q++) {
+      float[] query = randomVector(index.getDimension());
+      double[] expected = new double[vectors.length];
+      for (int i = 0; i < vectors.length; i++) {
+        expected[i] = cosine(query, vectors[i]);
+      }
+      double[] sorted = expected.clone();
+      Arrays.sort(sorted);
+
+      int[] indices = new int[K];
+      float[] scores = new float[K];
+      int found = index.query(query, indices, scores);
+      expect(name + ": match count", found == Math.min(K, vectors.length));
+      boolean matches = true;
+      for (int i = 0; i < found; i++) {
+        double rankScore = sorted[sorted.length - 1 - i];
+        matches &= Math.abs(scores[i] - expected[indices[i]]) <= tolerance;
+        matches &= expected[indices[i]] >= rankScore - 2 * tolerance;
+        matches &= i == 0 || scores[i] <= scores[i - 1];
+      }
+      expect(name + ": matches", matches);
+    }
+  }
+
+  /** Checks that a slightly disturbed copy of a vector finds that vector first. */
+  private void checkNearDuplicates(String name, EmbeddingIndex index, float[][] vectors) {
+    if (vectors.length == 0 || index.getDimension() < 7) {
+      return;
+    }
+    boolean found = true;
+    for (int i = 0; i < vectors.length; i += Math.max(1, vectors.length / 10)) {
+      float[] query = vectors[i].clone();
+      for (int j = 0; j < query.length; j++) {
+        query[j] += (float) random.nextGaussian() * 0.01f;
+      }
+      int[] indices = new int[1];
+      index.query(query, indices, new float[1]);
+      found &= indices[0] == i;
+    }
+    expect(name + ": near duplicates", found);
+  }
+
+  private void checkSaveAndLoad(
+      String name, EmbeddingIndex index, float[][] vectors, double tolerance) throws IOException {
+    File file = File.createTempFile("embeddings", ".index");
+    try {
+      index.save(file);
+      EmbeddingIndex loaded = EmbeddingIndex.load(file);
+      expect(name + ": loaded size", loaded.size() == index.size());
+      expect(name + ": loaded precision", loaded.getPrecision() == index.getPrecision());
+      boolean labels = true;
+      for (int i = 0; i < loaded.size(); i++) {
+        labels &= loaded.getLabel(i).equals(index.getLabel(i));
+      }
+      expect(name + ": loaded labels", labels);
+
+      float[] query = randomVector(index.getDimension());
+      int[] expectedIndices = new int[K];
+      float[] expectedScores = new float[K];
+      int[] actualIndices = new int[K];
+      float[] actualScores = new float[K];
+      index.query(query, expectedIndices, expectedScores);
+      loaded.query(query, actualIndices, actualScores);
+      expect(
+          name + ": loaded matches",
+          Arrays.equals(expectedIndices, actualIndices)
+              && Arrays.equals(expectedScores, actualScores));
+
+      if (index.getDimension() < 7) {
+        // Too few directions, the added vector ties with earlier ones.
+        return;
+      }
+      float[] added = randomVector(index.getDimension());
+      int addedIndex = loaded.add("added", added);
+      int[] best = new int[1];
+      float[] bestScore = new float[1];
+      loaded.query(added, best, bestScore);
+      expect(
+          name + ": added after loading",
+          addedIndex == vectors.length
+              && loaded.getLabel(best[0]).equals("added")
+              && Math.abs(bestScore[0] - 1) <= tolerance);
+    } finally {
+      file.delete();
+    }
+  }
+
+  private void checkErrors() throws IOException {
+    EmbeddingIndex index = new EmbeddingIndex(4, Precision.FLOAT);
+    expect("wrong dimension", throwsIllegalArgument(index, new float[3]));
+    expect("zero vector", throwsIllegalArgument(index, new float[4]));
+
+    index.add("a", new float[] {1, 2, 3, 4});
+    File file = File.createTempFile("embeddings", ".index");
+    try {
+      index.save(file);
+      RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+      truncated.setLength(truncated.length() - 1);
+      truncated.close();
+      boolean rejected = false;
+      try {
+        EmbeddingIndex.load(file);
+      } catch (IOException e) {
+        rejected = true;
+      }
+      expect("truncated file", rejected);
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static boolean throwsIllegalArgument(EmbeddingIndex index, float[] embedding) {
+    try {
+      index.add("invalid", embedding);
+      return false;
+    } catch (IllegalArgumentException e) {
+      return true;
+    }
+  }
+
+  private float[][] randomVectors(int count, int dimension) {
+    float[][] vectors = new float[count][];
+    for (int i = 0; i < count; i++) {
+      vectors[i] = randomVector(dimension);
+    }
+    return vectors;
+  }
+
+  /** Returns a vector with a random direction and length, never zero. */
+  private float[] randomVector(int dimension) {
+    float[] vector = new float[dimension];
+    float length = 0.1f + random.nextFloat() * 10;
+    do {
+      for (int i = 0; i < dimension; i++) {
+        vector[i] = (float) random.nextGaussian() * length;
+      }
+    } while (cosine(vector, vector) == 0);
+    return vector;
+  }
+
+  private static double cosine(float[] a, float[] b) {
+    double dot = 0;
+    double normA = 0;
+    double normB = 0;
+    for (int i = 0; i < a.length; i++) {
+      dot += (double) a[i] * b[i];
+      normA += (double) a[i] * a[i];
+      normB += (double) b[i] * b[i];
+    }
+    return normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+  }
+}
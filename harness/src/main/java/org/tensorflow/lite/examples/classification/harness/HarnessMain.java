@@ -0,0 +1,71 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.tensorflow.lite.examples.classification.harness.YuvFrame.Layout;
+
+/**
+ * Command line entry point of the headless harness. Runs synthetic camera frames through the
+ * pipeline at a target frame rate and prints sustained FPS, dropped frames and latency.
+ *
+ * <p>Options, all optional: {@code --fps=30 --duration-ms=5000 --width=640 --height=480
+ * --layout=NV21|NV12|I420 --row-padding=0 --inference-ms=0 --image=path/to/image.jpg}.
+ */
+public final class HarnessMain {
+
+  private HarnessMain() {}
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseOptions(args);
+    float fps = Float.parseFloat(get(options, "fps", "30"));
+    long durationMs = Long.parseLong(get(options, "duration-ms", "5000"));
+    int width = Integer.parseInt(get(options, "width", "640"));
+    int height = Integer.parseInt(get(options, "height", "480"));
+    Layout layout = Layout.valueOf(get(options, "layout", "NV21"));
+    int rowPadding = Integer.parseInt(get(options, "row-padding", "0"));
+    long inferenceMs = Long.parseLong(get(options, "inference-ms", "0"));
+
+    SyntheticFrameSource source =
+        options.containsKey("image")
+            ? SyntheticFrameSource.fromImage(
+                new File(options.get("image")), width, height, layout, rowPadding)
+            : SyntheticFrameSource.fromPattern(width, height, layout, rowPadding);
+    PipelineDriver driver = new PipelineDriver(source, new ConversionProcessor(inferenceMs), fps);
+    System.out.println(
+        String.format(
+            "Driving %dx%d %s frames at %.1f fps for %d ms", width, height, layout, fps, durationMs));
+    System.out.println(driver.run(durationMs));
+  }
+
+  static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("Expected --name=value, got " + arg);
+      }
+      int separator = arg.indexOf('=');
+      options.put(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+    return options;
+  }
+
+  static String get(Map<String, String> options, String name, String defaultValue) {
+    String value = options.get(name);
+    return value != null ? value : defaultValue;
+  }
+}
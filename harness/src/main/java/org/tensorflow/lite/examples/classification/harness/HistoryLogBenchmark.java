@@ -0,0 +1,70 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import org.tensorflow.lite.examples.classification.tflite.HistoryLog;
+
+/**
+ * Times {@link HistoryLog} appends on the producer side and how long the writer takes to persist
+ * them, at a frame rate far beyond any camera's.
+ *
+ * <p>Options, all optional: {@code --records=200000 --top-k=3 --queue=1024 --rounds=5}. The
+ * fastest round is reported.
+ */
+public final class HistoryLogBenchmark {
+
+  private HistoryLogBenchmark() {}
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = HarnessMain.parseOptions(args);
+    int records = Integer.parseInt(HarnessMain.get(options, "records", "200000"));
+    int topK = Integer.parseInt(HarnessMain.get(options, "top-k", "3"));
+    int queue = Integer.parseInt(HarnessMain.get(options, "queue", "1024"));
+    int rounds = Integer.parseInt(HarnessMain.get(options, "rounds", "5"));
+
+    int[] classIds = new int[topK];
+    float[] scores = new float[topK];
+    long appendNs = Long.MAX_VALUE;
+    long persistNs = Long.MAX_VALUE;
+    long dropped = 0;
+    for (int round = 0; round < rounds; round++) {
+      File directory = Files.createTempDirectory("history").toFile();
+      HistoryLog log = new HistoryLog(directory, topK, 4096, 1000, queue);
+      long start = System.nanoTime();
+      long appendTotalNs = 0;
+      for (int i = 0; i < records; i++) {
+        long appendStart = System.nanoTime();
+        log.append(i, 0, 10, classIds, scores, topK);
+        appendTotalNs += System.nanoTime() - appendStart;
+      }
+      log.close();
+      appendNs = Math.min(appendNs, appendTotalNs / records);
+      persistNs = Math.min(persistNs, System.nanoTime() - start);
+      dropped = log.getDroppedCount();
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+    System.out.println(
+        String.format(
+            "%d records of %d results: append=%dns all persisted after %.1fms, %d dropped",
+            records, topK, appendNs, persistNs / 1e6, dropped));
+  }
+}
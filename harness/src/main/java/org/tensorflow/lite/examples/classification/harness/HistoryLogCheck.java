@@ -0,0 +1,279 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.tensorflow.lite.examples.classification.tflite.HistoryLog;
+import org.tensorflow.lite.examples.classification.tflite.Recognition;
+
+/**
+ * Checks that {@link HistoryLog} keeps every record appended by concurrent producers, rotates and
+ * compacts its segments, recovers from a record torn by process death, and appends without
+ * allocating.
+ */
+public final class HistoryLogCheck extends Check {
+  private static final int TOP_K = 3;
+  private static final int PRODUCERS = 4;
+  private static final int RECORDS_PER_PRODUCER = 5000;
+
+  private HistoryLogCheck() {}
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new HistoryLogCheck());
+  }
+
+  @Override
+  protected void run() throws Exception {
+    checkConcurrentProducers();
+    checkRotationAndCompaction();
+    checkTornRecord();
+    checkAllocations();
+    checkModelIds();
+  }
+
+  /**
+   * Every producer appends its records with the producer as model and its record number as time,
+   * so every record read back can be attributed and checked.
+   */
+  private void checkConcurrentProducers() throws Exception {
+    File directory = createDirectory();
+    try {
+      HistoryLog log = new HistoryLog(directory, TOP_K, 1000, 100, 1 << 16);
+      List<Thread> producers = new ArrayList<>();
+      for (int p = 0; p < PRODUCERS; p++) {
+        final int producer = p;
+        Thread thread =
+            new Thread(
+                () -> {
+                  int[] classIds = new int[TOP_K];
+                  float[] scores = new float[TOP_K];
+                  for (int i = 0; i < RECORDS_PER_PRODUCER; i++) {
+                    for (int j = 0; j < TOP_K; j++) {
+                      classIds[j] = i + j;
+                      scores[j] = producer + 0.5f * j;
+                    }
+                    while (!log.append(i, producer, i % 100, classIds, scores, i % (TOP_K + 1))) {
+                      Thread.yield();
+                    }
+                  }
+                });
+        producers.add(thread);
+        thread.start();
+      }
+      for (Thread thread : producers) {
+        thread.join();
+      }
+      log.close();
+
+      int[] nextRecord = new int[PRODUCERS];
+      boolean contents = true;
+      long expectedSequence = 1;
+      boolean sequences = true;
+      HistoryLog.Cursor cursor = HistoryLog.read(directory);
+      while (cursor.next()) {
+        sequences &= cursor.getSequence() == expectedSequence++;
+        int producer = cursor.getModelId();
+        int i = (int) cursor.getTimestampMs();
+        // Records of a producer are written in its order.
+        contents &= producer >= 0 && producer < PRODUCERS && nextRecord[producer] == i;
+        if (!contents) {
+          break;
+        }
+        nextRecord[producer]++;
+        contents &= cursor.getLatencyMs() == i % 100 && cursor.getResultCount() == i % (TOP_K + 1);
+        for (int j = 0; j < cursor.getResultCount(); j++) {
+          contents &= cursor.getClassId(j) == i + j && cursor.getScore(j) == producer + 0.5f * j;
+        }
+      }
+      expect("records are contiguous", sequences);
+      expect("records match their producers", contents);
+      boolean complete = true;
+      for (int count : nextRecord) {
+        complete &= count == RECORDS_PER_PRODUCER;
+      }
+      expect("all records read back", complete);
+    } finally {
+      delete(directory);
+    }
+  }
+
+  private void checkRotationAndCompaction() throws Exception {
+    File directory = createDirectory();
+    try {
+      HistoryLog log = new HistoryLog(directory, TOP_K, 100, 3, 1024);
+      List<Recognition> results = new ArrayList<>();
+      results.add(new Recognition("7", "seven", 0.75f, null));
+      results.add(new Recognition("fox", "fox", 0.25f, null));
+      for (int i = 0; i < 1050; i++) {
+        while (!log.append(i, 0, 1, results)) {
+          Thread.yield();
+        }
+      }
+      log.close();
+      expect("rotation keeps the newest segments", directory.list().length == 3);
+      List<long[]> records = readAll(directory);
+      expect(
+          "rotation keeps the newest records",
+          records.size() == 250 && records.get(0)[1] == 800 && records.get(249)[1] == 1049);
+
+      HistoryLog.Cursor cursor = HistoryLog.read(directory);
+      boolean recognitions = cursor.next();
+      recognitions &= cursor.getResultCount() == 2 && cursor.getClassId(0) == 7;
+      recognitions &= cursor.getClassId(1) == -1 && cursor.getScore(1) == 0.25f;
+      expect("recognitions are recorded by class index", recognitions);
+
+      // Reopening continues the numbering in the partially filled newest segment.
+      log = new HistoryLog(directory, TOP_K, 100, 3, 1024);
+      log.append(2000, 0, 1, results);
+      log.close();
+      records = readAll(directory);
+      expect(
+          "reopened log continues",
+          directory.list().length == 3
+              && records.size() == 251
+              && records.get(250)[0] == 1051
+              && records.get(250)[1] == 2000);
+
+      int deleted = HistoryLog.compact(directory, 950);
+      records = readAll(directory);
+      expect(
+          "compaction deletes expired segments",
+          deleted == 100 && records.size() == 151 && records.get(0)[1] == 900);
+      expect("compaction keeps the newest segment", HistoryLog.compact(directory, 5000) == 100);
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /** Tears the last record as if the process died while writing it, then reopens the log. */
+  private void checkTornRecord() throws Exception {
+    File directory = createDirectory();
+    try {
+      HistoryLog log = new HistoryLog(directory, TOP_K, 100, 3, 1024);
+      for (int i = 0; i < 10; i++) {
+        log.append(i, 0, 1, new int[0], new float[0], 0);
+      }
+      log.close();
+      File segment = directory.listFiles()[0];
+      int recordBytes = 32 + 8 * TOP_K;
+      RandomAccessFile file = new RandomAccessFile(segment, "rw");
+      // The timestamp of the last record changes, its checksum doesn't.
+      file.seek(32 + 9L * recordBytes + 8);
+      file.writeLong(12345);
+      file.close();
+
+      List<long[]> records = readAll(directory);
+      expect("readers stop before a torn record", records.size() == 9);
+
+      log = new HistoryLog(directory, TOP_K, 100, 3, 1024);
+      log.append(100, 0, 1, new int[0], new float[0], 0);
+      log.close();
+      records = readAll(directory);
+      expect(
+          "torn record is overwritten",
+          records.size() == 10 && records.get(9)[0] == 10 && records.get(9)[1] == 100);
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /** Measures the heap allocated by the producer thread while appending, after a warm-up. */
+  private void checkAllocations() throws Exception {
+    if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+      System.out.println("Allocation counters not available, skipping the allocation check.");
+      return;
+    }
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    File directory = createDirectory();
+    try {
+      HistoryLog log = new HistoryLog(directory, TOP_K, 10000, 4, 256);
+      List<Recognition> results = new ArrayList<>();
+      results.add(new Recognition("1", "one", 0.5f, null));
+      int[] classIds = {1, 2, 3};
+      float[] scores = {0.5f, 0.25f, 0.125f};
+      for (int i = 0; i < 20000; i++) {
+        log.append(i, 0, 1, results);
+        log.append(i, 0, 1, classIds, scores, TOP_K);
+      }
+      long before = threads.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < 20000; i++) {
+        log.append(i, 0, 1, results);
+        log.append(i, 0, 1, classIds, scores, TOP_K);
+      }
+      long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+      log.close();
+      // Leaves room for the allocation counter itself.
+      expect("appending doesn't allocate, allocated " + allocated + " bytes", allocated < 1024);
+    } finally {
+      delete(directory);
+    }
+  }
+
+  /** Returns the sequence and timestamp of every record. */
+  private static List<long[]> readAll(File directory) throws IOException {
+    List<long[]> records = new ArrayList<>();
+    HistoryLog.Cursor cursor = HistoryLog.read(directory);
+    while (cursor.next()) {
+      records.add(new long[] {cursor.getSequence(), cursor.getTimestampMs()});
+    }
+    cursor.close();
+    return records;
+  }
+
+  private static File createDirectory() throws IOException {
+    return Files.createTempDirectory("history").toFile();
+  }
+
+  private static void delete(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  /**
+   * Model ids are the same in every run and depend on the name and the checksum of a model only,
+   * whatever the case of its hex.
+   */
+  private void checkModelIds() {
+    String checksum = "9f3c0a7e41b2d8c6e5f4a3b2c1d0e9f8a7b6c5d4e3f2a1b0c9d8e7f6a5b4c3d2";
+    int id = HistoryLog.getModelId("Quantized_MobileNet", checksum);
+    // The first four bytes of SHA-256("Quantized_MobileNet\0" + checksum), which logs rely on.
+    expect("stable model id", id == -1704962034);
+    expect(
+        "model id ignores the case of the checksum",
+        id == HistoryLog.getModelId("Quantized_MobileNet", checksum.toUpperCase(Locale.US)));
+    expect(
+        "model id depends on the checksum",
+        id != HistoryLog.getModelId("Quantized_MobileNet", checksum.replace('9', '8')));
+    expect("model id depends on the name", id != HistoryLog.getModelId("Float_MobileNet", checksum));
+    expect(
+        "model id without a checksum",
+        HistoryLog.getModelId("Quantized_MobileNet", null) != id);
+  }
+}
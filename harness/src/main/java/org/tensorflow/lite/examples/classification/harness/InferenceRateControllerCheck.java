@@ -0,0 +1,175 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.tensorflow.lite.examples.classification.tflite.InferenceRateController;
+
+/**
+ * Checks the pacing and the degradation ladder of {@link InferenceRateController}: stepping down
+ * on a full window over the latency budget, recovering only after enough windows with headroom,
+ * and the lower rate and the blocked recovery of a throttling device. Times are passed in, so every
+ * run makes the same decisions.
+ */
+public final class InferenceRateControllerCheck extends Check {
+  private static final float INFERENCES_PER_SECOND = 10;
+  private static final long INTERVAL_MS = 100;
+  private static final long BUDGET_MS = 100;
+  private static final int WINDOW = 5;
+  private static final int MAX_LEVEL = 2;
+
+  /** The windows with headroom the controller needs before it steps back up. */
+  private static final int RECOVERY_WINDOWS = 4;
+
+  private static final long SLOW_MS = 2 * BUDGET_MS;
+  private static final long FAST_MS = BUDGET_MS / 4;
+  /** Within the budget, but without enough headroom to recover. */
+  private static final long NEAR_BUDGET_MS = BUDGET_MS * 3 / 4;
+
+  private InferenceRateControllerCheck() {}
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new InferenceRateControllerCheck());
+  }
+
+  @Override
+  protected void run() {
+    checkPacing();
+    checkStepDown();
+    checkRecovery();
+    checkThermalThrottling();
+    checkReset();
+  }
+
+  private void checkPacing() {
+    InferenceRateController controller = createController(null);
+    expect("first frame starts", controller.tryStartInference(1000));
+    expect("frame within the interval is dropped", !controller.tryStartInference(1000 + 1));
+    expect(
+        "frame just before the interval is dropped",
+        !controller.tryStartInference(1000 + INTERVAL_MS - 1));
+    expect("frame after the interval starts", controller.tryStartInference(1000 + INTERVAL_MS));
+    expect(
+        "dropped frames don't delay the next start",
+        controller.tryStartInference(1000 + 2 * INTERVAL_MS));
+  }
+
+  private void checkStepDown() {
+    List<Integer> levels = new ArrayList<>();
+    InferenceRateController controller = createController(levels);
+    finish(controller, SLOW_MS, WINDOW - 1);
+    expect("no decision on a partial window", controller.getLevel() == 0 && levels.isEmpty());
+    finish(controller, SLOW_MS, 1);
+    expect("steps down on a full slow window", controller.getLevel() == 1);
+    expect("reports the step down", levels.size() == 1 && levels.get(0) == 1);
+    expect("a decision consumes the window", controller.getAverageLatencyMs() == 0);
+
+    finish(controller, SLOW_MS, WINDOW);
+    expect("steps down again on the next slow window", controller.getLevel() == 2);
+    finish(controller, SLOW_MS, 3 * WINDOW);
+    expect("stops at the highest level", controller.getLevel() == MAX_LEVEL);
+    expect("reports every level change once", levels.size() == 2 && levels.get(1) == 2);
+
+    InferenceRateController onBudget = createController(null);
+    finish(onBudget, BUDGET_MS, WINDOW);
+    expect("an average on the budget keeps the level", onBudget.getLevel() == 0);
+
+    InferenceRateController averaged = createController(null);
+    for (int i = 0; i < WINDOW; i++) {
+      averaged.onInferenceFinished(i == 0 ? WINDOW * BUDGET_MS : 0);
+    }
+    expect("a single spike within the average keeps the level", averaged.getLevel() == 0);
+  }
+
+  private void checkRecovery() {
+    List<Integer> levels = new ArrayList<>();
+    InferenceRateController controller = createController(levels);
+    finish(controller, SLOW_MS, 2 * WINDOW);
+    levels.clear();
+
+    finish(controller, FAST_MS, (RECOVERY_WINDOWS - 1) * WINDOW);
+    expect("no recovery before enough windows with headroom", controller.getLevel() == 2);
+    finish(controller, FAST_MS, WINDOW);
+    expect("recovers one level after enough windows with headroom", controller.getLevel() == 1);
+    expect("reports the recovery", levels.size() == 1 && levels.get(0) == 1);
+
+    finish(controller, FAST_MS, (RECOVERY_WINDOWS - 1) * WINDOW);
+    finish(controller, NEAR_BUDGET_MS, WINDOW);
+    finish(controller, FAST_MS, (RECOVERY_WINDOWS - 1) * WINDOW);
+    expect("a window without headroom restarts the recovery", controller.getLevel() == 1);
+    finish(controller, FAST_MS, WINDOW);
+    expect("recovers after the restarted windows", controller.getLevel() == 0);
+
+    finish(controller, FAST_MS, 2 * RECOVERY_WINDOWS * WINDOW);
+    expect("never recovers past level 0", controller.getLevel() == 0 && levels.size() == 2);
+  }
+
+  private void checkThermalThrottling() {
+    InferenceRateController controller = createController(null);
+    controller.setThermalStatus(InferenceRateController.THERMAL_STATUS_MODERATE);
+    expect("moderate status halves the rate", controller.getFrameIntervalMs() == 2 * INTERVAL_MS);
+    controller.tryStartInference(0);
+    expect(
+        "moderate status drops frames within the doubled interval",
+        !controller.tryStartInference(2 * INTERVAL_MS - 1));
+    expect(
+        "moderate status starts frames after the doubled interval",
+        controller.tryStartInference(2 * INTERVAL_MS));
+
+    controller.setThermalStatus(InferenceRateController.THERMAL_STATUS_SEVERE);
+    expect("severe status quarters the rate", controller.getFrameIntervalMs() == 4 * INTERVAL_MS);
+    finish(controller, FAST_MS, WINDOW);
+    expect("severe status steps down despite fast inferences", controller.getLevel() == 1);
+
+    controller.setThermalStatus(InferenceRateController.THERMAL_STATUS_MODERATE);
+    finish(controller, FAST_MS, 2 * RECOVERY_WINDOWS * WINDOW);
+    expect("moderate status blocks the recovery", controller.getLevel() == 1);
+
+    controller.setThermalStatus(InferenceRateController.THERMAL_STATUS_NONE);
+    expect("cooling down restores the rate", controller.getFrameIntervalMs() == INTERVAL_MS);
+    finish(controller, FAST_MS, RECOVERY_WINDOWS * WINDOW);
+    expect("recovers once cooled down", controller.getLevel() == 0);
+  }
+
+  private void checkReset() {
+    InferenceRateController controller = createController(null);
+    finish(controller, SLOW_MS, WINDOW + 2);
+    controller.tryStartInference(500);
+    controller.reset();
+    expect("reset returns to level 0", controller.getLevel() == 0);
+    expect("reset forgets the partial window", controller.getAverageLatencyMs() == 0);
+    expect("reset allows an immediate start", controller.tryStartInference(501));
+    finish(controller, SLOW_MS, WINDOW - 1);
+    expect("reset starts a fresh window", controller.getLevel() == 0);
+  }
+
+  private static InferenceRateController createController(List<Integer> levels) {
+    InferenceRateController controller =
+        new InferenceRateController(INFERENCES_PER_SECOND, BUDGET_MS, WINDOW, MAX_LEVEL);
+    if (levels != null) {
+      controller.setListener(levels::add);
+    }
+    return controller;
+  }
+
+  /** Reports {@code count} finished inferences of the given latency. */
+  private static void finish(InferenceRateController controller, long latencyMs, int count) {
+    for (int i = 0; i < count; i++) {
+      controller.onInferenceFinished(latencyMs);
+    }
+  }
+}
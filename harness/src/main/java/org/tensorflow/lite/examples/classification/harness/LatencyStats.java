@@ -0,0 +1,56 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.util.Arrays;
+
+/** Collects latency samples and reports their percentiles. Not thread safe. */
+public final class LatencyStats {
+  private long[] samplesNs = new long[1024];
+  private int count;
+
+  public void add(long latencyNs) {
+    if (count == samplesNs.length) {
+      samplesNs = Arrays.copyOf(samplesNs, count * 2);
+    }
+    samplesNs[count++] = latencyNs;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /** Returns the given percentile, between 0 and 100, in milliseconds. */
+  public double getPercentileMs(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samplesNs, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))] / 1e6;
+  }
+
+  public double getMeanMs() {
+    if (count == 0) {
+      return 0;
+    }
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += samplesNs[i];
+    }
+    return sum / count / 1e6;
+  }
+}
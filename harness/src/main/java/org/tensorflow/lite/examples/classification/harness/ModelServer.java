@@ -0,0 +1,92 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for the model hosting server, serving the files of a directory over HTTP on
+ * the loopback interface.
+ */
+public final class ModelServer {
+  private final HttpServer server;
+  private final File directory;
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  private ModelServer(HttpServer server, File directory) {
+    this.server = server;
+    this.directory = directory;
+  }
+
+  /** Starts serving the directory on a free port. */
+  public static ModelServer start(File directory) throws IOException {
+    HttpServer server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    ModelServer modelServer = new ModelServer(server, directory);
+    server.createContext("/", modelServer::handle);
+    server.start();
+    return modelServer;
+  }
+
+  public String getBaseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  /** Returns the number of requests served so far, including failed ones. */
+  public int getRequestCount() {
+    return requestCount.get();
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requestCount.incrementAndGet();
+    try {
+      String name = exchange.getRequestURI().getPath().substring(1);
+      File file = new File(directory, name);
+      if (name.contains("/") || !file.isFile()) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, file.length());
+      InputStream inputStream = new FileInputStream(file);
+      OutputStream outputStream = exchange.getResponseBody();
+      try {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+          outputStream.write(buffer, 0, read);
+        }
+      } finally {
+        inputStream.close();
+        outputStream.close();
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+}
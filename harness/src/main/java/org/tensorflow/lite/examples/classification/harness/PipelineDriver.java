@@ -0,0 +1,142 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives synthetic frames through a {@link FrameProcessor} at a target frame rate.
+ *
+ * <p>Frames are delivered like CameraX does with {@code STRATEGY_KEEP_ONLY_LATEST}: a frame that
+ * arrives while the previous one is still waiting replaces it, and the replaced frame counts as
+ * dropped. Latency is measured from the arrival of a frame until its processing finished.
+ */
+public final class PipelineDriver {
+
+  /** The outcome of a run. */
+  public static final class Report {
+    public final int framesProduced;
+    public final int framesProcessed;
+    public final int framesDropped;
+    public final double elapsedSeconds;
+    public final LatencyStats latency;
+
+    Report(
+        int framesProduced,
+        int framesProcessed,
+        int framesDropped,
+        double elapsedSeconds,
+        LatencyStats latency) {
+      this.framesProduced = framesProduced;
+      this.framesProcessed = framesProcessed;
+      this.framesDropped = framesDropped;
+      this.elapsedSeconds = elapsedSeconds;
+      this.latency = latency;
+    }
+
+    /** Returns the rate at which frames were processed. */
+    public double getSustainedFps() {
+      return elapsedSeconds > 0 ? framesProcessed / elapsedSeconds : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "produced=%d processed=%d dropped=%d sustainedFps=%.1f"
+              + " latencyMs[mean=%.2f p50=%.2f p90=%.2f p99=%.2f max=%.2f]",
+          framesProduced,
+          framesProcessed,
+          framesDropped,
+          getSustainedFps(),
+          latency.getMeanMs(),
+          latency.getPercentileMs(50),
+          latency.getPercentileMs(90),
+          latency.getPercentileMs(99),
+          latency.getPercentileMs(100));
+    }
+  }
+
+  private final SyntheticFrameSource source;
+  private final FrameProcessor processor;
+  private final long frameIntervalNs;
+
+  public PipelineDriver(SyntheticFrameSource source, FrameProcessor processor, float targetFps) {
+    if (targetFps <= 0) {
+      throw new IllegalArgumentException("The target frame rate must be positive.");
+    }
+    this.source = source;
+    this.processor = processor;
+    this.frameIntervalNs = (long) (1e9 / targetFps);
+  }
+
+  /** Produces frames for the given duration, then waits for the last frame to be processed. */
+  public Report run(long durationMs) throws InterruptedException {
+    final AtomicReference<YuvFrame> latestFrame = new AtomicReference<>();
+    final LatencyStats latency = new LatencyStats();
+    final int[] processed = new int[1];
+    final boolean[] stopped = new boolean[1];
+
+    Thread consumer =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                while (true) {
+                  YuvFrame frame = latestFrame.getAndSet(null);
+                  if (frame == null) {
+                    synchronized (stopped) {
+                      if (stopped[0]) {
+                        return;
+                      }
+                    }
+                    LockSupport.park(this);
+                    continue;
+                  }
+                  processor.process(frame);
+                  latency.add(System.nanoTime() - frame.getTimestamp());
+                  processed[0]++;
+                }
+              }
+            },
+            "harness-consumer");
+    consumer.start();
+
+    int produced = 0;
+    int dropped = 0;
+    long startNs = System.nanoTime();
+    long endNs = startNs + durationMs * 1000000L;
+    for (long nextNs = startNs; nextNs < endNs; nextNs += frameIntervalNs) {
+      long waitNs;
+      while ((waitNs = nextNs - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(waitNs);
+      }
+      if (latestFrame.getAndSet(source.nextFrame(System.nanoTime())) != null) {
+        dropped++;
+      }
+      produced++;
+      LockSupport.unpark(consumer);
+    }
+    synchronized (stopped) {
+      stopped[0] = true;
+    }
+    LockSupport.unpark(consumer);
+    consumer.join();
+    double elapsedSeconds = (System.nanoTime() - startNs) / 1e9;
+    return new Report(produced, processed[0], dropped, elapsedSeconds, latency);
+  }
+}
@@ -0,0 +1,161 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.tensorflow.lite.examples.classification.models.HttpModelSource;
+import org.tensorflow.lite.examples.classification.models.ModelCache;
+
+/**
+ * Runs the model provisioning flow against a {@link ModelServer} on the loopback interface:
+ * download on first use, cache hits, verification failures and eviction. Needs no network access.
+ */
+public final class ProvisioningCheck extends Check {
+  private static final int MODEL_BYTES = 1024 * 1024;
+
+  private ProvisioningCheck() {
+    // The few steps of the flow are listed as they pass, to follow the downloads in the log.
+    super(/*printPasses=*/ true);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new ProvisioningCheck());
+  }
+
+  @Override
+  protected void run() throws Exception {
+    File root = Files.createTempDirectory("provisioning").toFile();
+    File served = new File(root, "served");
+    File cached = new File(root, "cached");
+    served.mkdirs();
+
+    writeModel(new File(served, "a.tflite"), 1, /*withChecksum=*/ true);
+    writeModel(new File(served, "b.tflite"), 2, /*withChecksum=*/ false);
+    writeModel(new File(served, "c.tflite"), 3, /*withChecksum=*/ true);
+    writeModel(new File(served, "corrupt.tflite"), 4, /*withChecksum=*/ false);
+    write(new File(served, "corrupt.tflite.sha256"), "00000000  corrupt.tflite\n".getBytes("UTF-8"));
+    write(new File(served, "labels.txt"), "cat\n\ndog\n".getBytes("UTF-8"));
+    write(new File(served, "text.tflite"), "not a model".getBytes("UTF-8"));
+
+    ModelServer server = ModelServer.start(served);
+    try {
+      // Room for two models, so the third evicts the least recently opened one.
+      ModelCache cache =
+          new ModelCache(
+              cached, new HttpModelSource(server.getBaseUrl()), "1", 2L * MODEL_BYTES + 4096);
+
+      int requests = server.getRequestCount();
+      ModelCache.Entry a = cache.open("a.tflite", "labels.txt");
+      expect("downloads a missing model", server.getRequestCount() > requests);
+      expect("keeps the labels", a.getLabels().size() == 2);
+      expect("verifies the cached model", a.verify());
+
+      requests = server.getRequestCount();
+      cache.open("a.tflite", "labels.txt");
+      expect("serves a cached model without requests", server.getRequestCount() == requests);
+
+      expect("rejects a checksum mismatch", fails(cache, "corrupt.tflite"));
+      expect("rejects a file that is not a model", fails(cache, "text.tflite"));
+      expect("reports a missing model", fails(cache, "missing.tflite"));
+
+      // Opens b after a, so a is the least recently used model when c arrives.
+      Thread.sleep(1100);
+      cache.open("b.tflite", null);
+      Thread.sleep(1100);
+      cache.open("c.tflite", null);
+      expect("evicts the least recently used model", !new File(cached, "a.tflite").exists());
+      expect("keeps recently used models", new File(cached, "b.tflite").exists());
+      expect("stays within its size", cache.getSizeBytes() <= 2L * MODEL_BYTES + 4096);
+
+      requests = server.getRequestCount();
+      cache.open("a.tflite", "labels.txt");
+      expect("downloads an evicted model again", server.getRequestCount() > requests);
+
+      // Explicit URLs, like those of the model registry, carry their checksums along.
+      Map<String, String> urls = new HashMap<>();
+      urls.put("verified.tflite", server.getBaseUrl() + "a.tflite");
+      urls.put("mismatched.tflite", server.getBaseUrl() + "c.tflite");
+      urls.put("unverified.tflite", server.getBaseUrl() + "b.tflite");
+      Map<String, String> checksums = new HashMap<>();
+      checksums.put("verified.tflite", readChecksum(new File(served, "a.tflite.sha256")));
+      checksums.put("mismatched.tflite", readChecksum(new File(served, "a.tflite.sha256")));
+      ModelCache urlCache =
+          new ModelCache(
+              new File(root, "urls"),
+              new HttpModelSource(/*baseUrl=*/ null, urls, checksums),
+              "1",
+              2L * MODEL_BYTES + 4096);
+      expect("accepts a URL download matching its checksum", !fails(urlCache, "verified.tflite"));
+      expect(
+          "rejects a URL download not matching its checksum",
+          fails(urlCache, "mismatched.tflite"));
+      expect("rejects a URL download without a checksum", fails(urlCache, "unverified.tflite"));
+    } finally {
+      server.stop();
+    }
+  }
+
+  private static boolean fails(ModelCache cache, String name) {
+    try {
+      cache.open(name, null);
+      return false;
+    } catch (FileNotFoundException e) {
+      return name.startsWith("missing");
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  /** Writes random content with the TFLite file identifier, and optionally its checksum. */
+  private static void writeModel(File file, long seed, boolean withChecksum) throws Exception {
+    byte[] content = new byte[MODEL_BYTES];
+    new Random(seed).nextBytes(content);
+    content[4] = 'T';
+    content[5] = 'F';
+    content[6] = 'L';
+    content[7] = '3';
+    write(file, content);
+    if (withChecksum) {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+        hex.append(String.format("%02x", b));
+      }
+      write(new File(file.getPath() + ".sha256"), (hex + "  " + file.getName() + "\n").getBytes("UTF-8"));
+    }
+  }
+
+  private static String readChecksum(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), "UTF-8").split("\\s+")[0];
+  }
+
+  private static void write(File file, byte[] content) throws IOException {
+    OutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(content);
+    } finally {
+      outputStream.close();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import org.tensorflow.lite.examples.classification.harness.YuvFrame.Layout;
+import org.tensorflow.lite.examples.classification.tflite.utils.BilinearResizer;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageKernels;
+import org.tensorflow.lite.examples.classification.tflite.utils.YuvConverter;
+
+/**
+ * Times the center crop and resize of a camera frame to the model input size with {@link
+ * BilinearResizer}, with a scaled image draw, which stands in for the {@code Bitmap} based {@code
+ * ResizeOp} on a plain JVM, and with a floating point bilinear resize that recomputes its weights
+ * for every frame. Turning the result a quarter turn with a separate pass is timed against the
+ * turn folded into the resize, and with the native kernels where available.
+ *
+ * <p>Options, all optional: {@code --width=640 --height=480 --size=224 --frames=500 --rounds=5}.
+ * The fastest round is reported.
+ */
+public final class ResizeBenchmark {
+
+  private ResizeBenchmark() {}
+
+  public static void main(String[] args) {
+    Map<String, String> options = HarnessMain.parseOptions(args);
+    int width = Integer.parseInt(HarnessMain.get(options, "width", "640"));
+    int height = Integer.parseInt(HarnessMain.get(options, "height", "480"));
+    int size = Integer.parseInt(HarnessMain.get(options, "size", "224"));
+    int frames = Integer.parseInt(HarnessMain.get(options, "frames", "500"));
+    int rounds = Integer.parseInt(HarnessMain.get(options, "rounds", "5"));
+
+    YuvFrame frame = SyntheticFrameSource.fromPattern(width, height, Layout.NV21, 0).nextFrame(0);
+    int[] argb = new YuvConverter().convert(frame).clone();
+    int cropSize = Math.min(width, height);
+    int cropLeft = (width - cropSize) / 2;
+    int cropTop = (height - cropSize) / 2;
+
+    BufferedImage source = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    source.setRGB(0, 0, width, height, argb, 0, width);
+    BufferedImage scaled = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    BilinearResizer resizer =
+        new BilinearResizer(width, height, cropLeft, cropTop, cropSize, cropSize, size, size);
+    int[] tableOut = new int[size * size];
+    int[] referenceOut = new int[size * size];
+    int[] turnedOut = new int[size * size];
+
+    long drawNs = Long.MAX_VALUE;
+    long referenceNs = Long.MAX_VALUE;
+    long tableNs = Long.MAX_VALUE;
+    long separateTurnNs = Long.MAX_VALUE;
+    long foldedTurnNs = Long.MAX_VALUE;
+    long nativeNs = Long.MAX_VALUE;
+    ImageKernels nativeKernels = ImageKernels.nativeOrNull();
+    BilinearResizer nativeResizer = null;
+    if (nativeKernels != null) {
+      nativeResizer =
+          new BilinearResizer(width, height, cropLeft, cropTop, cropSize, cropSize, size, size);
+      nativeResizer.setKernels(nativeKernels);
+    }
+    resizer.setKernels(ImageKernels.java());
+    for (int round = 0; round < rounds; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < frames; i++) {
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(
+            source,
+            0,
+            0,
+            size,
+            size,
+            cropLeft,
+            cropTop,
+            cropLeft + cropSize,
+            cropTop + cropSize,
+            null);
+        graphics.dispose();
+      }
+      drawNs = Math.min(drawNs, (System.nanoTime() - start) / frames);
+
+      start = System.nanoTime();
+      for (int i = 0; i < frames; i++) {
+        ResizeCheck.referenceResize(
+            argb, width, cropLeft, cropTop, cropSize, cropSize, referenceOut, size, size);
+      }
+      referenceNs = Math.min(referenceNs, (System.nanoTime() - start) / frames);
+
+      start = System.nanoTime();
+      for (int i = 0; i < frames; i++) {
+        resizer.resizeArgb(argb, width, tableOut);
+      }
+      tableNs = Math.min(tableNs, (System.nanoTime() - start) / frames);
+
+      start = System.nanoTime();
+      for (int i = 0; i < frames; i++) {
+        resizer.resizeArgb(argb, width, tableOut);
+        turnOnce(tableOut, size, size, turnedOut);
+      }
+      separateTurnNs = Math.min(separateTurnNs, (System.nanoTime() - start) / frames);
+
+      start = System.nanoTime();
+      for (int i = 0; i < frames; i++) {
+        resizer.resizeArgb(argb, width, 1, false, turnedOut);
+      }
+      foldedTurnNs = Math.min(foldedTurnNs, (System.nanoTime() - start) / frames);
+
+      if (nativeResizer != null) {
+        start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+          nativeResizer.resizeArgb(argb, width, 1, false, turnedOut);
+        }
+        nativeNs = Math.min(nativeNs, (System.nanoTime() - start) / frames);
+      }
+    }
+    int[] drawOut = scaled.getRGB(0, 0, size, size, null, 0, size);
+
+    System.out.println(
+        String.format(
+            "Resizing the center %dx%d of %dx%d frames to %dx%d, best of %d rounds",
+            cropSize, cropSize, width, height, size, size, rounds));
+    System.out.println(
+        String.format(
+            "scaled draw=%.3fms float bilinear=%.3fms tables=%.3fms",
+            drawNs / 1e6, referenceNs / 1e6, tableNs / 1e6));
+    System.out.println(
+        String.format(
+            "max difference to float bilinear=%d, to scaled draw=%d",
+            ResizeCheck.maxDifference(referenceOut, tableOut),
+            ResizeCheck.maxDifference(drawOut, tableOut)));
+    System.out.println(
+        String.format(
+            "turned upright: separate pass=%.3fms folded=%.3fms",
+            separateTurnNs / 1e6, foldedTurnNs / 1e6));
+    if (nativeResizer != null) {
+      System.out.println(String.format("turned upright natively=%.3fms", nativeNs / 1e6));
+    }
+  }
+
+  /** Turns an image a quarter turn counter-clockwise into {@code out}, like {@code Rot90Op(1)}. */
+  private static void turnOnce(int[] image, int width, int height, int[] out) {
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        out[(width - 1 - x) * height + y] = image[y * width + x];
+      }
+    }
+  }
+}
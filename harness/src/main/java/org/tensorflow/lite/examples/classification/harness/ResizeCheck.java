@@ -0,0 +1,226 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.tensorflow.lite.examples.classification.tflite.utils.BilinearResizer;
+import org.tensorflow.lite.examples.classification.tflite.utils.ImageKernels;
+
+/**
+ * Checks that {@link BilinearResizer} stays within one intensity level of a floating point bilinear
+ * resize, for down- and upscaling, center and offset crops and both ARGB and single plane data, and
+ * that its rotated and mirrored output is exactly the resized image turned like {@code Rot90Op}
+ * and then flipped. The checks run against every available {@link ImageKernels} backend.
+ */
+public final class ResizeCheck extends Check {
+  /** Source width, height, crop left, top, width, height, destination width and height. */
+  private static final int[][] CASES = {
+    {640, 480, 80, 0, 480, 480, 224, 224},
+    {640, 480, 0, 0, 640, 480, 300, 200},
+    {1280, 720, 280, 0, 720, 720, 224, 224},
+    {97, 61, 3, 5, 50, 40, 224, 224},
+    {10, 10, 0, 0, 10, 10, 10, 10},
+    {1, 1, 0, 0, 1, 1, 3, 2},
+    {33, 17, 0, 0, 33, 17, 1, 1}
+  };
+
+  private static final int TOLERANCE = 1;
+
+  private final Random random = new Random(42);
+
+  private ResizeCheck() {}
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new ResizeCheck());
+  }
+
+  @Override
+  protected void run() {
+    // Rot90Op turns counter-clockwise: 1 2 3 / 4 5 6 becomes 3 6 / 2 5 / 1 4.
+    expect(
+        "reference rotation",
+        Arrays.equals(rotate(new int[] {1, 2, 3, 4, 5, 6}, 3, 2, 1), new int[] {3, 6, 2, 5, 1, 4}));
+    for (ImageKernels kernels : ConversionCheck.getBackends()) {
+      for (int[] c : CASES) {
+        String name =
+            String.format(
+                "%s %dx%d crop %d,%d %dx%d to %dx%d",
+                kernels.getName(), c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]);
+        BilinearResizer resizer =
+            new BilinearResizer(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]);
+        resizer.setKernels(kernels);
+        int[] src = new int[c[0] * c[1]];
+        for (int i = 0; i < src.length; i++) {
+          src[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        int[] expected = new int[c[6] * c[7]];
+        referenceResize(src, c[0], c[2], c[3], c[4], c[5], expected, c[6], c[7]);
+        int[] actual = new int[expected.length];
+        resizer.resizeArgb(src, c[0], actual);
+        expect(name + " argb", maxDifference(expected, actual) <= TOLERANCE);
+        // A second frame must not reuse rows of the first one.
+        for (int i = 0; i < src.length; i++) {
+          src[i] = ~src[i] | 0xff000000;
+        }
+        referenceResize(src, c[0], c[2], c[3], c[4], c[5], expected, c[6], c[7]);
+        resizer.resizeArgb(src, c[0], actual);
+        expect(name + " argb, next frame", maxDifference(expected, actual) <= TOLERANCE);
+
+        // Planes are checked as the blue channel of gray pixels, with a row padding and an offset.
+        int stride = c[0] + 7;
+        byte[] plane = new byte[5 + stride * c[1]];
+        random.nextBytes(plane);
+        for (int j = 0; j < c[1]; j++) {
+          for (int i = 0; i < c[0]; i++) {
+            src[j * c[0] + i] = 0xff000000 | (plane[5 + j * stride + i] & 0xff);
+          }
+        }
+        referenceResize(src, c[0], c[2], c[3], c[4], c[5], expected, c[6], c[7]);
+        byte[] planeOut = new byte[expected.length];
+        resizer.resizePlane(plane, 5, stride, planeOut);
+        int difference = 0;
+        for (int i = 0; i < expected.length; i++) {
+          difference = Math.max(difference, Math.abs((expected[i] & 0xff) - (planeOut[i] & 0xff)));
+        }
+        expect(name + " plane", difference <= TOLERANCE);
+
+        checkOrientations(name, resizer, src, c[0], c[6], c[7]);
+      }
+    }
+  }
+
+  private void checkOrientations(
+      String name, BilinearResizer resizer, int[] src, int srcStride, int width, int height) {
+    int[] upright = new int[width * height];
+    resizer.resizeArgb(src, srcStride, upright);
+    byte[] plane = new byte[src.length];
+    for (int i = 0; i < src.length; i++) {
+      plane[i] = (byte) src[i];
+    }
+    byte[] uprightPlane = new byte[width * height];
+    resizer.resizePlane(plane, 0, srcStride, uprightPlane);
+    int[] uprightPlaneAsInts = new int[uprightPlane.length];
+    for (int i = 0; i < uprightPlane.length; i++) {
+      uprightPlaneAsInts[i] = uprightPlane[i];
+    }
+
+    int[] actual = new int[width * height];
+    byte[] actualPlane = new byte[width * height];
+    for (int quarterTurns = 0; quarterTurns < 4; quarterTurns++) {
+      int outWidth = resizer.getOutputWidth(quarterTurns);
+      int[] turned = rotate(upright, width, height, quarterTurns);
+      int[] turnedPlane = rotate(uprightPlaneAsInts, width, height, quarterTurns);
+      for (boolean mirror : new boolean[] {false, true}) {
+        String variant = name + " turned " + quarterTurns + (mirror ? " mirrored" : "");
+        int[] expected = mirror ? mirror(turned, outWidth) : turned;
+        int[] expectedPlane = mirror ? mirror(turnedPlane, outWidth) : turnedPlane;
+        resizer.resizeArgb(src, srcStride, quarterTurns, mirror, actual);
+        expect(variant + " argb", Arrays.equals(expected, actual));
+        resizer.resizePlane(plane, 0, srcStride, quarterTurns, mirror, actualPlane);
+        boolean planeEqual = true;
+        for (int i = 0; i < actualPlane.length; i++) {
+          planeEqual &= actualPlane[i] == (byte) expectedPlane[i];
+        }
+        expect(variant + " plane", planeEqual);
+      }
+    }
+  }
+
+  /**
+   * Turns an image counter-clockwise by quarter turns, pixel by pixel the way {@code Rot90Op}
+   * does.
+   */
+  static int[] rotate(int[] image, int width, int height, int quarterTurns) {
+    int[] result = image.clone();
+    for (int turn = 0; turn < quarterTurns; turn++) {
+      int[] turned = new int[result.length];
+      // The top right corner becomes the top left one, a width x height image height x width.
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          turned[(width - 1 - x) * height + y] = result[y * width + x];
+        }
+      }
+      result = turned;
+      int swap = width;
+      width = height;
+      height = swap;
+    }
+    return result;
+  }
+
+  /** Flips an image horizontally. */
+  static int[] mirror(int[] image, int width) {
+    int[] result = new int[image.length];
+    for (int i = 0; i < image.length; i++) {
+      int row = i / width;
+      result[row * width + width - 1 - (i - row * width)] = image[i];
+    }
+    return result;
+  }
+
+  /**
+   * Resizes with the same pixel center alignment as {@link BilinearResizer}, computing coordinates
+   * and weights in floating point for every pixel of every frame.
+   */
+  static void referenceResize(
+      int[] src,
+      int srcStride,
+      int cropLeft,
+      int cropTop,
+      int cropWidth,
+      int cropHeight,
+      int[] dst,
+      int dstWidth,
+      int dstHeight) {
+    float scaleX = (float) cropWidth / dstWidth;
+    float scaleY = (float) cropHeight / dstHeight;
+    for (int dy = 0; dy < dstHeight; dy++) {
+      float sy = Math.min(Math.max((dy + 0.5f) * scaleY - 0.5f, 0), cropHeight - 1);
+      int top = (int) sy;
+      int bottom = Math.min(top + 1, cropHeight - 1);
+      float fy = sy - top;
+      for (int dx = 0; dx < dstWidth; dx++) {
+        float sx = Math.min(Math.max((dx + 0.5f) * scaleX - 0.5f, 0), cropWidth - 1);
+        int left = (int) sx;
+        int right = Math.min(left + 1, cropWidth - 1);
+        float fx = sx - left;
+        int p00 = src[(cropTop + top) * srcStride + cropLeft + left];
+        int p01 = src[(cropTop + top) * srcStride + cropLeft + right];
+        int p10 = src[(cropTop + bottom) * srcStride + cropLeft + left];
+        int p11 = src[(cropTop + bottom) * srcStride + cropLeft + right];
+        int pixel = 0xff000000;
+        for (int shift = 0; shift <= 16; shift += 8) {
+          float upper = ((p00 >> shift) & 0xff) * (1 - fx) + ((p01 >> shift) & 0xff) * fx;
+          float lower = ((p10 >> shift) & 0xff) * (1 - fx) + ((p11 >> shift) & 0xff) * fx;
+          pixel |= Math.round(upper * (1 - fy) + lower * fy) << shift;
+        }
+        dst[dy * dstWidth + dx] = pixel;
+      }
+    }
+  }
+
+  /** Returns the largest difference of any color channel of two ARGB images. */
+  static int maxDifference(int[] a, int[] b) {
+    int max = 0;
+    for (int i = 0; i < a.length; i++) {
+      for (int shift = 0; shift <= 16; shift += 8) {
+        max = Math.max(max, Math.abs(((a[i] >> shift) & 0xff) - ((b[i] >> shift) & 0xff)));
+      }
+    }
+    return max;
+  }
+}
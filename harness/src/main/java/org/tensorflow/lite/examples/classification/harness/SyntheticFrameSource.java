@@ -0,0 +1,155 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.imageio.ImageIO;
+import org.tensorflow.lite.examples.classification.harness.YuvFrame.Layout;
+import org.tensorflow.lite.examples.classification.harness.YuvFrame.Plane;
+
+/**
+ * Synthesizes camera frames from a decoded image or a generated pattern.
+ *
+ * <p>The frame content is converted to YUV once; every frame handed out shares these planes, the
+ * same way a camera recycles a small pool of buffers.
+ */
+public final class SyntheticFrameSource {
+  private final YuvFrame frame;
+
+  private SyntheticFrameSource(YuvFrame frame) {
+    this.frame = frame;
+  }
+
+  /**
+   * Creates a source from an image file, e.g. a JPEG, scaled to the given size.
+   *
+   * @param rowPadding extra bytes at the end of every row, as added by some camera HALs
+   */
+  public static SyntheticFrameSource fromImage(
+      File file, int width, int height, Layout layout, int rowPadding) throws IOException {
+    BufferedImage decoded = ImageIO.read(file);
+    if (decoded == null) {
+      throw new IOException("Unsupported image file: " + file);
+    }
+    BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = scaled.createGraphics();
+    graphics.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    graphics.drawImage(decoded, 0, 0, width, height, null);
+    graphics.dispose();
+    int[] argb = scaled.getRGB(0, 0, width, height, null, 0, width);
+    return new SyntheticFrameSource(createFrame(argb, width, height, layout, rowPadding));
+  }
+
+  /**
+   * Creates a source from a generated pattern of color gradients and a checkerboard.
+   *
+   * @param rowPadding extra bytes at the end of every row, as added by some camera HALs
+   */
+  public static SyntheticFrameSource fromPattern(
+      int width, int height, Layout layout, int rowPadding) {
+    int[] argb = new int[width * height];
+    for (int j = 0; j < height; j++) {
+      for (int i = 0; i < width; i++) {
+        int r = i * 255 / Math.max(1, width - 1);
+        int g = j * 255 / Math.max(1, height - 1);
+        int b = ((i >> 4) + (j >> 4)) % 2 == 0 ? 32 : 224;
+        argb[j * width + i] = 0xff000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+    return new SyntheticFrameSource(createFrame(argb, width, height, layout, rowPadding));
+  }
+
+  /** Returns the next frame, arriving at the given {@link System#nanoTime()}. */
+  public YuvFrame nextFrame(long timestampNs) {
+    return frame.withTimestamp(timestampNs);
+  }
+
+  /** Converts ARGB pixels into YUV planes with the given layout, using BT.601 video range. */
+  static YuvFrame createFrame(int[] argb, int width, int height, Layout layout, int rowPadding) {
+    int chromaWidth = (width + 1) / 2;
+    int chromaHeight = (height + 1) / 2;
+    int yRowStride = width + rowPadding;
+    byte[] yData = new byte[yRowStride * height];
+    byte[] uData = new byte[chromaWidth * chromaHeight];
+    byte[] vData = new byte[chromaWidth * chromaHeight];
+
+    for (int j = 0; j < height; j++) {
+      for (int i = 0; i < width; i++) {
+        int pixel = argb[j * width + i];
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+        yData[j * yRowStride + i] = (byte) clamp(((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+        if ((i & 1) == 0 && (j & 1) == 0) {
+          int c = (j >> 1) * chromaWidth + (i >> 1);
+          uData[c] = (byte) clamp(((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+          vData[c] = (byte) clamp(((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+        }
+      }
+    }
+
+    Plane yPlane = new Plane(ByteBuffer.wrap(yData), yRowStride, 1);
+    Plane uPlane;
+    Plane vPlane;
+    if (layout == Layout.I420) {
+      int uvRowStride = chromaWidth + rowPadding;
+      uPlane = new Plane(ByteBuffer.wrap(pad(uData, chromaWidth, uvRowStride)), uvRowStride, 1);
+      vPlane = new Plane(ByteBuffer.wrap(pad(vData, chromaWidth, uvRowStride)), uvRowStride, 1);
+    } else {
+      // Both chroma planes are views of one interleaved buffer, offset by one byte, so each of
+      // them is one byte shorter than the buffer, like on Android.
+      int uvRowStride = chromaWidth * 2 + rowPadding;
+      byte[] first = layout == Layout.NV12 ? uData : vData;
+      byte[] second = layout == Layout.NV12 ? vData : uData;
+      byte[] interleaved = new byte[uvRowStride * chromaHeight];
+      for (int j = 0; j < chromaHeight; j++) {
+        for (int i = 0; i < chromaWidth; i++) {
+          interleaved[j * uvRowStride + 2 * i] = first[j * chromaWidth + i];
+          interleaved[j * uvRowStride + 2 * i + 1] = second[j * chromaWidth + i];
+        }
+      }
+      ByteBuffer firstBuffer = ByteBuffer.wrap(interleaved, 0, interleaved.length - 1).slice();
+      ByteBuffer secondBuffer = ByteBuffer.wrap(interleaved, 1, interleaved.length - 1).slice();
+      Plane firstPlane = new Plane(firstBuffer, uvRowStride, 2);
+      Plane secondPlane = new Plane(secondBuffer, uvRowStride, 2);
+      uPlane = layout == Layout.NV12 ? firstPlane : secondPlane;
+      vPlane = layout == Layout.NV12 ? secondPlane : firstPlane;
+    }
+    return new YuvFrame(width, height, layout, new Plane[] {yPlane, uPlane, vPlane}, 0);
+  }
+
+  private static byte[] pad(byte[] data, int width, int rowStride) {
+    if (rowStride == width) {
+      return data;
+    }
+    int rows = data.length / width;
+    byte[] padded = new byte[rowStride * rows];
+    for (int j = 0; j < rows; j++) {
+      System.arraycopy(data, j * width, padded, j * rowStride, width);
+    }
+    return padded;
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+  }
+}
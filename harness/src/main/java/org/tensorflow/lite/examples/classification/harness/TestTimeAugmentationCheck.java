@@ -0,0 +1,138 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.util.Random;
+import org.tensorflow.lite.examples.classification.tflite.BoundingBox;
+import org.tensorflow.lite.examples.classification.tflite.TestTimeAugmentation;
+
+/**
+ * Checks that the views of a {@link TestTimeAugmentation} start with the center crop, stay within
+ * it, are shifted and zoomed as configured and mirrored in the second half with flipping, and that
+ * their scores are averaged like a double precision reference does.
+ */
+public final class TestTimeAugmentationCheck extends Check {
+  private static final int[][] FRAME_SIZES = {{640, 480}, {480, 640}, {1280, 720}, {224, 224}};
+  private static final float[] SHIFTS = {0.0f, 0.1f, 0.25f};
+  private static final float[][] SCALES = {{}, {0.8f}, {0.9f, 0.7f, 1.0f}};
+  private static final int CLASS_COUNT = 1001;
+  private static final float SCORE_TOLERANCE = 1e-6f;
+
+  private final Random random = new Random(42);
+
+  private TestTimeAugmentationCheck() {}
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new TestTimeAugmentationCheck());
+  }
+
+  @Override
+  protected void run() {
+    for (int[] frame : FRAME_SIZES) {
+      for (boolean flip : new boolean[] {false, true}) {
+        for (float shift : SHIFTS) {
+          for (float[] scales : SCALES) {
+            checkCrops(frame[0], frame[1], flip, shift, scales);
+          }
+        }
+      }
+    }
+    for (int count = 1; count <= 12; count++) {
+      checkAverage(count);
+    }
+  }
+
+  private void checkCrops(int width, int height, boolean flip, float shift, float[] scales) {
+    String name =
+        String.format(
+            "%dx%d frame, flip %b, shift %.2f, %d scales",
+            width, height, flip, shift, scales.length);
+    TestTimeAugmentation augmentation = new TestTimeAugmentation(flip, shift, scales);
+    BoundingBox[] crops = augmentation.getCrops(width, height);
+    int cropCount = 1 + (shift > 0 ? 4 : 0) + scales.length;
+    expect(name + ": count", crops.length == augmentation.getCount());
+    expect(name + ": count with flip", crops.length == (flip ? 2 : 1) * cropCount);
+
+    int cropSize = Math.min(width, height);
+    BoundingBox center =
+        new BoundingBox(
+            (width - cropSize) / 2,
+            (height - cropSize) / 2,
+            (width - cropSize) / 2 + cropSize,
+            (height - cropSize) / 2 + cropSize);
+    expect(name + ": center crop first", crops[0].equals(center));
+    for (int i = 0; i < crops.length; i++) {
+      BoundingBox crop = crops[i];
+      expect(
+          name + ": " + crop + " within the center crop",
+          crop.getLeft() >= center.getLeft()
+              && crop.getTop() >= center.getTop()
+              && crop.getRight() <= center.getRight()
+              && crop.getBottom() <= center.getBottom());
+      expect(name + ": " + crop + " square", crop.getWidth() == crop.getHeight());
+      expect(name + ": mirrored in the second half", augmentation.isMirrored(i) == i >= cropCount);
+      if (i >= cropCount) {
+        expect(name + ": mirrored crop " + i, crop.equals(crops[i - cropCount]));
+      }
+    }
+
+    int index = 1;
+    if (shift > 0) {
+      float shiftedSize = cropSize * (1 - shift);
+      for (int corner = 0; corner < 4; corner++) {
+        BoundingBox crop = crops[index++];
+        expect(
+            name + ": shifted crop size " + crop,
+            Math.abs(crop.getWidth() - shiftedSize) <= 0.5f);
+        boolean right = (corner & 1) != 0;
+        boolean bottom = (corner & 2) != 0;
+        expect(
+            name + ": shifted crop corner " + crop,
+            (right ? crop.getRight() == center.getRight() : crop.getLeft() == center.getLeft())
+                && (bottom
+                    ? crop.getBottom() == center.getBottom()
+                    : crop.getTop() == center.getTop()));
+      }
+    }
+    for (float scale : scales) {
+      BoundingBox crop = crops[index++];
+      expect(
+          name + ": zoomed crop size " + crop,
+          Math.abs(crop.getWidth() - cropSize * scale) <= 0.5f);
+      float leftMargin = crop.getLeft() - center.getLeft();
+      float rightMargin = center.getRight() - crop.getRight();
+      expect(name + ": zoomed crop centered " + crop, Math.abs(leftMargin - rightMargin) <= 1);
+    }
+  }
+
+  private void checkAverage(int count) {
+    float[] scores = new float[count * CLASS_COUNT];
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] = random.nextFloat();
+    }
+    float[] meanScores = new float[CLASS_COUNT];
+    TestTimeAugmentation.average(scores, count, meanScores);
+    boolean matches = true;
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      double sum = 0;
+      for (int view = 0; view < count; view++) {
+        sum += scores[view * CLASS_COUNT + i];
+      }
+      matches &= Math.abs(meanScores[i] - sum / count) <= SCORE_TOLERANCE;
+    }
+    expect(count + " views: mean scores", matches);
+  }
+}
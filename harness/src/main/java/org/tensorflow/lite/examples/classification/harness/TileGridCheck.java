@@ -0,0 +1,178 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.tensorflow.lite.examples.classification.tflite.BoundingBox;
+import org.tensorflow.lite.examples.classification.tflite.Recognition;
+import org.tensorflow.lite.examples.classification.tflite.TileGrid;
+import org.tensorflow.lite.examples.classification.tflite.TopK;
+
+/**
+ * Checks that the tiles of a {@link TileGrid} are squares within the frame that start with the
+ * center crop, span the frame and overlap by at least the requested fraction unless they are as
+ * large as the frame allows, and that both ways
+ * of merging tile results agree with an exhaustive search for the best tile of every class.
+ */
+public final class TileGridCheck extends Check {
+  private static final int[][] FRAME_SIZES = {
+    {640, 480}, {480, 640}, {1280, 720}, {224, 224}, {101, 37}
+  };
+  private static final int[][] GRIDS = {{1, 1}, {2, 2}, {3, 3}, {4, 2}, {1, 3}};
+  private static final float[] OVERLAPS = {0.0f, 0.25f, 0.5f};
+  private static final int CLASS_COUNT = 50;
+  private static final int MAX_RESULTS = 3;
+  private static final int MERGE_ROUNDS = 200;
+
+  private final Random random = new Random(42);
+
+  private TileGridCheck() {}
+
+  public static void main(String[] args) throws Exception {
+    Check.execute(new TileGridCheck());
+  }
+
+  @Override
+  protected void run() {
+    for (int[] frame : FRAME_SIZES) {
+      for (int[] grid : GRIDS) {
+        for (float overlap : OVERLAPS) {
+          checkTiles(frame[0], frame[1], new TileGrid(grid[0], grid[1], overlap));
+        }
+      }
+    }
+    for (int round = 0; round < MERGE_ROUNDS; round++) {
+      checkMerge(1 + random.nextInt(10));
+    }
+  }
+
+  private void checkTiles(int width, int height, TileGrid grid) {
+    String name =
+        String.format(
+            "%dx%d frame, %dx%d grid, overlap %.2f",
+            width, height, grid.getColumns(), grid.getRows(), grid.getOverlap());
+    BoundingBox[] tiles = grid.getTiles(width, height);
+    expect(name + ": tile count", tiles.length == grid.getTileCount());
+    int cropSize = Math.min(width, height);
+    int cropLeft = (width - cropSize) / 2;
+    int cropTop = (height - cropSize) / 2;
+    expect(
+        name + ": center crop first",
+        tiles[0].equals(
+            new BoundingBox(cropLeft, cropTop, cropLeft + cropSize, cropTop + cropSize)));
+    for (BoundingBox tile : tiles) {
+      expect(
+          name + ": " + tile + " within the frame",
+          tile.getLeft() >= 0
+              && tile.getTop() >= 0
+              && tile.getRight() <= width
+              && tile.getBottom() <= height);
+      expect(
+          name + ": " + tile + " square in whole pixels",
+          tile.getWidth() == tile.getHeight()
+              && tile.getWidth() >= 1
+              && tile.getLeft() == (int) tile.getLeft()
+              && tile.getTop() == (int) tile.getTop());
+    }
+
+    int columns = grid.getColumns();
+    int rows = grid.getRows();
+    float size = tiles[1].getWidth();
+    BoundingBox first = tiles[1];
+    BoundingBox last = tiles[tiles.length - 1];
+    if (columns > 1) {
+      expect(name + ": spans the width", first.getLeft() == 0 && last.getRight() == width);
+    }
+    if (rows > 1) {
+      expect(name + ": spans the height", first.getTop() == 0 && last.getBottom() == height);
+    }
+    // Tiles limited by the shorter side of the frame may overlap less, and offsets are rounded.
+    float maxStep = size < cropSize ? size * (1 - grid.getOverlap()) + 1 : Float.MAX_VALUE;
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        BoundingBox tile = tiles[1 + row * columns + column];
+        expect(name + ": equal tile sizes", tile.getWidth() == size);
+        if (column > 0) {
+          BoundingBox left = tiles[row * columns + column];
+          float step = tile.getLeft() - left.getLeft();
+          expect(name + ": column overlap", step >= 0 && step <= maxStep);
+          expect(name + ": same row", tile.getTop() == left.getTop());
+        }
+        if (row > 0) {
+          BoundingBox above = tiles[1 + (row - 1) * columns + column];
+          float step = tile.getTop() - above.getTop();
+          expect(name + ": row overlap", step >= 0 && step <= maxStep);
+        }
+      }
+    }
+  }
+
+  private void checkMerge(int tileCount) {
+    List<String> labels = new ArrayList<>();
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      labels.add("class" + i);
+    }
+    BoundingBox[] tiles = new BoundingBox[tileCount];
+    for (int i = 0; i < tileCount; i++) {
+      tiles[i] = new BoundingBox(i, i, i + 10, i + 10);
+    }
+    float[] tileScores = new float[tileCount * CLASS_COUNT];
+    List<List<Recognition>> tileResults = new ArrayList<>();
+    for (int tile = 0; tile < tileCount; tile++) {
+      float[] scores = new float[CLASS_COUNT];
+      for (int i = 0; i < CLASS_COUNT; i++) {
+        scores[i] = random.nextFloat();
+      }
+      System.arraycopy(scores, 0, tileScores, tile * CLASS_COUNT, CLASS_COUNT);
+      tileResults.add(TopK.select(labels, scores, MAX_RESULTS));
+    }
+
+    // Exhaustive search: the best score and its tile of every class, then the best classes.
+    float[] expectedScores = new float[CLASS_COUNT];
+    int[] expectedTiles = new int[CLASS_COUNT];
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      expectedScores[i] = Float.NEGATIVE_INFINITY;
+      for (int tile = 0; tile < tileCount; tile++) {
+        if (tileScores[tile * CLASS_COUNT + i] > expectedScores[i]) {
+          expectedScores[i] = tileScores[tile * CLASS_COUNT + i];
+          expectedTiles[i] = tile;
+        }
+      }
+    }
+    int[] expected = new int[MAX_RESULTS];
+    int count = TopK.selectIndices(expectedScores, CLASS_COUNT, expected);
+
+    float[] bestScores = new float[CLASS_COUNT];
+    List<Recognition> merged =
+        TileGrid.merge(labels, tileScores, tileCount, tiles, bestScores, MAX_RESULTS);
+    List<Recognition> mergedLists = TileGrid.merge(tileResults, tiles, MAX_RESULTS);
+    String name = tileCount + " tiles";
+    expect(name + ": result count", merged.size() == count && mergedLists.size() == count);
+    for (int i = 0; i < Math.min(count, Math.min(merged.size(), mergedLists.size())); i++) {
+      int index = expected[i];
+      for (Recognition recognition : new Recognition[] {merged.get(i), mergedLists.get(i)}) {
+        expect(
+            name + ": result " + i + " " + recognition,
+            recognition.getId().equals(Integer.toString(index))
+                && recognition.getTitle().equals(labels.get(index))
+                && recognition.getConfidence() == expectedScores[index]
+                && recognition.getLocation() == tiles[expectedTiles[index]]);
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.harness;
+
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.classification.tflite.utils.Frame;
+
+/**
+ * A synthetic YUV_420_888 {@link Frame}, shaped like {@code android.media.Image}: three planes,
+ * each with a buffer, a row stride and a pixel stride.
+ */
+public final class YuvFrame implements Frame {
+
+  /** The memory layout of the chroma planes. */
+  public enum Layout {
+    /** Separate U and V planes with a pixel stride of 1. */
+    I420,
+    /** Interleaved chroma starting with U, pixel stride 2. */
+    NV12,
+    /** Interleaved chroma starting with V, pixel stride 2, as most camera HALs produce. */
+    NV21
+  }
+
+  /** A plane of the frame, mirroring {@code android.media.Image.Plane}. */
+  public static final class Plane {
+    private final ByteBuffer buffer;
+    private final int rowStride;
+    private final int pixelStride;
+
+    Plane(ByteBuffer buffer, int rowStride, int pixelStride) {
+      this.buffer = buffer;
+      this.rowStride = rowStride;
+      this.pixelStride = pixelStride;
+    }
+
+    /** Returns a new view of the plane data, positioned at its start. */
+    public ByteBuffer getBuffer() {
+      return buffer.duplicate();
+    }
+
+    public int getRowStride() {
+      return rowStride;
+    }
+
+    public int getPixelStride() {
+      return pixelStride;
+    }
+  }
+
+  private final int width;
+  private final int height;
+  private final Layout layout;
+  private final Plane[] planes;
+  private final long timestampNs;
+
+  YuvFrame(int width, int height, Layout layout, Plane[] planes, long timestampNs) {
+    this.width = width;
+    this.height = height;
+    this.layout = layout;
+    this.planes = planes;
+    this.timestampNs = timestampNs;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  public Layout getLayout() {
+    return layout;
+  }
+
+  /** Returns the Y, U and V planes, in this order. */
+  public Plane[] getPlanes() {
+    return planes;
+  }
+
+  /** Returns the {@link System#nanoTime()} at which the frame arrived. */
+  @Override
+  public long getTimestamp() {
+    return timestampNs;
+  }
+
+  @Override
+  public int getPlaneCount() {
+    return planes.length;
+  }
+
+  @Override
+  public ByteBuffer getPlaneBuffer(int plane) {
+    return planes[plane].getBuffer();
+  }
+
+  @Override
+  public int getRowStride(int plane) {
+    return planes[plane].getRowStride();
+  }
+
+  @Override
+  public int getPixelStride(int plane) {
+    return planes[plane].getPixelStride();
+  }
+
+  /** Copies the data of every plane into a new array, in Y, U, V order. */
+  byte[][] copyPlaneBytes() {
+    byte[][] bytes = new byte[planes.length][];
+    for (int i = 0; i < planes.length; i++) {
+      ByteBuffer buffer = planes[i].getBuffer();
+      bytes[i] = new byte[buffer.remaining()];
+      buffer.get(bytes[i]);
+    }
+    return bytes;
+  }
+
+  /** Returns a frame sharing the planes of this one, arriving at a different time. */
+  YuvFrame withTimestamp(long timestampNs) {
+    return new YuvFrame(width, height, layout, planes, timestampNs);
+  }
+}
@@ -19,7 +19,6 @@ import static java.lang.Math.min;
 
 import android.app.Activity;
 import android.graphics.Bitmap;
-import android.graphics.RectF;
 import android.media.Image;
 import android.os.SystemClock;
 import android.os.Trace;
@@ -27,58 +26,46 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.Future;
 
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.examples.classification.tflite.TraceRecorder.Event;
+import org.tensorflow.lite.examples.classification.models.ModelCache;
+import org.tensorflow.lite.examples.classification.models.ModelRepository;
+import org.tensorflow.lite.examples.classification.models.ModelCache.TensorInfo;
+import org.tensorflow.lite.examples.classification.models.ModelDescriptor;
+import org.tensorflow.lite.examples.classification.models.ModelDescriptor.Head;
+import org.tensorflow.lite.examples.classification.models.ModelDescriptor.Normalization;
+import org.tensorflow.lite.examples.classification.models.ModelRegistry;
+import org.tensorflow.lite.examples.classification.tflite.utils.BilinearResizer;
+import org.tensorflow.lite.examples.classification.tflite.utils.Frame;
 import org.tensorflow.lite.examples.classification.tflite.utils.ImageUtils;
+import org.tensorflow.lite.examples.classification.tflite.utils.OrientationUtils;
+import org.tensorflow.lite.examples.classification.tflite.utils.YuvConverter;
 import org.tensorflow.lite.gpu.GpuDelegate;
 import org.tensorflow.lite.nnapi.NnApiDelegate;
-import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.common.TensorOperator;
-import org.tensorflow.lite.support.common.TensorProcessor;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
-import org.tensorflow.lite.support.image.ops.ResizeOp.ResizeMethod;
-import org.tensorflow.lite.support.image.ops.ResizeWithCropOrPadOp;
-import org.tensorflow.lite.support.image.ops.Rot90Op;
-import org.tensorflow.lite.support.label.TensorLabel;
-import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
 /**
  * A classifier specialized to label images using TensorFlow Lite.
  */
-public abstract class Classifier {
+public class Classifier {
   public static final String TAG = "ClassifierWithSupport";
-  private byte[][] yuvBytes = new byte[3][];
-  private int[] rgbBytes = null;
-  private int yRowStride;
+  private final ImageFrame imageFrame = new ImageFrame();
+  private final YuvConverter yuvConverter = new YuvConverter();
 
   /**
-   * The model type used for classification.
+   * Deadline of requests to {@link #recognizeImageAsync} that never expire.
    */
-  public enum Model {
-    FLOAT_MOBILENET,
-    QUANTIZED_MOBILENET,
-    FLOAT_EFFICIENTNET,
-    QUANTIZED_EFFICIENTNET
-  }
-
-  /**
-   * The runtime device type used for executing classification.
-   */
-  public enum Device {
-    CPU,
-    NNAPI,
-    GPU
-  }
+  public static final long NO_DEADLINE = Long.MAX_VALUE;
 
   /**
    * Number of results to show in the UI.
@@ -97,6 +84,21 @@ public abstract class Classifier {
    */
   private final int imageSizeY;
 
+  /**
+   * The device the classifier runs on.
+   */
+  private final Device device;
+
+  /**
+   * The model the classifier runs.
+   */
+  private final ModelDescriptor model;
+
+  /**
+   * The SHA-256 checksum of the model file in hex.
+   */
+  private final String modelChecksum;
+
   /**
    * Optional GPU delegate for accleration.
    */
@@ -118,130 +120,225 @@ public abstract class Classifier {
   private final Interpreter.Options tfliteOptions = new Interpreter.Options();
 
   /**
-   * Labels corresponding to the output of the vision model.
+   * Labels corresponding to each output of the vision model, one list per classification head.
+   */
+  private final List<List<String>> headLabels = new ArrayList<>();
+
+  /**
+   * The input tensor, a direct buffer in native byte order that the normalization writes into in
+   * place. The interpreter uses such a buffer as the tensor memory on the CPU instead of copying
+   * it.
+   */
+  private final ByteBuffer inputBuffer;
+
+  /**
+   * Float view of the input tensor for float models, or null for quantized ones.
+   */
+  private final FloatBuffer inputFloats;
+
+  /**
+   * The model specific normalization of the input image.
+   */
+  private final Normalization inputNormalization;
+
+  /**
+   * Resizes the center crop of bitmaps to the input size, with its buffers. Created for the first
+   * bitmap and again when the bitmap size changes.
+   */
+  private BilinearResizer resizer;
+
+  private int[] cropPixels;
+
+  /**
+   * Resizes the center crop of camera frames to the input size straight from their ARGB pixels.
+   * Created for the first frame and again when the frame size changes.
+   */
+  private BilinearResizer frameResizer;
+
+  private int[] resizedPixels;
+
+  /**
+   * Output probability tensors, one direct buffer in native byte order per classification head.
+   */
+  private final ByteBuffer[] outputBuffers;
+
+  /**
+   * Whether the output of a head is UINT8 rather than FLOAT32.
+   */
+  private final boolean[] quantizedOutputs;
+
+  /**
+   * Dequantization of the output probabilities, one per classification head.
+   */
+  private final Normalization[] outputNormalizations;
+
+  /**
+   * Dequantized output probabilities, one array per classification head, reused for every run.
+   */
+  private final float[][] probabilities;
+
+  /**
+   * Output of the image embedding, a direct buffer like the heads, or null if the model has none.
+   */
+  private final ByteBuffer embeddingBuffer;
+
+  private final boolean quantizedEmbedding;
+
+  private final Normalization embeddingNormalization;
+
+  /**
+   * Dequantized image embedding, reused for every run.
+   */
+  private final float[] embedding;
+
+  /**
+   * Inputs and outputs of the interpreter, reused for every run of all heads at once.
+   */
+  private final Object[] inputs = new Object[1];
+
+  private final Map<Integer, Object> outputs = new HashMap<>();
+
+  /**
+   * Index of the output tensor of the first head, the only output of batched runs.
+   */
+  private final int firstHeadOutput;
+
+  /**
+   * The number of images the input tensor currently holds, 1 except for batched runs.
+   */
+  private int batchSize = 1;
+
+  /**
+   * Input and first head output of batched runs, direct buffers like the single image ones,
+   * allocated for {@link #batchCapacity} images.
+   */
+  private ByteBuffer batchInputBuffer;
+
+  private FloatBuffer batchInputFloats;
+  private ByteBuffer batchOutputBuffer;
+  private int batchCapacity;
+  private final Object[] batchInputs = new Object[1];
+  private final Map<Integer, Object> batchOutputs = new HashMap<>();
+
+  /**
+   * Whether {@link #recognizeImageTiles} runs all tiles as one batch, or one by one.
+   */
+  private boolean tileBatching = true;
+
+  /**
+   * The tiles of the last tiled recognition and the resizers of their crops. Created for the first
+   * frame and again when the frame size or the grid changes.
+   */
+  private TileGrid tileGrid;
+
+  private int tileFrameWidth;
+  private int tileFrameHeight;
+  private BoundingBox[] tiles;
+  private BilinearResizer[] tileResizers;
+
+  /**
+   * Dequantized scores of the first head for every tile, one row per tile, and their maximum.
+   */
+  private float[] tileScores;
+
+  private float[] bestScores;
+
+  /**
+   * The views of the last augmented recognition, the resizers of their crops and whether they are
+   * mirrored. Created for the first frame and again when the frame size or the augmentations
+   * change.
+   */
+  private TestTimeAugmentation augmentation;
+
+  private int augmentationFrameWidth;
+  private int augmentationFrameHeight;
+  private BilinearResizer[] augmentationResizers;
+  private boolean[] augmentationMirrors;
+
+  /**
+   * Dequantized scores of the first head for every view, one row per view, and their mean.
+   */
+  private float[] augmentationScores;
+
+  private float[] meanScores;
+
+  /**
+   * Pixels of bitmaps classified in several crops, and one crop resized to the input size.
+   */
+  private int[] framePixels;
+
+  private int[] cropImage;
+
+  /**
+   * Runs asynchronous recognitions, created on first use.
    */
-  private final List<String> labels;
+  private RecognitionExecutor recognitionExecutor;
 
   /**
-   * Input image TensorBuffer.
+   * Whether {@link #close} was called, after which no recognitions are accepted.
    */
-  private TensorImage inputImageBuffer;
+  private boolean closed;
 
   /**
-   * Output probability TensorBuffer.
+   * Optional recorder of the pipeline stages of every frame.
    */
-  private final TensorBuffer outputProbabilityBuffer;
+  private volatile TraceRecorder traceRecorder;
 
   /**
-   * Processer to apply post processing of the output probability.
+   * Identifies the frame being recognized in the trace, its camera timestamp.
    */
-  private final TensorProcessor probabilityProcessor;
+  private long traceFrameId;
 
   /**
    * Creates a classifier with the provided configuration.
    *
    * @param activity   The current Activity.
-   * @param model      The model to use for classification.
+   * @param model      The model to use for classification, from the {@link ModelRegistry}.
    * @param device     The device to use for classification.
    * @param numThreads The number of threads to use for classification.
    * @return A classifier with the desired configuration.
    */
-  public static Classifier create(Activity activity, Model model, Device device, int numThreads)
+  public static Classifier create(
+          Activity activity, ModelDescriptor model, Device device, int numThreads)
           throws IOException {
-    if (model == Model.QUANTIZED_MOBILENET) {
-      return new ClassifierQuantizedMobileNet(activity, device, numThreads);
-    } else if (model == Model.FLOAT_MOBILENET) {
-      return new ClassifierFloatMobileNet(activity, device, numThreads);
-    } else if (model == Model.FLOAT_EFFICIENTNET) {
-      return new ClassifierFloatEfficientNet(activity, device, numThreads);
-    } else if (model == Model.QUANTIZED_EFFICIENTNET) {
-      return new ClassifierQuantizedEfficientNet(activity, device, numThreads);
-    } else {
-      throw new UnsupportedOperationException();
-    }
+    return new Classifier(activity, model, device, numThreads);
   }
 
   /**
-   * An immutable result returned by a Classifier describing what was recognized.
+   * Receives the outcome of a request to {@link #recognizeImageAsync}. Every request gets exactly
+   * one call, after which the image is no longer used by the classifier and can be closed.
    */
-  public static class Recognition {
-    /**
-     * A unique identifier for what has been recognized. Specific to the class, not the instance of
-     * the object.
-     */
-    private final String id;
-
+  public interface RecognitionCallback {
     /**
-     * Display name for the recognition.
+     * Called on the classifier thread with the results of the recognition.
      */
-    private final String title;
+    void onResult(Image image, List<Recognition> recognitions);
 
     /**
-     * A sortable score for how good the recognition is relative to others. Higher should be better.
+     * Called when the request was dropped before it started, either because a newer request
+     * arrived, its deadline passed, or it was cancelled.
      */
-    private final Float confidence;
+    void onDropped(Image image);
 
     /**
-     * Optional location within the source image for the location of the recognized object.
+     * Called on the classifier thread when the recognition failed.
      */
-    private RectF location;
-
-    public Recognition(
-            final String id, final String title, final Float confidence, final RectF location) {
-      this.id = id;
-      this.title = title;
-      this.confidence = confidence;
-      this.location = location;
-    }
-
-    public String getId() {
-      return id;
-    }
-
-    public String getTitle() {
-      return title;
-    }
-
-    public Float getConfidence() {
-      return confidence;
-    }
-
-    public RectF getLocation() {
-      return new RectF(location);
-    }
-
-    public void setLocation(RectF location) {
-      this.location = location;
-    }
-
-    @Override
-    public String toString() {
-      String resultString = "";
-      if (id != null) {
-        resultString += "[" + id + "] ";
-      }
-
-      if (title != null) {
-        resultString += title + " ";
-      }
-
-      if (confidence != null) {
-        resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-      }
-
-      if (location != null) {
-        resultString += location + " ";
-      }
-
-      return resultString.trim();
-    }
+    void onError(Image image, Throwable error);
   }
 
   /**
    * Initializes a {@code Classifier}.
    */
-  protected Classifier(Activity activity, Device device, int numThreads) throws IOException {
-    MappedByteBuffer tfliteModel = FileUtil.loadMappedFile(activity, getModelPath());
+  private Classifier(Activity activity, ModelDescriptor model, Device device, int numThreads)
+          throws IOException {
+    this.model = model;
+    // Maps the model from app-private storage, where it is fetched once, bundled or downloaded.
+    ModelCache.Entry cachedModel =
+            ModelRepository.getCache(activity)
+                    .openWithOutputLabels(model.getModelPath(), model.getLabelPaths());
+    modelChecksum = cachedModel.getModelChecksum();
+    MappedByteBuffer tfliteModel = cachedModel.mapModel();
+    this.device = device;
     switch (device) {
       case NNAPI:
         nnApiDelegate = new NnApiDelegate();
@@ -258,68 +355,702 @@ public abstract class Classifier {
     tfliteOptions.setNumThreads(numThreads);
     tflite = new Interpreter(tfliteModel, tfliteOptions);
 
-    // Loads labels out from the label file.
-    labels = FileUtil.loadLabels(activity, getLabelPath());
-
-    // Reads type and shape of input and output tensors, respectively.
-    int imageTensorIndex = 0;
-    int[] imageShape = tflite.getInputTensor(imageTensorIndex).shape(); // {1, height, width, 3}
+    // Reads type and shape of input and output tensors, respectively, from the cache when a
+    // previous start already read them from the model.
+    TensorInfo imageInfo = cachedModel.getInputInfo();
+    List<TensorInfo> probabilityInfos = cachedModel.getOutputInfos();
+    if (imageInfo == null || probabilityInfos == null) {
+      int imageTensorIndex = 0;
+      imageInfo = getTensorInfo(tflite.getInputTensor(imageTensorIndex));
+      probabilityInfos = new ArrayList<>();
+      for (int i = 0; i < tflite.getOutputTensorCount(); i++) {
+        probabilityInfos.add(getTensorInfo(tflite.getOutputTensor(i)));
+      }
+      try {
+        cachedModel.saveTensorInfo(imageInfo, probabilityInfos);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to cache the tensor info of " + model.getModelPath(), e);
+      }
+    }
+    int[] imageShape = imageInfo.getShape(); // {1, height, width, 3}
     imageSizeY = imageShape[1];
     imageSizeX = imageShape[2];
-    DataType imageDataType = tflite.getInputTensor(imageTensorIndex).dataType();
-    int probabilityTensorIndex = 0;
-    int[] probabilityShape =
-            tflite.getOutputTensor(probabilityTensorIndex).shape(); // {1, NUM_CLASSES}
-    DataType probabilityDataType = tflite.getOutputTensor(probabilityTensorIndex).dataType();
-
-    // Creates the input tensor.
-    inputImageBuffer = new TensorImage(imageDataType);
+    DataType imageDataType = DataType.valueOf(imageInfo.getDataType());
+
+    // Creates the input tensor, which lives as long as the classifier.
+    int inputValues = imageSizeX * imageSizeY * 3;
+    inputNormalization = getPreprocessNormalization(model);
+    if (imageDataType == DataType.FLOAT32) {
+      inputBuffer = allocateTensor(inputValues * 4);
+      inputFloats = inputBuffer.asFloatBuffer();
+    } else if (imageDataType == DataType.UINT8) {
+      inputBuffer = allocateTensor(inputValues);
+      inputFloats = null;
+    } else {
+      throw new IllegalArgumentException("Unsupported input type " + imageDataType);
+    }
+    inputs[0] = inputBuffer;
 
-    // Creates the output tensor and its processor.
-    outputProbabilityBuffer = TensorBuffer.createFixedSize(probabilityShape, probabilityDataType);
+    // Separates the image embedding, if the model outputs one, from the classification heads.
+    int embeddingOutput = model.getEmbeddingOutput();
+    List<TensorInfo> headInfos = new ArrayList<>(probabilityInfos);
+    if (embeddingOutput >= headInfos.size()) {
+      throw new IllegalArgumentException(model + " has no output " + embeddingOutput);
+    }
+    if (embeddingOutput >= 0) {
+      TensorInfo embeddingInfo = headInfos.remove(embeddingOutput);
+      int[] embeddingShape = embeddingInfo.getShape(); // {1, EMBEDDING_SIZE}
+      embeddingBuffer = allocateOutput(embeddingInfo, embeddingShape[embeddingShape.length - 1]);
+      quantizedEmbedding = isQuantized(embeddingInfo);
+      embeddingNormalization = getPostprocessNormalization(null, embeddingInfo);
+      embedding = new float[embeddingShape[embeddingShape.length - 1]];
+      outputs.put(embeddingOutput, embeddingBuffer);
+    } else {
+      embeddingBuffer = null;
+      quantizedEmbedding = false;
+      embeddingNormalization = null;
+      embedding = null;
+    }
 
-    // Creates the post processor for the output probability.
-    probabilityProcessor = new TensorProcessor.Builder().add(getPostprocessNormalizeOp()).build();
+    // Creates the output tensor, its labels and its dequantization for every head. All heads
+    // share the backbone, so a single run of the interpreter fills all of them.
+    firstHeadOutput = embeddingOutput == 0 ? 1 : 0;
+    int headCount = headInfos.size();
+    outputBuffers = new ByteBuffer[headCount];
+    quantizedOutputs = new boolean[headCount];
+    outputNormalizations = new Normalization[headCount];
+    probabilities = new float[headCount][];
+    for (int i = 0; i < headCount; i++) {
+      TensorInfo probabilityInfo = headInfos.get(i);
+      int[] probabilityShape = probabilityInfo.getShape(); // {1, NUM_CLASSES}
+      int classCount = probabilityShape[probabilityShape.length - 1];
+      outputBuffers[i] = allocateOutput(probabilityInfo, classCount);
+      quantizedOutputs[i] = isQuantized(probabilityInfo);
+      probabilities[i] = new float[classCount];
+      int outputIndex = embeddingOutput >= 0 && i >= embeddingOutput ? i + 1 : i;
+      outputs.put(outputIndex, outputBuffers[i]);
+
+      Head head = i < model.getHeads().size() ? model.getHeads().get(i) : null;
+      outputNormalizations[i] = getPostprocessNormalization(head, probabilityInfo);
+
+      // Loads labels out from the cached label file, or names the classes by their index.
+      List<String> labels =
+              i < model.getHeads().size() ? cachedModel.getLabels(i) : new ArrayList<>();
+      if (labels.isEmpty()) {
+        for (int j = 0; j < classCount; j++) {
+          labels.add(Integer.toString(j));
+        }
+      }
+      headLabels.add(labels);
+    }
 
     Log.d(TAG, "Created a Tensorflow Lite Image Classifier.");
   }
 
+  private static ByteBuffer allocateTensor(int bytes) {
+    return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+  }
+
+  /** Allocates the buffer of a FLOAT32 or UINT8 output tensor holding {@code values} values. */
+  private static ByteBuffer allocateOutput(TensorInfo info, int values) {
+    DataType dataType = DataType.valueOf(info.getDataType());
+    if (dataType == DataType.FLOAT32) {
+      return allocateTensor(values * 4);
+    } else if (dataType == DataType.UINT8) {
+      return allocateTensor(values);
+    }
+    throw new IllegalArgumentException("Unsupported output type " + dataType);
+  }
+
+  private static boolean isQuantized(TensorInfo info) {
+    return DataType.valueOf(info.getDataType()) == DataType.UINT8;
+  }
+
+  private static TensorInfo getTensorInfo(Tensor tensor) {
+    Tensor.QuantizationParams quantization = tensor.quantizationParams();
+    return new TensorInfo(
+            tensor.shape(),
+            tensor.dataType().name(),
+            quantization.getScale(),
+            quantization.getZeroPoint());
+  }
+
   /**
    * Runs inference and returns the classification results.
    */
   public List<Recognition> recognizeImage(final Image image, int sensorOrientation) {
+    return recognizeImageHeads(image, sensorOrientation).get(0);
+  }
+
+  /**
+   * Runs inference and returns the classification results of every head, in output tensor order.
+   */
+  public List<List<Recognition>> recognizeImageHeads(final Image image, int sensorOrientation) {
+    return recognizeImageHeads(imageFrame.wrap(image), sensorOrientation);
+  }
+
+  /**
+   * Runs inference on a YUV_420_888 frame that isn't a camera {@link Image}, e.g. a converted still
+   * image, and returns the classification results.
+   */
+  public List<Recognition> recognizeImage(final Frame frame, int sensorOrientation) {
+    return recognizeImageHeads(frame, sensorOrientation).get(0);
+  }
+
+  /**
+   * Runs inference on a YUV_420_888 frame and returns the classification results of every head, in
+   * output tensor order.
+   */
+  public List<List<Recognition>> recognizeImageHeads(final Frame frame, int sensorOrientation) {
     // Logs this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
 
     Trace.beginSection("loadImage");
     long startTimeForLoadImage = SystemClock.uptimeMillis();
-    inputImageBuffer = loadImage(image, sensorOrientation);
+    traceFrameId = frame.getTimestamp();
+    int[] pixels = convertToArgb(frame);
+    traceBegin(Event.PREPROCESS);
+    int[] croppedImage =
+            cropAndResize(pixels, frame.getWidth(), frame.getHeight(), sensorOrientation);
+    traceEnd(Event.PREPROCESS);
     long endTimeForLoadImage = SystemClock.uptimeMillis();
     Trace.endSection();
-    Log.v(TAG, "Timecost to load the image: " + (endTimeForLoadImage - startTimeForLoadImage));
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(TAG, "Timecost to load the image: " + (endTimeForLoadImage - startTimeForLoadImage));
+    }
+
+    List<List<Recognition>> recognitions = recognizeCroppedImageHeads(croppedImage);
+    Trace.endSection();
+    return recognitions;
+  }
+
+  /**
+   * Runs inference on an RGB bitmap, e.g. a decoded still image, and returns the classification
+   * results.
+   */
+  public List<Recognition> recognizeImage(final Bitmap bitmap, int sensorOrientation) {
+    return recognizeImageHeads(bitmap, sensorOrientation).get(0);
+  }
+
+  /**
+   * Runs inference on an RGB bitmap and returns the classification results of every head, in
+   * output tensor order.
+   */
+  public List<List<Recognition>> recognizeImageHeads(final Bitmap bitmap, int sensorOrientation) {
+    Trace.beginSection("recognizeBitmap");
+    traceFrameId = -1;
+    List<List<Recognition>> recognitions =
+            recognizeCroppedImageHeads(cropAndResize(bitmap, sensorOrientation));
+    Trace.endSection();
+    return recognitions;
+  }
+
+  /**
+   * Runs inference on an image that has already been cropped, resized and rotated to the input size
+   * of this classifier by {@link #cropAndResize}, possibly by another classifier with the same
+   * input size.
+   */
+  List<Recognition> recognizeCroppedImage(final int[] croppedImage) {
+    return recognizeCroppedImageHeads(croppedImage).get(0);
+  }
+
+  /**
+   * Runs inference on a cropped image, see {@link #recognizeCroppedImage}, and returns the results
+   * of every head.
+   */
+  List<List<Recognition>> recognizeCroppedImageHeads(final int[] croppedImage) {
+    runInference(croppedImage);
+
+    traceBegin(Event.POSTPROCESS);
+    List<List<Recognition>> recognitions = new ArrayList<>(outputBuffers.length);
+    for (int i = 0; i < outputBuffers.length; i++) {
+      // Gets top-k results.
+      dequantize(outputBuffers[i], quantizedOutputs[i], outputNormalizations[i], probabilities[i]);
+      recognitions.add(TopK.select(headLabels.get(i), probabilities[i], MAX_RESULTS));
+    }
+    traceEnd(Event.POSTPROCESS);
+    return recognitions;
+  }
+
+  /**
+   * Returns whether the model outputs an image embedding, see {@link #extractEmbedding(Image,
+   * int)}.
+   */
+  public boolean hasEmbedding() {
+    return embedding != null;
+  }
+
+  /**
+   * Runs inference and returns the image embedding, e.g. to add it to or look it up in an {@link
+   * EmbeddingIndex}. The returned array is reused by the next call.
+   *
+   * @throws IllegalStateException if the model has no embedding output
+   */
+  public float[] extractEmbedding(final Image image, int sensorOrientation) {
+    checkEmbedding();
+    Trace.beginSection("extractEmbedding");
+    int[] frame = convertImage(image);
+    traceBegin(Event.PREPROCESS);
+    int[] croppedImage =
+            cropAndResize(frame, image.getWidth(), image.getHeight(), sensorOrientation);
+    traceEnd(Event.PREPROCESS);
+    float[] result = extractCroppedEmbedding(croppedImage);
+    Trace.endSection();
+    return result;
+  }
+
+  /**
+   * Runs inference on an RGB bitmap, e.g. a reference image, and returns the image embedding. The
+   * returned array is reused by the next call.
+   *
+   * @throws IllegalStateException if the model has no embedding output
+   */
+  public float[] extractEmbedding(final Bitmap bitmap, int sensorOrientation) {
+    checkEmbedding();
+    Trace.beginSection("extractEmbeddingFromBitmap");
+    traceFrameId = -1;
+    float[] result = extractCroppedEmbedding(cropAndResize(bitmap, sensorOrientation));
+    Trace.endSection();
+    return result;
+  }
+
+  private float[] extractCroppedEmbedding(final int[] croppedImage) {
+    runInference(croppedImage);
+    traceBegin(Event.POSTPROCESS);
+    dequantize(embeddingBuffer, quantizedEmbedding, embeddingNormalization, embedding);
+    traceEnd(Event.POSTPROCESS);
+    return embedding;
+  }
+
+  private void checkEmbedding() {
+    if (embedding == null) {
+      throw new IllegalStateException(model + " has no embedding output.");
+    }
+  }
+
+  /**
+   * Normalizes a cropped image into the input tensor and runs the interpreter, which fills the
+   * outputs of all heads and of the embedding.
+   */
+  private void runInference(final int[] croppedImage) {
+    setBatchSize(1);
+    Trace.beginSection("normalizeImage");
+    traceBegin(Event.PREPROCESS);
+    int pixelCount = imageSizeX * imageSizeY;
+    float mean = inputNormalization.getMean();
+    float std = inputNormalization.getStd();
+    if (inputFloats != null) {
+      ImageUtils.writeRgbFloat(croppedImage, pixelCount, mean, std, inputFloats);
+    } else {
+      ImageUtils.writeRgbUint8(croppedImage, pixelCount, mean, std, inputBuffer);
+    }
+    traceEnd(Event.PREPROCESS);
+    Trace.endSection();
 
     // Runs the inference call.
     Trace.beginSection("runInference");
     long startTimeForReference = SystemClock.uptimeMillis();
-    tflite.run(inputImageBuffer.getBuffer(), outputProbabilityBuffer.getBuffer().rewind());
+    traceBegin(Event.INFERENCE);
+    // The interpreter appends the outputs at the buffer positions.
+    for (ByteBuffer outputBuffer : outputBuffers) {
+      outputBuffer.clear();
+    }
+    if (embeddingBuffer != null) {
+      embeddingBuffer.clear();
+    }
+    tflite.runForMultipleInputsOutputs(inputs, outputs);
+    traceEnd(Event.INFERENCE);
     long endTimeForReference = SystemClock.uptimeMillis();
     Trace.endSection();
-    Log.v(TAG, "Timecost to run model inference: " + (endTimeForReference - startTimeForReference));
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(
+          TAG, "Timecost to run model inference: " + (endTimeForReference - startTimeForReference));
+    }
+  }
+
+  /**
+   * Classifies the overlapping tiles of a {@link TileGrid} over the frame, and its center crop, and
+   * returns the best classes of the first head in any tile, located at that tile in pixels of the
+   * frame. The frame is converted from YUV once for all tiles, and each tile is resized straight
+   * from the converted pixels into its slot of a batched input tensor, so all tiles run through the
+   * interpreter at once.
+   *
+   * <p>The batch size of the interpreter changes with the number of tiles, which takes a tensor
+   * reallocation, and on the GPU or NNAPI a new preparation of the delegated graph, whenever
+   * tiled and single recognitions alternate. Tiling is meant for the CPU.
+   */
+  public List<Recognition> recognizeImageTiles(
+          final Image image, int sensorOrientation, TileGrid grid) {
+    Trace.beginSection("recognizeImageTiles");
+    traceFrameId = image.getTimestamp();
+    int[] frame = convertToArgb(imageFrame.wrap(image));
+    List<Recognition> recognitions =
+            recognizeTiles(frame, image.getWidth(), image.getHeight(), sensorOrientation, grid);
+    Trace.endSection();
+    return recognitions;
+  }
+
+  /**
+   * Classifies the tiles of an RGB bitmap, see {@link #recognizeImageTiles(Image, int, TileGrid)}.
+   */
+  public List<Recognition> recognizeImageTiles(
+          final Bitmap bitmap, int sensorOrientation, TileGrid grid) {
+    Trace.beginSection("recognizeBitmapTiles");
+    traceFrameId = -1;
+    List<Recognition> recognitions =
+            recognizeTiles(
+                    readPixels(bitmap),
+                    bitmap.getWidth(),
+                    bitmap.getHeight(),
+                    sensorOrientation,
+                    grid);
+    Trace.endSection();
+    return recognitions;
+  }
+
+  /**
+   * Sets whether {@link #recognizeImageTiles} runs all tiles as a single batch, the default, or one
+   * at a time with the same preprocessing, e.g. to measure what batching gains.
+   */
+  public void setTileBatching(boolean tileBatching) {
+    this.tileBatching = tileBatching;
+  }
+
+  private List<Recognition> recognizeTiles(
+          final int[] frame, int width, int height, int sensorOrientation, TileGrid grid) {
+    traceBegin(Event.PREPROCESS);
+    prepareTiles(grid, width, height);
+    int quarterTurns = OrientationUtils.getQuarterTurns(sensorOrientation);
+    traceEnd(Event.PREPROCESS);
+
+    int tileCount = tiles.length;
+    classifyCrops(
+            frame, width, quarterTurns, tileResizers, null, tileCount, tileBatching, tileScores);
+
+    traceBegin(Event.POSTPROCESS);
+    List<Recognition> recognitions =
+            TileGrid.merge(
+                    headLabels.get(0), tileScores, tileCount, tiles, bestScores, MAX_RESULTS);
+    traceEnd(Event.POSTPROCESS);
+    return recognitions;
+  }
+
+  /**
+   * Computes the tiles of the grid and the resizers of their crops, unless the frame size and the
+   * grid are the same as for the previous tiled recognition.
+   */
+  private void prepareTiles(TileGrid grid, int width, int height) {
+    if (grid == tileGrid && width == tileFrameWidth && height == tileFrameHeight) {
+      return;
+    }
+    tiles = grid.getTiles(width, height);
+    tileResizers = createResizers(tiles, width, height);
+    tileScores = new float[tiles.length * probabilities[0].length];
+    bestScores = new float[probabilities[0].length];
+    tileGrid = grid;
+    tileFrameWidth = width;
+    tileFrameHeight = height;
+  }
+
+  /**
+   * Classifies the augmented views of the frame, see {@link TestTimeAugmentation}, and returns the
+   * classes of the first head with the best mean score over all views. The frame is converted from
+   * YUV once, every view is cropped, resized, turned upright and mirrored in a single pass straight
+   * into its slot of a batched input tensor, and the interpreter runs all views at once, spreading
+   * the batch over its threads. The scores are averaged in place before the top results are
+   * selected.
+   *
+   * <p>Like tiling, changing the batch size reallocates tensors, so augmentation is meant for the
+   * CPU.
+   */
+  public List<Recognition> recognizeImageAugmented(
+          final Image image, int sensorOrientation, TestTimeAugmentation augmentation) {
+    Trace.beginSection("recognizeImageAugmented");
+    traceFrameId = image.getTimestamp();
+    int[] frame = convertToArgb(imageFrame.wrap(image));
+    List<Recognition> recognitions =
+            recognizeAugmented(
+                    frame, image.getWidth(), image.getHeight(), sensorOrientation, augmentation);
+    Trace.endSection();
+    return recognitions;
+  }
+
+  /**
+   * Classifies the augmented views of an RGB bitmap, see {@link #recognizeImageAugmented(Image,
+   * int, TestTimeAugmentation)}.
+   */
+  public List<Recognition> recognizeImageAugmented(
+          final Bitmap bitmap, int sensorOrientation, TestTimeAugmentation augmentation) {
+    Trace.beginSection("recognizeBitmapAugmented");
+    traceFrameId = -1;
+    List<Recognition> recognitions =
+            recognizeAugmented(
+                    readPixels(bitmap),
+                    bitmap.getWidth(),
+                    bitmap.getHeight(),
+                    sensorOrientation,
+                    augmentation);
+    Trace.endSection();
+    return recognitions;
+  }
+
+  private List<Recognition> recognizeAugmented(
+          final int[] frame,
+          int width,
+          int height,
+          int sensorOrientation,
+          TestTimeAugmentation augmentation) {
+    traceBegin(Event.PREPROCESS);
+    prepareAugmentation(augmentation, width, height);
+    int quarterTurns = OrientationUtils.getQuarterTurns(sensorOrientation);
+    traceEnd(Event.PREPROCESS);
+
+    int count = augmentationResizers.length;
+    classifyCrops(
+            frame,
+            width,
+            quarterTurns,
+            augmentationResizers,
+            augmentationMirrors,
+            count,
+            true,
+            augmentationScores);
+
+    traceBegin(Event.POSTPROCESS);
+    TestTimeAugmentation.average(augmentationScores, count, meanScores);
+    List<Recognition> recognitions = TopK.select(headLabels.get(0), meanScores, MAX_RESULTS);
+    traceEnd(Event.POSTPROCESS);
+    return recognitions;
+  }
+
+  /**
+   * Computes the crops of the augmented views and their resizers, unless the frame size and the
+   * augmentations are the same as for the previous augmented recognition.
+   */
+  private void prepareAugmentation(TestTimeAugmentation augmentation, int width, int height) {
+    if (augmentation == this.augmentation
+            && width == augmentationFrameWidth
+            && height == augmentationFrameHeight) {
+      return;
+    }
+    BoundingBox[] crops = augmentation.getCrops(width, height);
+    augmentationResizers = createResizers(crops, width, height);
+    augmentationMirrors = new boolean[crops.length];
+    for (int i = 0; i < crops.length; i++) {
+      augmentationMirrors[i] = augmentation.isMirrored(i);
+    }
+    augmentationScores = new float[crops.length * probabilities[0].length];
+    meanScores = new float[probabilities[0].length];
+    this.augmentation = augmentation;
+    augmentationFrameWidth = width;
+    augmentationFrameHeight = height;
+  }
+
+  /** Creates the resizers of crops of a frame to the input size. */
+  private BilinearResizer[] createResizers(BoundingBox[] crops, int width, int height) {
+    BilinearResizer[] resizers = new BilinearResizer[crops.length];
+    for (int i = 0; i < crops.length; i++) {
+      BoundingBox crop = crops[i];
+      resizers[i] =
+              new BilinearResizer(
+                      width,
+                      height,
+                      (int) crop.getLeft(),
+                      (int) crop.getTop(),
+                      (int) crop.getWidth(),
+                      (int) crop.getHeight(),
+                      imageSizeX,
+                      imageSizeY);
+    }
+    if (cropImage == null) {
+      cropImage = new int[imageSizeX * imageSizeY];
+    }
+    return resizers;
+  }
+
+  /** Reads all pixels of a bitmap into the reused {@link #framePixels}. */
+  private int[] readPixels(final Bitmap bitmap) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    if (framePixels == null || framePixels.length != width * height) {
+      framePixels = new int[width * height];
+    }
+    bitmap.getPixels(framePixels, 0, width, 0, 0, width, height);
+    return framePixels;
+  }
+
+  /**
+   * Classifies {@code count} crops of an ARGB frame with the first head, as a single batch or one
+   * crop at a time.
+   *
+   * @param resizers crop and resize one image each, to the input size
+   * @param mirrors whether to mirror each upright image, or null for none
+   * @param scores receives the dequantized scores, one row of classes per crop
+   */
+  private void classifyCrops(
+          final int[] frame,
+          int frameStride,
+          int quarterTurns,
+          BilinearResizer[] resizers,
+          boolean[] mirrors,
+          int count,
+          boolean batched,
+          float[] scores) {
+    int classCount = probabilities[0].length;
+    if (batched && count > 1) {
+      runBatch(frame, frameStride, quarterTurns, resizers, mirrors, count);
+      dequantize(
+              batchOutputBuffer,
+              quantizedOutputs[0],
+              outputNormalizations[0],
+              scores,
+              count * classCount);
+      return;
+    }
+    for (int i = 0; i < count; i++) {
+      traceBegin(Event.PREPROCESS);
+      resizers[i].resizeArgb(
+              frame, frameStride, quarterTurns, mirrors != null && mirrors[i], cropImage);
+      traceEnd(Event.PREPROCESS);
+      runInference(cropImage);
+      dequantize(outputBuffers[0], quantizedOutputs[0], outputNormalizations[0], probabilities[0]);
+      System.arraycopy(probabilities[0], 0, scores, i * classCount, classCount);
+    }
+  }
+
+  /**
+   * Resizes {@code count} crops of an ARGB frame into the batched input tensor, one image after the
+   * other, and runs the interpreter once for all of them, which fills the batched output of the
+   * first head.
+   *
+   * @param resizers crop and resize one image of the batch each, to the input size
+   * @param mirrors whether to mirror each upright image, or null for none
+   */
+  private void runBatch(
+          final int[] frame,
+          int frameStride,
+          int quarterTurns,
+          BilinearResizer[] resizers,
+          boolean[] mirrors,
+          int count) {
+    setBatchSize(count);
+    Trace.beginSection("normalizeImage");
+    traceBegin(Event.PREPROCESS);
+    int pixelCount = imageSizeX * imageSizeY;
+    float mean = inputNormalization.getMean();
+    float std = inputNormalization.getStd();
+    for (int i = 0; i < count; i++) {
+      resizers[i].resizeArgb(
+              frame, frameStride, quarterTurns, mirrors != null && mirrors[i], cropImage);
+      int offset = i * pixelCount * 3;
+      if (batchInputFloats != null) {
+        ImageUtils.writeRgbFloat(cropImage, pixelCount, mean, std, batchInputFloats, offset);
+      } else {
+        ImageUtils.writeRgbUint8(cropImage, pixelCount, mean, std, batchInputBuffer, offset);
+      }
+    }
+    traceEnd(Event.PREPROCESS);
+    Trace.endSection();
 
-    // Gets the map of label and probability.
-    Map<String, Float> labeledProbability =
-            new TensorLabel(labels, probabilityProcessor.process(outputProbabilityBuffer))
-                    .getMapWithFloatValue();
+    Trace.beginSection("runBatchInference");
+    traceBegin(Event.INFERENCE);
+    batchOutputBuffer.clear();
+    tflite.runForMultipleInputsOutputs(batchInputs, batchOutputs);
+    traceEnd(Event.INFERENCE);
     Trace.endSection();
+  }
 
-    // Gets top-k results.
-    return getTopKProbability(labeledProbability);
+  /**
+   * Resizes the input tensor to a batch of {@code size} images. The interpreter reallocates its
+   * tensors on the next run, so this only costs time when single and batched runs alternate.
+   */
+  private void setBatchSize(int size) {
+    if (size == batchSize) {
+      return;
+    }
+    tflite.resizeInput(0, new int[] {size, imageSizeY, imageSizeX, 3});
+    batchSize = size;
+    if (size == 1 || size == batchCapacity) {
+      return;
+    }
+    int inputValues = size * imageSizeX * imageSizeY * 3;
+    if (inputFloats != null) {
+      batchInputBuffer = allocateTensor(inputValues * 4);
+      batchInputFloats = batchInputBuffer.asFloatBuffer();
+    } else {
+      batchInputBuffer = allocateTensor(inputValues);
+      batchInputFloats = null;
+    }
+    int outputValues = size * probabilities[0].length;
+    batchOutputBuffer = allocateTensor(quantizedOutputs[0] ? outputValues : outputValues * 4);
+    batchInputs[0] = batchInputBuffer;
+    batchOutputs.put(firstHeadOutput, batchOutputBuffer);
+    batchCapacity = size;
   }
 
   /**
-   * Closes the interpreter and model to release resources.
+   * Runs inference on the classifier's own thread without a deadline.
+   *
+   * @see #recognizeImageAsync(Image, int, long, RecognitionCallback)
+   */
+  public Future<List<Recognition>> recognizeImageAsync(
+          final Image image, int sensorOrientation, RecognitionCallback callback) {
+    return recognizeImageAsync(image, sensorOrientation, NO_DEADLINE, callback);
+  }
+
+  /**
+   * Runs inference on the classifier's own thread. A request that hasn't started yet is cancelled
+   * when a newer one arrives, and a request that starts after its deadline is dropped.
+   *
+   * @param image            The frame to classify. It must stay valid until the callback is called.
+   * @param sensorOrientation The rotation of the frame in degrees.
+   * @param deadlineMs       The {@link SystemClock#uptimeMillis()} time after which the request is
+   *                         no longer worth starting, or {@link #NO_DEADLINE}.
+   * @param callback         Receives the outcome of the request, may be null.
+   * @return A handle to wait for or cancel the request.
+   * @throws IllegalStateException If the classifier is closed.
+   */
+  public Future<List<Recognition>> recognizeImageAsync(
+          final Image image, int sensorOrientation, long deadlineMs, RecognitionCallback callback) {
+    // Submits under the lock, so a request is either queued before the release of close() or
+    // rejected after it.
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("The classifier is closed.");
+      }
+      RecognitionExecutor executor = recognitionExecutor;
+      if (executor == null) {
+        executor = new RecognitionExecutor(this);
+        recognitionExecutor = executor;
+      }
+      return executor.submit(image, sensorOrientation, deadlineMs, callback);
+    }
+  }
+
+  /**
+   * Closes the interpreter and model to release resources. A recognition still running on the
+   * classifier thread of {@link #recognizeImageAsync} finishes first, and the interpreter is closed
+   * on that thread afterwards.
    */
   public void close() {
+    RecognitionExecutor executor;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      executor = recognitionExecutor;
+      recognitionExecutor = null;
+    }
+    Runnable release = () -> releaseInterpreter();
+    if (executor != null) {
+      executor.shutdown(release);
+    } else {
+      release.run();
+    }
+  }
+
+  private void releaseInterpreter() {
     if (tflite != null) {
       tflite.close();
       tflite = null;
@@ -334,6 +1065,43 @@ public abstract class Classifier {
     }
   }
 
+  /**
+   * Sets the recorder of the pipeline stages of every frame, or null to stop recording. Frames are
+   * identified by their camera timestamp.
+   */
+  public void setTraceRecorder(TraceRecorder traceRecorder) {
+    this.traceRecorder = traceRecorder;
+  }
+
+  /**
+   * Gets the number of classification heads, i.e. the number of lists returned by
+   * {@link #recognizeImageHeads}.
+   */
+  public int getHeadCount() {
+    return outputBuffers.length;
+  }
+
+  /**
+   * Get the device the classifier runs on.
+   */
+  public Device getDevice() {
+    return device;
+  }
+
+  /**
+   * Gets the model the classifier runs.
+   */
+  public ModelDescriptor getModel() {
+    return model;
+  }
+
+  /**
+   * Gets the SHA-256 checksum of the model file in hex, which identifies the exact model version.
+   */
+  public String getModelChecksum() {
+    return modelChecksum;
+  }
+
   /**
    * Get the image size along the x axis.
    */
@@ -349,149 +1117,153 @@ public abstract class Classifier {
   }
 
   /**
-   * Loads input image, and applies preprocessing.
+   * Converts the camera frame into ARGB pixels, row by row without padding. The pixels can be
+   * shared between classifiers until the next conversion of this classifier.
    */
-  private TensorImage loadImage(final Image image, int sensorOrientation) {
-    // Convert Image to Bitmap
-    Bitmap bitmap = imageToRGB(image, image.getWidth(), image.getHeight());
-
-    // Loads bitmap into a TensorImage.
-    inputImageBuffer.load(bitmap);
-
-    // Creates processor for the TensorImage.
-    int cropSize = min(bitmap.getWidth(), bitmap.getHeight());
-    int divisionResult = sensorOrientation / 90;
-    int numRotation;
-    // See explanation for rotation op
-    // https://github.com/tensorflow/tflite-support/blob/master/tensorflow_lite_support/java/src/java/org/tensorflow/lite/support/image/ops/Rot90Op.java
-    if (divisionResult == 1) {
-      numRotation = 1;
-    } else if (divisionResult == 2) {
-      numRotation = 2;
-    } else if (divisionResult == 3) {
-      numRotation = 3;
-    } else {
-      numRotation = 0;
-    }
-    Log.e("camera orientation_task", String.valueOf(divisionResult));
-
-    // TODO(b/143564309): Fuse ops inside ImageProcessor.
-    ImageProcessor imageProcessor =
-            new ImageProcessor.Builder()
-                    .add(new ResizeWithCropOrPadOp(cropSize, cropSize))
-                    // To get the same inference results as lib_task_api, which is built on top of the Task
-                    // Library, use ResizeMethod.BILINEAR.
-                    .add(new ResizeOp(imageSizeX, imageSizeY, ResizeMethod.BILINEAR))
-                    .add(new Rot90Op(numRotation))
-                    .add(getPreprocessNormalizeOp())
-                    .build();
-    return imageProcessor.process(inputImageBuffer);
+  int[] convertImage(final Image image) {
+    traceFrameId = image.getTimestamp();
+    return convertToArgb(imageFrame.wrap(image));
   }
 
-  private Bitmap imageToRGB(final Image image, final int width, final int height) {
-    if (rgbBytes == null) {
-      rgbBytes = new int[width * height];
+  /**
+   * Crops the center of ARGB frame pixels, resizes it to the input size of the model and rotates it
+   * upright, reading the crop straight from the frame. The returned ARGB pixels are reused by the
+   * next call.
+   */
+  int[] cropAndResize(final int[] frame, int width, int height, int sensorOrientation) {
+    if (frameResizer == null || !frameResizer.hasSourceSize(width, height)) {
+      // The frame size only changes with the camera session, and the interpolation tables with it.
+      frameResizer = BilinearResizer.centerCrop(width, height, imageSizeX, imageSizeY);
     }
-
-    Bitmap rgbFrameBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-
-    try {
-
-      if (image == null) {
-        return null;
-      }
-
-      Log.e("Degrees_length", String.valueOf(rgbBytes.length));
-      final Image.Plane[] planes = image.getPlanes();
-      fillBytesCameraX(planes, yuvBytes);
-      yRowStride = planes[0].getRowStride();
-      final int uvRowStride = planes[1].getRowStride();
-      final int uvPixelStride = planes[1].getPixelStride();
-
-      ImageUtils.convertYUV420ToARGB8888(
-              yuvBytes[0],
-              yuvBytes[1],
-              yuvBytes[2],
-              width,
-              height,
-              yRowStride,
-              uvRowStride,
-              uvPixelStride,
-              rgbBytes);
-
-
-      rgbFrameBitmap.setPixels(rgbBytes, 0, width, 0, 0, width, height);
-
-
-    } catch (final Exception e) {
-      Log.e(e.toString(), "Exception!");
+    if (resizedPixels == null) {
+      resizedPixels = new int[imageSizeX * imageSizeY];
     }
-
-    return rgbFrameBitmap;
+    int numRotation = OrientationUtils.getQuarterTurns(sensorOrientation);
+    frameResizer.resizeArgb(frame, width, numRotation, false, resizedPixels);
+    return resizedPixels;
   }
 
-  private void fillBytesCameraX(final Image.Plane[] planes, final byte[][] yuvBytes) {
-    // Because of the variable row stride it's not possible to know in
-    // advance the actual necessary dimensions of the yuv planes.
-    for (int i = 0; i < planes.length; ++i) {
-      final ByteBuffer buffer = planes[i].getBuffer();
-      if (yuvBytes[i] == null) {
-        yuvBytes[i] = new byte[buffer.capacity()];
-      }
-      buffer.get(yuvBytes[i]);
+  /**
+   * Crops the center of the RGB bitmap, resizes it to the input size of the model and rotates it
+   * upright. The returned ARGB pixels are reused by the next call.
+   */
+  int[] cropAndResize(final Bitmap bitmap, int sensorOrientation) {
+    int cropSize = min(bitmap.getWidth(), bitmap.getHeight());
+    if (resizer == null || !resizer.hasSourceSize(cropSize, cropSize)) {
+      resizer = new BilinearResizer(cropSize, cropSize, imageSizeX, imageSizeY);
+      cropPixels = new int[cropSize * cropSize];
     }
+    if (resizedPixels == null) {
+      resizedPixels = new int[imageSizeX * imageSizeY];
+    }
+    int numRotation = OrientationUtils.getQuarterTurns(sensorOrientation);
+    bitmap.getPixels(
+            cropPixels,
+            0,
+            cropSize,
+            (bitmap.getWidth() - cropSize) / 2,
+            (bitmap.getHeight() - cropSize) / 2,
+            cropSize,
+            cropSize);
+    // To get the same inference results as lib_task_api, which is built on top of the Task
+    // Library, resize with bilinear interpolation. The pixels are written upright right away,
+    // the same as Rot90Op(numRotation) would turn them afterwards.
+    resizer.resizeArgb(cropPixels, cropSize, numRotation, false, resizedPixels);
+    return resizedPixels;
   }
 
   /**
-   * Gets the top-k results.
+   * Converts the camera frame into ARGB pixels, row by row without padding. The returned pixels are
+   * reused by the next call.
    */
-  private static List<Recognition> getTopKProbability(Map<String, Float> labelProb) {
-    // Find the best classifications.
-    PriorityQueue<Recognition> pq =
-            new PriorityQueue<>(
-                    MAX_RESULTS,
-                    new Comparator<Recognition>() {
-                      @Override
-                      public int compare(Recognition lhs, Recognition rhs) {
-                        // Intentionally reversed to put high confidence at the head of the queue.
-                        return Float.compare(rhs.getConfidence(), lhs.getConfidence());
-                      }
-                    });
+  private int[] convertToArgb(final Frame frame) {
+    traceBegin(Event.PLANE_COPY);
+    yuvConverter.copyPlanes(frame);
+    traceEnd(Event.PLANE_COPY);
+
+    traceBegin(Event.CONVERSION);
+    int[] argb = yuvConverter.convertToArgb();
+    traceEnd(Event.CONVERSION);
+    return argb;
+  }
 
-    for (Map.Entry<String, Float> entry : labelProb.entrySet()) {
-      pq.add(new Recognition("" + entry.getKey(), entry.getKey(), entry.getValue(), null));
+  private void traceBegin(Event event) {
+    TraceRecorder recorder = traceRecorder;
+    if (recorder != null) {
+      recorder.begin(event, traceFrameId);
     }
+  }
 
-    final ArrayList<Recognition> recognitions = new ArrayList<>();
-    int recognitionsSize = min(pq.size(), MAX_RESULTS);
-    for (int i = 0; i < recognitionsSize; ++i) {
-      recognitions.add(pq.poll());
+  private void traceEnd(Event event) {
+    TraceRecorder recorder = traceRecorder;
+    if (recorder != null) {
+      recorder.end(event, traceFrameId);
     }
-    return recognitions;
   }
 
   /**
-   * Gets the name of the model file stored in Assets.
+   * Dequantizes an output into a float array, reading the output tensor in place.
    */
-  protected abstract String getModelPath();
+  private static void dequantize(
+          ByteBuffer outputBuffer, boolean quantized, Normalization normalization, float[] values) {
+    dequantize(outputBuffer, quantized, normalization, values, values.length);
+  }
 
   /**
-   * Gets the name of the label file stored in Assets.
+   * Dequantizes the first {@code count} values of an output, e.g. of all images of a batch.
    */
-  protected abstract String getLabelPath();
+  private static void dequantize(
+          ByteBuffer outputBuffer,
+          boolean quantized,
+          Normalization normalization,
+          float[] values,
+          int count) {
+    float mean = normalization.getMean();
+    float std = normalization.getStd();
+    if (quantized) {
+      for (int i = 0; i < count; i++) {
+        values[i] = ((outputBuffer.get(i) & 0xff) - mean) / std;
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        values[i] = (outputBuffer.getFloat(i * 4) - mean) / std;
+      }
+    }
+  }
 
   /**
-   * Gets the TensorOperator to nomalize the input image in preprocessing.
+   * Gets the normalization of the input image in preprocessing. Models without an input
+   * normalization are fed the raw pixel values.
    */
-  protected abstract TensorOperator getPreprocessNormalizeOp();
+  private static Normalization getPreprocessNormalization(ModelDescriptor model) {
+    Normalization normalization = model.getInputNormalization();
+    if (normalization == null) {
+      return new Normalization(0.0f, 1.0f);
+    }
+    return normalization;
+  }
 
   /**
-   * Gets the TensorOperator to dequantize the output probability in post processing.
+   * Gets the normalization to dequantize the output probability in post processing.
+   *
+   * <p>For quantized model, we need de-quantize the prediction as {@code (value - mean) / std} (as
+   * they are all essentially linear transformation). For float model, de-quantize is not required.
+   * But to uniform the code, de-quantize is applied to float model too. Mean and std are set to
+   * 0.0f and 1.0f, respectively. Heads without an output normalization are dequantized with the
+   * quantization parameters of their output tensor.
    *
-   * <p>For quantized model, we need de-quantize the prediction with NormalizeOp (as they are all
-   * essentially linear transformation). For float model, de-quantize is not required. But to
-   * uniform the API, de-quantize is added to float model too. Mean and std are set to 0.0f and
-   * 1.0f, respectively.
+   * @param head the head of the output in the model descriptor, or null if it isn't described
    */
-  protected abstract TensorOperator getPostprocessNormalizeOp();
+  private static Normalization getPostprocessNormalization(
+          Head head, TensorInfo probabilityInfo) {
+    Normalization normalization = head != null ? head.getOutputNormalization() : null;
+    if (normalization != null) {
+      return normalization;
+    }
+    if (probabilityInfo.getScale() == 0) {
+      return new Normalization(0.0f, 1.0f);
+    }
+    // (value - zeroPoint) * scale, expressed as a mean and std.
+    return new Normalization(probabilityInfo.getZeroPoint(), 1.0f / probabilityInfo.getScale());
+  }
 }
@@ -0,0 +1,68 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import android.media.Image;
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.classification.tflite.utils.Frame;
+
+/** Presents a camera {@link Image} as a {@link Frame}. Can be rewrapped for every frame. */
+final class ImageFrame implements Frame {
+  private Image image;
+  private Image.Plane[] planes;
+
+  /** Wraps an image until the next call. */
+  ImageFrame wrap(Image image) {
+    this.image = image;
+    this.planes = image.getPlanes();
+    return this;
+  }
+
+  @Override
+  public int getWidth() {
+    return image.getWidth();
+  }
+
+  @Override
+  public int getHeight() {
+    return image.getHeight();
+  }
+
+  @Override
+  public long getTimestamp() {
+    return image.getTimestamp();
+  }
+
+  @Override
+  public int getPlaneCount() {
+    return planes.length;
+  }
+
+  @Override
+  public ByteBuffer getPlaneBuffer(int plane) {
+    return planes[plane].getBuffer();
+  }
+
+  @Override
+  public int getRowStride(int plane) {
+    return planes[plane].getRowStride();
+  }
+
+  @Override
+  public int getPixelStride(int plane) {
+    return planes[plane].getPixelStride();
+  }
+}
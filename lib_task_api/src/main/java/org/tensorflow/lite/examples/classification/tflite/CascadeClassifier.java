@@ -0,0 +1,192 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import android.app.Activity;
+import android.media.Image;
+import android.os.SystemClock;
+import android.os.Trace;
+import java.io.IOException;
+import java.util.List;
+import org.tensorflow.lite.examples.classification.models.ModelDescriptor;
+import org.tensorflow.lite.examples.classification.models.ModelRegistry;
+import org.tensorflow.lite.support.image.TensorImage;
+import org.tensorflow.lite.task.core.vision.ImageProcessingOptions;
+
+/**
+ * Runs a fast classifier on every frame and escalates only the frames it is unsure about to a
+ * slower, more accurate classifier.
+ *
+ * <p>The wrapped frame and its processing options are shared by both classifiers. Cropping and
+ * resizing happen inside the Task library, which applies them per model.
+ */
+public class CascadeClassifier {
+
+  /** The result of a cascade classification together with the model that produced it. */
+  public static class Result {
+    private final List<Recognition> recognitions;
+    private final ModelDescriptor model;
+    private final boolean escalated;
+
+    Result(List<Recognition> recognitions, ModelDescriptor model, boolean escalated) {
+      this.recognitions = recognitions;
+      this.model = model;
+      this.escalated = escalated;
+    }
+
+    public List<Recognition> getRecognitions() {
+      return recognitions;
+    }
+
+    /** Returns the model whose recognitions were returned. */
+    public ModelDescriptor getModel() {
+      return model;
+    }
+
+    /** Returns whether the frame was escalated to the accurate classifier. */
+    public boolean isEscalated() {
+      return escalated;
+    }
+  }
+
+  /** The registry names of the models {@link #create} cascades. */
+  public static final String FAST_MODEL = "Quantized_MobileNet";
+
+  public static final String ACCURATE_MODEL = "Float_EfficientNet";
+
+  private final Classifier fastClassifier;
+  private final Classifier accurateClassifier;
+
+  /** Frames whose top-1 confidence is below this value are escalated. */
+  private final float minConfidence;
+
+  /** Frames whose top-1 and top-2 confidences are closer than this value are escalated. */
+  private final float minMargin;
+
+  /** Wraps camera frames once for both classifiers. */
+  private final FrameAdapter frameAdapter = new FrameAdapter();
+
+  private long frameCount;
+  private long escalationCount;
+  private long totalLatencyMs;
+
+  /**
+   * Creates a cascade of the {@link #FAST_MODEL} and {@link #ACCURATE_MODEL} of the registry.
+   *
+   * @param activity The current Activity.
+   * @param device The device to run the accurate model on. The quantized model always runs on the
+   *     CPU when the GPU is requested, as the GPU doesn't support quantized models.
+   * @param numThreads The number of threads to use for classification.
+   * @param minConfidence The top-1 confidence below which a frame is escalated.
+   * @param minMargin The top-1 to top-2 confidence margin below which a frame is escalated.
+   * @return A cascade classifier with the desired configuration.
+   */
+  public static CascadeClassifier create(
+      Activity activity, Device device, int numThreads, float minConfidence, float minMargin)
+      throws IOException {
+    ModelRegistry registry = ModelRegistry.get(activity);
+    Device fastDevice = device == Device.GPU ? Device.CPU : device;
+    Classifier fastClassifier =
+        Classifier.create(activity, registry.getModel(FAST_MODEL), fastDevice, numThreads);
+    Classifier accurateClassifier;
+    try {
+      accurateClassifier =
+          Classifier.create(activity, registry.getModel(ACCURATE_MODEL), device, numThreads);
+    } catch (IOException | RuntimeException e) {
+      fastClassifier.close();
+      throw e;
+    }
+    return new CascadeClassifier(fastClassifier, accurateClassifier, minConfidence, minMargin);
+  }
+
+  /**
+   * Creates a cascade from two existing classifiers. The cascade takes ownership of both.
+   */
+  public CascadeClassifier(
+      Classifier fastClassifier,
+      Classifier accurateClassifier,
+      float minConfidence,
+      float minMargin) {
+    this.fastClassifier = fastClassifier;
+    this.accurateClassifier = accurateClassifier;
+    this.minConfidence = minConfidence;
+    this.minMargin = minMargin;
+  }
+
+  /** Runs the cascade and returns the more confident of the results. */
+  public Result recognizeImage(final Image image, int sensorOrientation) {
+    Trace.beginSection("cascadeRecognizeImage");
+    long startTime = SystemClock.uptimeMillis();
+
+    TensorImage inputImage = frameAdapter.wrap(image);
+    ImageProcessingOptions imageOptions =
+        frameAdapter.getImageProcessingOptions(image, sensorOrientation);
+    List<Recognition> fastRecognitions = fastClassifier.recognizeImage(inputImage, imageOptions);
+
+    Result result;
+    if (!shouldEscalate(fastRecognitions)) {
+      result = new Result(fastRecognitions, fastClassifier.getModel(), false);
+    } else {
+      List<Recognition> accurateRecognitions =
+          accurateClassifier.recognizeImage(inputImage, imageOptions);
+      if (getConfidence(accurateRecognitions, 0) >= getConfidence(fastRecognitions, 0)) {
+        result = new Result(accurateRecognitions, accurateClassifier.getModel(), true);
+      } else {
+        result = new Result(fastRecognitions, fastClassifier.getModel(), true);
+      }
+    }
+
+    long latencyMs = SystemClock.uptimeMillis() - startTime;
+    synchronized (this) {
+      frameCount++;
+      totalLatencyMs += latencyMs;
+      if (result.isEscalated()) {
+        escalationCount++;
+      }
+    }
+    Trace.endSection();
+    return result;
+  }
+
+  /** Returns the fraction of frames that were escalated to the accurate classifier. */
+  public synchronized float getEscalationRate() {
+    return frameCount == 0 ? 0.0f : (float) escalationCount / frameCount;
+  }
+
+  /** Returns the average latency of a cascade classification, including escalations. */
+  public synchronized float getAverageLatencyMs() {
+    return frameCount == 0 ? 0.0f : (float) totalLatencyMs / frameCount;
+  }
+
+  /** Closes both classifiers. */
+  public void close() {
+    fastClassifier.close();
+    accurateClassifier.close();
+  }
+
+  private boolean shouldEscalate(List<Recognition> recognitions) {
+    float top1 = getConfidence(recognitions, 0);
+    float top2 = getConfidence(recognitions, 1);
+    return top1 < minConfidence || top1 - top2 < minMargin;
+  }
+
+  private static float getConfidence(List<Recognition> recognitions, int rank) {
+    if (recognitions.size() <= rank || recognitions.get(rank).getConfidence() == null) {
+      return 0.0f;
+    }
+    return recognitions.get(rank).getConfidence();
+  }
+}
@@ -20,23 +20,33 @@ import static java.lang.Math.min;
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
-import android.graphics.RectF;
 
 import android.media.Image;
+import android.os.Build;
 import android.os.SystemClock;
 import android.os.Trace;
 import android.util.Log;
+import java.io.File;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.tensorflow.lite.DataType;
-import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
-import org.tensorflow.lite.support.common.FileUtil;
+import org.tensorflow.lite.examples.classification.models.ModelCache;
+import org.tensorflow.lite.examples.classification.models.ModelRepository;
+import org.tensorflow.lite.examples.classification.models.ModelCache.TensorInfo;
+import org.tensorflow.lite.examples.classification.models.ModelDescriptor;
+import org.tensorflow.lite.examples.classification.models.ModelRegistry;
+import org.tensorflow.lite.examples.classification.tflite.TraceRecorder.Event;
+import org.tensorflow.lite.examples.classification.tflite.utils.Frame;
+import org.tensorflow.lite.examples.classification.tflite.utils.OrientationUtils;
+import org.tensorflow.lite.gpu.CompatibilityList;
 import org.tensorflow.lite.support.image.TensorImage;
 import org.tensorflow.lite.support.label.Category;
 import org.tensorflow.lite.support.metadata.MetadataExtractor;
+import org.tensorflow.lite.task.core.BaseOptions;
 import org.tensorflow.lite.task.core.vision.ImageProcessingOptions;
 import org.tensorflow.lite.task.core.vision.ImageProcessingOptions.Orientation;
 import org.tensorflow.lite.task.vision.classifier.Classifications;
@@ -44,27 +54,18 @@ import org.tensorflow.lite.task.vision.classifier.ImageClassifier;
 import org.tensorflow.lite.task.vision.classifier.ImageClassifier.ImageClassifierOptions;
 
 /** A classifier specialized to label images using TensorFlow Lite. */
-public abstract class Classifier {
+public class Classifier {
   public static final String TAG = "ClassifierWithTaskApi";
 
-  /** The model type used for classification. */
-  public enum Model {
-    FLOAT_MOBILENET,
-    QUANTIZED_MOBILENET,
-    FLOAT_EFFICIENTNET,
-    QUANTIZED_EFFICIENTNET
-  }
-
-  /** The runtime device type used for executing classification. */
-  public enum Device {
-    CPU,
-    NNAPI,
-    GPU
-  }
+  /** Deadline of requests to {@link #recognizeImageAsync} that never expire. */
+  public static final long NO_DEADLINE = Long.MAX_VALUE;
 
   /** Number of results to show in the UI. */
   private static final int MAX_RESULTS = 3;
 
+  /** The result limit of the Task library that returns the scores of all classes. */
+  private static final int ALL_RESULTS = -1;
+
   /** Image size along the x axis. */
   private final int imageSizeX;
 
@@ -73,166 +74,655 @@ public abstract class Classifier {
   /** An instance of the driver class to run model inference with Tensorflow Lite. */
   protected final ImageClassifier imageClassifier;
 
+  /** The device the classifier actually runs on, after falling back from unavailable delegates. */
+  private final Device device;
+
+  /** The model the classifier runs. */
+  private final ModelDescriptor model;
+
+  /** The SHA-256 checksum of the model file in hex. */
+  private final String modelChecksum;
+
+  /** The number of classification heads, i.e. output tensors, of the model. */
+  private final int headCount;
+
+  /** The number of classes of the first head. */
+  private final int classCount;
+
+  /** Wraps camera frames for the Task library, reused across frames. */
+  private final FrameAdapter frameAdapter = new FrameAdapter();
+
+  /** Runs asynchronous recognitions, created on first use. */
+  private RecognitionExecutor recognitionExecutor;
+
+  /** Whether {@link #close} was called, after which no recognitions are accepted. */
+  private boolean closed;
+
+  /** Optional recorder of the pipeline stages of every frame. */
+  private volatile TraceRecorder traceRecorder;
+
+  /** Identifies the frame being recognized in the trace, its camera timestamp. */
+  private long traceFrameId;
+
+  /**
+   * The tiles of the last tiled recognition and the options that crop and rotate them, for the
+   * frame size, orientation and grid they were created for.
+   */
+  private TileGrid tileGrid;
+
+  private int tileFrameWidth;
+  private int tileFrameHeight;
+  private int tileSensorOrientation;
+  private BoundingBox[] tiles;
+  private ImageProcessingOptions[] tileOptions;
+
+  /**
+   * The views of the last augmented recognition as the options that crop, rotate and mirror them,
+   * for the frame size, orientation and augmentations they were created for.
+   */
+  private TestTimeAugmentation augmentation;
+
+  private int augmentationFrameWidth;
+  private int augmentationFrameHeight;
+  private int augmentationSensorOrientation;
+  private ImageProcessingOptions[] augmentationOptions;
+
+  /** Mean scores and labels of the classes of the first head, reused for every augmentation. */
+  private float[] meanScores;
+
+  private String[] classLabels;
+
+  /** The model file and thread count, to create the classifier of all classes on demand. */
+  private final File modelFile;
+
+  private final int numThreads;
+
+  /**
+   * A classifier of the same model and device that returns every class, created on the first
+   * augmented recognition, so only test-time augmentation pays for scoring all of them.
+   */
+  private ImageClassifier allClassesClassifier;
+
   /**
    * Creates a classifier with the provided configuration.
    *
    * @param activity The current Activity.
-   * @param model The model to use for classification.
+   * @param model The model to use for classification, from the {@link ModelRegistry}.
    * @param device The device to use for classification.
    * @param numThreads The number of threads to use for classification.
    * @return A classifier with the desired configuration.
    */
-  public static Classifier create(Activity activity, Model model, Device device, int numThreads)
-      throws IOException {
-    if (model == Model.QUANTIZED_MOBILENET) {
-      return new ClassifierQuantizedMobileNet(activity, device, numThreads);
-    } else if (model == Model.FLOAT_MOBILENET) {
-      return new ClassifierFloatMobileNet(activity, device, numThreads);
-    } else if (model == Model.FLOAT_EFFICIENTNET) {
-      return new ClassifierFloatEfficientNet(activity, device, numThreads);
-    } else if (model == Model.QUANTIZED_EFFICIENTNET) {
-      return new ClassifierQuantizedEfficientNet(activity, device, numThreads);
-    } else {
-      throw new UnsupportedOperationException();
-    }
+  public static Classifier create(
+      Activity activity, ModelDescriptor model, Device device, int numThreads) throws IOException {
+    return new Classifier(activity, model, device, numThreads);
   }
 
-  /** An immutable result returned by a Classifier describing what was recognized. */
-  public static class Recognition {
-    /**
-     * A unique identifier for what has been recognized. Specific to the class, not the instance of
-     * the object.
-     */
-    private final String id;
-
-    /** Display name for the recognition. */
-    private final String title;
+  /**
+   * Receives the outcome of a request to {@link #recognizeImageAsync}. Every request gets exactly
+   * one call, after which the image is no longer used by the classifier and can be closed.
+   */
+  public interface RecognitionCallback {
+    /** Called on the classifier thread with the results of the recognition. */
+    void onResult(Image image, List<Recognition> recognitions);
 
     /**
-     * A sortable score for how good the recognition is relative to others. Higher should be better.
+     * Called when the request was dropped before it started, either because a newer request
+     * arrived, its deadline passed, or it was cancelled.
      */
-    private final Float confidence;
+    void onDropped(Image image);
 
-    /** Optional location within the source image for the location of the recognized object. */
-    private RectF location;
+    /** Called on the classifier thread when the recognition failed. */
+    void onError(Image image, Throwable error);
+  }
 
-    public Recognition(
-        final String id, final String title, final Float confidence, final RectF location) {
-      this.id = id;
-      this.title = title;
-      this.confidence = confidence;
-      this.location = location;
+  /**
+   * Initializes a {@code Classifier}. The Task library reads the labels and the normalization from
+   * the model metadata, so only the model file of the descriptor is used.
+   */
+  private Classifier(Activity activity, ModelDescriptor model, Device device, int numThreads)
+      throws IOException {
+    this.model = model;
+    // Loads the model from app-private storage, where it is fetched once, bundled or downloaded.
+    ModelCache.Entry cachedModel =
+        ModelRepository.getCache(activity).open(model.getModelPath(), null);
+    modelChecksum = cachedModel.getModelChecksum();
+    modelFile = cachedModel.getModelFile();
+    this.numThreads = numThreads;
+
+    Device selectedDevice =
+        Device.select(
+            device,
+            device == Device.GPU && isGpuDelegateSupported(),
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1);
+    if (selectedDevice != device) {
+      Log.w(TAG, device + " is not available on this device, falling back to " + selectedDevice);
     }
 
-    public String getId() {
-      return id;
+    // Create the ImageClassifier instance.
+    ImageClassifier classifier;
+    try {
+      classifier = createImageClassifier(modelFile, selectedDevice, numThreads, MAX_RESULTS);
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      if (selectedDevice == Device.CPU) {
+        throw e;
+      }
+      // The delegate can still fail to apply, e.g. when the model has unsupported ops.
+      Log.w(TAG, "Failed to create the " + selectedDevice + " delegate, falling back to CPU.", e);
+      selectedDevice = Device.CPU;
+      classifier = createImageClassifier(modelFile, selectedDevice, numThreads, MAX_RESULTS);
     }
-
-    public String getTitle() {
-      return title;
+    imageClassifier = classifier;
+    this.device = selectedDevice;
+    Log.d(TAG, "Created a Tensorflow Lite Image Classifier running on " + selectedDevice + ".");
+
+    // Get the input image size and the number of classification heads of the underlying tflite
+    // model, parsing its metadata only if no previous start cached them.
+    TensorInfo imageInfo = cachedModel.getInputInfo();
+    List<TensorInfo> outputInfos = cachedModel.getOutputInfos();
+    if (imageInfo == null || outputInfos == null) {
+      MetadataExtractor metadataExtractor = new MetadataExtractor(cachedModel.mapModel());
+      imageInfo = getTensorInfo(metadataExtractor, /*input=*/ true, /*index=*/ 0);
+      outputInfos = new ArrayList<>();
+      for (int i = 0; i < metadataExtractor.getOutputTensorCount(); i++) {
+        outputInfos.add(getTensorInfo(metadataExtractor, /*input=*/ false, i));
+      }
+      try {
+        cachedModel.saveTensorInfo(imageInfo, outputInfos);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to cache the tensor info of " + model.getModelPath(), e);
+      }
     }
+    headCount = outputInfos.size();
+    int[] outputShape = outputInfos.get(0).getShape(); // {1, NUM_CLASSES}
+    classCount = outputShape[outputShape.length - 1];
+    // Image shape is in the format of {1, height, width, 3}.
+    int[] imageShape = imageInfo.getShape();
+    imageSizeY = imageShape[1];
+    imageSizeX = imageShape[2];
+  }
 
-    public Float getConfidence() {
-      return confidence;
+  private static ImageClassifier createImageClassifier(
+      File modelFile, Device device, int numThreads, int maxResults) throws IOException {
+    BaseOptions.Builder baseOptionsBuilder = BaseOptions.builder().setNumThreads(numThreads);
+    switch (device) {
+      case GPU:
+        baseOptionsBuilder.useGpu();
+        break;
+      case NNAPI:
+        baseOptionsBuilder.useNnapi();
+        break;
+      case CPU:
+        break;
     }
+    ImageClassifierOptions options =
+        ImageClassifierOptions.builder()
+            .setBaseOptions(baseOptionsBuilder.build())
+            .setMaxResults(maxResults)
+            .build();
+    return ImageClassifier.createFromFileAndOptions(modelFile, options);
+  }
+
+  /** Reads the info of an input or output tensor from the model metadata. */
+  private static TensorInfo getTensorInfo(
+      MetadataExtractor metadataExtractor, boolean input, int index) {
+    int[] shape =
+        input
+            ? metadataExtractor.getInputTensorShape(index)
+            : metadataExtractor.getOutputTensorShape(index);
+    byte type =
+        input
+            ? metadataExtractor.getInputTensorType(index)
+            : metadataExtractor.getOutputTensorType(index);
+    MetadataExtractor.QuantizationParams quantization =
+        input
+            ? metadataExtractor.getInputTensorQuantizationParams(index)
+            : metadataExtractor.getOutputTensorQuantizationParams(index);
+    return new TensorInfo(
+        shape, getDataTypeName(type), quantization.getScale(), quantization.getZeroPoint());
+  }
 
-    public RectF getLocation() {
-      return new RectF(location);
+  /** Maps a TensorType of the TFLite schema to the name of the matching {@link DataType}. */
+  private static String getDataTypeName(byte tensorType) {
+    switch (tensorType) {
+      case 0:
+        return DataType.FLOAT32.name();
+      case 2:
+        return DataType.INT32.name();
+      case 3:
+        return DataType.UINT8.name();
+      case 4:
+        return DataType.INT64.name();
+      case 9:
+        return DataType.INT8.name();
+      default:
+        return "UNKNOWN";
     }
+  }
 
-    public void setLocation(RectF location) {
-      this.location = location;
+  private static boolean isGpuDelegateSupported() {
+    CompatibilityList compatibilityList = new CompatibilityList();
+    try {
+      return compatibilityList.isDelegateSupportedOnThisDevice();
+    } finally {
+      compatibilityList.close();
     }
+  }
 
-    @Override
-    public String toString() {
-      String resultString = "";
-      if (id != null) {
-        resultString += "[" + id + "] ";
-      }
+  /** Runs inference and returns the classification results. */
+  public List<Recognition> recognizeImage(final Image image, int sensorOrientation) {
+    return recognizeImageHeads(image, sensorOrientation).get(0);
+  }
 
-      if (title != null) {
-        resultString += title + " ";
-      }
+  /**
+   * Runs inference and returns the classification results of every head, in output tensor order.
+   */
+  public List<List<Recognition>> recognizeImageHeads(final Image image, int sensorOrientation) {
+    // Logs this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeImage");
 
-      if (confidence != null) {
-        resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-      }
+    traceFrameId = image.getTimestamp();
+    traceBegin(Event.PREPROCESS);
+    TensorImage inputImage = frameAdapter.wrap(image);
+    ImageProcessingOptions imageOptions =
+        frameAdapter.getImageProcessingOptions(image, sensorOrientation);
+    traceEnd(Event.PREPROCESS);
+    List<List<Recognition>> recognitions = recognizeImageHeads(inputImage, imageOptions);
 
-      if (location != null) {
-        resultString += location + " ";
-      }
+    Trace.endSection();
 
-      return resultString.trim();
-    }
+    return recognitions;
   }
 
-  /** Initializes a {@code Classifier}. */
-  protected Classifier(Activity activity, Device device, int numThreads) throws IOException {
-    if (device != Device.CPU) {
-      throw new IllegalArgumentException(
-          "Manipulating the hardware accelerators is not allowed in the Task"
-              + " library currently. Only CPU is allowed.");
-    }
+  /**
+   * Runs inference on a YUV_420_888 frame that isn't a camera {@link Image}, e.g. a converted still
+   * image, and returns the classification results.
+   */
+  public List<Recognition> recognizeImage(final Frame frame, int sensorOrientation) {
+    return recognizeImageHeads(frame, sensorOrientation).get(0);
+  }
 
-    // Create the ImageClassifier instance.
-    ImageClassifierOptions options =
-        ImageClassifierOptions.builder()
-            .setMaxResults(MAX_RESULTS)
-            .setNumThreads(numThreads)
-            .build();
-    imageClassifier = ImageClassifier.createFromFileAndOptions(activity, getModelPath(), options);
-    Log.d(TAG, "Created a Tensorflow Lite Image Classifier.");
+  /**
+   * Runs inference on a YUV_420_888 frame and returns the classification results of every head, in
+   * output tensor order. The planes are packed without strides first, see {@link
+   * FrameAdapter#wrap(Frame)}.
+   */
+  public List<List<Recognition>> recognizeImageHeads(final Frame frame, int sensorOrientation) {
+    Trace.beginSection("recognizeFrame");
+    traceFrameId = frame.getTimestamp();
+    traceBegin(Event.PREPROCESS);
+    TensorImage inputImage = frameAdapter.wrap(frame);
+    ImageProcessingOptions imageOptions =
+        frameAdapter.getImageProcessingOptions(
+            frame.getWidth(), frame.getHeight(), sensorOrientation);
+    traceEnd(Event.PREPROCESS);
+    List<List<Recognition>> recognitions = recognizeImageHeads(inputImage, imageOptions);
+    Trace.endSection();
+    return recognitions;
+  }
 
-    // Get the input image size information of the underlying tflite model.
-    MappedByteBuffer tfliteModel = FileUtil.loadMappedFile(activity, getModelPath());
-    MetadataExtractor metadataExtractor = new MetadataExtractor(tfliteModel);
-    // Image shape is in the format of {1, height, width, 3}.
-    int[] imageShape = metadataExtractor.getInputTensorShape(/*inputIndex=*/ 0);
-    imageSizeY = imageShape[1];
-    imageSizeX = imageShape[2];
+  /**
+   * Runs inference on an RGB bitmap, e.g. a decoded still image, and returns the classification
+   * results.
+   */
+  public List<Recognition> recognizeImage(final Bitmap bitmap, int sensorOrientation) {
+    return recognizeImageHeads(bitmap, sensorOrientation).get(0);
   }
 
-  /** Runs inference and returns the classification results. */
-  public List<Recognition> recognizeImage(final Image image, int sensorOrientation) {
-    // Logs this method so that it can be analyzed with systrace.
-    Trace.beginSection("recognizeImage");
+  /**
+   * Runs inference on an RGB bitmap and returns the classification results of every head, in
+   * output tensor order.
+   */
+  public List<List<Recognition>> recognizeImageHeads(final Bitmap bitmap, int sensorOrientation) {
+    Trace.beginSection("recognizeBitmap");
+    traceFrameId = -1;
+    List<List<Recognition>> recognitions =
+        recognizeImageHeads(
+            TensorImage.fromBitmap(bitmap),
+            createImageProcessingOptions(bitmap.getWidth(), bitmap.getHeight(), sensorOrientation));
+    Trace.endSection();
+    return recognitions;
+  }
 
-    TensorImage inputImage = new TensorImage();
-    inputImage.load(image);
-    int width = image.getWidth();
-    int height = image.getHeight();
-    int cropSize = min(width, height);
-    ImageProcessingOptions imageOptions =
-        ImageProcessingOptions.builder()
-            .setOrientation(getOrientation(sensorOrientation))
-            // Set the ROI to the center of the image.
-            .setRoi(
-                new Rect(
-                    /*left=*/ (width - cropSize) / 2,
-                    /*top=*/ (height - cropSize) / 2,
-                    /*right=*/ (width + cropSize) / 2,
-                    /*bottom=*/ (height + cropSize) / 2))
-            .build();
+  /**
+   * Runs inference on a frame that has already been wrapped into a {@link TensorImage}. The image
+   * and the options can be shared between classifiers.
+   */
+  List<Recognition> recognizeImage(
+      final TensorImage inputImage, final ImageProcessingOptions imageOptions) {
+    return recognizeImageHeads(inputImage, imageOptions).get(0);
+  }
+
+  /**
+   * Runs inference on a wrapped frame, see {@link #recognizeImage(TensorImage,
+   * ImageProcessingOptions)}, and returns the results of every head. The Task library runs all
+   * heads in a single inference.
+   */
+  List<List<Recognition>> recognizeImageHeads(
+      final TensorImage inputImage, final ImageProcessingOptions imageOptions) {
+    List<Classifications> results = classify(imageClassifier, inputImage, imageOptions);
+    traceBegin(Event.POSTPROCESS);
+    List<List<Recognition>> recognitions = getRecognitions(results, headCount);
+    traceEnd(Event.POSTPROCESS);
+    return recognitions;
+  }
 
+  /** Runs inference on a wrapped frame with a classifier and returns the classes of every head. */
+  private List<Classifications> classify(
+      ImageClassifier classifier,
+      final TensorImage inputImage,
+      final ImageProcessingOptions imageOptions) {
     // Runs the inference call.
     Trace.beginSection("runInference");
     long startTimeForReference = SystemClock.uptimeMillis();
-    List<Classifications> results = imageClassifier.classify(inputImage, imageOptions);
+    // The Task library converts, crops and rotates the frame natively as part of this call.
+    traceBegin(Event.INFERENCE);
+    List<Classifications> results = classifier.classify(inputImage, imageOptions);
+    traceEnd(Event.INFERENCE);
     long endTimeForReference = SystemClock.uptimeMillis();
     Trace.endSection();
-    Log.v(TAG, "Timecost to run model inference: " + (endTimeForReference - startTimeForReference));
+    if (Log.isLoggable(TAG, Log.VERBOSE)) {
+      Log.v(
+          TAG, "Timecost to run model inference: " + (endTimeForReference - startTimeForReference));
+    }
+    return results;
+  }
+
+  /**
+   * Creates the options that crop the center of a frame of the given size and rotate it upright.
+   */
+  static ImageProcessingOptions createImageProcessingOptions(
+      int width, int height, int sensorOrientation) {
+    int cropSize = min(width, height);
+    return ImageProcessingOptions.builder()
+        .setOrientation(getOrientation(sensorOrientation))
+        // Set the ROI to the center of the image.
+        .setRoi(
+            new Rect(
+                /*left=*/ (width - cropSize) / 2,
+                /*top=*/ (height - cropSize) / 2,
+                /*right=*/ (width + cropSize) / 2,
+                /*bottom=*/ (height + cropSize) / 2))
+        .build();
+  }
+
+  /**
+   * Classifies the overlapping tiles of a {@link TileGrid} over the frame, and its center crop, and
+   * returns the best classes of the first head in any tile, located at that tile in pixels of the
+   * frame. The Task library classifies one region of interest per call, so the tiles run one at a
+   * time, each converted and cropped natively.
+   */
+  public List<Recognition> recognizeImageTiles(
+      final Image image, int sensorOrientation, TileGrid grid) {
+    Trace.beginSection("recognizeImageTiles");
+    traceFrameId = image.getTimestamp();
+    traceBegin(Event.PREPROCESS);
+    TensorImage inputImage = frameAdapter.wrap(image);
+    traceEnd(Event.PREPROCESS);
+    List<Recognition> recognitions =
+        recognizeTiles(inputImage, image.getWidth(), image.getHeight(), sensorOrientation, grid);
+    Trace.endSection();
+    return recognitions;
+  }
 
+  /**
+   * Classifies the tiles of an RGB bitmap, see {@link #recognizeImageTiles(Image, int, TileGrid)}.
+   */
+  public List<Recognition> recognizeImageTiles(
+      final Bitmap bitmap, int sensorOrientation, TileGrid grid) {
+    Trace.beginSection("recognizeBitmapTiles");
+    traceFrameId = -1;
+    List<Recognition> recognitions =
+        recognizeTiles(
+            TensorImage.fromBitmap(bitmap),
+            bitmap.getWidth(),
+            bitmap.getHeight(),
+            sensorOrientation,
+            grid);
     Trace.endSection();
+    return recognitions;
+  }
+
+  /**
+   * Has no effect: the Task library has no batched classification, so {@link
+   * #recognizeImageTiles} always runs the tiles one at a time. Kept so both inference solutions can
+   * be driven the same way.
+   */
+  public void setTileBatching(boolean tileBatching) {}
+
+  private List<Recognition> recognizeTiles(
+      final TensorImage inputImage, int width, int height, int sensorOrientation, TileGrid grid) {
+    if (grid != tileGrid
+        || width != tileFrameWidth
+        || height != tileFrameHeight
+        || sensorOrientation != tileSensorOrientation) {
+      tiles = grid.getTiles(width, height);
+      tileOptions = new ImageProcessingOptions[tiles.length];
+      for (int i = 0; i < tiles.length; i++) {
+        tileOptions[i] =
+            createImageProcessingOptions(tiles[i], getOrientation(sensorOrientation));
+      }
+      tileGrid = grid;
+      tileFrameWidth = width;
+      tileFrameHeight = height;
+      tileSensorOrientation = sensorOrientation;
+    }
+    List<List<Recognition>> tileResults = new ArrayList<>(tiles.length);
+    for (ImageProcessingOptions options : tileOptions) {
+      tileResults.add(recognizeImage(inputImage, options));
+    }
+    traceBegin(Event.POSTPROCESS);
+    List<Recognition> recognitions = TileGrid.merge(tileResults, tiles, MAX_RESULTS);
+    traceEnd(Event.POSTPROCESS);
+    return recognitions;
+  }
+
+  /**
+   * Classifies the augmented views of the frame, see {@link TestTimeAugmentation}, and returns the
+   * classes of the first head with the best mean score over all views. The Task library classifies
+   * one view per call, so the views run one at a time, on a second classifier that returns the
+   * scores of all classes, which are summed up in place.
+   */
+  public List<Recognition> recognizeImageAugmented(
+      final Image image, int sensorOrientation, TestTimeAugmentation augmentation) {
+    Trace.beginSection("recognizeImageAugmented");
+    traceFrameId = image.getTimestamp();
+    traceBegin(Event.PREPROCESS);
+    TensorImage inputImage = frameAdapter.wrap(image);
+    traceEnd(Event.PREPROCESS);
+    List<Recognition> recognitions =
+        recognizeAugmented(
+            inputImage, image.getWidth(), image.getHeight(), sensorOrientation, augmentation);
+    Trace.endSection();
+    return recognitions;
+  }
+
+  /**
+   * Classifies the augmented views of an RGB bitmap, see {@link #recognizeImageAugmented(Image,
+   * int, TestTimeAugmentation)}.
+   */
+  public List<Recognition> recognizeImageAugmented(
+      final Bitmap bitmap, int sensorOrientation, TestTimeAugmentation augmentation) {
+    Trace.beginSection("recognizeBitmapAugmented");
+    traceFrameId = -1;
+    List<Recognition> recognitions =
+        recognizeAugmented(
+            TensorImage.fromBitmap(bitmap),
+            bitmap.getWidth(),
+            bitmap.getHeight(),
+            sensorOrientation,
+            augmentation);
+    Trace.endSection();
+    return recognitions;
+  }
+
+  private List<Recognition> recognizeAugmented(
+      final TensorImage inputImage,
+      int width,
+      int height,
+      int sensorOrientation,
+      TestTimeAugmentation augmentation) {
+    if (augmentation != this.augmentation
+        || width != augmentationFrameWidth
+        || height != augmentationFrameHeight
+        || sensorOrientation != augmentationSensorOrientation) {
+      BoundingBox[] crops = augmentation.getCrops(width, height);
+      augmentationOptions = new ImageProcessingOptions[crops.length];
+      Orientation orientation = getOrientation(sensorOrientation);
+      for (int i = 0; i < crops.length; i++) {
+        augmentationOptions[i] =
+            createImageProcessingOptions(
+                crops[i],
+                augmentation.isMirrored(i) ? getMirroredOrientation(orientation) : orientation);
+      }
+      this.augmentation = augmentation;
+      augmentationFrameWidth = width;
+      augmentationFrameHeight = height;
+      augmentationSensorOrientation = sensorOrientation;
+    }
+    if (meanScores == null) {
+      meanScores = new float[classCount];
+      classLabels = new String[classCount];
+    }
+    if (allClassesClassifier == null) {
+      try {
+        allClassesClassifier = createImageClassifier(modelFile, device, numThreads, ALL_RESULTS);
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to create the classifier of all classes.", e);
+      }
+    }
+
+    Arrays.fill(meanScores, 0.0f);
+    for (ImageProcessingOptions options : augmentationOptions) {
+      for (Classifications head : classify(allClassesClassifier, inputImage, options)) {
+        if (head.getHeadIndex() != 0) {
+          continue;
+        }
+        for (Category category : head.getCategories()) {
+          int index = category.getIndex();
+          meanScores[index] += category.getScore();
+          classLabels[index] = category.getLabel();
+        }
+      }
+    }
+
+    traceBegin(Event.POSTPROCESS);
+    float scale = 1.0f / augmentationOptions.length;
+    for (int i = 0; i < classCount; i++) {
+      meanScores[i] *= scale;
+    }
+    int[] indices = new int[MAX_RESULTS];
+    int count = TopK.selectIndices(meanScores, classCount, indices);
+    List<Recognition> recognitions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int index = indices[i];
+      recognitions.add(
+          new Recognition(Integer.toString(index), classLabels[index], meanScores[index], null));
+    }
+    traceEnd(Event.POSTPROCESS);
+    return recognitions;
+  }
+
+  /**
+   * Runs inference on the classifier's own thread without a deadline.
+   *
+   * @see #recognizeImageAsync(Image, int, long, RecognitionCallback)
+   */
+  public Future<List<Recognition>> recognizeImageAsync(
+      final Image image, int sensorOrientation, RecognitionCallback callback) {
+    return recognizeImageAsync(image, sensorOrientation, NO_DEADLINE, callback);
+  }
 
-    return getRecognitions(results);
+  /**
+   * Runs inference on the classifier's own thread. A request that hasn't started yet is cancelled
+   * when a newer one arrives, and a request that starts after its deadline is dropped.
+   *
+   * @param image the frame to classify, it must stay valid until the callback is called
+   * @param sensorOrientation the rotation of the frame in degrees
+   * @param deadlineMs the {@link SystemClock#uptimeMillis()} time after which the request is no
+   *     longer worth starting, or {@link #NO_DEADLINE}
+   * @param callback receives the outcome of the request, may be null
+   * @return a handle to wait for or cancel the request
+   * @throws IllegalStateException if the classifier is closed
+   */
+  public Future<List<Recognition>> recognizeImageAsync(
+      final Image image, int sensorOrientation, long deadlineMs, RecognitionCallback callback) {
+    // Submits under the lock, so a request is either queued before the release of close() or
+    // rejected after it.
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("The classifier is closed.");
+      }
+      RecognitionExecutor executor = recognitionExecutor;
+      if (executor == null) {
+        executor = new RecognitionExecutor(this);
+        recognitionExecutor = executor;
+      }
+      return executor.submit(image, sensorOrientation, deadlineMs, callback);
+    }
   }
 
-  /** Closes the interpreter and model to release resources. */
+  /**
+   * Closes the interpreter and model to release resources. A recognition still running on the
+   * classifier thread of {@link #recognizeImageAsync} finishes first, and the classifier is closed
+   * on that thread afterwards.
+   */
   public void close() {
-    if (imageClassifier != null) {
-      imageClassifier.close();
+    RecognitionExecutor executor;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      executor = recognitionExecutor;
+      recognitionExecutor = null;
     }
+    Runnable release =
+        () -> {
+          if (imageClassifier != null) {
+            imageClassifier.close();
+          }
+          if (allClassesClassifier != null) {
+            allClassesClassifier.close();
+          }
+        };
+    if (executor != null) {
+      executor.shutdown(release);
+    } else {
+      release.run();
+    }
+  }
+
+  /**
+   * Sets the recorder of the pipeline stages of every frame, or null to stop recording. Frames are
+   * identified by their camera timestamp.
+   */
+  public void setTraceRecorder(TraceRecorder traceRecorder) {
+    this.traceRecorder = traceRecorder;
+  }
+
+  /**
+   * Gets the number of classification heads, i.e. the number of lists returned by {@link
+   * #recognizeImageHeads}.
+   */
+  public int getHeadCount() {
+    return headCount;
+  }
+
+  /** Get the device the classifier runs on, which can differ from the requested one. */
+  public Device getDevice() {
+    return device;
+  }
+
+  /** Gets the model the classifier runs. */
+  public ModelDescriptor getModel() {
+    return model;
+  }
+
+  /**
+   * Gets the SHA-256 checksum of the model file in hex, which identifies the exact model version.
+   */
+  public String getModelChecksum() {
+    return modelChecksum;
   }
 
   /** Get the image size along the x axis. */
@@ -245,24 +735,86 @@ public abstract class Classifier {
     return imageSizeY;
   }
 
+  private void traceBegin(Event event) {
+    TraceRecorder recorder = traceRecorder;
+    if (recorder != null) {
+      recorder.begin(event, traceFrameId);
+    }
+  }
+
+  private void traceEnd(Event event) {
+    TraceRecorder recorder = traceRecorder;
+    if (recorder != null) {
+      recorder.end(event, traceFrameId);
+    }
+  }
+
   /**
    * Converts a list of {@link Classifications} objects into a list of {@link Recognition} objects
    * to match the interface of other inference method, such as using the <a
    * href="https://github.com/tensorflow/examples/tree/master/lite/examples/image_classification/android/lib_support">TFLite
    * Support Library.</a>.
    */
-  private static List<Recognition> getRecognitions(List<Classifications> classifications) {
-
-    final ArrayList<Recognition> recognitions = new ArrayList<>();
-    // All the demo models are single head models. Get the first Classifications in the results.
-    for (Category category : classifications.get(0).getCategories()) {
-      recognitions.add(
-          new Recognition(
-              "" + category.getLabel(), category.getLabel(), category.getScore(), null));
+  private static List<List<Recognition>> getRecognitions(
+      List<Classifications> classifications, int headCount) {
+    // One list per head, ordered by head index, even for heads the results happen to miss.
+    final List<List<Recognition>> recognitions = new ArrayList<>(headCount);
+    for (int i = 0; i < Math.max(headCount, classifications.size()); i++) {
+      recognitions.add(new ArrayList<>());
+    }
+    for (Classifications head : classifications) {
+      List<Recognition> headRecognitions = recognitions.get(head.getHeadIndex());
+      for (Category category : head.getCategories()) {
+        headRecognitions.add(
+            new Recognition(
+                Integer.toString(category.getIndex()),
+                category.getLabel(),
+                category.getScore(),
+                null));
+      }
     }
     return recognitions;
   }
 
+  /** Creates the options that crop a region of the frame and turn it to the given orientation. */
+  private static ImageProcessingOptions createImageProcessingOptions(
+      BoundingBox crop, Orientation orientation) {
+    return ImageProcessingOptions.builder()
+        .setOrientation(orientation)
+        .setRoi(
+            new Rect(
+                (int) crop.getLeft(),
+                (int) crop.getTop(),
+                (int) crop.getRight(),
+                (int) crop.getBottom()))
+        .build();
+  }
+
+  /**
+   * Returns the orientation that turns a frame like {@code orientation} does and then mirrors the
+   * result horizontally, i.e. swaps left and right.
+   */
+  private static Orientation getMirroredOrientation(Orientation orientation) {
+    switch (orientation) {
+      case TOP_LEFT:
+        return Orientation.TOP_RIGHT;
+      case TOP_RIGHT:
+        return Orientation.TOP_LEFT;
+      case BOTTOM_RIGHT:
+        return Orientation.BOTTOM_LEFT;
+      case BOTTOM_LEFT:
+        return Orientation.BOTTOM_RIGHT;
+      case LEFT_TOP:
+        return Orientation.RIGHT_TOP;
+      case RIGHT_TOP:
+        return Orientation.LEFT_TOP;
+      case RIGHT_BOTTOM:
+        return Orientation.LEFT_BOTTOM;
+      default:
+        return Orientation.RIGHT_BOTTOM;
+    }
+  }
+
   /**
    * See http://jpegclub.org/exif_orientation.html for info
    * @param cameraOrientation which is the degrees of the Image CameraX is providing
@@ -270,7 +822,7 @@ public abstract class Classifier {
    */
   private static Orientation getOrientation(int cameraOrientation) {
     Orientation orientation;
-    switch(cameraOrientation / 90) {
+    switch (OrientationUtils.getQuarterTurns(cameraOrientation)) {
       case 1:
         orientation = Orientation.LEFT_TOP;
         break;
@@ -286,7 +838,4 @@ public abstract class Classifier {
 
     return orientation;
   }
-
-  /** Gets the name of the model file stored in Assets. */
-  protected abstract String getModelPath();
 }
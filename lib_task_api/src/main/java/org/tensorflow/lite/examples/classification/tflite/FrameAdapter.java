@@ -0,0 +1,130 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.classification.tflite.utils.Frame;
+import org.tensorflow.lite.support.image.ColorSpaceType;
+import org.tensorflow.lite.support.image.ImageProperties;
+import org.tensorflow.lite.support.image.TensorImage;
+import org.tensorflow.lite.task.core.vision.ImageProcessingOptions;
+
+/**
+ * Adapts camera frames to the input of the Task library without copying them.
+ *
+ * <p>The frame is wrapped as a media image, so its YUV planes reach the native side together with
+ * their row and pixel strides, and the conversion happens there in a single pass. The wrapping
+ * {@link TensorImage} and the processing options are reused for as long as the resolution and the
+ * orientation of the frames don't change. Not thread safe.
+ */
+final class FrameAdapter {
+  private final TensorImage tensorImage = new TensorImage();
+
+  private int width = -1;
+  private int height = -1;
+  private int sensorOrientation = -1;
+  private ImageProcessingOptions imageOptions;
+
+  /** The planes of the last {@link Frame}, packed without strides. */
+  private ByteBuffer packedFrame;
+
+  /** Wraps the frame into the reused {@link TensorImage}, valid until the next call. */
+  TensorImage wrap(final Image image) {
+    if (image.getFormat() != ImageFormat.YUV_420_888) {
+      throw new IllegalArgumentException(
+          "Only YUV_420_888 frames are supported, got format " + image.getFormat() + ".");
+    }
+    tensorImage.load(image);
+    return tensorImage;
+  }
+
+  /**
+   * Packs a frame that doesn't come from the camera, e.g. a converted still image, into the reused
+   * {@link TensorImage}, valid until the next call. Planar chroma is packed as YV21 (I420) and
+   * interleaved chroma as NV12, both of which the Task library converts natively.
+   */
+  TensorImage wrap(final Frame frame) {
+    int frameWidth = frame.getWidth();
+    int frameHeight = frame.getHeight();
+    int chromaWidth = (frameWidth + 1) / 2;
+    int chromaHeight = (frameHeight + 1) / 2;
+    int size = frameWidth * frameHeight + 2 * chromaWidth * chromaHeight;
+    if (packedFrame == null || packedFrame.capacity() != size) {
+      packedFrame = ByteBuffer.allocateDirect(size);
+    }
+    packedFrame.clear();
+    packPlane(frame, 0, frameWidth, frameHeight);
+    boolean planar = frame.getPixelStride(1) == 1;
+    if (planar) {
+      packPlane(frame, 1, chromaWidth, chromaHeight);
+      packPlane(frame, 2, chromaWidth, chromaHeight);
+    } else {
+      ByteBuffer u = frame.getPlaneBuffer(1);
+      ByteBuffer v = frame.getPlaneBuffer(2);
+      int rowStride = frame.getRowStride(1);
+      int pixelStride = frame.getPixelStride(1);
+      for (int j = 0; j < chromaHeight; j++) {
+        for (int i = 0; i < chromaWidth; i++) {
+          int index = j * rowStride + i * pixelStride;
+          packedFrame.put(u.get(index)).put(v.get(index));
+        }
+      }
+    }
+    packedFrame.rewind();
+    tensorImage.load(
+        packedFrame,
+        ImageProperties.builder()
+            .setWidth(frameWidth)
+            .setHeight(frameHeight)
+            .setColorSpaceType(planar ? ColorSpaceType.YV21 : ColorSpaceType.NV12)
+            .build());
+    return tensorImage;
+  }
+
+  /** Appends the rows of a plane without their padding to {@link #packedFrame}. */
+  private void packPlane(Frame frame, int plane, int planeWidth, int planeHeight) {
+    ByteBuffer buffer = frame.getPlaneBuffer(plane);
+    int rowStride = frame.getRowStride(plane);
+    int pixelStride = frame.getPixelStride(plane);
+    for (int j = 0; j < planeHeight; j++) {
+      for (int i = 0; i < planeWidth; i++) {
+        packedFrame.put(buffer.get(j * rowStride + i * pixelStride));
+      }
+    }
+  }
+
+  /** Returns the options to crop and rotate frames of the given size, cached per resolution. */
+  ImageProcessingOptions getImageProcessingOptions(final Image image, int sensorOrientation) {
+    return getImageProcessingOptions(image.getWidth(), image.getHeight(), sensorOrientation);
+  }
+
+  /** Returns the options to crop and rotate frames of the given size, cached per resolution. */
+  ImageProcessingOptions getImageProcessingOptions(
+      int frameWidth, int frameHeight, int sensorOrientation) {
+    if (imageOptions == null
+        || frameWidth != width
+        || frameHeight != height
+        || sensorOrientation != this.sensorOrientation) {
+      width = frameWidth;
+      height = frameHeight;
+      this.sensorOrientation = sensorOrientation;
+      imageOptions = Classifier.createImageProcessingOptions(width, height, sensorOrientation);
+    }
+    return imageOptions;
+  }
+}
@@ -0,0 +1,143 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import android.media.Image;
+import android.os.SystemClock;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import org.tensorflow.lite.examples.classification.tflite.Classifier.RecognitionCallback;
+
+/**
+ * Runs the recognitions of a {@link Classifier} on a dedicated thread.
+ *
+ * <p>At most one request waits for the thread at any time: a newer request cancels the waiting one
+ * before it starts, so stale frames are dropped instead of classified. Requests whose deadline has
+ * passed when the thread picks them up are dropped as well.
+ */
+final class RecognitionExecutor {
+  private final Classifier classifier;
+  private final ExecutorService executor;
+
+  /** The request waiting for the thread, if any. */
+  private final AtomicReference<RecognitionRequest> pendingRequest = new AtomicReference<>();
+
+  RecognitionExecutor(Classifier classifier) {
+    this.classifier = classifier;
+    this.executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable r) {
+                return new Thread(r, "classifier");
+              }
+            });
+  }
+
+  /** Queues a recognition, cancelling the request that is still waiting, if any. */
+  Future<List<Recognition>> submit(
+      Image image, int sensorOrientation, long deadlineMs, RecognitionCallback callback) {
+    RecognitionRequest request =
+        new RecognitionRequest(image, sensorOrientation, deadlineMs, callback);
+    RecognitionRequest staleRequest = pendingRequest.getAndSet(request);
+    if (staleRequest != null) {
+      staleRequest.cancel(false);
+    }
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            RecognitionRequest next = pendingRequest.getAndSet(null);
+            if (next != null) {
+              next.run();
+            }
+          }
+        });
+    return request;
+  }
+
+  /**
+   * Drops the waiting request and runs {@code release} on the classifier thread after the running
+   * request, if any, has finished, however long it takes. Returns without waiting, so the caller is
+   * never blocked by an inference while the interpreter is never closed under one.
+   */
+  void shutdown(Runnable release) {
+    RecognitionRequest staleRequest = pendingRequest.getAndSet(null);
+    if (staleRequest != null) {
+      staleRequest.cancel(false);
+    }
+    executor.execute(release);
+    executor.shutdown();
+  }
+
+  /** A single recognition request, reporting its outcome to the callback once it is done. */
+  private final class RecognitionRequest extends FutureTask<List<Recognition>> {
+    private final Image image;
+    private final long deadlineMs;
+    private final RecognitionCallback callback;
+
+    RecognitionRequest(
+        final Image image,
+        final int sensorOrientation,
+        long deadlineMs,
+        RecognitionCallback callback) {
+      super(
+          new Callable<List<Recognition>>() {
+            @Override
+            public List<Recognition> call() {
+              return classifier.recognizeImage(image, sensorOrientation);
+            }
+          });
+      this.image = image;
+      this.deadlineMs = deadlineMs;
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      if (SystemClock.uptimeMillis() > deadlineMs) {
+        cancel(false);
+        return;
+      }
+      super.run();
+    }
+
+    @Override
+    protected void done() {
+      if (callback == null) {
+        return;
+      }
+      try {
+        callback.onResult(image, get());
+      } catch (CancellationException e) {
+        callback.onDropped(image);
+      } catch (ExecutionException e) {
+        callback.onError(image, e.getCause());
+      } catch (InterruptedException e) {
+        // Not reachable, get() doesn't block once the task is done.
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,39 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.models;
+
+import android.content.res.AssetManager;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Provides the models bundled in the assets of the APK. */
+public final class AssetModelSource implements ModelSource {
+  private final AssetManager assets;
+
+  public AssetModelSource(AssetManager assets) {
+    this.assets = assets;
+  }
+
+  @Override
+  public InputStream open(String name) throws IOException {
+    return assets.open(name);
+  }
+
+  /** Returns null: assets are covered by the signature of the APK. */
+  @Override
+  public String getChecksum(String name) {
+    return null;
+  }
+}
@@ -0,0 +1,62 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.models;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Looks files up in several sources in turn, e.g. the APK first and a server second. */
+public final class ChainedModelSource implements ModelSource {
+  private final ModelSource[] sources;
+
+  /** The source that served each opened file, which also provides its checksum. */
+  private final Map<String, ModelSource> servingSources = new HashMap<>();
+
+  public ChainedModelSource(ModelSource... sources) {
+    this.sources = sources.clone();
+  }
+
+  @Override
+  public InputStream open(String name) throws IOException {
+    FileNotFoundException notFound = null;
+    for (ModelSource source : sources) {
+      InputStream inputStream;
+      try {
+        inputStream = source.open(name);
+      } catch (FileNotFoundException e) {
+        notFound = e;
+        continue;
+      }
+      synchronized (servingSources) {
+        servingSources.put(name, source);
+      }
+      return inputStream;
+    }
+    throw notFound != null ? notFound : new FileNotFoundException(name);
+  }
+
+  /** Returns the checksum published by the source that served the file when it was last opened. */
+  @Override
+  public String getChecksum(String name) throws IOException {
+    ModelSource source;
+    synchronized (servingSources) {
+      source = servingSources.get(name);
+    }
+    return source != null ? source.getChecksum(name) : null;
+  }
+}
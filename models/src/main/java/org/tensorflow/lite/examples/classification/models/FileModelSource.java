@@ -0,0 +1,55 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.models;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Provides the models of a local directory, e.g. pushed with adb. A file {@code <name>.sha256} next
+ * to a model holds its expected checksum.
+ */
+public final class FileModelSource implements ModelSource {
+  private final File directory;
+
+  public FileModelSource(File directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public InputStream open(String name) throws IOException {
+    return new FileInputStream(new File(directory, name));
+  }
+
+  @Override
+  public String getChecksum(String name) throws IOException {
+    File checksumFile = new File(directory, name + ".sha256");
+    if (!checksumFile.isFile()) {
+      return null;
+    }
+    BufferedReader reader = new BufferedReader(new FileReader(checksumFile));
+    try {
+      String line = reader.readLine();
+      // Accepts the output of sha256sum, "<checksum>  <file name>".
+      return line != null ? line.trim().split("\\s+")[0] : null;
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.models;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Downloads models over HTTP. A model is looked up in a map of explicit URLs first, whose expected
+ * checksums are given along with them, and otherwise resolved against a base URL, where
+ * {@code <name>.sha256} may hold its expected checksum.
+ */
+public final class HttpModelSource implements ModelSource {
+  private static final int TIMEOUT_MS = 15000;
+
+  private final String baseUrl;
+  private final Map<String, String> urls;
+  private final Map<String, String> checksums;
+
+  /**
+   * @param baseUrl the URL the names are resolved against, or null to only serve {@code urls}
+   * @param urls explicit URLs of some names, e.g. of models hosted on TensorFlow Hub
+   * @param checksums the SHA-256 checksums in hex of the names in {@code urls}. A file of an
+   *     explicit URL without a checksum is rejected, since nothing else vouches for its content.
+   */
+  public HttpModelSource(String baseUrl, Map<String, String> urls, Map<String, String> checksums) {
+    this.baseUrl = baseUrl == null || baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    this.urls = urls;
+    this.checksums = checksums;
+  }
+
+  public HttpModelSource(String baseUrl) {
+    this(
+        baseUrl,
+        Collections.<String, String>emptyMap(),
+        Collections.<String, String>emptyMap());
+  }
+
+  @Override
+  public InputStream open(String name) throws IOException {
+    String url = urls.get(name);
+    if (url == null) {
+      if (baseUrl == null) {
+        throw new FileNotFoundException("No URL for " + name);
+      }
+      url = baseUrl + name;
+    }
+    return connect(url);
+  }
+
+  @Override
+  public String getChecksum(String name) throws IOException {
+    if (urls.containsKey(name)) {
+      String checksum = checksums.get(name);
+      if (checksum == null) {
+        throw new IOException("No SHA-256 checksum to verify the download of " + name);
+      }
+      return checksum;
+    }
+    if (baseUrl == null) {
+      return null;
+    }
+    InputStream inputStream;
+    try {
+      inputStream = connect(baseUrl + name + ".sha256");
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+    try {
+      String line = reader.readLine();
+      return line != null ? line.trim().split("\\s+")[0] : null;
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static InputStream connect(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setConnectTimeout(TIMEOUT_MS);
+    connection.setReadTimeout(TIMEOUT_MS);
+    int status = connection.getResponseCode();
+    if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+      connection.disconnect();
+      throw new FileNotFoundException(url);
+    }
+    if (status != HttpURLConnection.HTTP_OK) {
+      connection.disconnect();
+      throw new IOException("Unexpected HTTP status " + status + " for " + url);
+    }
+    return connection.getInputStream();
+  }
+}
@@ -0,0 +1,552 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.models;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Keeps models, their labels and the shapes and types of their tensors in app-private storage, so
+ * classifiers start without reading assets or parsing model metadata.
+ *
+ * <p>A model and its labels are fetched from a {@link ModelSource} on first use, or when the source
+ * version changes, e.g. after an app update. A fetched model is rejected unless it is a TFLite
+ * flatbuffer and matches the checksum published by the source, if any. Its SHA-256 checksum and
+ * size are recorded in a manifest next to it, which is written last, so a fetch interrupted by
+ * process death is redone on the next start. Derived data, such as tensor shapes and quantization
+ * parameters, is added to the manifest by the classifier that computed it. When the cache outgrows
+ * its size limit, the least recently opened models are evicted.
+ *
+ * <p>Plain Java, so the provisioning flow can be exercised on a JVM against a local server.
+ */
+public final class ModelCache {
+  /** The file identifier of TFLite flatbuffers, at byte offset 4. */
+  private static final byte[] TFLITE_IDENTIFIER = {'T', 'F', 'L', '3'};
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  private static final String KEY_SOURCE_VERSION = "source.version";
+  private static final String KEY_MODEL_NAME = "model.name";
+  private static final String KEY_MODEL_LENGTH = "model.length";
+  private static final String KEY_MODEL_SHA256 = "model.sha256";
+  private static final String KEY_LABELS_NAME = "labels.name";
+  private static final String KEY_LABELS_COUNT = "labels.count";
+  private static final String KEY_OUTPUT_COUNT = "output.count";
+  private static final String PREFIX_INPUT = "input.";
+  private static final String PREFIX_OUTPUT = "output.";
+
+  private final File directory;
+  private final ModelSource source;
+  private final String sourceVersion;
+  private final long maxBytes;
+
+  /** The shape, type and quantization of a model tensor. */
+  public static final class TensorInfo {
+    private final int[] shape;
+    private final String dataType;
+    private final float scale;
+    private final int zeroPoint;
+
+    /**
+     * @param dataType the name of the data type, e.g. {@code "UINT8"}
+     * @param scale the quantization scale, 0 for tensors that are not quantized
+     */
+    public TensorInfo(int[] shape, String dataType, float scale, int zeroPoint) {
+      this.shape = shape.clone();
+      this.dataType = dataType;
+      this.scale = scale;
+      this.zeroPoint = zeroPoint;
+    }
+
+    public int[] getShape() {
+      return shape.clone();
+    }
+
+    public String getDataType() {
+      return dataType;
+    }
+
+    public float getScale() {
+      return scale;
+    }
+
+    public int getZeroPoint() {
+      return zeroPoint;
+    }
+
+    private void store(Properties properties, String prefix) {
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < shape.length; i++) {
+        if (i > 0) {
+          builder.append(',');
+        }
+        builder.append(shape[i]);
+      }
+      properties.setProperty(prefix + "shape", builder.toString());
+      properties.setProperty(prefix + "type", dataType);
+      properties.setProperty(prefix + "scale", Float.toString(scale));
+      properties.setProperty(prefix + "zeroPoint", Integer.toString(zeroPoint));
+    }
+
+    private static TensorInfo load(Properties properties, String prefix) {
+      String shape = properties.getProperty(prefix + "shape");
+      String dataType = properties.getProperty(prefix + "type");
+      if (shape == null || dataType == null) {
+        return null;
+      }
+      try {
+        String[] dimensions = shape.isEmpty() ? new String[0] : shape.split(",");
+        int[] values = new int[dimensions.length];
+        for (int i = 0; i < dimensions.length; i++) {
+          values[i] = Integer.parseInt(dimensions[i]);
+        }
+        return new TensorInfo(
+            values,
+            dataType,
+            Float.parseFloat(properties.getProperty(prefix + "scale", "0")),
+            Integer.parseInt(properties.getProperty(prefix + "zeroPoint", "0")));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+  }
+
+  /** A model fetched into the cache. */
+  public final class Entry {
+    private final String name;
+    private final Properties manifest;
+
+    private Entry(String name, Properties manifest) {
+      this.name = name;
+      this.manifest = manifest;
+    }
+
+    /** Returns the SHA-256 checksum of the model file in hex, recorded when it was fetched. */
+    public String getModelChecksum() {
+      return manifest.getProperty(KEY_MODEL_SHA256);
+    }
+
+    /** Returns the model file, e.g. to create a classifier from a file path. */
+    public File getModelFile() {
+      return new File(directory, name + ".tflite");
+    }
+
+    /** Maps the model file into memory. */
+    public MappedByteBuffer mapModel() throws IOException {
+      FileInputStream inputStream = new FileInputStream(getModelFile());
+      try {
+        FileChannel channel = inputStream.getChannel();
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        inputStream.close();
+      }
+    }
+
+    /** Returns the labels of the first output, see {@link #getLabels(int)}. */
+    public List<String> getLabels() throws IOException {
+      return getLabels(0);
+    }
+
+    /**
+     * Returns the labels of an output, one per non-empty line of its label file, or none without
+     * one.
+     */
+    public List<String> getLabels(int output) throws IOException {
+      List<String> labels = new ArrayList<>();
+      if (manifest.getProperty(getLabelsKey(output)) == null) {
+        return labels;
+      }
+      BufferedReader reader =
+          new BufferedReader(
+              new InputStreamReader(new FileInputStream(getLabelFile(name, output)), UTF_8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.trim().length() > 0) {
+            labels.add(line);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+      return labels;
+    }
+
+    /** Returns the input tensor info saved by {@link #saveTensorInfo}, or null. */
+    public TensorInfo getInputInfo() {
+      return TensorInfo.load(manifest, PREFIX_INPUT);
+    }
+
+    /** Returns the info of the first output tensor saved by {@link #saveTensorInfo}, or null. */
+    public TensorInfo getOutputInfo() {
+      return TensorInfo.load(manifest, getOutputPrefix(0));
+    }
+
+    /** Returns the info of all output tensors saved by {@link #saveTensorInfo}, or null. */
+    public List<TensorInfo> getOutputInfos() {
+      int count;
+      try {
+        count = Integer.parseInt(manifest.getProperty(KEY_OUTPUT_COUNT, "1"));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      List<TensorInfo> outputs = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        TensorInfo output = TensorInfo.load(manifest, getOutputPrefix(i));
+        if (output == null) {
+          return null;
+        }
+        outputs.add(output);
+      }
+      return outputs;
+    }
+
+    /** Persists the tensor info of a model with a single output. */
+    public void saveTensorInfo(TensorInfo input, TensorInfo output) throws IOException {
+      saveTensorInfo(input, Collections.singletonList(output));
+    }
+
+    /** Persists the tensor info of the model, read once from the model itself. */
+    public void saveTensorInfo(TensorInfo input, List<TensorInfo> outputs) throws IOException {
+      synchronized (ModelCache.this) {
+        input.store(manifest, PREFIX_INPUT);
+        manifest.setProperty(KEY_OUTPUT_COUNT, Integer.toString(outputs.size()));
+        for (int i = 0; i < outputs.size(); i++) {
+          outputs.get(i).store(manifest, getOutputPrefix(i));
+        }
+        writeManifest(name, manifest);
+      }
+    }
+
+    /**
+     * Recomputes the checksum of the model file, e.g. to check the cache in the background.
+     *
+     * @return whether the model file still matches the checksum recorded when it was fetched
+     */
+    public boolean verify() throws IOException {
+      InputStream inputStream = new FileInputStream(getModelFile());
+      try {
+        return sha256(inputStream, null).equals(manifest.getProperty(KEY_MODEL_SHA256));
+      } finally {
+        inputStream.close();
+      }
+    }
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param directory the directory holding the cached files, created on demand
+   * @param source provides the models and labels missing from the cache
+   * @param sourceVersion identifies the content of the source; files cached from another version
+   *     are fetched again
+   * @param maxBytes the size above which the least recently opened models are evicted
+   */
+  public ModelCache(File directory, ModelSource source, String sourceVersion, long maxBytes) {
+    this.directory = directory;
+    this.source = source;
+    this.sourceVersion = sourceVersion;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the cached copy of a model, fetching it from the source if it is missing or was
+   * fetched from another version of the source.
+   *
+   * @param modelName the name of the model in the source, e.g. its asset path
+   * @param labelName the name of its label file in the source, or null for models that carry
+   *     their labels in their metadata
+   */
+  public Entry open(String modelName, String labelName) throws IOException {
+    return openWithOutputLabels(modelName, Collections.singletonList(labelName));
+  }
+
+  /**
+   * Returns the cached copy of a model with several outputs, see {@link #open(String, String)}.
+   *
+   * @param labelNames the names of the label files of the outputs in the source, in output order,
+   *     null for outputs without one
+   */
+  public synchronized Entry openWithOutputLabels(String modelName, List<String> labelNames)
+      throws IOException {
+    String name = modelName.replace('/', '_');
+    if (name.endsWith(".tflite")) {
+      name = name.substring(0, name.length() - ".tflite".length());
+    }
+    Properties manifest = readManifest(name);
+    File modelFile = new File(directory, name + ".tflite");
+    if (manifest != null && isValid(name, manifest, modelName, labelNames)) {
+      // Marks the model as recently used for eviction.
+      modelFile.setLastModified(System.currentTimeMillis());
+      return new Entry(name, manifest);
+    }
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create the model cache in " + directory);
+    }
+    // Removes the manifest first, so a partial fetch is never taken for a valid one.
+    new File(directory, name + ".properties").delete();
+
+    manifest = new Properties();
+    manifest.setProperty(KEY_SOURCE_VERSION, sourceVersion);
+    manifest.setProperty(KEY_MODEL_NAME, modelName);
+    manifest.setProperty(KEY_LABELS_COUNT, Integer.toString(labelNames.size()));
+    manifest.setProperty(KEY_MODEL_SHA256, fetch(modelName, modelFile, /*isModel=*/ true));
+    manifest.setProperty(KEY_MODEL_LENGTH, Long.toString(modelFile.length()));
+    for (int i = 0; i < labelNames.size(); i++) {
+      String labelName = labelNames.get(i);
+      if (labelName != null) {
+        manifest.setProperty(getLabelsKey(i), labelName);
+        fetch(labelName, getLabelFile(name, i), /*isModel=*/ false);
+      }
+    }
+    writeManifest(name, manifest);
+    evict(name);
+    return new Entry(name, manifest);
+  }
+
+  /** Returns the total size of the cached files. */
+  public synchronized long getSizeBytes() {
+    long size = 0;
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        size += file.length();
+      }
+    }
+    return size;
+  }
+
+  private boolean isValid(
+      String name, Properties manifest, String modelName, List<String> labelNames) {
+    File modelFile = new File(directory, name + ".tflite");
+    if (!sourceVersion.equals(manifest.getProperty(KEY_SOURCE_VERSION))
+        || !modelName.equals(manifest.getProperty(KEY_MODEL_NAME))
+        || !Long.toString(modelFile.length()).equals(manifest.getProperty(KEY_MODEL_LENGTH))
+        || getLabelCount(manifest) != labelNames.size()) {
+      return false;
+    }
+    for (int i = 0; i < labelNames.size(); i++) {
+      String labelName = labelNames.get(i);
+      boolean valid =
+          labelName == null
+              ? manifest.getProperty(getLabelsKey(i)) == null
+              : labelName.equals(manifest.getProperty(getLabelsKey(i)))
+                  && getLabelFile(name, i).isFile();
+      if (!valid) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Manifests written before models could have several outputs hold a single label file. */
+  private static int getLabelCount(Properties manifest) {
+    try {
+      return Integer.parseInt(manifest.getProperty(KEY_LABELS_COUNT, "1"));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String getLabelsKey(int output) {
+    return output == 0 ? KEY_LABELS_NAME : "labels." + output + ".name";
+  }
+
+  private static String getOutputPrefix(int output) {
+    return output == 0 ? PREFIX_OUTPUT : PREFIX_OUTPUT + output + ".";
+  }
+
+  /** The label file of the first output keeps the name it had before models had several. */
+  private File getLabelFile(String name, int output) {
+    return new File(directory, output == 0 ? name + ".labels" : name + ".labels." + output);
+  }
+
+  /**
+   * Copies a file of the source into the cache through a temporary file and verifies it.
+   *
+   * @return the SHA-256 checksum of the file in hex
+   */
+  private String fetch(String sourceName, File file, boolean isModel) throws IOException {
+    File tempFile = new File(file.getPath() + ".tmp");
+    try {
+      String checksum;
+      InputStream inputStream = source.open(sourceName);
+      try {
+        OutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+          checksum = sha256(inputStream, outputStream);
+        } finally {
+          outputStream.close();
+        }
+      } finally {
+        inputStream.close();
+      }
+      String expectedChecksum = source.getChecksum(sourceName);
+      if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+        throw new IOException(
+            "Checksum mismatch for " + sourceName + ": expected " + expectedChecksum
+                + ", got " + checksum);
+      }
+      if (isModel && !isTfliteModel(tempFile)) {
+        throw new IOException(sourceName + " is not a TFLite model.");
+      }
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Cannot move " + tempFile + " to " + file);
+      }
+      return checksum;
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  private static boolean isTfliteModel(File file) throws IOException {
+    byte[] header = new byte[8];
+    InputStream inputStream = new FileInputStream(file);
+    try {
+      int length = 0;
+      int read;
+      while (length < header.length
+          && (read = inputStream.read(header, length, header.length - length)) != -1) {
+        length += read;
+      }
+      if (length < header.length) {
+        return false;
+      }
+    } finally {
+      inputStream.close();
+    }
+    for (int i = 0; i < TFLITE_IDENTIFIER.length; i++) {
+      if (header[4 + i] != TFLITE_IDENTIFIER[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Deletes the least recently opened models, except the given one, until the cache fits. */
+  private void evict(String keepName) {
+    long size = getSizeBytes();
+    if (size <= maxBytes) {
+      return;
+    }
+    File[] modelFiles = directory.listFiles((dir, fileName) -> fileName.endsWith(".tflite"));
+    if (modelFiles == null) {
+      return;
+    }
+    Arrays.sort(modelFiles, (lhs, rhs) -> Long.compare(lhs.lastModified(), rhs.lastModified()));
+    for (File modelFile : modelFiles) {
+      if (size <= maxBytes) {
+        break;
+      }
+      String fileName = modelFile.getName();
+      String name = fileName.substring(0, fileName.length() - ".tflite".length());
+      if (name.equals(keepName)) {
+        continue;
+      }
+      // The manifest goes first, so an interrupted eviction leaves no valid-looking entry.
+      Properties manifest = readManifest(name);
+      int labelCount = manifest != null ? Math.max(getLabelCount(manifest), 1) : 1;
+      File manifestFile = new File(directory, name + ".properties");
+      size -= manifestFile.length() + modelFile.length();
+      manifestFile.delete();
+      for (int i = 0; i < labelCount; i++) {
+        File labelFile = getLabelFile(name, i);
+        size -= labelFile.length();
+        labelFile.delete();
+      }
+      modelFile.delete();
+    }
+  }
+
+  private Properties readManifest(String name) {
+    File file = new File(directory, name + ".properties");
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties manifest = new Properties();
+    try {
+      InputStream inputStream = new FileInputStream(file);
+      try {
+        manifest.load(inputStream);
+      } finally {
+        inputStream.close();
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      // An unreadable manifest is treated like a missing one, and the model is fetched again.
+      return null;
+    }
+    return manifest;
+  }
+
+  private void writeManifest(String name, Properties manifest) throws IOException {
+    File file = new File(directory, name + ".properties");
+    File tempFile = new File(directory, name + ".properties.tmp");
+    FileOutputStream outputStream = new FileOutputStream(tempFile);
+    try {
+      manifest.store(outputStream, null);
+      outputStream.getFD().sync();
+    } finally {
+      outputStream.close();
+    }
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+      throw new IOException("Cannot write the manifest " + file);
+    }
+  }
+
+  /** Reads the stream to its end, copying it if an output is given, and returns its checksum. */
+  private static String sha256(InputStream inputStream, OutputStream outputStream)
+      throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    DigestInputStream digestStream = new DigestInputStream(inputStream, digest);
+    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    int read;
+    while ((read = digestStream.read(buffer)) != -1) {
+      if (outputStream != null) {
+        outputStream.write(buffer, 0, read);
+      }
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+}
@@ -0,0 +1,207 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a classification model: its files, how its input is normalized and its output
+ * dequantized, and how the app should run it. Descriptors are read from the {@link ModelRegistry}.
+ */
+public final class ModelDescriptor {
+
+  /** A linear transformation {@code (value - mean) / std}, as applied by a {@code NormalizeOp}. */
+  public static final class Normalization {
+    private final float mean;
+    private final float std;
+
+    public Normalization(float mean, float std) {
+      if (std == 0) {
+        throw new IllegalArgumentException("The standard deviation must not be 0.");
+      }
+      this.mean = mean;
+      this.std = std;
+    }
+
+    public float getMean() {
+      return mean;
+    }
+
+    public float getStd() {
+      return std;
+    }
+  }
+
+  /**
+   * A classification head, i.e. an output tensor of the model. Models with several heads classify
+   * several attributes of an image in a single inference.
+   */
+  public static final class Head {
+    private final String name;
+    private final String labelPath;
+    private final Normalization outputNormalization;
+
+    /**
+     * @param name the name of the attribute the head classifies, or null
+     * @param labelPath the name of the label file, or null if the labels are in the model metadata
+     * @param outputNormalization the dequantization of the output, or null to derive it from the
+     *     quantization parameters of the output tensor
+     */
+    public Head(String name, String labelPath, Normalization outputNormalization) {
+      this.name = name;
+      this.labelPath = labelPath;
+      this.outputNormalization = outputNormalization;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getLabelPath() {
+      return labelPath;
+    }
+
+    public Normalization getOutputNormalization() {
+      return outputNormalization;
+    }
+  }
+
+  private final String name;
+  private final String modelPath;
+  private final List<Head> heads;
+  private final String url;
+  private final String sha256;
+  private final Normalization inputNormalization;
+  private final String preferredDevice;
+  private final boolean quantized;
+  private final boolean lightweight;
+  private final int embeddingOutput;
+
+  /**
+   * @param name the unique name shown to the user, e.g. {@code "Quantized_MobileNet"}
+   * @param modelPath the name of the model file
+   * @param heads the heads of the model in output tensor order, at least one
+   * @param url where to download the model if it is not bundled, or null
+   * @param sha256 the SHA-256 checksum of the model file in hex, which a download must match, or
+   *     null
+   * @param inputNormalization the normalization of the input image, or null to feed raw pixels
+   * @param preferredDevice the name of the device to select with this model, or null
+   * @param quantized whether the model only runs on devices supporting quantized models
+   * @param lightweight whether the model can replace heavier ones when inference falls behind
+   * @param embeddingOutput the index of the output tensor holding an image embedding, e.g. the
+   *     penultimate layer, or -1. The heads describe the other output tensors, in order.
+   */
+  public ModelDescriptor(
+      String name,
+      String modelPath,
+      List<Head> heads,
+      String url,
+      String sha256,
+      Normalization inputNormalization,
+      String preferredDevice,
+      boolean quantized,
+      boolean lightweight,
+      int embeddingOutput) {
+    if (name == null || modelPath == null) {
+      throw new IllegalArgumentException("A model needs a name and a model path.");
+    }
+    if (heads.isEmpty()) {
+      throw new IllegalArgumentException(name + " needs at least one head.");
+    }
+    this.name = name;
+    this.modelPath = modelPath;
+    this.heads = Collections.unmodifiableList(new ArrayList<>(heads));
+    this.url = url;
+    this.sha256 = sha256;
+    this.inputNormalization = inputNormalization;
+    this.preferredDevice = preferredDevice;
+    this.quantized = quantized;
+    this.lightweight = lightweight;
+    this.embeddingOutput = embeddingOutput;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getModelPath() {
+    return modelPath;
+  }
+
+  /** Returns the heads of the model, in output tensor order. */
+  public List<Head> getHeads() {
+    return heads;
+  }
+
+  /** Returns the label file names of the heads, null for heads without one. */
+  public List<String> getLabelPaths() {
+    List<String> labelPaths = new ArrayList<>(heads.size());
+    for (Head head : heads) {
+      labelPaths.add(head.getLabelPath());
+    }
+    return labelPaths;
+  }
+
+  /** Returns the label file name of the first head. */
+  public String getLabelPath() {
+    return heads.get(0).getLabelPath();
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getSha256() {
+    return sha256;
+  }
+
+  public Normalization getInputNormalization() {
+    return inputNormalization;
+  }
+
+  /** Returns the output dequantization of the first head. */
+  public Normalization getOutputNormalization() {
+    return heads.get(0).getOutputNormalization();
+  }
+
+  public String getPreferredDevice() {
+    return preferredDevice;
+  }
+
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  public boolean isLightweight() {
+    return lightweight;
+  }
+
+  /** Returns the index of the output tensor holding an image embedding, or -1 if there is none. */
+  public int getEmbeddingOutput() {
+    return embeddingOutput;
+  }
+
+  public boolean hasEmbedding() {
+    return embeddingOutput >= 0;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,286 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.models;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The models the app can run, read from {@code models.json} in the assets.
+ *
+ * <p>A {@code models.json} in the app's files directory, e.g. pushed with adb or provisioned for a
+ * customer, adds models or replaces bundled ones of the same name. Each model is an object of the
+ * {@code "models"} array:
+ *
+ * <pre>
+ * {
+ *   "name": "Quantized_MobileNet",
+ *   "model": "mobilenet_v1_1.0_224_quant.tflite",
+ *   "labels": "labels.txt",
+ *   "url": "https://...",
+ *   "sha256": "9f3c...",
+ *   "input": {"mean": 0.0, "std": 1.0},
+ *   "output": {"mean": 0.0, "std": 255.0},
+ *   "device": "CPU",
+ *   "quantized": true,
+ *   "lightweight": true
+ * }
+ * </pre>
+ *
+ * Only {@code name} and {@code model} are required, see {@link ModelDescriptor} for the others.
+ * A model with a {@code url} is only downloaded if its checksum is known: its {@code sha256}, or
+ * for bundled registry entries without one, the checksum the build generates into the asset
+ * {@code models.sha256} from the model it downloads.
+ * Models with several classification heads list them in output tensor order instead of
+ * {@code labels} and {@code output}:
+ *
+ * <pre>
+ *   "heads": [
+ *     {"name": "species", "labels": "species.txt"},
+ *     {"name": "color", "labels": "colors.txt", "output": {"mean": 0.0, "std": 255.0}}
+ *   ]
+ * </pre>
+ *
+ * Models that also output an image embedding for similarity search name its output tensor with
+ * {@code "embedding": 1}; the heads then describe the remaining output tensors.
+ */
+public final class ModelRegistry {
+  private static final String TAG = "ModelRegistry";
+
+  public static final String REGISTRY_FILE = "models.json";
+
+  /** The checksums of the downloadable models, generated by the build in the format of sha256sum. */
+  public static final String CHECKSUMS_FILE = "models.sha256";
+
+  private static ModelRegistry instance;
+
+  private final List<ModelDescriptor> models;
+
+  private ModelRegistry(List<ModelDescriptor> models) {
+    if (models.isEmpty()) {
+      throw new IllegalStateException("The model registry is empty.");
+    }
+    this.models = Collections.unmodifiableList(models);
+  }
+
+  /** Returns the registry of the app, reading it on first use. */
+  public static synchronized ModelRegistry get(Context context) {
+    if (instance == null) {
+      Context applicationContext = context.getApplicationContext();
+      List<ModelDescriptor> models;
+      try {
+        models =
+            parse(
+                read(applicationContext.getAssets().open(REGISTRY_FILE)),
+                readChecksums(applicationContext));
+      } catch (IOException | JSONException e) {
+        // The bundled registry is part of the APK, so this is a build error.
+        throw new IllegalStateException("Failed to read the bundled " + REGISTRY_FILE, e);
+      }
+      File overrides = new File(applicationContext.getFilesDir(), REGISTRY_FILE);
+      if (overrides.isFile()) {
+        try {
+          merge(
+              models,
+              parse(read(new FileInputStream(overrides)), Collections.<String, String>emptyMap()));
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+          Log.w(TAG, "Ignoring the invalid " + overrides, e);
+        }
+      }
+      instance = new ModelRegistry(models);
+    }
+    return instance;
+  }
+
+  /** Returns all models, in the order they should be offered to the user. */
+  public List<ModelDescriptor> getModels() {
+    return models;
+  }
+
+  /** Returns the model to use when the user did not pick one, the first one of the registry. */
+  public ModelDescriptor getDefaultModel() {
+    return models.get(0);
+  }
+
+  /**
+   * Returns the model of the given name.
+   *
+   * @throws IllegalArgumentException if there is no such model
+   */
+  public ModelDescriptor getModel(String name) {
+    for (ModelDescriptor model : models) {
+      if (model.getName().equals(name)) {
+        return model;
+      }
+    }
+    throw new IllegalArgumentException("Unknown model: " + name);
+  }
+
+  /** Returns the download URLs of the models that have one, by model file name. */
+  public Map<String, String> getModelUrls() {
+    Map<String, String> urls = new HashMap<>();
+    for (ModelDescriptor model : models) {
+      if (model.getUrl() != null) {
+        urls.put(model.getModelPath(), model.getUrl());
+      }
+    }
+    return urls;
+  }
+
+  /** Returns the SHA-256 checksums of the models that have a download URL, by model file name. */
+  public Map<String, String> getModelChecksums() {
+    Map<String, String> checksums = new HashMap<>();
+    for (ModelDescriptor model : models) {
+      if (model.getUrl() != null && model.getSha256() != null) {
+        checksums.put(model.getModelPath(), model.getSha256());
+      }
+    }
+    return checksums;
+  }
+
+  private static void merge(List<ModelDescriptor> models, List<ModelDescriptor> overrides) {
+    for (ModelDescriptor override : overrides) {
+      int index = -1;
+      for (int i = 0; i < models.size(); i++) {
+        if (models.get(i).getName().equals(override.getName())) {
+          index = i;
+          break;
+        }
+      }
+      if (index >= 0) {
+        models.set(index, override);
+      } else {
+        models.add(override);
+      }
+    }
+  }
+
+  /**
+   * Parses a registry.
+   *
+   * @param checksums the checksums of models whose entry has no {@code sha256}, by model file name
+   */
+  private static List<ModelDescriptor> parse(String json, Map<String, String> checksums)
+      throws JSONException {
+    JSONArray array = new JSONObject(json).getJSONArray("models");
+    List<ModelDescriptor> models = new ArrayList<>(array.length());
+    for (int i = 0; i < array.length(); i++) {
+      JSONObject model = array.getJSONObject(i);
+      List<ModelDescriptor.Head> heads = new ArrayList<>();
+      JSONArray headArray = model.optJSONArray("heads");
+      if (headArray == null) {
+        heads.add(
+            new ModelDescriptor.Head(
+                /*name=*/ null,
+                model.optString("labels", null),
+                parseNormalization(model.optJSONObject("output"))));
+      } else {
+        for (int j = 0; j < headArray.length(); j++) {
+          heads.add(parseHead(headArray.getJSONObject(j)));
+        }
+      }
+      String modelPath = model.getString("model");
+      String sha256 = emptyToNull(model.optString("sha256", null));
+      if (sha256 == null) {
+        sha256 = checksums.get(modelPath);
+      }
+      models.add(
+          new ModelDescriptor(
+              model.getString("name"),
+              modelPath,
+              heads,
+              model.optString("url", null),
+              sha256,
+              parseNormalization(model.optJSONObject("input")),
+              model.optString("device", null),
+              model.optBoolean("quantized", false),
+              model.optBoolean("lightweight", false),
+              model.optInt("embedding", -1)));
+    }
+    return models;
+  }
+
+  /**
+   * Reads the checksums generated by the build, by model file name. Returns none if the asset is
+   * missing, e.g. in a build that doesn't download models, so downloads are then rejected.
+   */
+  private static Map<String, String> readChecksums(Context context) throws IOException {
+    Map<String, String> checksums = new HashMap<>();
+    InputStream inputStream;
+    try {
+      inputStream = context.getAssets().open(CHECKSUMS_FILE);
+    } catch (FileNotFoundException e) {
+      Log.w(TAG, "No " + CHECKSUMS_FILE + " in the assets, models can't be downloaded");
+      return checksums;
+    }
+    // Lines of sha256sum, "<checksum>  <file name>".
+    for (String line : read(inputStream).split("\n")) {
+      String[] fields = line.trim().split("\\s+", 2);
+      if (fields.length == 2) {
+        checksums.put(fields[1], fields[0]);
+      }
+    }
+    return checksums;
+  }
+
+  private static String emptyToNull(String value) {
+    return value == null || value.isEmpty() ? null : value;
+  }
+
+  private static ModelDescriptor.Head parseHead(JSONObject head) throws JSONException {
+    return new ModelDescriptor.Head(
+        head.optString("name", null),
+        head.optString("labels", null),
+        parseNormalization(head.optJSONObject("output")));
+  }
+
+  private static ModelDescriptor.Normalization parseNormalization(JSONObject normalization)
+      throws JSONException {
+    if (normalization == null) {
+      return null;
+    }
+    return new ModelDescriptor.Normalization(
+        (float) normalization.getDouble("mean"), (float) normalization.getDouble("std"));
+  }
+
+  private static String read(InputStream inputStream) throws IOException {
+    try {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        content.write(buffer, 0, read);
+      }
+      return content.toString("UTF-8");
+    } finally {
+      inputStream.close();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.models;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import java.io.File;
+
+/**
+ * Provides the model cache of the app. By default models come from the assets and, for models not
+ * bundled into the APK, from the download URLs of the {@link ModelRegistry}, on first use.
+ */
+public final class ModelRepository {
+  private static final String CACHE_DIRECTORY = "models";
+
+  /** Room for the two largest models, so switching between a few models doesn't download again. */
+  public static final long DEFAULT_CACHE_BYTES = 48L * 1024 * 1024;
+
+  private static ModelSource modelSource;
+  private static long maxCacheBytes = DEFAULT_CACHE_BYTES;
+  private static ModelCache cache;
+
+  private ModelRepository() {}
+
+  /**
+   * Replaces the source of models missing from the cache, e.g. with a {@link FileModelSource} or a
+   * local test server. Takes effect for the classifiers created afterwards.
+   */
+  public static synchronized void setModelSource(ModelSource source, long maxBytes) {
+    modelSource = source;
+    maxCacheBytes = maxBytes;
+    cache = null;
+  }
+
+  /** Returns the cache of the app, creating it on first use. */
+  public static synchronized ModelCache getCache(Context context) {
+    if (cache == null) {
+      Context applicationContext = context.getApplicationContext();
+      ModelSource source = modelSource;
+      if (source == null) {
+        source =
+            new ChainedModelSource(
+                new AssetModelSource(applicationContext.getAssets()),
+                new HttpModelSource(
+                    /*baseUrl=*/ null,
+                    ModelRegistry.get(applicationContext).getModelUrls(),
+                    ModelRegistry.get(applicationContext).getModelChecksums()));
+      }
+      cache =
+          new ModelCache(
+              new File(applicationContext.getFilesDir(), CACHE_DIRECTORY),
+              source,
+              getSourceVersion(applicationContext),
+              maxCacheBytes);
+    }
+    return cache;
+  }
+
+  /** Identifies the installed APK, whose assets are the primary source of the cache. */
+  private static String getSourceVersion(Context context) {
+    try {
+      return Long.toString(
+          context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime);
+    } catch (PackageManager.NameNotFoundException e) {
+      // Never happens for the own package; fetching again every start is the safe fallback.
+      return Long.toString(System.currentTimeMillis());
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+package org.tensorflow.lite.examples.classification.models;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Provides models and label files by name, e.g. from the APK, a directory or a server. */
+public interface ModelSource {
+
+  /**
+   * Opens a file of the source.
+   *
+   * @throws java.io.FileNotFoundException if the source doesn't have the file
+   */
+  InputStream open(String name) throws IOException;
+
+  /**
+   * Returns the SHA-256 checksum the file must have in hex, or null if the source doesn't publish
+   * one.
+   */
+  String getChecksum(String name) throws IOException;
+}